@@ -0,0 +1,81 @@
+package net.raumzeitfalle.operators;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Contention benchmark: all benchmark threads feed one shared series.
+ * Compares a synchronized {@link UnaryEwma}, the lock-free {@link ConcurrentEwma} and the combining {@link StripedConcurrentEwma}.<br>
+ * <br>
+ * Running the main method repeats the benchmark for 1, 2, 4, ... threads up to the number of available processors.
+ * @author Oliver Löffler
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConcurrentEwmaBenchmark {
+
+    private UnaryEwma synchronizedEwma;
+
+    private ConcurrentEwma concurrentEwma;
+
+    private StripedConcurrentEwma stripedEwma;
+
+    @Setup
+    public void setup() {
+	synchronizedEwma = (UnaryEwma) UnaryEwma.withLambda(0.2);
+	concurrentEwma = ConcurrentEwma.withLambda(0.2);
+	stripedEwma = StripedConcurrentEwma.buildWith(0.2, 0.0);
+    }
+
+    @Benchmark
+    public double synchronizedUnaryEwma() {
+	double value = ThreadLocalRandom.current().nextDouble();
+	synchronized (synchronizedEwma) {
+	    return synchronizedEwma.applyAsDouble(value);
+	}
+    }
+
+    @Benchmark
+    public double concurrentEwma() {
+	return concurrentEwma.applyAsDouble(ThreadLocalRandom.current().nextDouble());
+    }
+
+    @Benchmark
+    public void stripedConcurrentEwma() {
+	stripedEwma.accept(ThreadLocalRandom.current().nextDouble());
+    }
+
+    public static void main(String[] args) throws RunnerException {
+	int processors = Runtime.getRuntime().availableProcessors();
+	for (int threads = 1; threads <= processors; threads <<= 1) {
+	    new Runner(new OptionsBuilder()
+		    .include(ConcurrentEwmaBenchmark.class.getSimpleName())
+		    .threads(threads)
+		    .addProfiler(GCProfiler.class)
+		    .resultFormat(ResultFormatType.JSON)
+		    .result("build/reports/jmh/concurrent-ewma-" + threads + "-threads.json")
+		    .build()).run();
+	}
+    }
+}
@@ -0,0 +1,72 @@
+package net.raumzeitfalle.operators;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Parameter sweep over many lambdas: one pass with {@link EwmaBank} compared to one {@link DoubleEwma} pass per lambda.
+ * @author Oliver Löffler
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EwmaBankBenchmark {
+
+    @Param({"50", "200"})
+    public int lambdas;
+
+    @Param({"100000"})
+    public int length;
+
+    private double[] values;
+
+    private double[] weights;
+
+    private double[] target;
+
+    @Setup
+    public void setup() {
+	values = new Random(42).doubles(length).toArray();
+	weights = new double[lambdas];
+	for (int k = 0; k < lambdas; k++) {
+	    weights[k] = (k + 1.0) / lambdas;
+	}
+	target = new double[length * lambdas];
+    }
+
+    @Benchmark
+    public double[] bankSampleMajor() {
+	return EwmaBank.withLambdas(weights).applyTo(values, target);
+    }
+
+    @Benchmark
+    public double[] bankLambdaMajor() {
+	return EwmaBank.withLambdas(weights).applyToColumns(values, target);
+    }
+
+    @Benchmark
+    public double[] passPerLambda() {
+	double[] row = new double[length];
+	for (int k = 0; k < lambdas; k++) {
+	    DoubleEwma.withLambda(weights[k]).applyTo(values, row);
+	    System.arraycopy(row, 0, target, k * length, length);
+	}
+	return target;
+    }
+}
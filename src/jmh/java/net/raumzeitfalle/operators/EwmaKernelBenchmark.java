@@ -0,0 +1,97 @@
+package net.raumzeitfalle.operators;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.function.DoubleUnaryOperator;
+import java.util.function.UnaryOperator;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Advancing all series by one scan: {@link EwmaKernel} over struct of arrays compared to one {@link UnaryEwma} object per series,
+ * applied boxed (apply) and primitive (applyAsDouble). Each invocation processes one scan of all series.
+ * @author Oliver Löffler
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EwmaKernelBenchmark {
+
+    @Param({"1000", "10000"})
+    public int series;
+
+    private double[] lambdas;
+
+    private double[] prev;
+
+    private double[] scan;
+
+    private Double[] boxedScan;
+
+    private List<UnaryOperator<Double>> operators;
+
+    private DoubleUnaryOperator[] primitiveOperators;
+
+    @Setup
+    public void setup() {
+	Random random = new Random(42);
+	lambdas = random.doubles(series, 0.01, 1.0).toArray();
+	prev = new double[series];
+	scan = random.doubles(series).toArray();
+	boxedScan = new Double[series];
+	operators = new ArrayList<>(series);
+	primitiveOperators = new DoubleUnaryOperator[series];
+	for (int i = 0; i < series; i++) {
+	    boxedScan[i] = scan[i];
+	    operators.add(UnaryEwma.buildWith(lambdas[i], 0.0));
+	    primitiveOperators[i] = (DoubleUnaryOperator) UnaryEwma.buildWith(lambdas[i], 0.0);
+	}
+    }
+
+    @Benchmark
+    public double perObjectApply() {
+	double sum = 0;
+	for (int i = 0; i < series; i++) {
+	    sum += operators.get(i).apply(boxedScan[i]).doubleValue();
+	}
+	return sum;
+    }
+
+    @Benchmark
+    public double perObjectApplyAsDouble() {
+	double sum = 0;
+	for (int i = 0; i < series; i++) {
+	    sum += primitiveOperators[i].applyAsDouble(scan[i]);
+	}
+	return sum;
+    }
+
+    @Benchmark
+    public double[] kernel() {
+	EwmaKernel.update(prev, lambdas, scan);
+	return prev;
+    }
+
+    @Benchmark
+    public double[] kernelSharedLambda() {
+	EwmaKernel.update(prev, 0.2, scan);
+	return prev;
+    }
+
+}
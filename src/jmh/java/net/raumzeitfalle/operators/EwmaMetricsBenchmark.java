@@ -0,0 +1,102 @@
+package net.raumzeitfalle.operators;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.function.DoubleUnaryOperator;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Overhead of {@link EwmaMetrics} per update: plain operators compared to operators instrumented with
+ * the no-op metrics (which should not be measurable) and with enabled metrics (a counter and a branch, every 64th update timed).
+ * @author Oliver Löffler
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EwmaMetricsBenchmark {
+
+    static final int SERIES = 1_000;
+
+    private double[] values;
+
+    private DoubleUnaryOperator plain;
+
+    private DoubleUnaryOperator noop;
+
+    private DoubleUnaryOperator enabled;
+
+    private MultiSeriesEwma plainSeries;
+
+    private MultiSeriesEwma noopSeries;
+
+    private MultiSeriesEwma enabledSeries;
+
+    private int next;
+
+    @Setup
+    public void setup() {
+	values = new Random(42).doubles(1 << 16).toArray();
+	EwmaMetrics metrics = EwmaMetrics.create("benchmark");
+	plain = DoubleEwma.withLambda(0.2);
+	noop = EwmaMetrics.noop().instrument(DoubleEwma.withLambda(0.2));
+	enabled = metrics.instrument(DoubleEwma.withLambda(0.2));
+	plainSeries = MultiSeriesEwma.buildWith(0.2, MultiSeriesEwma.FIRST_SAMPLE, SERIES);
+	noopSeries = MultiSeriesEwma.buildWith(0.2, MultiSeriesEwma.FIRST_SAMPLE, SERIES).instrumentWith(EwmaMetrics.noop());
+	enabledSeries = MultiSeriesEwma.buildWith(0.2, MultiSeriesEwma.FIRST_SAMPLE, SERIES).instrumentWith(metrics);
+	for (int s = 0; s < SERIES; s++) {
+	    plainSeries.update(s, values[s]);
+	    noopSeries.update(s, values[s]);
+	    enabledSeries.update(s, values[s]);
+	}
+    }
+
+    private double nextValue() {
+	next = next + 1 & (values.length - 1);
+	return values[next];
+    }
+
+    @Benchmark
+    public double operatorPlain() {
+	return plain.applyAsDouble(nextValue());
+    }
+
+    @Benchmark
+    public double operatorNoop() {
+	return noop.applyAsDouble(nextValue());
+    }
+
+    @Benchmark
+    public double operatorEnabled() {
+	return enabled.applyAsDouble(nextValue());
+    }
+
+    @Benchmark
+    public double seriesPlain() {
+	return plainSeries.update(next % SERIES, nextValue());
+    }
+
+    @Benchmark
+    public double seriesNoop() {
+	return noopSeries.update(next % SERIES, nextValue());
+    }
+
+    @Benchmark
+    public double seriesEnabled() {
+	return enabledSeries.update(next % SERIES, nextValue());
+    }
+
+}
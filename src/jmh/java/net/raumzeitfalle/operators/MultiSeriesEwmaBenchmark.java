@@ -0,0 +1,96 @@
+package net.raumzeitfalle.operators;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Updates per second of {@link MultiSeriesEwma} compared to a {@link HashMap} of {@link UnaryEwma} per series.
+ * One invocation processes a batch of {@value #BATCH} updates spread randomly over all series.
+ * @author Oliver Löffler
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MultiSeriesEwmaBenchmark {
+
+    static final int BATCH = 100_000;
+
+    @Param({"1000", "50000"})
+    public int series;
+
+    private long[] keys;
+
+    private String[] names;
+
+    private double[] values;
+
+    private double[] target;
+
+    private MultiSeriesEwma multiSeries;
+
+    private Map<String, UnaryEwma> objects;
+
+    @Setup
+    public void setup() {
+	Random random = new Random(42);
+	keys = new long[BATCH];
+	names = new String[BATCH];
+	values = new double[BATCH];
+	target = new double[BATCH];
+	for (int i = 0; i < BATCH; i++) {
+	    keys[i] = random.nextInt(series);
+	    names[i] = "tool/chamber/sensor-" + keys[i];
+	    values[i] = random.nextDouble();
+	}
+	multiSeries = MultiSeriesEwma.buildWith(0.2, 0.0, series);
+	multiSeries.updateBatch(keys, values);
+	objects = new HashMap<>();
+	for (String name : names) {
+	    objects.computeIfAbsent(name, n -> (UnaryEwma) UnaryEwma.withLambda(0.2));
+	}
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public double[] multiSeriesBatch() {
+	multiSeries.updateBatch(keys, values, target);
+	return target;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public double[] multiSeriesSingle() {
+	for (int i = 0; i < BATCH; i++) {
+	    target[i] = multiSeries.update(keys[i], values[i]);
+	}
+	return target;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public double[] hashMapOfUnaryEwma() {
+	for (int i = 0; i < BATCH; i++) {
+	    target[i] = objects.get(names[i]).apply(Double.valueOf(values[i])).doubleValue();
+	}
+	return target;
+    }
+}
@@ -0,0 +1,150 @@
+package net.raumzeitfalle.operators;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Control;
+
+import net.raumzeitfalle.operators.SampleRingBuffer.WaitStrategy;
+
+/**
+ * Hand-off throughput from producer threads to one consumer thread feeding a {@link MultiSeriesEwma}.
+ * Compares the single and multi producer {@link SampleRingBuffer} with an {@link ArrayBlockingQueue} of sample objects.<br>
+ * <br>
+ * Each group reports the rate of published samples (produce*) and of drain calls (consume*), the number of drained samples equals the number of published samples.
+ * Producers wait using the given strategy while the buffer is full, the queue baseline uses offer() with the same strategy.
+ * @author Oliver Löffler
+ *
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SampleRingBufferBenchmark {
+
+    private static final int SERIES = 1024;
+
+    @Param({"1024"})
+    public int capacity;
+
+    @Param({"256"})
+    public int batch;
+
+    @Param({"BUSY_SPIN", "YIELD", "PARK"})
+    public WaitStrategy waitStrategy;
+
+    private SampleRingBuffer singleProducer;
+
+    private SampleRingBuffer multiProducer;
+
+    private ArrayBlockingQueue<Sample> queue;
+
+    private MultiSeriesEwma ewma;
+
+    @Setup(Level.Iteration)
+    public void setup() {
+	singleProducer = SampleRingBuffer.singleProducer(capacity, waitStrategy);
+	multiProducer = SampleRingBuffer.multiProducer(capacity, waitStrategy);
+	queue = new ArrayBlockingQueue<>(capacity);
+	ewma = MultiSeriesEwma.buildWith(0.2, 0.0, SERIES);
+    }
+
+    @Benchmark
+    @Group("singleProducer")
+    @GroupThreads(1)
+    public boolean produceSingle(Control control) {
+	return produce(singleProducer, control);
+    }
+
+    @Benchmark
+    @Group("singleProducer")
+    @GroupThreads(1)
+    public int consumeSingle() {
+	return singleProducer.drainTo(ewma, batch);
+    }
+
+    @Benchmark
+    @Group("multiProducer")
+    @GroupThreads(3)
+    public boolean produceMulti(Control control) {
+	return produce(multiProducer, control);
+    }
+
+    @Benchmark
+    @Group("multiProducer")
+    @GroupThreads(1)
+    public int consumeMulti() {
+	return multiProducer.drainTo(ewma, batch);
+    }
+
+    @Benchmark
+    @Group("arrayBlockingQueue")
+    @GroupThreads(3)
+    public boolean produceQueue(Control control) {
+	ThreadLocalRandom random = ThreadLocalRandom.current();
+	Sample sample = new Sample(System.nanoTime(), random.nextInt(SERIES), random.nextDouble());
+	while (!queue.offer(sample)) {
+	    if (control.stopMeasurement) {
+		return false;
+	    }
+	    waitStrategy.idle();
+	}
+	return true;
+    }
+
+    @Benchmark
+    @Group("arrayBlockingQueue")
+    @GroupThreads(1)
+    public int consumeQueue() {
+	int n = 0;
+	Sample sample;
+	while (n < batch && (sample = queue.poll()) != null) {
+	    ewma.update(sample.series, sample.value);
+	    n++;
+	}
+	return n;
+    }
+
+    private boolean produce(SampleRingBuffer ring, Control control) {
+	ThreadLocalRandom random = ThreadLocalRandom.current();
+	long timestamp = System.nanoTime();
+	long series = random.nextInt(SERIES);
+	double value = random.nextDouble();
+	while (!ring.offer(timestamp, series, value)) {
+	    if (control.stopMeasurement) {
+		return false;
+	    }
+	    waitStrategy.idle();
+	}
+	return true;
+    }
+
+    static final class Sample {
+	final long timestamp;
+	final long series;
+	final double value;
+
+	Sample(long timestamp, long series, double value) {
+	    this.timestamp = timestamp;
+	    this.series = series;
+	    this.value = value;
+	}
+    }
+}
@@ -0,0 +1,121 @@
+package net.raumzeitfalle.operators;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.raumzeitfalle.operators.SampleRingBuffer.WaitStrategy;
+
+/**
+ * Hand-off latency: the benchmark thread publishes one sample and waits until a dedicated consumer thread has applied it to a {@link MultiSeriesEwma}.
+ * Sample time mode reports the percentiles (p50, p90, p99, p99.9) of this round trip.<br>
+ * <br>
+ * The consumer thread waits for samples using the given strategy, the {@link ArrayBlockingQueue} baseline uses take() instead.
+ * The benchmark thread always waits for the consumer using the given strategy.
+ * @author Oliver Löffler
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SampleRingBufferLatencyBenchmark {
+
+    public enum Implementation { SINGLE_PRODUCER, MULTI_PRODUCER, ARRAY_BLOCKING_QUEUE }
+
+    @Param({"SINGLE_PRODUCER", "MULTI_PRODUCER", "ARRAY_BLOCKING_QUEUE"})
+    public Implementation implementation;
+
+    @Param({"BUSY_SPIN", "YIELD", "PARK"})
+    public WaitStrategy waitStrategy;
+
+    private SampleRingBuffer ring;
+
+    private ArrayBlockingQueue<SampleRingBufferBenchmark.Sample> queue;
+
+    private final MultiSeriesEwma ewma = MultiSeriesEwma.withLambda(0.2);
+
+    private volatile long processed;
+
+    private long sent;
+
+    private Thread consumer;
+
+    @Setup(Level.Trial)
+    public void setup() {
+	switch (implementation) {
+	case SINGLE_PRODUCER:
+	    ring = SampleRingBuffer.singleProducer(1024, waitStrategy);
+	    consumer = new Thread(this::drainRing);
+	    break;
+	case MULTI_PRODUCER:
+	    ring = SampleRingBuffer.multiProducer(1024, waitStrategy);
+	    consumer = new Thread(this::drainRing);
+	    break;
+	default:
+	    queue = new ArrayBlockingQueue<>(1024);
+	    consumer = new Thread(this::drainQueue);
+	    break;
+	}
+	consumer.setDaemon(true);
+	consumer.start();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+	consumer.interrupt();
+	consumer.join();
+    }
+
+    @Benchmark
+    public long roundTrip() throws InterruptedException {
+	long target = ++sent;
+	if (queue == null) {
+	    ring.put(target, target & 1023, 1.0);
+	} else {
+	    queue.put(new SampleRingBufferBenchmark.Sample(target, target & 1023, 1.0));
+	}
+	while (processed < target) {
+	    waitStrategy.idle();
+	}
+	return target;
+    }
+
+    private void drainRing() {
+	while (!Thread.currentThread().isInterrupted()) {
+	    int n = ring.drainTo(ewma, 256);
+	    if (n == 0) {
+		waitStrategy.idle();
+	    } else {
+		processed += n;
+	    }
+	}
+    }
+
+    private void drainQueue() {
+	try {
+	    while (true) {
+		SampleRingBufferBenchmark.Sample sample = queue.take();
+		ewma.update(sample.series, sample.value);
+		processed++;
+	    }
+	} catch (InterruptedException e) {
+	    Thread.currentThread().interrupt();
+	}
+    }
+}
@@ -0,0 +1,100 @@
+package net.raumzeitfalle.operators;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Appending samples and recomputing the EWMA over the retained window of all series, {@link SeriesRingStore} compared to
+ * a bounded {@link LinkedList} of boxed samples per series. Run with -prof gc to compare allocation rates,
+ * the heap used by the linked lists grows with the depth whereas the store keeps its samples off-heap.
+ * @author Oliver Löffler
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SeriesRingStoreBenchmark {
+
+    static final int SERIES = 1_000;
+
+    @Param({"64", "1024"})
+    public int depth;
+
+    private double[] values;
+
+    private SeriesRingStore store;
+
+    private List<LinkedList<Double>> lists;
+
+    private int next;
+
+    @Setup
+    public void setup() {
+	values = new Random(42).doubles(1 << 16).toArray();
+	store = SeriesRingStore.withDepth(depth, SERIES);
+	lists = new ArrayList<>(SERIES);
+	for (int s = 0; s < SERIES; s++) {
+	    lists.add(new LinkedList<>());
+	    for (int i = 0; i < depth; i++) {
+		store.append(s, values[i]);
+		lists.get(s).add(values[i]);
+	    }
+	}
+    }
+
+    @Benchmark
+    public void appendToStore() {
+	store.append(next++ % SERIES, values[next & 0xFFFF]);
+    }
+
+    @Benchmark
+    public void appendToLinkedList() {
+	LinkedList<Double> list = lists.get(next++ % SERIES);
+	list.add(values[next & 0xFFFF]);
+	list.removeFirst();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SERIES)
+    public double recomputeFromStore() {
+	double sum = 0.0;
+	for (int s = 0; s < SERIES; s++) {
+	    sum += store.recompute(s, 0.3, MultiSeriesEwma.FIRST_SAMPLE);
+	}
+	return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SERIES)
+    public double recomputeFromLinkedList() {
+	double sum = 0.0;
+	for (int s = 0; s < SERIES; s++) {
+	    double ewma = lists.get(s).getFirst();
+	    for (Double value : lists.get(s)) {
+		ewma = 0.3 * value + 0.7 * ewma;
+	    }
+	    sum += ewma;
+	}
+	return sum;
+    }
+
+}
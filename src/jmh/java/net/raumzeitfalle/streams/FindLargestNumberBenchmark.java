@@ -0,0 +1,251 @@
+package net.raumzeitfalle.streams;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Finding the largest number in a collection of integers, comparing a for-each loop with various parallel and sequential stream constructs.<br>
+ * <br>
+ * All variants are run against different containers:
+ * <ul>
+ * <li>ARRAY_LIST and LINKED_LIST: streams of {@link Integer} obtained from the list</li>
+ * <li>INT_ARRAY: boxed stream of {@link Integer} obtained from an int[]</li>
+ * <li>INT_STREAM: primitive {@link IntStream} obtained from an int[], the lambdas operate on int without boxing</li>
+ * </ul>
+ * Parallel variants run inside a dedicated {@link ForkJoinPool} with the given number of threads, thus varying threads yields the scaling curve.
+ * The threads parameter belongs to the {@link Pool} state, hence sequential variants are not repeated for each number of threads.
+ * The fast baseline are the {@link PrimitiveReductions} operating on the int[] directly, see {@link FindLargestNumberPrimitiveBenchmark}.
+ * Run with <code>gradle jmh</code>, which also enables the GC profiler to report allocation rates.
+ * Running the main method prints a scaling report of the primitive reductions and the parallel IntStream for 1, 2, 4, ... threads up to the number of available processors.
+ * The JSON results are written to the file given as first argument, by default to build/reports/jmh/find-largest-number-scaling.json of the project.
+ * @author Oliver Löffler
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = "-Xmx4g")
+public class FindLargestNumberBenchmark {
+
+    public enum Container { ARRAY_LIST, LINKED_LIST, INT_ARRAY, INT_STREAM }
+
+    @Param({"1000", "100000", "10000000"})
+    public int size;
+
+    @Param({"ARRAY_LIST", "LINKED_LIST", "INT_ARRAY", "INT_STREAM"})
+    public Container container;
+
+    private List<Integer> ints;
+
+    private int[] array;
+
+    /**
+     * Dedicated {@link ForkJoinPool} of the parallel variants.
+     */
+    @State(Scope.Benchmark)
+    public static class Pool {
+
+	@Param({"1", "2", "4", "8"})
+	public int threads;
+
+	private ForkJoinPool pool;
+
+	PrimitiveReductions parallel;
+
+	@Setup(Level.Trial)
+	public void setup() {
+	    pool = new ForkJoinPool(threads);
+	    parallel = PrimitiveReductions.parallel(pool);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+	    pool.shutdown();
+	}
+
+	/**
+	 * Parallel streams started from within a {@link ForkJoinPool} are executed by this pool instead of the common pool.
+	 */
+	int inPool(IntSupplier reduction) {
+	    return pool.submit(() -> reduction.getAsInt()).join().intValue();
+	}
+    }
+
+    @Setup(Level.Trial)
+    public void setup() {
+	array = new Random(42).ints(size).toArray();
+	switch (container) {
+	case ARRAY_LIST:
+	    ints = new ArrayList<>(size);
+	    break;
+	case LINKED_LIST:
+	    ints = new LinkedList<>();
+	    break;
+	default:
+	    ints = null;
+	    break;
+	}
+	if (ints != null) {
+	    for (int i : array) {
+		ints.add(Integer.valueOf(i));
+	    }
+	}
+    }
+
+    /**
+     * Loop: for-each loop iterating over a list of Integers with manual unboxing, or over the int[] directly.
+     */
+    @Benchmark
+    public int classicalLoop() {
+	if (ints == null) {
+	    int max = array[0];
+	    for (int i : array) {
+		if (i > max) {
+		    max = i;
+		}
+	    }
+	    return max;
+	}
+	int max = ints.get(0).intValue();
+	for (Integer i : ints) {
+	    if (i.intValue() > max) {
+		max = i.intValue();
+	    }
+	}
+	return max;
+    }
+
+    /**
+     * Lambda1 parallel: (a,b) -> {if (a.intValue() > b.intValue()) return a; else return b;}
+     */
+    @Benchmark
+    public int mapReduceLambda(Pool pool) {
+	if (container == Container.INT_STREAM) {
+	    return pool.inPool(() -> intStream().parallel().reduce((a,b) -> {if (a > b) return a; else return b;}).getAsInt());
+	}
+	return pool.inPool(() -> stream().parallel().reduce((a,b) -> {if (a.intValue() > b.intValue()) return a; else return b;}).get().intValue());
+    }
+
+    /**
+     * Lambda2 parallel: (a,b) -> a > b ? a : b
+     */
+    @Benchmark
+    public int mapReduceSimplerLambda(Pool pool) {
+	if (container == Container.INT_STREAM) {
+	    return pool.inPool(() -> intStream().parallel().reduce((a,b) -> a > b ? a : b).getAsInt());
+	}
+	return pool.inPool(() -> stream().parallel().reduce((a,b) -> a > b ? a : b).get().intValue());
+    }
+
+    /**
+     * Lambda3 parallel: (a,b) -> Math.max(a, b)
+     */
+    @Benchmark
+    public int mapReduceWithMath(Pool pool) {
+	if (container == Container.INT_STREAM) {
+	    return pool.inPool(() -> intStream().parallel().reduce((a,b) -> Math.max(a, b)).getAsInt());
+	}
+	return pool.inPool(() -> stream().parallel().reduce((a,b) -> Math.max(a, b)).get().intValue());
+    }
+
+    /**
+     * Sequential: (a,b) -> a > b ? a : b
+     */
+    @Benchmark
+    public int mapReduceSimplerLambdaSeq() {
+	if (container == Container.INT_STREAM) {
+	    return intStream().sequential().reduce((a,b) -> a > b ? a : b).getAsInt();
+	}
+	return stream().sequential().reduce((a,b) -> a > b ? a : b).get().intValue();
+    }
+
+    private Stream<Integer> stream() {
+	return ints != null ? ints.stream() : Arrays.stream(array).boxed();
+    }
+
+    private IntStream intStream() {
+	return Arrays.stream(array);
+    }
+
+    public static void main(String[] args) throws RunnerException, IOException, URISyntaxException {
+	Path report = args.length > 0 ? Paths.get(args[0]) : projectDirectory().resolve("build/reports/jmh/find-largest-number-scaling.json");
+	Files.createDirectories(report.toAbsolutePath().getParent());
+	List<String> threads = new ArrayList<>();
+	for (int t = 1; t <= Runtime.getRuntime().availableProcessors(); t <<= 1) {
+	    threads.add(String.valueOf(t));
+	}
+	Collection<RunResult> results = new Runner(new OptionsBuilder()
+		.include(FindLargestNumberBenchmark.class.getSimpleName() + ".mapReduceWithMath")
+		.include(FindLargestNumberPrimitiveBenchmark.class.getSimpleName() + ".primitive.*")
+		.param("size", "10000000")
+		.param("container", "INT_STREAM")
+		.param("threads", threads.toArray(new String[threads.size()]))
+		.resultFormat(ResultFormatType.JSON)
+		.result(report.toString())
+		.build()).run();
+
+	Map<String, Double> single = new HashMap<>();
+	for (RunResult result : results) {
+	    String threadCount = result.getParams().getParam("threads");
+	    if (threadCount == null || "1".equals(threadCount)) {
+		single.put(result.getParams().getBenchmark(), result.getPrimaryResult().getScore());
+	    }
+	}
+	System.out.println();
+	System.out.println(String.format("%-60s %8s %16s %8s", "Benchmark", "Threads", "ops/s", "Speedup"));
+	for (RunResult result : results) {
+	    String benchmark = result.getParams().getBenchmark();
+	    double score = result.getPrimaryResult().getScore();
+	    String threadCount = result.getParams().getParam("threads");
+	    System.out.println(String.format("%-60s %8s %16.1f %8.2f", benchmark, threadCount == null ? "-" : threadCount, score, score / single.get(benchmark)));
+	}
+    }
+
+    /**
+     * @return the directory containing build.gradle above the location of this class, the working directory if there is none
+     */
+    private static Path projectDirectory() throws URISyntaxException {
+	Path directory = Paths.get(FindLargestNumberBenchmark.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+	while (directory != null && !Files.exists(directory.resolve("build.gradle"))) {
+	    directory = directory.getParent();
+	}
+	return directory != null ? directory : Paths.get("").toAbsolutePath();
+    }
+}
@@ -0,0 +1,64 @@
+package net.raumzeitfalle.streams;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Fast baseline of {@link FindLargestNumberBenchmark}: the {@link PrimitiveReductions} operating on the same int[] directly.<br>
+ * <br>
+ * These do not depend on a container, hence they are kept apart from the container parameter and run once per size.
+ * The parallel variant uses the {@link FindLargestNumberBenchmark.Pool} state, thus it is repeated for each number of threads only.
+ * @author Oliver Löffler
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = "-Xmx4g")
+public class FindLargestNumberPrimitiveBenchmark {
+
+    @Param({"1000", "100000", "10000000"})
+    public int size;
+
+    private int[] array;
+
+    private PrimitiveReductions unrolled;
+
+    @Setup(Level.Trial)
+    public void setup() {
+	array = new Random(42).ints(size).toArray();
+	unrolled = PrimitiveReductions.unrolled();
+    }
+
+    /**
+     * Fast baseline, sequential: {@link PrimitiveReductions#unrolled()}, for int max a plain loop over the int[] which the JIT compiler unrolls and vectorizes.
+     */
+    @Benchmark
+    public int primitiveUnrolled() {
+	return unrolled.max(array);
+    }
+
+    /**
+     * Fast baseline, parallel: {@link PrimitiveReductions#parallel(ForkJoinPool)} forking chunks reduced by plain loops in the pool of the benchmark.
+     */
+    @Benchmark
+    public int primitiveParallel(FindLargestNumberBenchmark.Pool pool) {
+	return pool.parallel.max(array);
+    }
+}
@@ -0,0 +1,86 @@
+package net.raumzeitfalle.timeseries;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Time to smooth a binary file of little-endian doubles into another file. Divide the file size (8 bytes per sample) by the score to obtain the throughput.
+ * The heap is deliberately limited to show that the heap usage does not depend on the file size.
+ * @author Oliver Loeffler
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx256m")
+public class EwmaFilesBenchmark {
+
+    @Param({"1000000", "100000000"})
+    public long samples;
+
+    private Path source;
+
+    private Path target;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+	source = Files.createTempFile("ewma-source", ".bin");
+	target = Files.createTempFile("ewma-target", ".bin");
+	Random random = new Random(42);
+	ByteBuffer block = ByteBuffer.allocateDirect(1 << 20).order(ByteOrder.LITTLE_ENDIAN);
+	try (FileChannel channel = FileChannel.open(source, StandardOpenOption.WRITE)) {
+	    for (long written = 0; written < samples; ) {
+		block.clear();
+		while (block.hasRemaining() && written < samples) {
+		    block.putDouble(random.nextDouble());
+		    written++;
+		}
+		block.flip();
+		while (block.hasRemaining()) {
+		    channel.write(block);
+		}
+	    }
+	}
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+	Files.deleteIfExists(source);
+	Files.deleteIfExists(target);
+    }
+
+    @Benchmark
+    public Path applyWithLambda() throws IOException {
+	EwmaFiles.applyWithLambda(0.2, source, target);
+	return target;
+    }
+
+    @Benchmark
+    public Path applyWithLambdaInParallel() throws IOException {
+	EwmaFiles.applyWithLambdaInParallel(0.2, source, target);
+	return target;
+    }
+}
@@ -0,0 +1,92 @@
+package net.raumzeitfalle.timeseries;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Random access queries and corrections of past values using {@link EwmaIndex} compared to recomputing the whole series
+ * with {@link EwmaFunctions#applyWithLambda(double, double[])}. Indices are drawn uniformly from the series.
+ * @author Oliver Loeffler
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EwmaIndexBenchmark {
+
+    @Param({"1000000"})
+    public int length;
+
+    @Param({"64", "1024"})
+    public int interval;
+
+    private final EwmaFunctions functions = new EwmaFunctions();
+
+    private double[] series;
+
+    private int[] indices;
+
+    private EwmaIndex index;
+
+    private int next;
+
+    @Setup
+    public void setup() {
+	Random random = new Random(42);
+	series = random.doubles(length).toArray();
+	indices = random.ints(1 << 12, 0, length).toArray();
+	index = EwmaIndex.withLambda(0.2, interval).appendAll(series);
+    }
+
+    @Benchmark
+    public double ewmaAtFromCheckpoint() {
+	return index.ewmaAt(nextIndex());
+    }
+
+    @Benchmark
+    public double ewmaAtByFullRecomputation() {
+	return functions.applyWithLambda(0.2, series)[nextIndex()];
+    }
+
+    @Benchmark
+    public double correctByClosedFormDelta() {
+	int k = nextIndex();
+	return index.correct(k, series[k] + 0.5);
+    }
+
+    @Benchmark
+    public double replaceFromCheckpoint() {
+	int k = nextIndex();
+	return index.replace(k, series[k] + 0.5);
+    }
+
+    @Benchmark
+    public double replaceByFullRecomputation() {
+	int k = nextIndex();
+	double replaced = series[k];
+	series[k] = replaced + 0.5;
+	double[] ewma = functions.applyWithLambda(0.2, series);
+	series[k] = replaced;
+	return ewma[length - 1];
+    }
+
+    private int nextIndex() {
+	return indices[next++ & (indices.length - 1)];
+    }
+
+}
@@ -0,0 +1,97 @@
+package net.raumzeitfalle.timeseries;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BinaryOperator;
+import java.util.function.Function;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.raumzeitfalle.operators.BinaryEwma;
+import net.raumzeitfalle.operators.DoubleEwma;
+import net.raumzeitfalle.operators.UnaryEwma;
+
+/**
+ * Per-sample latency of all EWMA implementations. Each invocation processes exactly one sample.
+ * The boxed variants include boxing of the input value as any caller of these APIs has to box.
+ * Run with <code>gradle jmh</code>, the GC profiler reports the bytes allocated per sample (gc.alloc.rate.norm).
+ * @author Oliver Löffler
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EwmaLatencyBenchmark {
+
+    private static final double LAMBDA = 0.2;
+
+    private static final int MASK = 1023;
+
+    private final double[] values = new Random(42).doubles(MASK + 1).toArray();
+
+    private int index;
+
+    private double previous;
+
+    private UnaryEwma unaryEwma;
+
+    private BinaryOperator<Double> binaryEwma;
+
+    private Function<Double, Double> ewmaFunction;
+
+    private DoubleEwma doubleEwma;
+
+    @Setup
+    public void setup() {
+	unaryEwma = (UnaryEwma) UnaryEwma.withLambda(LAMBDA);
+	binaryEwma = BinaryEwma.withLambda(LAMBDA);
+	ewmaFunction = EwmaFunctions.withLambdaAndInitial(LAMBDA, 0.0);
+	doubleEwma = DoubleEwma.withLambda(LAMBDA);
+    }
+
+    private double next() {
+	return values[index++ & MASK];
+    }
+
+    @Benchmark
+    public double primitiveLoop() {
+	return previous = LAMBDA * next() + (1 - LAMBDA) * previous;
+    }
+
+    @Benchmark
+    public double doubleEwma() {
+	return doubleEwma.applyAsDouble(next());
+    }
+
+    @Benchmark
+    public Double unaryEwma() {
+	return unaryEwma.apply(Double.valueOf(next()));
+    }
+
+    @Benchmark
+    public double unaryEwmaPrimitive() {
+	return unaryEwma.applyAsDouble(next());
+    }
+
+    @Benchmark
+    public double binaryEwma() {
+	return previous = binaryEwma.apply(Double.valueOf(next()), Double.valueOf(previous)).doubleValue();
+    }
+
+    @Benchmark
+    public Double ewmaFunction() {
+	return ewmaFunction.apply(Double.valueOf(next()));
+    }
+}
@@ -0,0 +1,198 @@
+package net.raumzeitfalle.timeseries;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import net.raumzeitfalle.operators.DoubleEwma;
+
+/**
+ * Trade-off between signalling cost and latency of the {@link EwmaProcessor}, batch size 1 of VALUES corresponds to one signal per value.
+ * <ul>
+ * <li>throughput: average time per value pushed from a synchronous publisher through the processor into a subscriber with unbounded demand</li>
+ * <li>latency: time from the first value of a batch entering the processor until the batch reaches the subscriber (sample time percentiles)</li>
+ * </ul>
+ * @author Oliver Löffler
+ *
+ */
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EwmaProcessorBenchmark {
+
+    private static final int SIZE = 1 << 16;
+
+    public enum Emission { VALUES, BATCHES }
+
+    @Param({"VALUES", "BATCHES"})
+    public Emission emission;
+
+    @Param({"1", "16", "256", "4096"})
+    public int batchSize;
+
+    private Double[] values;
+
+    private EwmaProcessor<?> processor;
+
+    private Sink sink;
+
+    @Setup(Level.Trial)
+    public void setup() {
+	values = new Random(42).doubles(SIZE).boxed().toArray(Double[]::new);
+    }
+
+    @Setup(Level.Iteration)
+    public void subscribe(Blackhole blackhole) {
+	processor = create();
+	sink = new Sink(blackhole);
+	processor.onSubscribe(new Unbounded());
+	processor.subscribe(sink);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    @OperationsPerInvocation(SIZE)
+    public void throughput(Blackhole blackhole) {
+	EwmaProcessor<?> processor = create();
+	new ArrayPublisher(values).subscribe(processor);
+	processor.subscribe(new Sink(blackhole));
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public long latency() {
+	long received = sink.received;
+	int i = 0;
+	while (sink.received == received) {
+	    processor.onNext(values[i++ & (SIZE - 1)]);
+	}
+	return sink.received;
+    }
+
+    private EwmaProcessor<?> create() {
+	return emission == Emission.VALUES
+		? EwmaProcessor.forValues(DoubleEwma.withLambda(0.2), batchSize)
+		: EwmaProcessor.forBatches(DoubleEwma.withLambda(0.2), batchSize);
+    }
+
+    /**
+     * Grants any demand, values are pushed by the benchmark.
+     */
+    static final class Unbounded implements Subscription {
+	@Override
+	public void request(long n) {
+	    // values are pushed by the benchmark method
+	}
+
+	@Override
+	public void cancel() {
+	    // nothing to cancel
+	}
+    }
+
+    /**
+     * Synchronous publisher emitting all values on request.
+     */
+    static final class ArrayPublisher implements Publisher<Double>, Subscription {
+
+	private final Double[] values;
+
+	private Subscriber<? super Double> subscriber;
+
+	private long demand;
+
+	private int emitted;
+
+	private boolean emitting;
+
+	private boolean cancelled;
+
+	ArrayPublisher(Double[] values) {
+	    this.values = values;
+	}
+
+	@Override
+	public void subscribe(Subscriber<? super Double> subscriber) {
+	    this.subscriber = subscriber;
+	    subscriber.onSubscribe(this);
+	}
+
+	@Override
+	public void request(long n) {
+	    demand += n;
+	    if (emitting) {
+		return;
+	    }
+	    emitting = true;
+	    while (demand > 0 && emitted < values.length && !cancelled) {
+		demand--;
+		subscriber.onNext(values[emitted++]);
+	    }
+	    emitting = false;
+	    if (emitted == values.length && !cancelled) {
+		cancelled = true;
+		subscriber.onComplete();
+	    }
+	}
+
+	@Override
+	public void cancel() {
+	    cancelled = true;
+	}
+    }
+
+    /**
+     * Requests unbounded demand and counts received items.
+     */
+    static final class Sink implements Subscriber<Object> {
+
+	private final Blackhole blackhole;
+
+	long received;
+
+	Sink(Blackhole blackhole) {
+	    this.blackhole = blackhole;
+	}
+
+	@Override
+	public void onSubscribe(Subscription subscription) {
+	    subscription.request(Long.MAX_VALUE);
+	}
+
+	@Override
+	public void onNext(Object item) {
+	    received++;
+	    blackhole.consume(item);
+	}
+
+	@Override
+	public void onError(Throwable throwable) {
+	    throw new IllegalStateException(throwable);
+	}
+
+	@Override
+	public void onComplete() {
+	    // nothing to do
+	}
+    }
+}
@@ -0,0 +1,90 @@
+package net.raumzeitfalle.timeseries;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * One day of samples per second rolled up to 1s, 1m, 1h and 1d: adding a sample to all resolutions,
+ * and querying the EWMA of minute means from {@link EwmaRollup} compared to recomputing it from the raw samples
+ * with {@link EwmaFunctions#applyWithLambda(double, double[])}.
+ * @author Oliver Loeffler
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EwmaRollupBenchmark {
+
+    static final long SECOND = 1_000L;
+
+    static final long MINUTE = 60 * SECOND;
+
+    static final int SAMPLES = 86_400;
+
+    static final int BUCKETS = 1_440;
+
+    private final EwmaFunctions functions = new EwmaFunctions();
+
+    private double[] values;
+
+    private double[] ewmas;
+
+    private EwmaRollup rollup;
+
+    private EwmaRollup streaming;
+
+    private long next;
+
+    @Setup
+    public void setup() {
+	values = new Random(42).doubles(SAMPLES).toArray();
+	ewmas = new double[BUCKETS];
+	rollup = EwmaRollup.withLambda(0.2, BUCKETS, SECOND, MINUTE, 60 * MINUTE, 24 * 60 * MINUTE);
+	streaming = EwmaRollup.withLambda(0.2, BUCKETS, SECOND, MINUTE, 60 * MINUTE, 24 * 60 * MINUTE);
+	for (int i = 0; i < SAMPLES; i++) {
+	    rollup.add(i * SECOND, values[i]);
+	}
+    }
+
+    @Benchmark
+    public double add() {
+	next++;
+	streaming.add(next * SECOND, values[(int) (next % SAMPLES)]);
+	return streaming.getEWMA(1);
+    }
+
+    @Benchmark
+    public double[] queryRollup() {
+	rollup.copyEwmas(1, ewmas);
+	return ewmas;
+    }
+
+    @Benchmark
+    public double[] recomputeFromRaw() {
+	double[] means = new double[BUCKETS];
+	int perBucket = SAMPLES / BUCKETS;
+	for (int k = 0; k < BUCKETS; k++) {
+	    double sum = 0;
+	    for (int i = k * perBucket; i < (k + 1) * perBucket; i++) {
+		sum += values[i];
+	    }
+	    means[k] = sum / perBucket;
+	}
+	return functions.applyWithLambda(0.2, means);
+    }
+
+}
@@ -0,0 +1,127 @@
+package net.raumzeitfalle.timeseries;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BinaryOperator;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import net.raumzeitfalle.operators.BinaryEwma;
+import net.raumzeitfalle.operators.DoubleEwma;
+import net.raumzeitfalle.operators.UnaryEwma;
+
+/**
+ * Bulk throughput of all EWMA implementations, one operation smoothes a complete series of the given length.
+ * Except for applyWithLambda, which allocates its result by contract, results are written into a preallocated array.
+ * Run with <code>gradle jmh</code>, the GC profiler reports the bytes allocated per series (gc.alloc.rate.norm).
+ * @author Oliver Löffler
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx6g")
+public class EwmaThroughputBenchmark {
+
+    private static final double LAMBDA = 0.2;
+
+    @Param({"100", "10000", "1000000", "100000000"})
+    public int length;
+
+    private double[] values;
+
+    private double[] target;
+
+    private final EwmaFunctions functions = new EwmaFunctions();
+
+    @Setup
+    public void setup() {
+	values = new Random(42).doubles(length).toArray();
+	target = new double[length];
+    }
+
+    @Benchmark
+    public double[] primitiveLoop() {
+	double ewma = values[0];
+	for (int i = 0; i < values.length; i++) {
+	    ewma = LAMBDA * values[i] + (1 - LAMBDA) * ewma;
+	    target[i] = ewma;
+	}
+	return target;
+    }
+
+    @Benchmark
+    public double[] doubleEwma() {
+	return DoubleEwma.buildWith(LAMBDA, values[0]).applyTo(values, target);
+    }
+
+    @Benchmark
+    public double[] doubleEwmaInParallel() {
+	return DoubleEwma.buildWith(LAMBDA, values[0]).applyInParallel(values, target);
+    }
+
+    @Benchmark
+    public double[] unaryEwma() {
+	UnaryOperator<Double> ewma = UnaryEwma.buildWith(LAMBDA, values[0]);
+	for (int i = 0; i < values.length; i++) {
+	    target[i] = ewma.apply(Double.valueOf(values[i])).doubleValue();
+	}
+	return target;
+    }
+
+    @Benchmark
+    public double[] binaryEwma() {
+	BinaryOperator<Double> ewma = BinaryEwma.withLambda(LAMBDA);
+	Double previous = Double.valueOf(values[0]);
+	for (int i = 0; i < values.length; i++) {
+	    previous = ewma.apply(Double.valueOf(values[i]), previous);
+	    target[i] = previous.doubleValue();
+	}
+	return target;
+    }
+
+    @Benchmark
+    public double[] ewmaFunction() {
+	Function<Double, Double> ewma = EwmaFunctions.withLambdaAndInitial(LAMBDA, values[0]);
+	for (int i = 0; i < values.length; i++) {
+	    target[i] = ewma.apply(Double.valueOf(values[i])).doubleValue();
+	}
+	return target;
+    }
+
+    @Benchmark
+    public double[] applyWithLambda() {
+	return functions.applyWithLambda(LAMBDA, values);
+    }
+
+    @Benchmark
+    public double[] applyWithLambdaInParallel() {
+	return functions.applyWithLambdaInParallel(LAMBDA, values);
+    }
+
+    @Benchmark
+    public void applyToStream(Blackhole blackhole) {
+	EwmaFunctions.applyToStream(Arrays.stream(values).boxed(), LAMBDA, values[0]).forEach(blackhole::consume);
+    }
+
+    @Benchmark
+    public void applyToDoubleStream(Blackhole blackhole) {
+	EwmaFunctions.applyToStream(Arrays.stream(values), LAMBDA, values[0]).forEach(blackhole::consume);
+    }
+}
@@ -0,0 +1,130 @@
+package net.raumzeitfalle.timeseries;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.raumzeitfalle.operators.DoubleEwma;
+
+/**
+ * Encode and decode throughput of {@link GorillaEncoder} and {@link GorillaDecoder} (average time per sample) for data as produced by EwmaExample:
+ * uniform noise on top of level shifts, sampled once per second. Raw values are compared to their EWMA, with full precision and
+ * quantized to multiples of 1/1024 as delivered by many sensors. Compression ratios are printed by {@link #main(String[])}.
+ * @author Oliver Loeffler
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GorillaCodecBenchmark {
+
+    static final int SIZE = 1 << 20;
+
+    public enum Series { RAW, SMOOTHED, RAW_QUANTIZED, SMOOTHED_QUANTIZED }
+
+    @Param({"RAW", "SMOOTHED", "RAW_QUANTIZED", "SMOOTHED_QUANTIZED"})
+    public Series series;
+
+    private long[] timestamps;
+
+    private double[] values;
+
+    private ByteBuffer buffer;
+
+    private ByteBuffer encoded;
+
+    private double[] decoded;
+
+    @Setup
+    public void setup() {
+	timestamps = timestamps(SIZE);
+	values = values(series, SIZE);
+	buffer = ByteBuffer.allocateDirect(SIZE * 20);
+	encoded = ByteBuffer.allocateDirect(SIZE * 20);
+	GorillaEncoder encoder = GorillaEncoder.forSamples(encoded);
+	encoder.encode(timestamps, values);
+	encoder.finish();
+	encoded.flip();
+	decoded = new double[SIZE];
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SIZE)
+    public long encode() {
+	buffer.clear();
+	GorillaEncoder encoder = GorillaEncoder.forSamples(buffer);
+	encoder.encode(timestamps, values);
+	return encoder.finish();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SIZE)
+    public int decode() {
+	return GorillaDecoder.from(encoded.duplicate()).decode(decoded);
+    }
+
+    static long[] timestamps(int size) {
+	long[] timestamps = new long[size];
+	for (int i = 0; i < size; i++) {
+	    timestamps[i] = 1_500_000_000_000L + 1000L * i;
+	}
+	return timestamps;
+    }
+
+    static double[] values(Series series, int size) {
+	Random random = new Random(42);
+	double[] offsets = { 0.0, 0.5, -0.1, 0.2 };
+	double[] values = new double[size];
+	for (int i = 0; i < size; i++) {
+	    values[i] = random.nextDouble() + offsets[(i / 200) % offsets.length];
+	    if (series == Series.RAW_QUANTIZED || series == Series.SMOOTHED_QUANTIZED) {
+		values[i] = Math.round(values[i] * 1024) / 1024.0;
+	    }
+	}
+	if (series == Series.SMOOTHED || series == Series.SMOOTHED_QUANTIZED) {
+	    DoubleEwma.buildWith(0.2, values[0]).applyTo(values, values);
+	}
+	return values;
+    }
+
+    /**
+     * Prints the compression ratio (8 bytes per value, 16 bytes per sample with timestamp) for all series.
+     * @param args not used
+     */
+    public static void main(String[] args) {
+	long[] timestamps = timestamps(SIZE);
+	ByteBuffer buffer = ByteBuffer.allocate(SIZE * 20);
+	System.out.println("Series\tbits/value\tratio (values)\tbits/sample\tratio (samples)");
+	for (Series series : Series.values()) {
+	    double[] values = values(series, SIZE);
+	    buffer.clear();
+	    GorillaEncoder onlyValues = GorillaEncoder.forValues(buffer);
+	    onlyValues.encode(values);
+	    long valueBytes = onlyValues.finish();
+	    buffer.clear();
+	    GorillaEncoder samples = GorillaEncoder.forSamples(buffer);
+	    samples.encode(timestamps, values);
+	    long sampleBytes = samples.finish();
+	    System.out.println(String.format("%s\t%.2f\t%.2f\t%.2f\t%.2f", series,
+		    valueBytes * 8.0 / SIZE, SIZE * 8.0 / valueBytes,
+		    sampleBytes * 8.0 / SIZE, SIZE * 16.0 / sampleBytes));
+	}
+    }
+
+}
@@ -0,0 +1,67 @@
+package net.raumzeitfalle.timeseries;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Time to find the optimal lambda for a batch of series, sequentially and in parallel.
+ * @author Oliver Loeffler
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LambdaOptimizerBenchmark {
+
+    @Param({"1000"})
+    public int series;
+
+    @Param({"10000"})
+    public int length;
+
+    private double[][] values;
+
+    private final LambdaOptimizer optimizer = LambdaOptimizer.get();
+
+    @Setup
+    public void setup() {
+	Random random = new Random(42);
+	values = new double[series][length];
+	for (double[] s : values) {
+	    double level = 0.0;
+	    for (int i = 0; i < length; i++) {
+		level += random.nextGaussian();
+		s[i] = level + random.nextGaussian();
+	    }
+	}
+    }
+
+    @Benchmark
+    public double[] sequential() {
+	double[] lambdas = new double[series];
+	for (int i = 0; i < series; i++) {
+	    lambdas[i] = optimizer.optimize(values[i]);
+	}
+	return lambdas;
+    }
+
+    @Benchmark
+    public double[] parallel() {
+	return optimizer.optimize(values);
+    }
+}
@@ -20,6 +20,7 @@
 package net.raumzeitfalle.operators;
 
 import java.util.function.BinaryOperator;
+import java.util.function.DoubleBinaryOperator;
 
 /**
  * Implementation of an exponentially weighted moving average (EWMA) according to NIST proposal.
@@ -27,9 +28,9 @@ import java.util.function.BinaryOperator;
  * @author Oliver Löffler
  *
  */
-public class BinaryEwma implements BinaryOperator<Double>{
+public class BinaryEwma implements BinaryOperator<Double>, DoubleBinaryOperator {
 
-    private final double lambda;
+    private final DoubleBinaryOperator function;
 
     /**
      * @return an EWMA function with default lambda of 0.2.
@@ -47,19 +48,17 @@ public class BinaryEwma implements BinaryOperator<Double>{
     }
 
     private BinaryEwma(double lambda){
-	throwExceptionWhenLambdaIsInvalid(lambda);
-	this.lambda = lambda;
+	this.function = DoubleEwma.withLambda(lambda);
     }
 
     @Override
     public Double apply(Double t, Double u) {
-	return Double.valueOf(lambda * t.doubleValue() + (1-lambda) * u.doubleValue());
+	return Double.valueOf(applyAsDouble(t.doubleValue(), u.doubleValue()));
     }
 
-    private void throwExceptionWhenLambdaIsInvalid(final double lambda) {
-	if (Double.isNaN(lambda) || Double.isInfinite(lambda) || lambda <= 0 || lambda > 1) {
-	    throw new IllegalArgumentException("The constant lambda must be greater 0 and less than or eqal to 1. Given was a lambda of " + lambda +".");
-	}
+    @Override
+    public double applyAsDouble(double t, double u) {
+	return function.applyAsDouble(t, u);
     }
 
 }
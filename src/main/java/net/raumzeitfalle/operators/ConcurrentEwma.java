@@ -0,0 +1,127 @@
+/*
+ * 
+ * FunWithLambdas: EWMA
+ *
+ * Copyright (C) 2016 Oliver Löffler
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package net.raumzeitfalle.operators;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * Thread safe, lock-free implementation of an exponentially weighted moving average (EWMA).<br>
+ * <br>
+ * The most recent EWMA is kept as raw long bits in an {@link AtomicLong}, each value is applied using a compare-and-set loop.
+ * Thus no update gets lost when several threads feed the same series. Values of different threads are applied in the order in which their updates succeed.
+ * @see StripedConcurrentEwma for a variant suitable for high contention
+ * @see <a href="http://www.itl.nist.gov/div898/handbook/pmc/section3/pmc324.htm">NIST Handbook of Engineering Statistics</a>
+ * @author Oliver Löffler
+ *
+ */
+public class ConcurrentEwma implements DoubleUnaryOperator {
+
+    private final double lambda;
+
+    private final double initial;
+
+    private final AtomicLong previous;
+
+    private ConcurrentEwma(double lambda, double initial) {
+	DoubleEwma.throwExceptionWhenLambdaIsInvalid(lambda);
+	this.lambda = lambda;
+	this.initial = initial;
+	this.previous = new AtomicLong(Double.doubleToRawLongBits(initial));
+    }
+
+    /**
+     * Creates a thread safe EWMA function with an EWMA0 of 0.0.
+     * @param lambda denotes how strong the past value (n-1) is weighted compared to the preset value (n).
+     * @return {@link ConcurrentEwma}
+     */
+    public static ConcurrentEwma withLambda(double lambda) {
+	return new ConcurrentEwma(lambda, 0.0);
+    }
+
+    /**
+     * Creates a thread safe EWMA function with an EWMA0 denoted by given double parameter initial.
+     * @param lambda denotes how strong the past value (n-1) is weighted compared to the preset value (n).
+     * @param initial EWMA0 value used for initialization
+     * @return {@link ConcurrentEwma}
+     */
+    public static ConcurrentEwma buildWith(double lambda, double initial) {
+	return new ConcurrentEwma(lambda, initial);
+    }
+
+    /**
+     * Applies the value atomically.
+     * @param current the present value (n)
+     * @return EWMA at (n)
+     */
+    @Override
+    public double applyAsDouble(double current) {
+	long expected;
+	double next;
+	do {
+	    expected = previous.get();
+	    next = lambda * current + (1 - lambda) * Double.longBitsToDouble(expected);
+	} while (!previous.compareAndSet(expected, Double.doubleToRawLongBits(next)));
+	return next;
+    }
+
+    /**
+     * Applies the affine map EWMA_out = scale * EWMA_in + offset atomically, which is how a sequence of values is folded in at once.
+     * @param scale (1-lambda)^k for a sequence of k values
+     * @param offset EWMA of the sequence when starting from zero
+     * @return the new EWMA
+     */
+    double applyAffine(double scale, double offset) {
+	long expected;
+	double next;
+	do {
+	    expected = previous.get();
+	    next = scale * Double.longBitsToDouble(expected) + offset;
+	} while (!previous.compareAndSet(expected, Double.doubleToRawLongBits(next)));
+	return next;
+    }
+
+    /**
+     * @return the most recent EWMA value, which is EWMA0 as long as no value was processed.
+     */
+    public double get() {
+	return Double.longBitsToDouble(previous.get());
+    }
+
+    /**
+     * @return the first value which was used to initialize the EWMA calculation.
+     */
+    public double getEWMA0() {
+	return this.initial;
+    }
+
+    /**
+     * @return the lambda denotes how strong the past value (n-1) is weighted compared to the preset value (n).
+     */
+    public double getLambda() {
+	return this.lambda;
+    }
+
+    @Override
+    public String toString() {
+	return new StringBuilder("EWMA_n = " + lambda + "n + " + (1 - lambda) +"(n-1) with EWMA_0 = " + initial + " and (n-1) = " + get()).toString();
+    }
+
+}
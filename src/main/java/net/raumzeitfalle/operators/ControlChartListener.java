@@ -0,0 +1,41 @@
+/*
+ * 
+ * FunWithLambdas: EWMA
+ *
+ * Copyright (C) 2016 Oliver Löffler
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package net.raumzeitfalle.operators;
+
+/**
+ * Receives out-of-control events of EWMA control charts.
+ * @author Oliver Löffler
+ *
+ */
+@FunctionalInterface
+public interface ControlChartListener {
+
+    /**
+     * Called for every sample after which the EWMA of a series is outside of the control limits, not only when it leaves them.
+     * Hence a listener interested in transitions only has to remember whether the previous sample was out of control.
+     * @param series key of the series, 0 for single series charts
+     * @param n number of the sample (starting at 1) which caused the alarm
+     * @param ewma EWMA at (n)
+     * @param lcl lower control limit at (n)
+     * @param ucl upper control limit at (n)
+     */
+    void outOfControl(long series, long n, double ewma, double lcl, double ucl);
+
+}
@@ -0,0 +1,342 @@
+/*
+ * 
+ * FunWithLambdas: EWMA
+ *
+ * Copyright (C) 2016 Oliver Löffler
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package net.raumzeitfalle.operators;
+
+import java.nio.DoubleBuffer;
+import java.util.Spliterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.DoubleConsumer;
+import java.util.function.DoubleUnaryOperator;
+import java.util.stream.DoubleStream;
+import java.util.stream.IntStream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Primitive implementation of an exponentially weighted moving average (EWMA) according to NIST proposal.<br>
+ * As {@link DoubleBinaryOperator} the function is stateless and calculates EWMA_n from the present value (n) and EWMA_(n-1).
+ * As {@link DoubleUnaryOperator} the function remembers the last result and uses it as EWMA_(n-1) for the next value.<br>
+ * <br>
+ * No boxing takes place, hence processing a sample does not allocate any objects.
+ * @see <a href="http://www.itl.nist.gov/div898/handbook/pmc/section3/pmc324.htm">NIST Handbook of Engineering Statistics</a>
+ * @author Oliver Löffler
+ *
+ */
+public class DoubleEwma implements DoubleUnaryOperator, DoubleBinaryOperator {
+
+    /**
+     * Arrays shorter than this are not split for parallel processing.
+     */
+    private static final int MIN_CHUNK_SIZE = 1 << 13;
+
+    private final double lambda;
+
+    private final double initial;
+
+    private double previous;
+
+    private long count;
+
+    /**
+     * @return an EWMA function with default lambda of 0.2 and EWMA0 of 0.0.
+     */
+    public static DoubleEwma get(){
+	return new DoubleEwma(0.2, 0.0);
+    }
+
+    /**
+     * Creates an EWMA function with an EWMA0 of 0.0.
+     * @param lambda denotes how strong the past value (n-1) is weighted compared to the preset value (n). A lambda of 1 gives all the weight to (n) whereas a lambda of 0.2 gives only 20% of the weight to (n) but 80% to (n-1).
+     * @return {@link DoubleEwma}
+     */
+    public static DoubleEwma withLambda(double lambda){
+	return new DoubleEwma(lambda, 0.0);
+    }
+
+    /**
+     * Creates an EWMA function with an EWMA0 denoted by given double parameter initial.
+     * @param lambda describes the depth of memory (1 basically ignores the past, values close to 0 weights the past significantly stronger than the present).
+     * @param initial EWMA0 value used for initialization, typical value is 0 or if known, the mean of all past values.
+     * @return {@link DoubleEwma}
+     */
+    public static DoubleEwma buildWith(double lambda, double initial){
+	return new DoubleEwma(lambda, initial);
+    }
+
+    /**
+     * Restores an EWMA function from a snapshot, continuing exactly where the snapshotted function stopped.
+     * @param snapshot a snapshot of a single EWMA function as created by {@link #snapshot()}
+     * @return {@link DoubleEwma}
+     */
+    public static DoubleEwma buildWith(EwmaSnapshot snapshot){
+	snapshot.throwExceptionWhenNotSingle();
+	DoubleEwma ewma = new DoubleEwma(snapshot.getLambda(0), snapshot.getEWMA0(0));
+	ewma.previous = snapshot.getEWMA(0);
+	ewma.count = snapshot.getCount(0);
+	return ewma;
+    }
+
+    private DoubleEwma(double lambda, double initial){
+	throwExceptionWhenLambdaIsInvalid(lambda);
+	this.lambda = lambda;
+	this.initial = initial;
+	this.previous = initial;
+    }
+
+    /**
+     * Stateless EWMA calculation.
+     * @param current the present value (n)
+     * @param previous EWMA at (n-1)
+     * @return EWMA at (n)
+     */
+    @Override
+    public double applyAsDouble(double current, double previous) {
+	return lambda * current + (1-lambda) * previous;
+    }
+
+    /**
+     * Stateful EWMA calculation, the result is remembered and used as EWMA_(n-1) for the next call.
+     * @param current the present value (n)
+     * @return EWMA at (n)
+     */
+    @Override
+    public double applyAsDouble(double current) {
+	this.count++;
+	return this.previous = applyAsDouble(current, this.previous);
+    }
+
+    /**
+     * Applies the stateful EWMA to all elements of the given array, writing the results to target.
+     * Source and target may be the same array.
+     * @param source values to be smoothed
+     * @param target array receiving the EWMA values, must be at least as long as source
+     * @return target
+     */
+    public double[] applyTo(double[] source, double[] target) {
+	this.previous = smooth(source, target, 0, source.length, this.previous);
+	this.count += source.length;
+	return target;
+    }
+
+    /**
+     * Applies the stateful EWMA to the remaining elements of source, writing the results to target.
+     * As with relative bulk operations of NIO buffers, the positions of both buffers advance by the number of processed values.
+     * @param source values to be smoothed, e.g. a view of a direct or memory mapped buffer
+     * @param target buffer receiving the EWMA values, must have at least as many elements remaining as source
+     * @return target
+     */
+    public DoubleBuffer applyTo(DoubleBuffer source, DoubleBuffer target) {
+	double ewma = this.previous;
+	this.count += source.remaining();
+	while (source.hasRemaining()) {
+	    ewma = lambda * source.get() + (1-lambda) * ewma;
+	    target.put(ewma);
+	}
+	this.previous = ewma;
+	return target;
+    }
+
+    /**
+     * Applies the stateful EWMA to all elements of the given array using the common {@link ForkJoinPool}, writing the results to target.
+     * Source and target may be the same array.<br>
+     * <br>
+     * EWMA_n = lambda * x_n + (1-lambda) * EWMA_(n-1) is an affine map of EWMA_(n-1), and affine maps compose associatively.
+     * Hence the array is split into chunks, each chunk is reduced in parallel to its affine map (scale, offset),
+     * the maps are composed sequentially to obtain the EWMA entering each chunk, and finally all chunks are smoothed in parallel.
+     * Results equal those of {@link #applyTo(double[], double[])} within floating point rounding.
+     * @param source values to be smoothed
+     * @param target array receiving the EWMA values, must be at least as long as source
+     * @return target
+     */
+    public double[] applyInParallel(double[] source, double[] target) {
+	int length = source.length;
+	int chunkSize = Math.max(MIN_CHUNK_SIZE, length / (ForkJoinPool.getCommonPoolParallelism() << 2) + 1);
+	int chunks = (length + chunkSize - 1) / chunkSize;
+	if (chunks < 2) {
+	    return applyTo(source, target);
+	}
+
+	double[] offsets = new double[chunks];
+	IntStream.range(0, chunks).parallel().forEach(c -> offsets[c] = reduce(source, c * chunkSize, Math.min(length, (c + 1) * chunkSize), 0.0));
+
+	double[] carries = new double[chunks];
+	double scale = Math.pow(1-lambda, chunkSize);
+	double carry = this.previous;
+	for (int c = 0; c < chunks - 1; c++) {
+	    carries[c] = carry;
+	    carry = scale * carry + offsets[c];
+	}
+	carries[chunks - 1] = carry;
+
+	IntStream.range(0, chunks).parallel().forEach(c -> carries[c] = smooth(source, target, c * chunkSize, Math.min(length, (c + 1) * chunkSize), carries[c]));
+	this.previous = carries[chunks - 1];
+	this.count += length;
+	return target;
+    }
+
+    private double smooth(double[] source, double[] target, int from, int to, double ewma) {
+	for (int i = from; i < to; i++) {
+	    ewma = lambda * source[i] + (1-lambda) * ewma;
+	    target[i] = ewma;
+	}
+	return ewma;
+    }
+
+    private double reduce(double[] source, int from, int to, double ewma) {
+	for (int i = from; i < to; i++) {
+	    ewma = lambda * source[i] + (1-lambda) * ewma;
+	}
+	return ewma;
+    }
+
+    /**
+     * Applies the stateful EWMA lazily to the given {@link DoubleStream}. Each EWMA value is emitted as soon as its input value arrives,
+     * nothing is buffered, hence infinite streams are supported and memory consumption does not depend on the stream length.<br>
+     * <br>
+     * The given stream is consumed sequentially as the processing order of elements is of fundamental importance. The resulting stream does not split
+     * and therefore stays correct even when made parallel.
+     * @param values stream of primitive doubles
+     * @return {@link DoubleStream} of EWMA values
+     */
+    public DoubleStream applyTo(DoubleStream values) {
+	return applyTo(values, EwmaMetrics.noop());
+    }
+
+    /**
+     * Applies the stateful EWMA lazily to the given {@link DoubleStream} as {@link #applyTo(DoubleStream)} does, recording each update.
+     * All updates are published to the metrics once the stream is exhausted or closed.
+     * @param values stream of primitive doubles
+     * @param metrics receives the measurements, {@link EwmaMetrics#noop()} disables the instrumentation
+     * @return {@link DoubleStream} of EWMA values
+     */
+    public DoubleStream applyTo(DoubleStream values, EwmaMetrics metrics) {
+	EwmaMetrics.Recorder recorder = metrics.recorder();
+	return StreamSupport.doubleStream(new EwmaSpliterator(values.sequential().spliterator(), this, recorder), false)
+		.onClose(values::close)
+		.onClose(recorder::flush);
+    }
+
+    /**
+     * @return the first value which was used to initialize the EWMA calculation.
+     */
+    public double getEWMA0() {
+	return this.initial;
+    }
+
+    /**
+     * @return the lambda denotes how strong the past value (n-1) is weighted compared to the preset value (n).
+     */
+    public double getLambda() {
+	return this.lambda;
+    }
+
+    /**
+     * @return the most recent EWMA value, which is EWMA0 as long as no value was processed.
+     */
+    public double getPrevious() {
+	return this.previous;
+    }
+
+    /**
+     * @return number of values processed by the stateful EWMA calculation.
+     */
+    public long getCount() {
+	return this.count;
+    }
+
+    /**
+     * @return the state of this function which can be written to disk and restored using {@link #buildWith(EwmaSnapshot)}.
+     */
+    public EwmaSnapshot snapshot() {
+	return EwmaSnapshot.of(lambda, initial, previous, count, Double.NaN);
+    }
+
+    /**
+     * Non-splitting {@link Spliterator} applying the EWMA to each element of its source when the element is requested.
+     */
+    private static final class EwmaSpliterator implements Spliterator.OfDouble, DoubleConsumer {
+
+	private final Spliterator.OfDouble source;
+
+	private final DoubleEwma function;
+
+	private final EwmaMetrics.Recorder recorder;
+
+	private DoubleConsumer action;
+
+	EwmaSpliterator(Spliterator.OfDouble source, DoubleEwma function, EwmaMetrics.Recorder recorder) {
+	    this.source = source;
+	    this.function = function;
+	    this.recorder = recorder;
+	}
+
+	@Override
+	public void accept(double value) {
+	    long start = recorder.start();
+	    double ewma = function.applyAsDouble(value);
+	    recorder.stop(start);
+	    action.accept(ewma);
+	}
+
+	@Override
+	public boolean tryAdvance(DoubleConsumer action) {
+	    this.action = action;
+	    if (source.tryAdvance((DoubleConsumer) this)) {
+		return true;
+	    }
+	    recorder.flush();
+	    return false;
+	}
+
+	@Override
+	public void forEachRemaining(DoubleConsumer action) {
+	    this.action = action;
+	    source.forEachRemaining((DoubleConsumer) this);
+	    recorder.flush();
+	}
+
+	@Override
+	public Spliterator.OfDouble trySplit() {
+	    return null;
+	}
+
+	@Override
+	public long estimateSize() {
+	    return source.estimateSize();
+	}
+
+	@Override
+	public int characteristics() {
+	    return source.characteristics() & (ORDERED | SIZED);
+	}
+    }
+
+    static void throwExceptionWhenLambdaIsInvalid(final double lambda) {
+	if (Double.isNaN(lambda) || Double.isInfinite(lambda) || lambda <= 0 || lambda > 1) {
+	    throw new IllegalArgumentException("The constant lambda must be greater 0 and less than or eqal to 1. Given was a lambda of " + lambda +".");
+	}
+    }
+
+    @Override
+    public String toString() {
+	return new StringBuilder("EWMA_n = " + lambda + "n + " + (1 - lambda) +"(n-1) with EWMA_0 = " + initial + " and (n-1) = " + previous).toString();
+    }
+
+}
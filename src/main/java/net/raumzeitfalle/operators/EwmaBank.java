@@ -0,0 +1,203 @@
+/*
+ * 
+ * FunWithLambdas: EWMA
+ *
+ * Copyright (C) 2016 Oliver Löffler
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package net.raumzeitfalle.operators;
+
+import java.util.Arrays;
+
+/**
+ * A bank of exponentially weighted moving averages (EWMA) with different lambdas, all fed with the same values.<br>
+ * <br>
+ * Smoothing a series for many lambdas (e.g. when tuning lambda) takes one pass over the series instead of one pass per lambda.
+ * For each value the inner loop runs over contiguous arrays of lambdas and states, which the JIT compiler can vectorize.<br>
+ * <br>
+ * Results are written into one contiguous matrix, either sample-major (row i holds the EWMA of all lambdas for value i)
+ * or lambda-major (row k holds the smoothed series for lambda k).
+ * @see <a href="http://www.itl.nist.gov/div898/handbook/pmc/section3/pmc324.htm">NIST Handbook of Engineering Statistics</a>
+ * @author Oliver Löffler
+ *
+ */
+public class EwmaBank {
+
+    private static final int BLOCK = 256;
+
+    private final double[] lambdas;
+
+    private final double[] complements;
+
+    private final double[] previous;
+
+    private final double initial;
+
+    private EwmaBank(double[] lambdas, double initial) {
+	if (lambdas.length == 0) {
+	    throw new IllegalArgumentException("At least one lambda is required.");
+	}
+	this.lambdas = lambdas.clone();
+	this.complements = new double[lambdas.length];
+	for (int k = 0; k < lambdas.length; k++) {
+	    DoubleEwma.throwExceptionWhenLambdaIsInvalid(lambdas[k]);
+	    complements[k] = 1 - lambdas[k];
+	}
+	this.initial = initial;
+	this.previous = new double[lambdas.length];
+	Arrays.fill(previous, initial);
+    }
+
+    /**
+     * Creates an EWMA bank with an EWMA0 of 0.0 for all lambdas.
+     * @param lambdas each lambda denotes how strong the past value (n-1) is weighted compared to the preset value (n).
+     * @return {@link EwmaBank}
+     */
+    public static EwmaBank withLambdas(double... lambdas) {
+	return new EwmaBank(lambdas, 0.0);
+    }
+
+    /**
+     * Creates an EWMA bank with the given EWMA0 for all lambdas.
+     * @param lambdas each lambda denotes how strong the past value (n-1) is weighted compared to the preset value (n).
+     * @param initial EWMA0 value used for initialization
+     * @return {@link EwmaBank}
+     */
+    public static EwmaBank buildWith(double[] lambdas, double initial) {
+	return new EwmaBank(lambdas, initial);
+    }
+
+    /**
+     * Applies one value to all EWMAs.
+     * @param value the present value (n)
+     * @param target receives EWMA at (n) for all lambdas, starting at offset
+     * @param offset first index in target
+     */
+    public void update(double value, double[] target, int offset) {
+	final double[] l = lambdas;
+	final double[] c = complements;
+	final double[] p = previous;
+	for (int k = 0; k < l.length; k++) {
+	    p[k] = l[k] * value + c[k] * p[k];
+	    target[offset + k] = p[k];
+	}
+    }
+
+    /**
+     * Smoothes source with all lambdas in one pass.
+     * @param source values to be smoothed
+     * @return sample-major matrix, element [i * lambdas + k] is EWMA at (i) for lambda k
+     * @throws IllegalArgumentException if source.length * lambdas elements do not fit into one array
+     */
+    public double[] applyTo(double[] source) {
+	return applyTo(source, new double[matrixSize(source.length)]);
+    }
+
+    /**
+     * Smoothes source with all lambdas in one pass.
+     * @param source values to be smoothed
+     * @param target sample-major matrix of at least source.length * lambdas elements, element [i * lambdas + k] receives EWMA at (i) for lambda k
+     * @return target
+     * @throws IllegalArgumentException if target is too small or source.length * lambdas elements do not fit into one array
+     */
+    public double[] applyTo(double[] source, double[] target) {
+	checkTarget(matrixSize(source.length), target);
+	int m = lambdas.length;
+	for (int i = 0; i < source.length; i++) {
+	    update(source[i], target, i * m);
+	}
+	return target;
+    }
+
+    /**
+     * Smoothes source with all lambdas in one pass. Blocks of values are smoothed sample-major into a small buffer first and then transposed.
+     * @param source values to be smoothed
+     * @param target lambda-major matrix of at least source.length * lambdas elements, element [k * source.length + i] receives EWMA at (i) for lambda k
+     * @return target
+     * @throws IllegalArgumentException if target is too small or source.length * lambdas elements do not fit into one array
+     */
+    public double[] applyToColumns(double[] source, double[] target) {
+	checkTarget(matrixSize(source.length), target);
+	int m = lambdas.length;
+	int n = source.length;
+	double[] block = new double[BLOCK * m];
+	for (int from = 0; from < n; from += BLOCK) {
+	    int length = Math.min(BLOCK, n - from);
+	    for (int i = 0; i < length; i++) {
+		update(source[from + i], block, i * m);
+	    }
+	    for (int k = 0; k < m; k++) {
+		int row = k * n + from;
+		for (int i = 0; i < length; i++) {
+		    target[row + i] = block[i * m + k];
+		}
+	    }
+	}
+	return target;
+    }
+
+    /**
+     * All indices into a matrix are below its size, so once the size fits into an int none of them can overflow.
+     */
+    private int matrixSize(int values) {
+	long size = (long) values * lambdas.length;
+	if (size > Integer.MAX_VALUE) {
+	    throw new IllegalArgumentException("EWMAs of " + values + " values for " + lambdas.length
+		    + " lambdas do not fit into one array, split the source into smaller chunks.");
+	}
+	return (int) size;
+    }
+
+    private static void checkTarget(int size, double[] target) {
+	if (target.length < size) {
+	    throw new IllegalArgumentException("Target must hold at least " + size + " elements. Given was a target of " + target.length + " elements.");
+	}
+    }
+
+    /**
+     * @param k index of the lambda
+     * @return the most recent EWMA for lambda k, which is EWMA0 as long as no value was processed
+     */
+    public double getPrevious(int k) {
+	return previous[k];
+    }
+
+    /**
+     * @return a copy of the lambdas of this bank
+     */
+    public double[] getLambdas() {
+	return lambdas.clone();
+    }
+
+    /**
+     * @return number of lambdas
+     */
+    public int size() {
+	return lambdas.length;
+    }
+
+    /**
+     * @return the first value which was used to initialize the EWMA calculation.
+     */
+    public double getEWMA0() {
+	return initial;
+    }
+
+    @Override
+    public String toString() {
+	return new StringBuilder("EWMA bank with " + lambdas.length + " lambdas " + Arrays.toString(lambdas) + " and EWMA_0 of " + initial).toString();
+    }
+
+}
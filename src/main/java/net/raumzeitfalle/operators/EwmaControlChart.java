@@ -0,0 +1,224 @@
+/*
+ * 
+ * FunWithLambdas: EWMA
+ *
+ * Copyright (C) 2016 Oliver Löffler
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package net.raumzeitfalle.operators;
+
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * Streaming EWMA control chart according to NIST.<br>
+ * <br>
+ * With target (center line) mu, process standard deviation s and limit width k the control limits at sample n are<br>
+ * UCL/LCL = mu &plusmn; k * s * sqrt( lambda / (2 - lambda) * (1 - (1 - lambda)^(2n)) ).<br>
+ * The term (1 - lambda)^(2n) is updated by one multiplication per sample. The standard deviation is either given or estimated from all values seen so far (Welford's algorithm).
+ * Memory is constant, EWMA, limits and alarms are determined in a single pass.
+ * @see <a href="http://www.itl.nist.gov/div898/handbook/pmc/section3/pmc324.htm">NIST Handbook of Engineering Statistics</a>
+ * @author Oliver Löffler
+ *
+ */
+public class EwmaControlChart implements DoubleUnaryOperator {
+
+    private final double lambda;
+
+    private final double target;
+
+    private final double sigma;
+
+    private final double width;
+
+    private final double squaredComplement;
+
+    private final ControlChartListener listener;
+
+    private double ewma;
+
+    private double decay = 1.0;
+
+    private long count;
+
+    private double mean;
+
+    private double m2;
+
+    private double lcl = Double.NaN;
+
+    private double ucl = Double.NaN;
+
+    private boolean outOfControl;
+
+    private EwmaControlChart(double lambda, double target, double sigma, double width, ControlChartListener listener) {
+	DoubleEwma.throwExceptionWhenLambdaIsInvalid(lambda);
+	if (!(width > 0)) {
+	    throw new IllegalArgumentException("The width of control limits must be greater 0. Given was a width of " + width + ".");
+	}
+	this.lambda = lambda;
+	this.target = target;
+	this.sigma = sigma;
+	this.width = width;
+	this.squaredComplement = (1 - lambda) * (1 - lambda);
+	this.listener = listener;
+	this.ewma = target;
+    }
+
+    /**
+     * Creates a control chart with known process standard deviation.
+     * @param lambda denotes how strong the past value (n-1) is weighted compared to the preset value (n).
+     * @param target center line, also used as EWMA0
+     * @param sigma process standard deviation
+     * @param width k, typically 3
+     * @param listener receives alarms
+     * @return {@link EwmaControlChart}
+     */
+    public static EwmaControlChart buildWith(double lambda, double target, double sigma, double width, ControlChartListener listener) {
+	return new EwmaControlChart(lambda, target, sigma, width, listener);
+    }
+
+    /**
+     * Creates a control chart estimating the process standard deviation from all values processed so far.
+     * No limits are available before the second value.
+     * @param lambda denotes how strong the past value (n-1) is weighted compared to the preset value (n).
+     * @param target center line, also used as EWMA0
+     * @param width k, typically 3
+     * @param listener receives alarms
+     * @return {@link EwmaControlChart}
+     */
+    public static EwmaControlChart withEstimatedSigma(double lambda, double target, double width, ControlChartListener listener) {
+	return new EwmaControlChart(lambda, target, Double.NaN, width, listener);
+    }
+
+    /**
+     * Restores a control chart from a snapshot created by {@link #snapshot()}. The standard deviation is taken from the snapshot variance,
+     * hence a chart which estimated its sigma continues with the estimate at the time of the snapshot.
+     * @param snapshot snapshot of a single control chart containing the variance
+     * @param width k, typically 3
+     * @param listener receives alarms
+     * @return {@link EwmaControlChart}
+     */
+    public static EwmaControlChart buildWith(EwmaSnapshot snapshot, double width, ControlChartListener listener) {
+	snapshot.throwExceptionWhenNotSingle();
+	if (Double.isNaN(snapshot.getVariance(0))) {
+	    throw new IllegalArgumentException("The snapshot does not contain a variance, a sigma is required to restore a control chart.");
+	}
+	EwmaControlChart chart = new EwmaControlChart(snapshot.getLambda(0), snapshot.getEWMA0(0), Math.sqrt(snapshot.getVariance(0)), width, listener);
+	chart.ewma = snapshot.getEWMA(0);
+	chart.count = snapshot.getCount(0);
+	chart.decay = Math.pow(chart.squaredComplement, chart.count);
+	if (chart.count > 0) {
+	    chart.updateLimits();
+	}
+	return chart;
+    }
+
+    /**
+     * Applies the present value, updates the control limits and reports an alarm if the EWMA is outside of the limits.
+     * @param current the present value (n)
+     * @return EWMA at (n)
+     */
+    @Override
+    public double applyAsDouble(double current) {
+	ewma = lambda * current + (1 - lambda) * ewma;
+	count++;
+	double delta = current - mean;
+	mean += delta / count;
+	m2 += delta * (current - mean);
+	decay *= squaredComplement;
+	updateLimits();
+	if (outOfControl && listener != null) {
+	    listener.outOfControl(0L, count, ewma, lcl, ucl);
+	}
+	return ewma;
+    }
+
+    private void updateLimits() {
+	double halfWidth = width * getSigma() * Math.sqrt(lambda / (2 - lambda) * (1 - decay));
+	lcl = target - halfWidth;
+	ucl = target + halfWidth;
+	outOfControl = ewma > ucl || ewma < lcl;
+    }
+
+    /**
+     * @return EWMA at (n)
+     */
+    public double getEWMA() {
+	return ewma;
+    }
+
+    /**
+     * @return lower control limit at (n), NaN if not yet available
+     */
+    public double getLCL() {
+	return lcl;
+    }
+
+    /**
+     * @return upper control limit at (n), NaN if not yet available
+     */
+    public double getUCL() {
+	return ucl;
+    }
+
+    /**
+     * @return true if EWMA at (n) is outside of the control limits
+     */
+    public boolean isOutOfControl() {
+	return outOfControl;
+    }
+
+    /**
+     * @return the given or estimated process standard deviation
+     */
+    public double getSigma() {
+	return Double.isNaN(sigma) && count > 1 ? Math.sqrt(m2 / (count - 1)) : sigma;
+    }
+
+    /**
+     * @return number of values processed
+     */
+    public long getCount() {
+	return count;
+    }
+
+    /**
+     * @return the lambda denotes how strong the past value (n-1) is weighted compared to the preset value (n).
+     */
+    public double getLambda() {
+	return lambda;
+    }
+
+    /**
+     * @return the center line, which is also EWMA0
+     */
+    public double getTarget() {
+	return target;
+    }
+
+    /**
+     * @return the state of this chart, the variance is the square of {@link #getSigma()}, see {@link #buildWith(EwmaSnapshot, double, ControlChartListener)}.
+     */
+    public EwmaSnapshot snapshot() {
+	double s = getSigma();
+	return EwmaSnapshot.of(lambda, target, ewma, count, s * s);
+    }
+
+    @Override
+    public String toString() {
+	return new StringBuilder("EWMA control chart with lambda of " + lambda + ", target of " + target + " and limits of " + width + " sigma: LCL = " + lcl + ", EWMA = " + ewma + ", UCL = " + ucl).toString();
+    }
+
+}
@@ -0,0 +1,105 @@
+/*
+ * 
+ * FunWithLambdas: EWMA
+ *
+ * Copyright (C) 2016 Oliver Löffler
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package net.raumzeitfalle.operators;
+
+/**
+ * Advances many independent EWMAs by one step, e.g. when a scan delivers one value for each of thousands of series at the same time.<br>
+ * <br>
+ * The state is kept as struct of arrays: element i of prev, lambdas and current belong to series i.
+ * Instead of one object and one virtual call per series, all series are updated in a single loop without branches over contiguous arrays,
+ * which the JIT compiler unrolls and vectorizes (C2 SuperWord). Results are bit for bit equal to applying {@link DoubleEwma} to each series.<br>
+ * <br>
+ * Validation is done once per call, hence the kernel does not check lambdas. Use {@link #validate(double[])} when lambdas are not trusted.
+ * @see <a href="http://www.itl.nist.gov/div898/handbook/pmc/section3/pmc324.htm">NIST Handbook of Engineering Statistics</a>
+ * @author Oliver Löffler
+ *
+ */
+public final class EwmaKernel {
+
+    private EwmaKernel() {
+	/* static kernels only */
+    }
+
+    /**
+     * Advances all series by one step, prev[i] = lambdas[i] * current[i] + (1 - lambdas[i]) * prev[i].
+     * @param prev EWMA at (n-1) of each series, receives EWMA at (n)
+     * @param lambdas lambda of each series, must be as long as prev
+     * @param current the present value (n) of each series, must be as long as prev
+     */
+    public static void update(double[] prev, double[] lambdas, double[] current) {
+	update(prev, lambdas, current, 0, prev.length);
+    }
+
+    /**
+     * Advances the series from (inclusive) to (exclusive) by one step, e.g. to split a scan among threads.
+     * @param prev EWMA at (n-1) of each series, receives EWMA at (n)
+     * @param lambdas lambda of each series
+     * @param current the present value (n) of each series
+     * @param from first series to update
+     * @param to series after the last one to update
+     */
+    public static void update(double[] prev, double[] lambdas, double[] current, int from, int to) {
+	throwExceptionWhenRangeIsInvalid(prev, lambdas, current, from, to);
+	for (int i = from; i < to; i++) {
+	    prev[i] = lambdas[i] * current[i] + (1 - lambdas[i]) * prev[i];
+	}
+    }
+
+    /**
+     * Advances all series sharing the same lambda by one step, prev[i] = lambda * current[i] + (1 - lambda) * prev[i].
+     * @param prev EWMA at (n-1) of each series, receives EWMA at (n)
+     * @param lambda denotes how strong the past value (n-1) is weighted compared to the preset value (n).
+     * @param current the present value (n) of each series, must be as long as prev
+     */
+    public static void update(double[] prev, double lambda, double[] current) {
+	DoubleEwma.throwExceptionWhenLambdaIsInvalid(lambda);
+	if (current.length != prev.length) {
+	    throw new IllegalArgumentException("Number of values (" + current.length + ") and series (" + prev.length + ") must be equal.");
+	}
+	final double complement = 1 - lambda;
+	for (int i = 0; i < prev.length; i++) {
+	    prev[i] = lambda * current[i] + complement * prev[i];
+	}
+    }
+
+    /**
+     * Checks that all lambdas are valid.
+     * @param lambdas lambda of each series
+     * @return lambdas
+     * @throws IllegalArgumentException if any lambda is not in the range of 0 to 1
+     */
+    public static double[] validate(double[] lambdas) {
+	for (double lambda : lambdas) {
+	    DoubleEwma.throwExceptionWhenLambdaIsInvalid(lambda);
+	}
+	return lambdas;
+    }
+
+    private static void throwExceptionWhenRangeIsInvalid(double[] prev, double[] lambdas, double[] current, int from, int to) {
+	if (lambdas.length != prev.length || current.length != prev.length) {
+	    throw new IllegalArgumentException("Number of lambdas (" + lambdas.length + ") and values (" + current.length
+		    + ") must be equal to the number of series (" + prev.length + ").");
+	}
+	if (from < 0 || from > to || to > prev.length) {
+	    throw new IllegalArgumentException("Range must be within 0 and " + prev.length + ". Given was " + from + " to " + to + ".");
+	}
+    }
+
+}
@@ -0,0 +1,400 @@
+/*
+ * 
+ * FunWithLambdas: EWMA
+ *
+ * Copyright (C) 2016 Oliver Löffler
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package net.raumzeitfalle.operators;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleUnaryOperator;
+import java.util.function.LongSupplier;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Optional instrumentation of EWMA operators: update rate, latency distribution, staleness of series and number of alarms.<br>
+ * <br>
+ * Operators record their updates using a {@link Recorder} each, which is not thread safe and publishes into the shared metrics
+ * ({@link LongAdder} counters and a lock-free latency histogram) only every {@value #SAMPLE_INTERVAL} updates. Only these updates are timed,
+ * hence the overhead per update is a counter increment and a branch. Metrics are exported via JMX using {@link #register()}.<br>
+ * <br>
+ * The metrics returned by {@link #noop()} record nothing: {@link #instrument(DoubleUnaryOperator)} and {@link #countAlarms(ControlChartListener)}
+ * return their argument and the methods of its recorder are empty, hence the JIT compiler eliminates them completely.
+ * @author Oliver Löffler
+ *
+ */
+public final class EwmaMetrics implements EwmaMetricsMXBean {
+
+    /**
+     * Number of updates after which a recorder publishes its count and times an update.
+     */
+    public static final int SAMPLE_INTERVAL = 64;
+
+    private static final int SAMPLE_MASK = SAMPLE_INTERVAL - 1;
+
+    private static final EwmaMetrics NOOP = new EwmaMetrics(null);
+
+    private static final Recorder NOOP_RECORDER = new Recorder();
+
+    private final String name;
+
+    private final LongAdder updates = new LongAdder();
+
+    private final LongAdder alarms = new LongAdder();
+
+    private final LatencyHistogram latencies = new LatencyHistogram();
+
+    private final CopyOnWriteArrayList<LongSupplier> staleness = new CopyOnWriteArrayList<>();
+
+    private volatile long since = System.nanoTime();
+
+    private ObjectName objectName;
+
+    private EwmaMetrics(String name) {
+	this.name = name;
+    }
+
+    /**
+     * @return metrics recording nothing, the instrumentation is eliminated by the JIT compiler
+     */
+    public static EwmaMetrics noop() {
+	return NOOP;
+    }
+
+    /**
+     * @param name identifies the metrics in JMX
+     * @return metrics recording updates, latencies, staleness and alarms
+     */
+    public static EwmaMetrics create(String name) {
+	if (name == null || name.isEmpty()) {
+	    throw new IllegalArgumentException("A name is required.");
+	}
+	return new EwmaMetrics(name);
+    }
+
+    /**
+     * @return true unless these are the {@link #noop()} metrics
+     */
+    public boolean isEnabled() {
+	return this != NOOP;
+    }
+
+    /**
+     * @return a new recorder for a single operator or thread
+     */
+    public Recorder recorder() {
+	return isEnabled() ? new SamplingRecorder(this) : NOOP_RECORDER;
+    }
+
+    /**
+     * @param operator a stateful operator such as {@link DoubleEwma}
+     * Updates are published every {@value #SAMPLE_INTERVAL} applications, use {@link DoubleEwma#applyTo(java.util.stream.DoubleStream, EwmaMetrics)} to publish all updates of a stream.
+     * @return an operator recording each application of the given operator, or operator itself for {@link #noop()} metrics
+     */
+    public DoubleUnaryOperator instrument(DoubleUnaryOperator operator) {
+	if (!isEnabled()) {
+	    return operator;
+	}
+	Recorder recorder = recorder();
+	return value -> {
+	    long start = recorder.start();
+	    double result = operator.applyAsDouble(value);
+	    recorder.stop(start);
+	    return result;
+	};
+    }
+
+    /**
+     * @param listener receives alarms of a control chart
+     * @return a listener counting alarms before passing them on, or listener itself for {@link #noop()} metrics
+     */
+    public ControlChartListener countAlarms(ControlChartListener listener) {
+	if (!isEnabled()) {
+	    return listener;
+	}
+	return (series, n, ewma, lcl, ucl) -> {
+	    alarms.increment();
+	    listener.outOfControl(series, n, ewma, lcl, ucl);
+	};
+    }
+
+    /**
+     * Adds a source of staleness, e.g. of an instrumented {@link MultiSeriesEwma}. The source is referenced until it is removed
+     * using {@link #untrackStaleness(LongSupplier)} or these metrics are discarded, adding a source twice has no effect.
+     * @param maxStalenessNanos returns the time since the least recently updated series was updated, -1 if unknown
+     */
+    public void trackStaleness(LongSupplier maxStalenessNanos) {
+	if (isEnabled()) {
+	    staleness.addIfAbsent(maxStalenessNanos);
+	}
+    }
+
+    /**
+     * Removes a source of staleness added by {@link #trackStaleness(LongSupplier)}.
+     * @param maxStalenessNanos the source to remove
+     */
+    public void untrackStaleness(LongSupplier maxStalenessNanos) {
+	staleness.remove(maxStalenessNanos);
+    }
+
+    /**
+     * Registers these metrics with the platform MBean server as net.raumzeitfalle.operators:type=EwmaMetrics,name=&lt;name&gt;.
+     * Nothing is registered for {@link #noop()} metrics.
+     */
+    public synchronized void register() {
+	if (!isEnabled() || objectName != null) {
+	    return;
+	}
+	try {
+	    ObjectName candidate = new ObjectName("net.raumzeitfalle.operators:type=EwmaMetrics,name=" + ObjectName.quote(name));
+	    ManagementFactory.getPlatformMBeanServer().registerMBean(this, candidate);
+	    objectName = candidate;
+	} catch (JMException e) {
+	    throw new IllegalStateException("Metrics " + name + " could not be registered.", e);
+	}
+    }
+
+    /**
+     * Removes these metrics from the platform MBean server.
+     */
+    public synchronized void unregister() {
+	if (objectName == null) {
+	    return;
+	}
+	MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+	try {
+	    server.unregisterMBean(objectName);
+	} catch (JMException e) {
+	    throw new IllegalStateException("Metrics " + name + " could not be unregistered.", e);
+	} finally {
+	    objectName = null;
+	}
+    }
+
+    /**
+     * @return the name under which these metrics are registered, null if not registered
+     */
+    public synchronized ObjectName getObjectName() {
+	return objectName;
+    }
+
+    @Override
+    public long getUpdates() {
+	return updates.sum();
+    }
+
+    @Override
+    public double getUpdatesPerSecond() {
+	return updates.sum() * 1E9 / Math.max(1L, System.nanoTime() - since);
+    }
+
+    @Override
+    public long getAlarms() {
+	return alarms.sum();
+    }
+
+    @Override
+    public long getLatencySamples() {
+	return latencies.count();
+    }
+
+    @Override
+    public long getLatencyP50Nanos() {
+	return latencies.percentile(0.5);
+    }
+
+    @Override
+    public long getLatencyP99Nanos() {
+	return latencies.percentile(0.99);
+    }
+
+    @Override
+    public long getLatencyP999Nanos() {
+	return latencies.percentile(0.999);
+    }
+
+    @Override
+    public long[] getLatencyHistogram() {
+	return latencies.snapshot();
+    }
+
+    @Override
+    public long getMaxStalenessNanos() {
+	long max = -1;
+	for (LongSupplier source : staleness) {
+	    max = Math.max(max, source.getAsLong());
+	}
+	return max;
+    }
+
+    @Override
+    public void reset() {
+	updates.reset();
+	alarms.reset();
+	latencies.reset();
+	since = System.nanoTime();
+    }
+
+    @Override
+    public String toString() {
+	return isEnabled()
+		? new StringBuilder("EWMA metrics " + name + ": " + getUpdates() + " updates, " + getAlarms() + " alarms, p99 latency of " + getLatencyP99Nanos() + " ns").toString()
+		: "No-op EWMA metrics";
+    }
+
+    /**
+     * Records the updates of one operator, instances are not thread safe. This implementation records nothing.
+     */
+    public static class Recorder {
+
+	Recorder() {
+	    /* created by EwmaMetrics only */
+	}
+
+	/**
+	 * Call before an update.
+	 * @return start time of a sampled update, 0 otherwise
+	 */
+	public long start() {
+	    return 0L;
+	}
+
+	/**
+	 * Call after an update.
+	 * @param start value returned by {@link #start()}
+	 */
+	public void stop(long start) {
+	    /* nothing to record */
+	}
+
+	/**
+	 * Call before a batch of updates, batches are always timed.
+	 * @return start time of the batch
+	 */
+	public long startBatch() {
+	    return 0L;
+	}
+
+	/**
+	 * Call after a batch of updates, the average latency per update is recorded.
+	 * @param start value returned by {@link #startBatch()}
+	 * @param count number of updates in the batch
+	 */
+	public void stopBatch(long start, int count) {
+	    /* nothing to record */
+	}
+
+	/**
+	 * Remembers the present time as time of the last update of a series.
+	 * @param lastUpdates time of the last update of each series
+	 * @param series index of the updated series
+	 */
+	void touch(long[] lastUpdates, int series) {
+	    /* nothing to record */
+	}
+
+	/**
+	 * Remembers the given time as time of the last update of a series, e.g. the start of a batch.
+	 * @param lastUpdates time of the last update of each series
+	 * @param series index of the updated series
+	 * @param time value returned by {@link #startBatch()}
+	 */
+	void touch(long[] lastUpdates, int series, long time) {
+	    /* nothing to record */
+	}
+
+	/**
+	 * @return the present time
+	 */
+	long now() {
+	    return 0L;
+	}
+
+	/**
+	 * Publishes all updates counted so far.
+	 */
+	public void flush() {
+	    /* nothing to record */
+	}
+    }
+
+    private static final class SamplingRecorder extends Recorder {
+
+	private final EwmaMetrics metrics;
+
+	private long calls;
+
+	private long published;
+
+	SamplingRecorder(EwmaMetrics metrics) {
+	    this.metrics = metrics;
+	}
+
+	@Override
+	public long start() {
+	    return (++calls & SAMPLE_MASK) == 0 ? System.nanoTime() : 0L;
+	}
+
+	@Override
+	public void stop(long start) {
+	    if (start != 0L) {
+		metrics.latencies.record(System.nanoTime() - start);
+		flush();
+	    }
+	}
+
+	@Override
+	public long startBatch() {
+	    return System.nanoTime();
+	}
+
+	@Override
+	public void stopBatch(long start, int count) {
+	    if (count > 0) {
+		calls += count;
+		metrics.latencies.record((System.nanoTime() - start) / count);
+		flush();
+	    }
+	}
+
+	@Override
+	void touch(long[] lastUpdates, int series) {
+	    lastUpdates[series] = System.nanoTime();
+	}
+
+	@Override
+	void touch(long[] lastUpdates, int series, long time) {
+	    lastUpdates[series] = time;
+	}
+
+	@Override
+	long now() {
+	    return System.nanoTime();
+	}
+
+	@Override
+	public void flush() {
+	    metrics.updates.add(calls - published);
+	    published = calls;
+	}
+    }
+
+}
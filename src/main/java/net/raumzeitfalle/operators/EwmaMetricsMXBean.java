@@ -0,0 +1,79 @@
+/*
+ * 
+ * FunWithLambdas: EWMA
+ *
+ * Copyright (C) 2016 Oliver Löffler
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package net.raumzeitfalle.operators;
+
+/**
+ * Management interface of {@link EwmaMetrics}, exported via JMX by {@link EwmaMetrics#register()}.
+ * @author Oliver Löffler
+ *
+ */
+public interface EwmaMetricsMXBean {
+
+    /**
+     * @return number of EWMA updates since the last reset
+     */
+    long getUpdates();
+
+    /**
+     * @return EWMA updates per second since the last reset
+     */
+    double getUpdatesPerSecond();
+
+    /**
+     * @return number of out-of-control events since the last reset
+     */
+    long getAlarms();
+
+    /**
+     * @return number of sampled update latencies
+     */
+    long getLatencySamples();
+
+    /**
+     * @return median update latency in nanoseconds
+     */
+    long getLatencyP50Nanos();
+
+    /**
+     * @return 99th percentile of the update latency in nanoseconds
+     */
+    long getLatencyP99Nanos();
+
+    /**
+     * @return 99.9th percentile of the update latency in nanoseconds
+     */
+    long getLatencyP999Nanos();
+
+    /**
+     * @return counts of all latency buckets
+     */
+    long[] getLatencyHistogram();
+
+    /**
+     * @return time since the least recently updated series of all tracked operators was updated, -1 if no series is tracked
+     */
+    long getMaxStalenessNanos();
+
+    /**
+     * Resets all counters and the latency histogram.
+     */
+    void reset();
+
+}
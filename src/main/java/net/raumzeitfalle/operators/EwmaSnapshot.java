@@ -0,0 +1,330 @@
+/*
+ * 
+ * FunWithLambdas: EWMA
+ *
+ * Copyright (C) 2016 Oliver Löffler
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package net.raumzeitfalle.operators;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Immutable snapshot of the state of one or many EWMA series (lambda, EWMA0, most recent EWMA, number of samples and an optional variance),
+ * allowing to restart without replaying the history, see e.g. {@link DoubleEwma#buildWith(EwmaSnapshot)} or {@link MultiSeriesEwma#buildWith(EwmaSnapshot)}.<br>
+ * <br>
+ * The binary format (little endian) consists of a 32 byte header followed by the state of all series column by column:
+ * <pre>
+ * int magic ("EWMA"), short version, short flags, int number of series, int reserved, double default lambda, double default EWMA0
+ * long[] keys, double[] lambdas, double[] EWMA0, double[] EWMA, long[] counts, double[] variances (only if flag 1 is set)
+ * </pre>
+ * Each column is transferred with bulk puts and gets through one direct buffer, hence writing and reading is limited by I/O only.
+ * @author Oliver Löffler
+ *
+ */
+public final class EwmaSnapshot {
+
+    /**
+     * Version of the binary format written by this class.
+     */
+    public static final short VERSION = 1;
+
+    private static final int MAGIC = 0x45574d41;
+
+    private static final short FLAG_VARIANCE = 1;
+
+    private static final int HEADER_SIZE = 32;
+
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    final double defaultLambda;
+
+    final double defaultInitial;
+
+    final long[] keys;
+
+    final double[] lambdas;
+
+    final double[] initials;
+
+    final double[] previous;
+
+    final long[] counts;
+
+    final double[] variances;
+
+    EwmaSnapshot(double defaultLambda, double defaultInitial, long[] keys, double[] lambdas, double[] initials, double[] previous, long[] counts, double[] variances) {
+	this.defaultLambda = defaultLambda;
+	this.defaultInitial = defaultInitial;
+	this.keys = keys;
+	this.lambdas = lambdas;
+	this.initials = initials;
+	this.previous = previous;
+	this.counts = counts;
+	this.variances = variances;
+    }
+
+    static EwmaSnapshot of(double lambda, double initial, double previous, long count, double variance) {
+	return new EwmaSnapshot(lambda, initial, new long[] { 0L }, new double[] { lambda }, new double[] { initial },
+		new double[] { previous }, new long[] { count }, Double.isNaN(variance) ? null : new double[] { variance });
+    }
+
+    /**
+     * Writes this snapshot to the given file, an existing file is replaced. The snapshot is written to a temporary file next to the
+     * target first, which is forced to the device and then atomically moved onto the target. Hence a crash never leaves a partially
+     * written snapshot behind.
+     * @param file target file
+     * @throws IOException when writing fails or the file system cannot move the file atomically
+     */
+    public void writeTo(Path file) throws IOException {
+	Path target = file.toAbsolutePath();
+	Path temporary = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+	try {
+	    try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+		writeTo(channel);
+		channel.force(true);
+	    }
+	    Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+	} finally {
+	    Files.deleteIfExists(temporary);
+	}
+    }
+
+    /**
+     * Writes this snapshot to the given channel, the channel is not closed.
+     * @param channel target channel
+     * @throws IOException when writing fails
+     */
+    public void writeTo(WritableByteChannel channel) throws IOException {
+	int size = size();
+	ByteBuffer buffer = ByteBuffer.allocateDirect(Math.max(HEADER_SIZE, Math.min(BUFFER_SIZE >> 3, size) << 3)).order(ByteOrder.LITTLE_ENDIAN);
+	buffer.putInt(MAGIC).putShort(VERSION).putShort(hasVariance() ? FLAG_VARIANCE : 0).putInt(size).putInt(0)
+		.putDouble(defaultLambda).putDouble(defaultInitial);
+	buffer.flip();
+	write(channel, buffer);
+	write(channel, buffer, keys);
+	write(channel, buffer, lambdas);
+	write(channel, buffer, initials);
+	write(channel, buffer, previous);
+	write(channel, buffer, counts);
+	if (hasVariance()) {
+	    write(channel, buffer, variances);
+	}
+    }
+
+    /**
+     * Reads a snapshot from the given file.
+     * @param file a file written by {@link #writeTo(Path)}
+     * @return {@link EwmaSnapshot}
+     * @throws IOException when reading fails or the file is not a snapshot of a supported version
+     */
+    public static EwmaSnapshot readFrom(Path file) throws IOException {
+	try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+	    return readFrom(channel);
+	}
+    }
+
+    /**
+     * Reads a snapshot from the given channel, the channel is not closed. For a {@link SeekableByteChannel} the number of series
+     * given in the header is checked against the remaining bytes before any column is allocated.
+     * @param channel source channel
+     * @return {@link EwmaSnapshot}
+     * @throws IOException when reading fails or the data is not a snapshot of a supported version
+     */
+    public static EwmaSnapshot readFrom(ReadableByteChannel channel) throws IOException {
+	ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+	read(channel, header);
+	if (header.getInt() != MAGIC) {
+	    throw new IOException("Not an EWMA snapshot.");
+	}
+	short version = header.getShort();
+	if (version < 1 || version > VERSION) {
+	    throw new IOException("Unsupported EWMA snapshot version " + version + ", supported is up to version " + VERSION + ".");
+	}
+	boolean variance = (header.getShort() & FLAG_VARIANCE) != 0;
+	int size = header.getInt();
+	if (size < 0) {
+	    throw new IOException("Invalid number of series in EWMA snapshot: " + size);
+	}
+	header.getInt();
+	double defaultLambda = header.getDouble();
+	double defaultInitial = header.getDouble();
+	if (channel instanceof SeekableByteChannel) {
+	    SeekableByteChannel seekable = (SeekableByteChannel) channel;
+	    long required = (variance ? 6L : 5L) * size * Double.BYTES;
+	    long remaining = seekable.size() - seekable.position();
+	    if (required > remaining) {
+		throw new IOException("EWMA snapshot of " + size + " series requires " + required + " bytes, only " + remaining + " bytes remain.");
+	    }
+	}
+
+	ByteBuffer buffer = ByteBuffer.allocateDirect(Math.max(8, Math.min(BUFFER_SIZE >> 3, size) << 3)).order(ByteOrder.LITTLE_ENDIAN);
+	long[] keys = readLongs(channel, buffer, size);
+	double[] lambdas = readDoubles(channel, buffer, size);
+	double[] initials = readDoubles(channel, buffer, size);
+	double[] previous = readDoubles(channel, buffer, size);
+	long[] counts = readLongs(channel, buffer, size);
+	double[] variances = variance ? readDoubles(channel, buffer, size) : null;
+	return new EwmaSnapshot(defaultLambda, defaultInitial, keys, lambdas, initials, previous, counts, variances);
+    }
+
+    private static void write(WritableByteChannel channel, ByteBuffer buffer) throws IOException {
+	while (buffer.hasRemaining()) {
+	    channel.write(buffer);
+	}
+    }
+
+    private static void write(WritableByteChannel channel, ByteBuffer buffer, long[] column) throws IOException {
+	int chunk = buffer.capacity() >> 3;
+	for (int from = 0; from < column.length; from += chunk) {
+	    int n = Math.min(chunk, column.length - from);
+	    buffer.clear();
+	    buffer.asLongBuffer().put(column, from, n);
+	    buffer.limit(n << 3);
+	    write(channel, buffer);
+	}
+    }
+
+    private static void write(WritableByteChannel channel, ByteBuffer buffer, double[] column) throws IOException {
+	int chunk = buffer.capacity() >> 3;
+	for (int from = 0; from < column.length; from += chunk) {
+	    int n = Math.min(chunk, column.length - from);
+	    buffer.clear();
+	    buffer.asDoubleBuffer().put(column, from, n);
+	    buffer.limit(n << 3);
+	    write(channel, buffer);
+	}
+    }
+
+    private static void read(ReadableByteChannel channel, ByteBuffer buffer) throws IOException {
+	while (buffer.hasRemaining()) {
+	    if (channel.read(buffer) < 0) {
+		throw new EOFException("EWMA snapshot is truncated.");
+	    }
+	}
+	buffer.flip();
+    }
+
+    private static long[] readLongs(ReadableByteChannel channel, ByteBuffer buffer, int size) throws IOException {
+	long[] column = new long[size];
+	int chunk = buffer.capacity() >> 3;
+	for (int from = 0; from < size; from += chunk) {
+	    int n = Math.min(chunk, size - from);
+	    buffer.clear();
+	    buffer.limit(n << 3);
+	    read(channel, buffer);
+	    buffer.asLongBuffer().get(column, from, n);
+	}
+	return column;
+    }
+
+    private static double[] readDoubles(ReadableByteChannel channel, ByteBuffer buffer, int size) throws IOException {
+	double[] column = new double[size];
+	int chunk = buffer.capacity() >> 3;
+	for (int from = 0; from < size; from += chunk) {
+	    int n = Math.min(chunk, size - from);
+	    buffer.clear();
+	    buffer.limit(n << 3);
+	    read(channel, buffer);
+	    buffer.asDoubleBuffer().get(column, from, n);
+	}
+	return column;
+    }
+
+    void throwExceptionWhenNotSingle() {
+	if (size() != 1) {
+	    throw new IllegalArgumentException("A snapshot of a single EWMA is required. Given was a snapshot of " + size() + " series.");
+	}
+    }
+
+    /**
+     * @return number of series in this snapshot
+     */
+    public int size() {
+	return keys.length;
+    }
+
+    /**
+     * @return true if the snapshot contains the variance of each series
+     */
+    public boolean hasVariance() {
+	return variances != null;
+    }
+
+    /**
+     * @param i index of the series, 0 &lt;= i &lt; {@link #size()}
+     * @return key of the series, always 0 for snapshots of a single EWMA
+     */
+    public long getKey(int i) {
+	return keys[i];
+    }
+
+    /**
+     * @param i index of the series, 0 &lt;= i &lt; {@link #size()}
+     * @return lambda of the series
+     */
+    public double getLambda(int i) {
+	return lambdas[i];
+    }
+
+    /**
+     * @param i index of the series, 0 &lt;= i &lt; {@link #size()}
+     * @return value which was used to initialize the EWMA calculation of the series
+     */
+    public double getEWMA0(int i) {
+	return initials[i];
+    }
+
+    /**
+     * @param i index of the series, 0 &lt;= i &lt; {@link #size()}
+     * @return most recent EWMA of the series
+     */
+    public double getEWMA(int i) {
+	return previous[i];
+    }
+
+    /**
+     * @param i index of the series, 0 &lt;= i &lt; {@link #size()}
+     * @return number of values processed for the series
+     */
+    public long getCount(int i) {
+	return counts[i];
+    }
+
+    /**
+     * @param i index of the series, 0 &lt;= i &lt; {@link #size()}
+     * @return variance of the series, NaN if the snapshot contains no variances
+     */
+    public double getVariance(int i) {
+	return variances == null ? Double.NaN : variances[i];
+    }
+
+    @Override
+    public String toString() {
+	return new StringBuilder("EWMA snapshot (version " + VERSION + ") of " + size() + " series" + (hasVariance() ? " with variance" : "")).toString();
+    }
+
+}
@@ -0,0 +1,164 @@
+/*
+ * 
+ * FunWithLambdas: EWMA
+ *
+ * Copyright (C) 2016 Oliver Löffler
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package net.raumzeitfalle.operators;
+
+import java.nio.FloatBuffer;
+
+/**
+ * Exponentially weighted moving average (EWMA) of float values, for series where single precision matches the resolution of the measurement
+ * and halving memory and bandwidth of arrays and buffers matters.<br>
+ * <br>
+ * Only values and results are float, lambda is widened and the EWMA is accumulated in double. Hence compared with {@link DoubleEwma}
+ * using the widened lambda and the same values, each result differs only by its final rounding to float: at most half an ulp,
+ * a relative error of 2^-24 (about 6E-8), which does not accumulate over the series.
+ * Values which were rounded from double add at most 2^-24 * max|x| as the EWMA is a weighted mean of the values.<br>
+ * <br>
+ * No boxing takes place, hence processing a sample does not allocate any objects.
+ * @see <a href="http://www.itl.nist.gov/div898/handbook/pmc/section3/pmc324.htm">NIST Handbook of Engineering Statistics</a>
+ * @author Oliver Löffler
+ *
+ */
+public class FloatEwma {
+
+    private static final int BLOCK = 256;
+
+    private final double lambda;
+
+    private final float initial;
+
+    private double previous;
+
+    private long count;
+
+    private FloatEwma(float lambda, float initial) {
+	DoubleEwma.throwExceptionWhenLambdaIsInvalid(lambda);
+	this.lambda = lambda;
+	this.initial = initial;
+	this.previous = initial;
+    }
+
+    /**
+     * Creates an EWMA function with an EWMA0 of 0.0.
+     * @param lambda denotes how strong the past value (n-1) is weighted compared to the preset value (n).
+     * @return {@link FloatEwma}
+     */
+    public static FloatEwma withLambda(float lambda) {
+	return new FloatEwma(lambda, 0.0f);
+    }
+
+    /**
+     * Creates an EWMA function with an EWMA0 denoted by initial.
+     * @param lambda denotes how strong the past value (n-1) is weighted compared to the preset value (n).
+     * @param initial EWMA0 value used for initialization
+     * @return {@link FloatEwma}
+     */
+    public static FloatEwma buildWith(float lambda, float initial) {
+	return new FloatEwma(lambda, initial);
+    }
+
+    /**
+     * Stateful EWMA calculation, the unrounded result is remembered and used as EWMA_(n-1) for the next call.
+     * @param current the present value (n)
+     * @return EWMA at (n)
+     */
+    public float applyAsFloat(float current) {
+	this.count++;
+	return (float) (this.previous = lambda * current + (1-lambda) * this.previous);
+    }
+
+    /**
+     * Applies the stateful EWMA to all elements of the given array, writing the results to target.
+     * Source and target may be the same array. Values are weighted and widened block wise before they enter the recurrence.
+     * @param source values to be smoothed
+     * @param target array receiving the EWMA values, must be at least as long as source
+     * @return target
+     */
+    public float[] applyTo(float[] source, float[] target) {
+	final double complement = 1 - lambda;
+	double[] block = new double[Math.min(BLOCK, source.length)];
+	double ewma = this.previous;
+	for (int from = 0; from < source.length; from += BLOCK) {
+	    int length = Math.min(BLOCK, source.length - from);
+	    /* widening outside of the recurrence keeps the conversion off its critical path */
+	    for (int i = 0; i < length; i++) {
+		block[i] = lambda * source[from + i];
+	    }
+	    for (int i = 0; i < length; i++) {
+		ewma = block[i] + complement * ewma;
+		target[from + i] = (float) ewma;
+	    }
+	}
+	this.previous = ewma;
+	this.count += source.length;
+	return target;
+    }
+
+    /**
+     * Applies the stateful EWMA to the remaining elements of source, writing the results to target.
+     * As with relative bulk operations of NIO buffers, the positions of both buffers advance by the number of processed values.
+     * @param source values to be smoothed, e.g. a view of a direct or memory mapped buffer
+     * @param target buffer receiving the EWMA values, must have at least as many elements remaining as source
+     * @return target
+     */
+    public FloatBuffer applyTo(FloatBuffer source, FloatBuffer target) {
+	double ewma = this.previous;
+	this.count += source.remaining();
+	while (source.hasRemaining()) {
+	    ewma = lambda * source.get() + (1-lambda) * ewma;
+	    target.put((float) ewma);
+	}
+	this.previous = ewma;
+	return target;
+    }
+
+    /**
+     * @return the first value which was used to initialize the EWMA calculation.
+     */
+    public float getEWMA0() {
+	return initial;
+    }
+
+    /**
+     * @return the lambda widened to double, as used for the calculation
+     */
+    public double getLambda() {
+	return lambda;
+    }
+
+    /**
+     * @return EWMA at (n-1) in double precision, which is EWMA0 as long as no value was processed
+     */
+    public double getPrevious() {
+	return previous;
+    }
+
+    /**
+     * @return number of values processed
+     */
+    public long getCount() {
+	return count;
+    }
+
+    @Override
+    public String toString() {
+	return new StringBuilder("Float EWMA_n = " + lambda + "n + " + (1 - lambda) +"(n-1) with EWMA_0 = " + initial + " and (n-1) = " + previous).toString();
+    }
+
+}
@@ -0,0 +1,263 @@
+/*
+ * 
+ * FunWithLambdas: EWMA
+ *
+ * Copyright (C) 2016 Oliver Löffler
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package net.raumzeitfalle.operators;
+
+import java.util.Arrays;
+
+/**
+ * Exponentially weighted moving averages (EWMA) for many independent series of float values, each identified by a primitive long key.<br>
+ * <br>
+ * Organized as {@link MultiSeriesEwma}, but lambda, EWMA0 and the previous EWMA of each series are kept as float,
+ * which reduces the state per series from 40 to 28 bytes (besides the key index). Each update is calculated in double and only its result is rounded.
+ * As the EWMA forgets past errors at the rate of (1-lambda), the rounding errors do not drift but stay bounded:
+ * compared with {@link MultiSeriesEwma} using the same (widened) lambdas and values, the EWMA deviates by at most 2^-24 * max|EWMA| / lambda
+ * (relative 6E-7 for a lambda of 0.1). For lambdas much smaller than 0.01 use {@link MultiSeriesEwma}.<br>
+ * <br>
+ * Once all series are known, neither {@link #update(long, float)} nor the batch updates allocate any objects.
+ * Instances are not thread safe.
+ * @see <a href="http://www.itl.nist.gov/div898/handbook/pmc/section3/pmc324.htm">NIST Handbook of Engineering Statistics</a>
+ * @author Oliver Löffler
+ *
+ */
+public class FloatMultiSeriesEwma {
+
+    /**
+     * EWMA0 value denoting that a series is initialized with its first sample.
+     */
+    public static final float FIRST_SAMPLE = Float.NaN;
+
+    private static final int BLOCK = 256;
+
+    private final float defaultLambda;
+
+    private final float defaultInitial;
+
+    private final LongIntHashMap index;
+
+    private final int[] block = new int[BLOCK];
+
+    private long[] keys;
+
+    private float[] lambdas;
+
+    private float[] initials;
+
+    private float[] previous;
+
+    private long[] counts;
+
+    private int size;
+
+    private FloatMultiSeriesEwma(float lambda, float initial, int expectedSeries) {
+	DoubleEwma.throwExceptionWhenLambdaIsInvalid(lambda);
+	this.defaultLambda = lambda;
+	this.defaultInitial = initial;
+	int capacity = Math.max(16, expectedSeries);
+	this.index = new LongIntHashMap(capacity);
+	this.keys = new long[capacity];
+	this.lambdas = new float[capacity];
+	this.initials = new float[capacity];
+	this.previous = new float[capacity];
+	this.counts = new long[capacity];
+    }
+
+    /**
+     * Creates a multi series EWMA where new series start with an EWMA0 of 0.0.
+     * @param lambda default lambda for new series, denotes how strong the past value (n-1) is weighted compared to the preset value (n).
+     * @return {@link FloatMultiSeriesEwma}
+     */
+    public static FloatMultiSeriesEwma withLambda(float lambda) {
+	return new FloatMultiSeriesEwma(lambda, 0.0f, 16);
+    }
+
+    /**
+     * Creates a multi series EWMA where new series start with the given EWMA0.
+     * @param lambda default lambda for new series, denotes how strong the past value (n-1) is weighted compared to the preset value (n).
+     * @param initial default EWMA0 for new series, {@link #FIRST_SAMPLE} initializes each series with its first sample.
+     * @param expectedSeries number of series to reserve memory for
+     * @return {@link FloatMultiSeriesEwma}
+     */
+    public static FloatMultiSeriesEwma buildWith(float lambda, float initial, int expectedSeries) {
+	return new FloatMultiSeriesEwma(lambda, initial, expectedSeries);
+    }
+
+    /**
+     * Creates or resets the series with the given key.
+     * @param key identifies the series
+     * @param lambda denotes how strong the past value (n-1) is weighted compared to the preset value (n).
+     * @param initial EWMA0 value, {@link #FIRST_SAMPLE} initializes the series with its first sample.
+     */
+    public void register(long key, float lambda, float initial) {
+	DoubleEwma.throwExceptionWhenLambdaIsInvalid(lambda);
+	int i = index.get(key);
+	if (i == LongIntHashMap.ABSENT) {
+	    i = add(key);
+	}
+	lambdas[i] = lambda;
+	initials[i] = initial;
+	previous[i] = initial;
+	counts[i] = 0;
+    }
+
+    /**
+     * Applies the value to the series with the given key, the series is created if not yet known.
+     * @param key identifies the series
+     * @param value the present value (n)
+     * @return EWMA at (n) of the series
+     */
+    public float update(long key, float value) {
+	return update(indexOf(key), value);
+    }
+
+    /**
+     * Applies values[i] to the series with key keys[i] for all i, series are created if not yet known.
+     * @param keys identifies the series for each value, a key may occur multiple times
+     * @param values present values, must be as long as keys
+     * @param target receives the EWMA for each value, must be as long as keys, or null
+     */
+    public void updateBatch(long[] keys, float[] values, float[] target) {
+	if (keys.length != values.length) {
+	    throw new IllegalArgumentException("Number of keys (" + keys.length + ") and values (" + values.length + ") must be equal.");
+	}
+	for (int from = 0; from < keys.length; from += BLOCK) {
+	    int to = Math.min(keys.length, from + BLOCK);
+	    for (int j = from; j < to; j++) {
+		block[j - from] = indexOf(keys[j]);
+	    }
+	    for (int j = from; j < to; j++) {
+		float ewma = update(block[j - from], values[j]);
+		if (target != null) {
+		    target[j] = ewma;
+		}
+	    }
+	}
+    }
+
+    /**
+     * Resets the series with the given key and replays the window retained in history, which is accumulated in double
+     * and rounded once at the end, hence a recomputed EWMA does not carry the rounding errors of previous updates.
+     * @param key identifies the series in this and in history
+     * @param lambda denotes how strong the past value (n-1) is weighted compared to the preset value (n).
+     * @param initial EWMA0 value for the oldest retained sample, {@link #FIRST_SAMPLE} initializes the series with that sample.
+     * @param history raw samples of the series
+     * @return EWMA at the most recent retained sample
+     */
+    public float recompute(long key, float lambda, float initial, FloatSeriesRingStore history) {
+	register(key, lambda, initial);
+	int i = index.get(key);
+	int retained = history.retained(key);
+	if (retained == 0) {
+	    return previous[i];
+	}
+	counts[i] = retained;
+	if (Float.isNaN(initial)) {
+	    initials[i] = history.get(key, retained - 1);
+	}
+	return previous[i] = (float) history.recompute(key, lambda, initials[i]);
+    }
+
+    private float update(int i, float value) {
+	double last = counts[i]++ == 0 && Float.isNaN(initials[i]) ? (initials[i] = value) : previous[i];
+	double lambda = lambdas[i];
+	return previous[i] = (float) (lambda * value + (1 - lambda) * last);
+    }
+
+    private int indexOf(long key) {
+	int i = index.get(key);
+	if (i == LongIntHashMap.ABSENT) {
+	    i = add(key);
+	    lambdas[i] = defaultLambda;
+	    initials[i] = defaultInitial;
+	    previous[i] = defaultInitial;
+	}
+	return i;
+    }
+
+    private int add(long key) {
+	if (size == lambdas.length) {
+	    int capacity = size << 1;
+	    keys = Arrays.copyOf(keys, capacity);
+	    lambdas = Arrays.copyOf(lambdas, capacity);
+	    initials = Arrays.copyOf(initials, capacity);
+	    previous = Arrays.copyOf(previous, capacity);
+	    counts = Arrays.copyOf(counts, capacity);
+	}
+	keys[size] = key;
+	index.put(key, size);
+	return size++;
+    }
+
+    /**
+     * @param key identifies the series
+     * @return true if the series is known
+     */
+    public boolean contains(long key) {
+	return index.get(key) != LongIntHashMap.ABSENT;
+    }
+
+    /**
+     * @param key identifies the series
+     * @return the most recent EWMA of the series, which is EWMA0 as long as no value was processed, or NaN for unknown series
+     */
+    public float getEWMA(long key) {
+	int i = index.get(key);
+	return i == LongIntHashMap.ABSENT ? Float.NaN : previous[i];
+    }
+
+    /**
+     * @param key identifies the series
+     * @return the value which was used to initialize the EWMA calculation of the series, or NaN for unknown series
+     */
+    public float getEWMA0(long key) {
+	int i = index.get(key);
+	return i == LongIntHashMap.ABSENT ? Float.NaN : initials[i];
+    }
+
+    /**
+     * @param key identifies the series
+     * @return lambda of the series, or NaN for unknown series
+     */
+    public float getLambda(long key) {
+	int i = index.get(key);
+	return i == LongIntHashMap.ABSENT ? Float.NaN : lambdas[i];
+    }
+
+    /**
+     * @param key identifies the series
+     * @return number of values processed for the series, 0 for unknown series
+     */
+    public long getCount(long key) {
+	int i = index.get(key);
+	return i == LongIntHashMap.ABSENT ? 0 : counts[i];
+    }
+
+    /**
+     * @return number of known series
+     */
+    public int size() {
+	return size;
+    }
+
+    @Override
+    public String toString() {
+	return new StringBuilder("Float multi series EWMA with " + size + " series, default lambda of " + defaultLambda + " and EWMA_0 of " + defaultInitial).toString();
+    }
+
+}
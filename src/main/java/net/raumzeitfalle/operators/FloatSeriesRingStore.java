@@ -0,0 +1,221 @@
+/*
+ * 
+ * FunWithLambdas: EWMA
+ *
+ * Copyright (C) 2016 Oliver Löffler
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package net.raumzeitfalle.operators;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * Keeps the most recent raw samples of many series as float, identified by a primitive long key, outside of the Java heap.
+ * Organized as {@link SeriesRingStore} but taking half of its memory, for samples whose resolution does not need double precision.<br>
+ * <br>
+ * Each series owns a slot of fixed depth in a direct buffer which is used as a ring, once the slot is full the oldest sample is overwritten.
+ * Slots are grouped into segments which are allocated as series are added, existing segments are never copied.
+ * The first segment is sized for the expected number of series, each further segment doubles the capacity up to the maximum segment size.
+ * On the heap only the key index and the write position and number of retained samples of each series are kept,
+ * hence heap footprint and GC pressure depend on the number of series but not on the depth of the history
+ * (unlike keeping a LinkedList&lt;Double&gt; per series as done in EwmaExample).<br>
+ * <br>
+ * The retained window of a series can be replayed oldest sample first, which allows to recompute an EWMA after lambda was changed
+ * or after a bad sample was removed using {@link #retract(long, int)}, see {@link FloatMultiSeriesEwma#recompute(long, float, float, FloatSeriesRingStore)}.
+ * Samples are widened and the EWMA is recomputed in double, hence its only deviation from recomputing over a {@link SeriesRingStore}
+ * stems from rounding the samples to float: at most 2^-24 * max|x| (relative 6E-8), independent of the depth.
+ * Appending, retracting and recomputing do not allocate any objects once a series is known.<br>
+ * <br>
+ * Instances are not thread safe.
+ * @author Oliver Löffler
+ *
+ */
+public final class FloatSeriesRingStore {
+
+    private final SeriesRingSlots<FloatBuffer> slots;
+
+    private FloatSeriesRingStore(int depth, int expectedSeries) {
+	this.slots = new SeriesRingSlots<>(depth, expectedSeries, Float.BYTES,
+		n -> ByteBuffer.allocateDirect(n * Float.BYTES).order(ByteOrder.nativeOrder()).asFloatBuffer());
+    }
+
+    /**
+     * Creates a store retaining the given number of samples per series.
+     * @param depth number of samples retained per series
+     * @param expectedSeries number of series to reserve memory for, further segments are allocated when more series are added.
+     * @return {@link FloatSeriesRingStore}
+     */
+    public static FloatSeriesRingStore withDepth(int depth, int expectedSeries) {
+	return new FloatSeriesRingStore(depth, expectedSeries);
+    }
+
+    /**
+     * Appends a sample to the series with the given key, overwriting its oldest sample once the slot is full.
+     * The series is created if not yet known.
+     * @param key identifies the series
+     * @param value raw sample
+     */
+    public void append(long key, float value) {
+	int i = slots.indexOf(key);
+	slots.segment(i).put(slots.offset(i) + slots.append(i), value);
+    }
+
+    /**
+     * Removes a sample from the window of a series, younger samples move up by one position.
+     * The cost is proportional to the age of the sample, hence retracting recent samples is cheap.
+     * @param key identifies the series
+     * @param age 0 denotes the most recent sample
+     * @return the removed sample
+     */
+    public float retract(long key, int age) {
+	int i = slots.require(key);
+	slots.requireAge(i, age);
+	FloatBuffer segment = slots.segment(i);
+	int offset = slots.offset(i);
+	float removed = segment.get(offset + slots.position(i, age));
+	for (int a = age - 1; a >= 0; a--) {
+	    segment.put(offset + slots.position(i, a + 1), segment.get(offset + slots.position(i, a)));
+	}
+	slots.retract(i);
+	return removed;
+    }
+
+    /**
+     * @param key identifies the series
+     * @param age 0 denotes the most recent sample
+     * @return the sample of the given age
+     */
+    public float get(long key, int age) {
+	int i = slots.require(key);
+	slots.requireAge(i, age);
+	return sample(i, age);
+    }
+
+    /**
+     * Recomputes the EWMA over the retained window of a series, starting with the oldest sample.
+     * @param key identifies the series
+     * @param lambda denotes how strong the past value (n-1) is weighted compared to the preset value (n).
+     * @param initial EWMA0 value, {@link FloatMultiSeriesEwma#FIRST_SAMPLE} initializes the EWMA with the oldest retained sample.
+     * @return EWMA at the most recent sample, initial if no sample is retained or the series is unknown
+     */
+    public double recompute(long key, double lambda, double initial) {
+	DoubleEwma.throwExceptionWhenLambdaIsInvalid(lambda);
+	int i = slots.find(key);
+	if (i == LongIntHashMap.ABSENT || slots.retained(i) == 0) {
+	    return initial;
+	}
+	int age = slots.retained(i) - 1;
+	double ewma = Double.isNaN(initial) ? sample(i, age) : initial;
+	for (; age >= 0; age--) {
+	    ewma = lambda * sample(i, age) + (1 - lambda) * ewma;
+	}
+	return ewma;
+    }
+
+    /**
+     * Feeds the retained window of a series widened to double into the given operator, starting with the oldest sample.
+     * @param key identifies the series
+     * @param operator a stateful operator such as {@link DoubleEwma}
+     * @return result of the operator for the most recent sample, NaN if no sample is retained or the series is unknown
+     */
+    public double replay(long key, DoubleUnaryOperator operator) {
+	int i = slots.find(key);
+	if (i == LongIntHashMap.ABSENT) {
+	    return Double.NaN;
+	}
+	double result = Double.NaN;
+	for (int age = slots.retained(i) - 1; age >= 0; age--) {
+	    result = operator.applyAsDouble(sample(i, age));
+	}
+	return result;
+    }
+
+    /**
+     * Copies the retained window of a series into target, oldest sample first.
+     * @param key identifies the series
+     * @param target receives the samples, must be at least as long as the window
+     * @return number of samples copied
+     */
+    public int copyTo(long key, float[] target) {
+	int i = slots.find(key);
+	if (i == LongIntHashMap.ABSENT) {
+	    return 0;
+	}
+	int n = slots.retained(i);
+	for (int j = 0; j < n; j++) {
+	    target[j] = sample(i, n - 1 - j);
+	}
+	return n;
+    }
+
+    /**
+     * @param key identifies the series
+     * @return number of samples retained for the series, 0 for unknown series
+     */
+    public int retained(long key) {
+	int i = slots.find(key);
+	return i == LongIntHashMap.ABSENT ? 0 : slots.retained(i);
+    }
+
+    /**
+     * @param key identifies the series
+     * @return true if the series is known
+     */
+    public boolean contains(long key) {
+	return slots.find(key) != LongIntHashMap.ABSENT;
+    }
+
+    /**
+     * @return number of samples retained per series
+     */
+    public int getDepth() {
+	return slots.depth;
+    }
+
+    /**
+     * @return number of known series
+     */
+    public int size() {
+	return slots.size();
+    }
+
+    /**
+     * @return number of bytes allocated outside of the heap
+     */
+    public long offHeapBytes() {
+	return slots.offHeapBytes();
+    }
+
+    int indexOf(long key) {
+	return slots.indexOf(key);
+    }
+
+    int retainedAt(int i) {
+	return slots.retained(i);
+    }
+
+    float sample(int i, int age) {
+	return slots.segment(i).get(slots.offset(i) + slots.position(i, age));
+    }
+
+    @Override
+    public String toString() {
+	return new StringBuilder("Float series ring store with " + size() + " series of depth " + getDepth() + " using " + offHeapBytes() + " bytes off-heap").toString();
+    }
+
+}
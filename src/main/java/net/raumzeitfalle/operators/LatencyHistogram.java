@@ -0,0 +1,105 @@
+/*
+ * 
+ * FunWithLambdas: EWMA
+ *
+ * Copyright (C) 2016 Oliver Löffler
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package net.raumzeitfalle.operators;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of latencies in nanoseconds with a fixed number of buckets.<br>
+ * <br>
+ * Each power of two is split into four buckets, hence a percentile is reported with a relative error of at most 25%
+ * while all latencies from 0 to Long.MAX_VALUE fit into {@value #BUCKETS} buckets. Recording increments one counter of an {@link AtomicLongArray}.
+ * @author Oliver Löffler
+ *
+ */
+final class LatencyHistogram {
+
+    static final int BUCKETS = 248;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    void record(long nanos) {
+	counts.incrementAndGet(bucket(Math.max(0L, nanos)));
+    }
+
+    static int bucket(long nanos) {
+	if (nanos < 4) {
+	    return (int) nanos;
+	}
+	int log = 63 - Long.numberOfLeadingZeros(nanos);
+	return (log - 1) << 2 | (int) (nanos >>> (log - 2)) & 3;
+    }
+
+    /**
+     * @return largest latency falling into the given bucket
+     */
+    static long upperBound(int bucket) {
+	if (bucket < 4) {
+	    return bucket;
+	}
+	int shift = (bucket >>> 2) - 1;
+	long lower = (long) (4 | bucket & 3) << shift;
+	return lower + (1L << shift) - 1;
+    }
+
+    /**
+     * @param quantile between 0 and 1
+     * @return upper bound of the bucket containing the quantile, 0 if nothing was recorded
+     */
+    long percentile(double quantile) {
+	long[] snapshot = snapshot();
+	long total = 0;
+	for (long count : snapshot) {
+	    total += count;
+	}
+	long rank = (long) Math.ceil(quantile * total);
+	long seen = 0;
+	for (int b = 0; b < BUCKETS; b++) {
+	    seen += snapshot[b];
+	    if (seen >= rank && seen > 0) {
+		return upperBound(b);
+	    }
+	}
+	return 0;
+    }
+
+    long count() {
+	long total = 0;
+	for (int b = 0; b < BUCKETS; b++) {
+	    total += counts.get(b);
+	}
+	return total;
+    }
+
+    long[] snapshot() {
+	long[] snapshot = new long[BUCKETS];
+	for (int b = 0; b < BUCKETS; b++) {
+	    snapshot[b] = counts.get(b);
+	}
+	return snapshot;
+    }
+
+    void reset() {
+	for (int b = 0; b < BUCKETS; b++) {
+	    counts.set(b, 0L);
+	}
+    }
+
+}
@@ -0,0 +1,116 @@
+/*
+ * 
+ * FunWithLambdas: EWMA
+ *
+ * Copyright (C) 2016 Oliver Löffler
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package net.raumzeitfalle.operators;
+
+import java.util.Arrays;
+
+/**
+ * Open addressing hash map (linear probing) from primitive long keys to non-negative int values.
+ * Keys and values are kept in two arrays, hence lookups neither box nor allocate. Entries cannot be removed.
+ * @author Oliver Löffler
+ *
+ */
+final class LongIntHashMap {
+
+    static final int ABSENT = -1;
+
+    private long[] keys;
+
+    private int[] values;
+
+    private int mask;
+
+    private int size;
+
+    LongIntHashMap(int expectedSize) {
+	int capacity = Integer.highestOneBit(Math.max(4, expectedSize) * 2 - 1) << 1;
+	allocate(capacity);
+    }
+
+    private void allocate(int capacity) {
+	this.keys = new long[capacity];
+	this.values = new int[capacity];
+	Arrays.fill(this.values, ABSENT);
+	this.mask = capacity - 1;
+    }
+
+    /**
+     * @param key any long value
+     * @return the value mapped to key or {@link #ABSENT}
+     */
+    int get(long key) {
+	int slot = slot(key);
+	int value;
+	while ((value = values[slot]) != ABSENT) {
+	    if (keys[slot] == key) {
+		return value;
+	    }
+	    slot = (slot + 1) & mask;
+	}
+	return ABSENT;
+    }
+
+    /**
+     * Maps key to value, replacing any previous mapping.
+     * @param key any long value
+     * @param value a non-negative int
+     */
+    void put(long key, int value) {
+	int slot = slot(key);
+	while (values[slot] != ABSENT) {
+	    if (keys[slot] == key) {
+		values[slot] = value;
+		return;
+	    }
+	    slot = (slot + 1) & mask;
+	}
+	keys[slot] = key;
+	values[slot] = value;
+	if (++size > (mask >> 1)) {
+	    rehash();
+	}
+    }
+
+    int size() {
+	return size;
+    }
+
+    private void rehash() {
+	long[] oldKeys = keys;
+	int[] oldValues = values;
+	allocate(oldKeys.length << 1);
+	for (int i = 0; i < oldKeys.length; i++) {
+	    if (oldValues[i] != ABSENT) {
+		int slot = slot(oldKeys[i]);
+		while (values[slot] != ABSENT) {
+		    slot = (slot + 1) & mask;
+		}
+		keys[slot] = oldKeys[i];
+		values[slot] = oldValues[i];
+	    }
+	}
+    }
+
+    private int slot(long key) {
+	long hash = key * 0x9E3779B97F4A7C15L;
+	return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+
+}
@@ -0,0 +1,247 @@
+/*
+ * 
+ * FunWithLambdas: EWMA
+ *
+ * Copyright (C) 2016 Oliver Löffler
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package net.raumzeitfalle.operators;
+
+import java.util.Arrays;
+
+/**
+ * Streaming EWMA control charts for many series identified by primitive long keys, see {@link EwmaControlChart} for the limits.<br>
+ * <br>
+ * All series share lambda and limit width. Target and standard deviation are given per series using {@link #register(long, double, double)}.
+ * Series which are not registered are created on their first value, using this value as target and an estimated standard deviation.
+ * The state of all series is kept in primitive arrays, an update neither boxes nor allocates once all series are known.<br>
+ * <br>
+ * Instances are not thread safe.
+ * @see <a href="http://www.itl.nist.gov/div898/handbook/pmc/section3/pmc324.htm">NIST Handbook of Engineering Statistics</a>
+ * @author Oliver Löffler
+ *
+ */
+public class MultiSeriesControlChart {
+
+    private final double lambda;
+
+    private final double width;
+
+    private final double factor;
+
+    private final double squaredComplement;
+
+    private final ControlChartListener listener;
+
+    private final LongIntHashMap index;
+
+    private double[] targets;
+
+    private double[] sigmas;
+
+    private double[] ewmas;
+
+    private double[] decays;
+
+    private long[] counts;
+
+    private double[] means;
+
+    private double[] m2s;
+
+    private int size;
+
+    private MultiSeriesControlChart(double lambda, double width, int expectedSeries, ControlChartListener listener) {
+	DoubleEwma.throwExceptionWhenLambdaIsInvalid(lambda);
+	if (!(width > 0)) {
+	    throw new IllegalArgumentException("The width of control limits must be greater 0. Given was a width of " + width + ".");
+	}
+	this.lambda = lambda;
+	this.width = width;
+	this.factor = lambda / (2 - lambda);
+	this.squaredComplement = (1 - lambda) * (1 - lambda);
+	this.listener = listener;
+	int capacity = Math.max(16, expectedSeries);
+	this.index = new LongIntHashMap(capacity);
+	this.targets = new double[capacity];
+	this.sigmas = new double[capacity];
+	this.ewmas = new double[capacity];
+	this.decays = new double[capacity];
+	this.counts = new long[capacity];
+	this.means = new double[capacity];
+	this.m2s = new double[capacity];
+    }
+
+    /**
+     * @param lambda denotes how strong the past value (n-1) is weighted compared to the preset value (n).
+     * @param width k, typically 3
+     * @param expectedSeries number of series to reserve memory for
+     * @param listener receives alarms of all series
+     * @return {@link MultiSeriesControlChart}
+     */
+    public static MultiSeriesControlChart buildWith(double lambda, double width, int expectedSeries, ControlChartListener listener) {
+	return new MultiSeriesControlChart(lambda, width, expectedSeries, listener);
+    }
+
+    /**
+     * Creates or resets the series with the given key.
+     * @param key identifies the series
+     * @param target center line, also used as EWMA0
+     * @param sigma process standard deviation, NaN to estimate it from the values of the series
+     */
+    public void register(long key, double target, double sigma) {
+	int i = index.get(key);
+	if (i == LongIntHashMap.ABSENT) {
+	    i = add(key);
+	}
+	reset(i, target, sigma);
+    }
+
+    /**
+     * Applies the value to the series with the given key and reports an alarm if its EWMA is outside of the control limits.
+     * An alarm is reported for every such sample, not only when the EWMA leaves the control limits.
+     * @param key identifies the series
+     * @param value the present value (n)
+     * @return EWMA at (n) of the series
+     */
+    public double update(long key, double value) {
+	int i = index.get(key);
+	if (i == LongIntHashMap.ABSENT) {
+	    i = add(key);
+	    reset(i, value, Double.NaN);
+	}
+	double ewma = ewmas[i] = lambda * value + (1 - lambda) * ewmas[i];
+	long n = ++counts[i];
+	double delta = value - means[i];
+	means[i] += delta / n;
+	m2s[i] += delta * (value - means[i]);
+	decays[i] *= squaredComplement;
+
+	double halfWidth = halfWidth(i);
+	if (listener != null && (ewma > targets[i] + halfWidth || ewma < targets[i] - halfWidth)) {
+	    listener.outOfControl(key, n, ewma, targets[i] - halfWidth, targets[i] + halfWidth);
+	}
+	return ewma;
+    }
+
+    /**
+     * Applies values[i] to the series with key keys[i] for all i.
+     * @param keys identifies the series for each value, a key may occur multiple times
+     * @param values present values, must be as long as keys
+     */
+    public void updateBatch(long[] keys, double[] values) {
+	if (keys.length != values.length) {
+	    throw new IllegalArgumentException("Number of keys (" + keys.length + ") and values (" + values.length + ") must be equal.");
+	}
+	for (int j = 0; j < keys.length; j++) {
+	    update(keys[j], values[j]);
+	}
+    }
+
+    private double halfWidth(int i) {
+	double sigma = sigmas[i];
+	if (Double.isNaN(sigma)) {
+	    sigma = counts[i] > 1 ? Math.sqrt(m2s[i] / (counts[i] - 1)) : Double.NaN;
+	}
+	return width * sigma * Math.sqrt(factor * (1 - decays[i]));
+    }
+
+    private void reset(int i, double target, double sigma) {
+	targets[i] = target;
+	sigmas[i] = sigma;
+	ewmas[i] = target;
+	decays[i] = 1.0;
+	counts[i] = 0;
+	means[i] = 0.0;
+	m2s[i] = 0.0;
+    }
+
+    private int add(long key) {
+	if (size == targets.length) {
+	    int capacity = size << 1;
+	    targets = Arrays.copyOf(targets, capacity);
+	    sigmas = Arrays.copyOf(sigmas, capacity);
+	    ewmas = Arrays.copyOf(ewmas, capacity);
+	    decays = Arrays.copyOf(decays, capacity);
+	    counts = Arrays.copyOf(counts, capacity);
+	    means = Arrays.copyOf(means, capacity);
+	    m2s = Arrays.copyOf(m2s, capacity);
+	}
+	index.put(key, size);
+	return size++;
+    }
+
+    /**
+     * @param key identifies the series
+     * @return EWMA at (n) of the series, NaN for unknown series
+     */
+    public double getEWMA(long key) {
+	int i = index.get(key);
+	return i == LongIntHashMap.ABSENT ? Double.NaN : ewmas[i];
+    }
+
+    /**
+     * @param key identifies the series
+     * @return lower control limit at (n) of the series, NaN if not available
+     */
+    public double getLCL(long key) {
+	int i = index.get(key);
+	return i == LongIntHashMap.ABSENT ? Double.NaN : targets[i] - halfWidth(i);
+    }
+
+    /**
+     * @param key identifies the series
+     * @return upper control limit at (n) of the series, NaN if not available
+     */
+    public double getUCL(long key) {
+	int i = index.get(key);
+	return i == LongIntHashMap.ABSENT ? Double.NaN : targets[i] + halfWidth(i);
+    }
+
+    /**
+     * @param key identifies the series
+     * @return true if EWMA at (n) of the series is outside of its control limits
+     */
+    public boolean isOutOfControl(long key) {
+	int i = index.get(key);
+	if (i == LongIntHashMap.ABSENT) {
+	    return false;
+	}
+	double halfWidth = halfWidth(i);
+	return ewmas[i] > targets[i] + halfWidth || ewmas[i] < targets[i] - halfWidth;
+    }
+
+    /**
+     * @param key identifies the series
+     * @return number of values processed for the series, 0 for unknown series
+     */
+    public long getCount(long key) {
+	int i = index.get(key);
+	return i == LongIntHashMap.ABSENT ? 0 : counts[i];
+    }
+
+    /**
+     * @return number of known series
+     */
+    public int size() {
+	return size;
+    }
+
+    @Override
+    public String toString() {
+	return new StringBuilder("EWMA control charts for " + size + " series with lambda of " + lambda + " and limits of " + width + " sigma").toString();
+    }
+
+}
@@ -0,0 +1,379 @@
+/*
+ * 
+ * FunWithLambdas: EWMA
+ *
+ * Copyright (C) 2016 Oliver Löffler
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package net.raumzeitfalle.operators;
+
+import java.util.Arrays;
+import java.util.function.LongSupplier;
+
+/**
+ * Exponentially weighted moving averages (EWMA) for many independent series, each identified by a primitive long key.<br>
+ * <br>
+ * The state of all series (lambda, EWMA0, previous EWMA and number of samples) is kept in primitive arrays (struct of arrays),
+ * a series is located using an open addressing hash map from key to array index. Series are created with the default lambda and EWMA0
+ * on their first update or explicitly using {@link #register(long, double, double)}.
+ * Once all series are known, neither {@link #update(long, double)} nor the batch updates allocate any objects.<br>
+ * <br>
+ * Instances are not thread safe.
+ * @see <a href="http://www.itl.nist.gov/div898/handbook/pmc/section3/pmc324.htm">NIST Handbook of Engineering Statistics</a>
+ * @author Oliver Löffler
+ *
+ */
+public class MultiSeriesEwma {
+
+    /**
+     * EWMA0 value denoting that a series is initialized with its first sample, as done by EwmaFunctions.applyWithLambda().
+     */
+    public static final double FIRST_SAMPLE = Double.NaN;
+
+    private static final int BLOCK = 256;
+
+    private final double defaultLambda;
+
+    private final double defaultInitial;
+
+    private final LongIntHashMap index;
+
+    private final int[] block = new int[BLOCK];
+
+    private long[] keys;
+
+    private double[] lambdas;
+
+    private double[] initials;
+
+    private double[] previous;
+
+    private long[] counts;
+
+    private int size;
+
+    private EwmaMetrics metrics = EwmaMetrics.noop();
+
+    private EwmaMetrics.Recorder recorder = metrics.recorder();
+
+    private final LongSupplier staleness = this::getMaxStalenessNanos;
+
+    private long[] lastUpdates;
+
+    private MultiSeriesEwma(double lambda, double initial, int expectedSeries) {
+	DoubleEwma.throwExceptionWhenLambdaIsInvalid(lambda);
+	this.defaultLambda = lambda;
+	this.defaultInitial = initial;
+	int capacity = Math.max(16, expectedSeries);
+	this.index = new LongIntHashMap(capacity);
+	this.keys = new long[capacity];
+	this.lambdas = new double[capacity];
+	this.initials = new double[capacity];
+	this.previous = new double[capacity];
+	this.counts = new long[capacity];
+    }
+
+    /**
+     * Creates a multi series EWMA where new series start with an EWMA0 of 0.0.
+     * @param lambda default lambda for new series, denotes how strong the past value (n-1) is weighted compared to the preset value (n).
+     * @return {@link MultiSeriesEwma}
+     */
+    public static MultiSeriesEwma withLambda(double lambda) {
+	return new MultiSeriesEwma(lambda, 0.0, 16);
+    }
+
+    /**
+     * Creates a multi series EWMA where new series start with the given EWMA0.
+     * @param lambda default lambda for new series, denotes how strong the past value (n-1) is weighted compared to the preset value (n).
+     * @param initial default EWMA0 for new series, {@link #FIRST_SAMPLE} initializes each series with its first sample.
+     * @param expectedSeries number of series to reserve memory for
+     * @return {@link MultiSeriesEwma}
+     */
+    public static MultiSeriesEwma buildWith(double lambda, double initial, int expectedSeries) {
+	return new MultiSeriesEwma(lambda, initial, expectedSeries);
+    }
+
+    /**
+     * Restores all series from a snapshot, the state arrays are filled by bulk copies and only the key index is rebuilt.
+     * @param snapshot a snapshot as created by {@link #snapshot()}
+     * @return {@link MultiSeriesEwma}
+     */
+    public static MultiSeriesEwma buildWith(EwmaSnapshot snapshot) {
+	int n = snapshot.size();
+	MultiSeriesEwma ewma = new MultiSeriesEwma(snapshot.defaultLambda, snapshot.defaultInitial, n);
+	for (int i = 0; i < n; i++) {
+	    DoubleEwma.throwExceptionWhenLambdaIsInvalid(snapshot.lambdas[i]);
+	    ewma.index.put(snapshot.keys[i], i);
+	}
+	System.arraycopy(snapshot.keys, 0, ewma.keys, 0, n);
+	System.arraycopy(snapshot.lambdas, 0, ewma.lambdas, 0, n);
+	System.arraycopy(snapshot.initials, 0, ewma.initials, 0, n);
+	System.arraycopy(snapshot.previous, 0, ewma.previous, 0, n);
+	System.arraycopy(snapshot.counts, 0, ewma.counts, 0, n);
+	ewma.size = n;
+	return ewma;
+    }
+
+    /**
+     * Creates or resets the series with the given key.
+     * @param key identifies the series
+     * @param lambda denotes how strong the past value (n-1) is weighted compared to the preset value (n).
+     * @param initial EWMA0 value, {@link #FIRST_SAMPLE} initializes the series with its first sample.
+     */
+    public void register(long key, double lambda, double initial) {
+	DoubleEwma.throwExceptionWhenLambdaIsInvalid(lambda);
+	int i = index.get(key);
+	if (i == LongIntHashMap.ABSENT) {
+	    i = add(key);
+	}
+	lambdas[i] = lambda;
+	initials[i] = initial;
+	previous[i] = initial;
+	counts[i] = 0;
+    }
+
+    /**
+     * Applies the value to the series with the given key, the series is created if not yet known.
+     * @param key identifies the series
+     * @param value the present value (n)
+     * @return EWMA at (n) of the series
+     */
+    public double update(long key, double value) {
+	long start = recorder.start();
+	int i = indexOf(key);
+	double ewma = update(i, value);
+	recorder.touch(lastUpdates, i);
+	recorder.stop(start);
+	return ewma;
+    }
+
+    /**
+     * Applies values[i] to the series with key keys[i] for all i, series are created if not yet known.
+     * Series are resolved block wise first and then updated in a tight loop over the state arrays.
+     * @param keys identifies the series for each value, a key may occur multiple times
+     * @param values present values, must be as long as keys
+     */
+    public void updateBatch(long[] keys, double[] values) {
+	updateBatch(keys, values, null);
+    }
+
+    /**
+     * Applies values[i] to the series with key keys[i] for all i, series are created if not yet known.
+     * @param keys identifies the series for each value, a key may occur multiple times
+     * @param values present values, must be as long as keys
+     * @param target receives the EWMA for each value, must be as long as keys
+     */
+    public void updateBatch(long[] keys, double[] values, double[] target) {
+	if (keys.length != values.length) {
+	    throw new IllegalArgumentException("Number of keys (" + keys.length + ") and values (" + values.length + ") must be equal.");
+	}
+	long start = recorder.startBatch();
+	for (int from = 0; from < keys.length; from += BLOCK) {
+	    int to = Math.min(keys.length, from + BLOCK);
+	    for (int j = from; j < to; j++) {
+		block[j - from] = indexOf(keys[j]);
+	    }
+	    for (int j = from; j < to; j++) {
+		double ewma = update(block[j - from], values[j]);
+		recorder.touch(lastUpdates, block[j - from], start);
+		if (target != null) {
+		    target[j] = ewma;
+		}
+	    }
+	}
+	recorder.stopBatch(start, keys.length);
+    }
+
+    /**
+     * Resets the series with the given key and replays the window retained in history, e.g. after lambda was changed
+     * or a bad sample was retracted from history. The samples are read directly from the off-heap store.
+     * @param key identifies the series in this and in history
+     * @param lambda denotes how strong the past value (n-1) is weighted compared to the preset value (n).
+     * @param initial EWMA0 value for the oldest retained sample, {@link #FIRST_SAMPLE} initializes the series with that sample.
+     * @param history raw samples of the series
+     * @return EWMA at the most recent retained sample
+     */
+    public double recompute(long key, double lambda, double initial, SeriesRingStore history) {
+	register(key, lambda, initial);
+	int i = index.get(key);
+	if (!history.contains(key)) {
+	    return previous[i];
+	}
+	int h = history.indexOf(key);
+	for (int age = history.retainedAt(h) - 1; age >= 0; age--) {
+	    update(i, history.sample(h, age));
+	}
+	return previous[i];
+    }
+
+    private double update(int i, double value) {
+	double last = counts[i]++ == 0 && Double.isNaN(initials[i]) ? (initials[i] = value) : previous[i];
+	return previous[i] = lambdas[i] * value + (1 - lambdas[i]) * last;
+    }
+
+    private int indexOf(long key) {
+	int i = index.get(key);
+	if (i == LongIntHashMap.ABSENT) {
+	    i = add(key);
+	    lambdas[i] = defaultLambda;
+	    initials[i] = defaultInitial;
+	    previous[i] = defaultInitial;
+	}
+	return i;
+    }
+
+    private int add(long key) {
+	if (size == lambdas.length) {
+	    int capacity = size << 1;
+	    keys = Arrays.copyOf(keys, capacity);
+	    lambdas = Arrays.copyOf(lambdas, capacity);
+	    initials = Arrays.copyOf(initials, capacity);
+	    previous = Arrays.copyOf(previous, capacity);
+	    counts = Arrays.copyOf(counts, capacity);
+	    if (lastUpdates != null) {
+		lastUpdates = Arrays.copyOf(lastUpdates, capacity);
+	    }
+	}
+	if (lastUpdates != null) {
+	    lastUpdates[size] = recorder.now();
+	}
+	index.put(key, size);
+	keys[size] = key;
+	return size++;
+    }
+
+    /**
+     * Records updates, latencies and the time of the last update of each series. The time of the last update is taken for each
+     * single update and once per batch for {@link #updateBatch(long[], double[], double[])}.
+     * Instrumenting again with the same metrics has no effect, other metrics replace the previous ones.
+     * @param metrics receives the measurements, {@link EwmaMetrics#noop()} disables the instrumentation
+     * @return this
+     */
+    public MultiSeriesEwma instrumentWith(EwmaMetrics metrics) {
+	if (metrics == this.metrics) {
+	    return this;
+	}
+	recorder.flush();
+	this.metrics.untrackStaleness(staleness);
+	this.metrics = metrics;
+	recorder = metrics.recorder();
+	if (metrics.isEnabled()) {
+	    lastUpdates = new long[lambdas.length];
+	    Arrays.fill(lastUpdates, 0, size, recorder.now());
+	    metrics.trackStaleness(staleness);
+	} else {
+	    lastUpdates = null;
+	}
+	return this;
+    }
+
+    /**
+     * Publishes updates which were not yet counted by the metrics, see {@link #instrumentWith(EwmaMetrics)}.
+     */
+    public void flushMetrics() {
+	recorder.flush();
+    }
+
+    /**
+     * @param key identifies the series
+     * @return time since the last update of the series, -1 if the series is unknown or this is not instrumented
+     */
+    public long getStalenessNanos(long key) {
+	long[] updates = lastUpdates;
+	int i = index.get(key);
+	return updates == null || i == LongIntHashMap.ABSENT ? -1 : System.nanoTime() - updates[i];
+    }
+
+    /**
+     * @return time since the least recently updated series was updated, -1 if there are no series or this is not instrumented
+     */
+    public long getMaxStalenessNanos() {
+	long[] updates = lastUpdates;
+	int n = Math.min(size, updates == null ? 0 : updates.length);
+	if (n == 0) {
+	    return -1;
+	}
+	long oldest = Long.MAX_VALUE;
+	for (int i = 0; i < n; i++) {
+	    oldest = Math.min(oldest, updates[i]);
+	}
+	return System.nanoTime() - oldest;
+    }
+
+    /**
+     * @param key identifies the series
+     * @return true if the series is known
+     */
+    public boolean contains(long key) {
+	return index.get(key) != LongIntHashMap.ABSENT;
+    }
+
+    /**
+     * @param key identifies the series
+     * @return the most recent EWMA of the series, which is EWMA0 as long as no value was processed, or NaN for unknown series
+     */
+    public double getEWMA(long key) {
+	int i = index.get(key);
+	return i == LongIntHashMap.ABSENT ? Double.NaN : previous[i];
+    }
+
+    /**
+     * @param key identifies the series
+     * @return the value which was used to initialize the EWMA calculation of the series, or NaN for unknown series
+     */
+    public double getEWMA0(long key) {
+	int i = index.get(key);
+	return i == LongIntHashMap.ABSENT ? Double.NaN : initials[i];
+    }
+
+    /**
+     * @param key identifies the series
+     * @return lambda of the series, or NaN for unknown series
+     */
+    public double getLambda(long key) {
+	int i = index.get(key);
+	return i == LongIntHashMap.ABSENT ? Double.NaN : lambdas[i];
+    }
+
+    /**
+     * @param key identifies the series
+     * @return number of values processed for the series, 0 for unknown series
+     */
+    public long getCount(long key) {
+	int i = index.get(key);
+	return i == LongIntHashMap.ABSENT ? 0 : counts[i];
+    }
+
+    /**
+     * @return number of known series
+     */
+    public int size() {
+	return size;
+    }
+
+    /**
+     * @return the state of all series which can be written to disk and restored using {@link #buildWith(EwmaSnapshot)}.
+     */
+    public EwmaSnapshot snapshot() {
+	return new EwmaSnapshot(defaultLambda, defaultInitial, Arrays.copyOf(keys, size), Arrays.copyOf(lambdas, size),
+		Arrays.copyOf(initials, size), Arrays.copyOf(previous, size), Arrays.copyOf(counts, size), null);
+    }
+
+    @Override
+    public String toString() {
+	return new StringBuilder("Multi series EWMA with " + size + " series, default lambda of " + defaultLambda + " and EWMA_0 of " + defaultInitial).toString();
+    }
+
+}
@@ -0,0 +1,394 @@
+/*
+ * 
+ * FunWithLambdas: EWMA
+ *
+ * Copyright (C) 2016 Oliver Löffler
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package net.raumzeitfalle.operators;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * Bounded, lock-free ring buffer handing samples (timestamp, series key and value) from producer threads to one consumer thread.<br>
+ * <br>
+ * All slots are preallocated as primitive arrays, hence neither producers nor the consumer box values or allocate any objects.
+ * The consumer drains all published samples in batches, e.g. directly into a {@link MultiSeriesEwma}.
+ * Two variants are available:
+ * <ul>
+ * <li>{@link #singleProducer(int, WaitStrategy)}: exactly one producer thread, claiming a slot does not require any atomic operation.</li>
+ * <li>{@link #multiProducer(int, WaitStrategy)}: any number of producer threads, slots are claimed using compare and set and published per slot.</li>
+ * </ul>
+ * Methods for draining must only be called by one consumer thread at a time.
+ * @author Oliver Löffler
+ *
+ */
+public abstract class SampleRingBuffer {
+
+    /**
+     * Receives each drained sample.
+     */
+    @FunctionalInterface
+    public interface SampleConsumer {
+	/**
+	 * @param timestamp timestamp of the sample
+	 * @param series key of the series
+	 * @param value the value
+	 */
+	void accept(long timestamp, long series, double value);
+    }
+
+    /**
+     * Describes how {@link SampleRingBuffer#put(long, long, double)} and {@link SampleRingBuffer#take(SampleConsumer, int)} wait for space or samples.
+     */
+    public enum WaitStrategy {
+	/**
+	 * Lowest latency, keeps one core busy while waiting.
+	 */
+	BUSY_SPIN {
+	    @Override
+	    void idle() {
+		// spin
+	    }
+	},
+	/**
+	 * Gives other threads the chance to run while waiting.
+	 */
+	YIELD {
+	    @Override
+	    void idle() {
+		Thread.yield();
+	    }
+	},
+	/**
+	 * Parks the thread for a short time while waiting, lowest CPU usage but highest latency.
+	 */
+	PARK {
+	    @Override
+	    void idle() {
+		LockSupport.parkNanos(PARK_NANOS);
+	    }
+	};
+
+	private static final long PARK_NANOS = 10_000L;
+
+	abstract void idle();
+    }
+
+    private final long[] timestamps;
+
+    private final long[] series;
+
+    private final double[] values;
+
+    private final WaitStrategy waitStrategy;
+
+    final int capacity;
+
+    final int mask;
+
+    final Sequence consumed = new Sequence();
+
+    private long head;
+
+    SampleRingBuffer(int capacity, WaitStrategy waitStrategy) {
+	if (capacity < 2 || Integer.bitCount(capacity) != 1) {
+	    throw new IllegalArgumentException("The capacity must be a power of two greater than 1. Given was a capacity of " + capacity + ".");
+	}
+	this.capacity = capacity;
+	this.mask = capacity - 1;
+	this.timestamps = new long[capacity];
+	this.series = new long[capacity];
+	this.values = new double[capacity];
+	this.waitStrategy = waitStrategy;
+    }
+
+    /**
+     * Creates a ring buffer which must be fed by one producer thread only.
+     * @param capacity number of slots, must be a power of two
+     * @param waitStrategy used by blocking operations
+     * @return {@link SampleRingBuffer}
+     */
+    public static SampleRingBuffer singleProducer(int capacity, WaitStrategy waitStrategy) {
+	return new SingleProducer(capacity, waitStrategy);
+    }
+
+    /**
+     * Creates a ring buffer which can be fed by any number of producer threads.
+     * @param capacity number of slots, must be a power of two
+     * @param waitStrategy used by blocking operations
+     * @return {@link SampleRingBuffer}
+     */
+    public static SampleRingBuffer multiProducer(int capacity, WaitStrategy waitStrategy) {
+	return new MultiProducer(capacity, waitStrategy);
+    }
+
+    /**
+     * Publishes a sample if a slot is free.
+     * @param timestamp timestamp of the sample
+     * @param series key of the series
+     * @param value the value
+     * @return false if the ring buffer is full
+     */
+    public boolean offer(long timestamp, long series, double value) {
+	long sequence = claim();
+	if (sequence < 0) {
+	    return false;
+	}
+	int slot = (int) sequence & mask;
+	this.timestamps[slot] = timestamp;
+	this.series[slot] = series;
+	this.values[slot] = value;
+	publish(sequence);
+	return true;
+    }
+
+    /**
+     * Publishes a sample, waiting according to the wait strategy while the ring buffer is full.
+     * @param timestamp timestamp of the sample
+     * @param series key of the series
+     * @param value the value
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void put(long timestamp, long series, double value) throws InterruptedException {
+	while (!offer(timestamp, series, value)) {
+	    idle();
+	}
+    }
+
+    /**
+     * Passes all published samples, at most maxBatch, to the consumer without waiting.
+     * @param consumer receives the samples in order of publication
+     * @param maxBatch maximum number of samples to drain
+     * @return number of drained samples
+     */
+    public int drain(SampleConsumer consumer, int maxBatch) {
+	long from = head;
+	int n = available(from, maxBatch);
+	for (int i = 0; i < n; i++) {
+	    int slot = (int) (from + i) & mask;
+	    consumer.accept(timestamps[slot], series[slot], values[slot]);
+	}
+	release(from + n);
+	return n;
+    }
+
+    /**
+     * Applies all published samples, at most maxBatch, to their series without waiting.
+     * @param ewma receives the values of all series
+     * @param maxBatch maximum number of samples to drain
+     * @return number of drained samples
+     */
+    public int drainTo(MultiSeriesEwma ewma, int maxBatch) {
+	long from = head;
+	int n = available(from, maxBatch);
+	for (int i = 0; i < n; i++) {
+	    int slot = (int) (from + i) & mask;
+	    ewma.update(series[slot], values[slot]);
+	}
+	release(from + n);
+	return n;
+    }
+
+    /**
+     * Applies the values of all published samples, at most maxBatch, to one EWMA function without waiting, series keys are ignored.
+     * @param ewma receives all values, e.g. DoubleEwma or UnaryEwma
+     * @param maxBatch maximum number of samples to drain
+     * @return number of drained samples
+     */
+    public int drainTo(DoubleUnaryOperator ewma, int maxBatch) {
+	long from = head;
+	int n = available(from, maxBatch);
+	for (int i = 0; i < n; i++) {
+	    ewma.applyAsDouble(values[(int) (from + i) & mask]);
+	}
+	release(from + n);
+	return n;
+    }
+
+    /**
+     * Waits according to the wait strategy until at least one sample is published and drains up to maxBatch samples.
+     * @param consumer receives the samples in order of publication
+     * @param maxBatch maximum number of samples to drain
+     * @return number of drained samples, at least 1
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public int take(SampleConsumer consumer, int maxBatch) throws InterruptedException {
+	int n;
+	while ((n = drain(consumer, maxBatch)) == 0) {
+	    idle();
+	}
+	return n;
+    }
+
+    /**
+     * @return number of slots
+     */
+    public int capacity() {
+	return capacity;
+    }
+
+    /**
+     * @return number of samples not yet drained, a snapshot only while producers are active
+     */
+    public abstract int size();
+
+    private void idle() throws InterruptedException {
+	if (Thread.interrupted()) {
+	    throw new InterruptedException();
+	}
+	waitStrategy.idle();
+    }
+
+    private void release(long sequence) {
+	if (sequence != head) {
+	    head = sequence;
+	    consumed.lazySet(sequence);
+	}
+    }
+
+    /**
+     * @return sequence of a free slot, or -1 if the ring buffer is full
+     */
+    abstract long claim();
+
+    abstract void publish(long sequence);
+
+    /**
+     * @return number of consecutively published samples starting at sequence from, at most max
+     */
+    abstract int available(long from, int max);
+
+    private static final class SingleProducer extends SampleRingBuffer {
+
+	private final Sequence published = new Sequence();
+
+	private long tail;
+
+	private long cachedConsumed;
+
+	private long cachedPublished;
+
+	SingleProducer(int capacity, WaitStrategy waitStrategy) {
+	    super(capacity, waitStrategy);
+	}
+
+	@Override
+	long claim() {
+	    if (tail - cachedConsumed >= capacity) {
+		cachedConsumed = consumed.get();
+		if (tail - cachedConsumed >= capacity) {
+		    return -1;
+		}
+	    }
+	    return tail++;
+	}
+
+	@Override
+	void publish(long sequence) {
+	    published.lazySet(sequence + 1);
+	}
+
+	@Override
+	int available(long from, int max) {
+	    if (cachedPublished - from < max) {
+		cachedPublished = published.get();
+	    }
+	    return (int) Math.min(max, cachedPublished - from);
+	}
+
+	@Override
+	public int size() {
+	    return (int) (published.get() - consumed.get());
+	}
+    }
+
+    private static final class MultiProducer extends SampleRingBuffer {
+
+	private final Sequence claimed = new Sequence();
+
+	/**
+	 * Sequence + 1 of the sample last published in each slot.
+	 */
+	private final AtomicLongArray published;
+
+	MultiProducer(int capacity, WaitStrategy waitStrategy) {
+	    super(capacity, waitStrategy);
+	    this.published = new AtomicLongArray(capacity);
+	}
+
+	@Override
+	long claim() {
+	    long sequence;
+	    do {
+		sequence = claimed.get();
+		if (sequence - consumed.get() >= capacity) {
+		    return -1;
+		}
+	    } while (!claimed.compareAndSet(sequence, sequence + 1));
+	    return sequence;
+	}
+
+	@Override
+	void publish(long sequence) {
+	    published.lazySet((int) sequence & mask, sequence + 1);
+	}
+
+	@Override
+	int available(long from, int max) {
+	    int n = 0;
+	    while (n < max && published.get((int) (from + n) & mask) == from + n + 1) {
+		n++;
+	    }
+	    return n;
+	}
+
+	@Override
+	public int size() {
+	    return (int) Math.max(0, claimed.get() - consumed.get());
+	}
+    }
+
+    /**
+     * Sequence counter padded to avoid false sharing with neighbouring fields.
+     */
+    static final class Sequence {
+	private static final AtomicLongFieldUpdater<Sequence> VALUE = AtomicLongFieldUpdater.newUpdater(Sequence.class, "value");
+	long p0, p1, p2, p3, p4, p5, p6;
+	volatile long value;
+	long q0, q1, q2, q3, q4, q5, q6;
+
+	long get() {
+	    return value;
+	}
+
+	void lazySet(long sequence) {
+	    VALUE.lazySet(this, sequence);
+	}
+
+	boolean compareAndSet(long expected, long sequence) {
+	    return VALUE.compareAndSet(this, expected, sequence);
+	}
+    }
+
+    @Override
+    public String toString() {
+	return new StringBuilder(getClass().getSimpleName() + " ring buffer with " + capacity + " slots, " + waitStrategy + " wait strategy").toString();
+    }
+
+}
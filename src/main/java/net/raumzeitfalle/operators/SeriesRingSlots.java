@@ -0,0 +1,209 @@
+/*
+ * 
+ * FunWithLambdas: EWMA
+ *
+ * Copyright (C) 2016 Oliver Löffler
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package net.raumzeitfalle.operators;
+
+import java.nio.Buffer;
+import java.util.Arrays;
+import java.util.function.IntFunction;
+
+/**
+ * Bookkeeping shared by {@link SeriesRingStore} and {@link FloatSeriesRingStore}: the key index, the segments holding the slots
+ * and the write position and number of retained samples of each series. The stores only read and write the typed buffers.<br>
+ * <br>
+ * Series i owns the ring of depth elements starting at {@link #offset(int)} of {@link #segment(int)}, its sample of a given age
+ * is found at {@link #position(int, int)} within that ring.
+ * @param <B> type of the direct buffers holding the samples
+ * @author Oliver Löffler
+ *
+ */
+final class SeriesRingSlots<B extends Buffer> {
+
+    /**
+     * Upper bound of samples per segment.
+     */
+    static final int MAX_SEGMENT_SIZE = 1 << 24;
+
+    final int depth;
+
+    /**
+     * log2 of the number of series in the first segment.
+     */
+    private final int firstShift;
+
+    /**
+     * log2 of the number of series in a segment of maximum size.
+     */
+    private final int maxShift;
+
+    private final int bytesPerSample;
+
+    private final IntFunction<B> allocator;
+
+    private final LongIntHashMap index;
+
+    private Buffer[] segments = new Buffer[1];
+
+    private int segmentCount;
+
+    /**
+     * Number of series fitting into the allocated segments.
+     */
+    private int allocated;
+
+    private int[] heads;
+
+    private int[] retained;
+
+    private int size;
+
+    /**
+     * @param depth number of samples retained per series
+     * @param expectedSeries number of series to reserve memory for
+     * @param bytesPerSample size of one sample in the buffers
+     * @param allocator allocates a direct buffer for the given number of samples
+     */
+    SeriesRingSlots(int depth, int expectedSeries, int bytesPerSample, IntFunction<B> allocator) {
+	if (depth < 1 || depth > MAX_SEGMENT_SIZE) {
+	    throw new IllegalArgumentException("Depth must be between 1 and " + MAX_SEGMENT_SIZE + ". Given was " + depth + ".");
+	}
+	int capacity = Math.max(16, expectedSeries);
+	int maxSeries = Integer.highestOneBit(MAX_SEGMENT_SIZE / depth);
+	this.depth = depth;
+	this.firstShift = Integer.numberOfTrailingZeros(Math.min(maxSeries, Integer.highestOneBit(capacity - 1) << 1));
+	this.maxShift = Integer.numberOfTrailingZeros(maxSeries);
+	this.bytesPerSample = bytesPerSample;
+	this.allocator = allocator;
+	this.index = new LongIntHashMap(capacity);
+	this.heads = new int[capacity];
+	this.retained = new int[capacity];
+    }
+
+    /**
+     * @return index of the series, {@link LongIntHashMap#ABSENT} for unknown series
+     */
+    int find(long key) {
+	return index.get(key);
+    }
+
+    /**
+     * @return index of the series, which is created if not yet known
+     */
+    int indexOf(long key) {
+	int i = index.get(key);
+	return i == LongIntHashMap.ABSENT ? add(key) : i;
+    }
+
+    /**
+     * @return index of the series
+     * @throws IllegalArgumentException for unknown series
+     */
+    int require(long key) {
+	int i = index.get(key);
+	if (i == LongIntHashMap.ABSENT) {
+	    throw new IllegalArgumentException("Unknown series " + key + ".");
+	}
+	return i;
+    }
+
+    void requireAge(int i, int age) {
+	if (age < 0 || age >= retained[i]) {
+	    throw new IllegalArgumentException("Age must be between 0 and " + (retained[i] - 1) + ". Given was " + age + ".");
+	}
+    }
+
+    /**
+     * Advances the write position of series i, the oldest sample is dropped once the ring is full.
+     * @return position within the ring receiving the new sample
+     */
+    int append(int i) {
+	int head = heads[i];
+	heads[i] = head + 1 == depth ? 0 : head + 1;
+	if (retained[i] < depth) {
+	    retained[i]++;
+	}
+	return head;
+    }
+
+    /**
+     * Moves the write position of series i back by one, to be called after the younger samples were moved over the removed one.
+     */
+    void retract(int i) {
+	heads[i] = heads[i] == 0 ? depth - 1 : heads[i] - 1;
+	retained[i]--;
+    }
+
+    int retained(int i) {
+	return retained[i];
+    }
+
+    int position(int i, int age) {
+	int position = heads[i] - 1 - age;
+	return position < 0 ? position + depth : position;
+    }
+
+    /**
+     * Segment k &gt; 0 holds the series from first * 2^(k-1) to first * 2^k as long as this does not exceed the maximum segment size,
+     * afterwards all segments are of maximum size.
+     */
+    @SuppressWarnings("unchecked")
+    B segment(int i) {
+	if (i >>> maxShift != 0) {
+	    return (B) segments[maxShift - firstShift + (i >>> maxShift)];
+	}
+	return (B) segments[32 - Integer.numberOfLeadingZeros(i >>> firstShift)];
+    }
+
+    int offset(int i) {
+	if (i >>> maxShift != 0) {
+	    return (i & ((1 << maxShift) - 1)) * depth;
+	}
+	return (i >>> firstShift == 0 ? i : i - Integer.highestOneBit(i)) * depth;
+    }
+
+    int size() {
+	return size;
+    }
+
+    long offHeapBytes() {
+	return (long) allocated * depth * bytesPerSample;
+    }
+
+    private int seriesInSegment(int k) {
+	return k == 0 ? 1 << firstShift : 1 << Math.min(firstShift + k - 1, maxShift);
+    }
+
+    private int add(long key) {
+	if (size == heads.length) {
+	    heads = Arrays.copyOf(heads, size << 1);
+	    retained = Arrays.copyOf(retained, size << 1);
+	}
+	if (size == allocated) {
+	    if (segmentCount == segments.length) {
+		segments = Arrays.copyOf(segments, segmentCount << 1);
+	    }
+	    int series = seriesInSegment(segmentCount);
+	    allocated += series;
+	    segments[segmentCount++] = allocator.apply(series * depth);
+	}
+	index.put(key, size);
+	return size++;
+    }
+
+}
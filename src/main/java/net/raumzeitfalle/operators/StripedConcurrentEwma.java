@@ -0,0 +1,168 @@
+/*
+ * 
+ * FunWithLambdas: EWMA
+ *
+ * Copyright (C) 2016 Oliver Löffler
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package net.raumzeitfalle.operators;
+
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.function.DoubleConsumer;
+
+/**
+ * Thread safe exponentially weighted moving average (EWMA) for high contention, e.g. many ingest threads feeding one series.<br>
+ * <br>
+ * Instead of updating one shared value, each thread smoothes its values in one of several cells, starting from zero.
+ * The contribution of a cell is the affine map EWMA_out = (1-lambda)^k * EWMA_in + offset. Cells are folded into the shared {@link ConcurrentEwma}
+ * when the EWMA is read using {@link #get()}. A writer only waits while its cell is updated by another thread hashed to the same cell
+ * or folded by {@link #get()}, both hold the cell for a few instructions only.<br>
+ * <br>
+ * The relative order of values from different threads is undetermined anyway, here in addition the values of one cell are applied as a block.
+ * Values of one thread are always applied in order.
+ * @see <a href="http://www.itl.nist.gov/div898/handbook/pmc/section3/pmc324.htm">NIST Handbook of Engineering Statistics</a>
+ * @author Oliver Löffler
+ *
+ */
+public class StripedConcurrentEwma implements DoubleConsumer {
+
+    private final double lambda;
+
+    private final ConcurrentEwma shared;
+
+    private final Cell[] cells;
+
+    private final int mask;
+
+    private StripedConcurrentEwma(double lambda, double initial, int stripes) {
+	this.shared = ConcurrentEwma.buildWith(lambda, initial);
+	this.lambda = lambda;
+	int size = Integer.highestOneBit(Math.max(1, stripes) * 2 - 1);
+	this.cells = new Cell[size];
+	for (int i = 0; i < size; i++) {
+	    cells[i] = new Cell();
+	}
+	this.mask = size - 1;
+    }
+
+    /**
+     * Creates a striped EWMA with one cell per available processor.
+     * @param lambda denotes how strong the past value (n-1) is weighted compared to the preset value (n).
+     * @param initial EWMA0 value used for initialization
+     * @return {@link StripedConcurrentEwma}
+     */
+    public static StripedConcurrentEwma buildWith(double lambda, double initial) {
+	return new StripedConcurrentEwma(lambda, initial, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates a striped EWMA with the given number of cells (rounded up to a power of two).
+     * @param lambda denotes how strong the past value (n-1) is weighted compared to the preset value (n).
+     * @param initial EWMA0 value used for initialization
+     * @param stripes number of cells
+     * @return {@link StripedConcurrentEwma}
+     */
+    public static StripedConcurrentEwma buildWith(double lambda, double initial, int stripes) {
+	return new StripedConcurrentEwma(lambda, initial, stripes);
+    }
+
+    /**
+     * Adds the present value (n) to the cell of the current thread.
+     */
+    @Override
+    public void accept(double value) {
+	Cell cell = cell();
+	/* applying the value elsewhere would overtake the pending values of this thread in its cell */
+	while (!cell.tryAcquire()) {
+	    Thread.yield();
+	}
+	cell.offset = lambda * value + (1 - lambda) * cell.offset;
+	cell.scale *= (1 - lambda);
+	cell.release();
+    }
+
+    /**
+     * Folds all pending contributions into the shared EWMA.
+     * @return the most recent EWMA value
+     */
+    public double get() {
+	for (Cell cell : cells) {
+	    while (!cell.tryAcquire()) {
+		Thread.yield();
+	    }
+	    double scale = cell.scale;
+	    double offset = cell.offset;
+	    cell.scale = 1.0;
+	    cell.offset = 0.0;
+	    cell.release();
+	    if (scale != 1.0) {
+		shared.applyAffine(scale, offset);
+	    }
+	}
+	return shared.get();
+    }
+
+    /**
+     * @return the first value which was used to initialize the EWMA calculation.
+     */
+    public double getEWMA0() {
+	return shared.getEWMA0();
+    }
+
+    /**
+     * @return the lambda denotes how strong the past value (n-1) is weighted compared to the preset value (n).
+     */
+    public double getLambda() {
+	return this.lambda;
+    }
+
+    /**
+     * @return the cell of the current thread
+     */
+    Cell cell() {
+	return cells[probe() & mask];
+    }
+
+    private static int probe() {
+	long id = Thread.currentThread().getId() * 0x9E3779B97F4A7C15L;
+	return (int) (id >>> 32);
+    }
+
+    /**
+     * Affine map of the values smoothed in one cell, guarded by the busy flag. Padded to avoid false sharing of neighbouring cells.
+     */
+    static final class Cell {
+	private static final AtomicIntegerFieldUpdater<Cell> BUSY = AtomicIntegerFieldUpdater.newUpdater(Cell.class, "busy");
+	long p0, p1, p2, p3, p4, p5, p6;
+	volatile int busy;
+	double scale = 1.0;
+	double offset = 0.0;
+	long q0, q1, q2, q3, q4, q5, q6;
+
+	boolean tryAcquire() {
+	    return BUSY.compareAndSet(this, 0, 1);
+	}
+
+	void release() {
+	    busy = 0;
+	}
+    }
+
+    @Override
+    public String toString() {
+	return new StringBuilder("Striped EWMA with " + cells.length + " cells, " + shared).toString();
+    }
+
+}
@@ -0,0 +1,207 @@
+/*
+ * 
+ * FunWithLambdas: EWMA
+ *
+ * Copyright (C) 2016 Oliver Löffler
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package net.raumzeitfalle.operators;
+
+/**
+ * Exponentially weighted moving average (EWMA) for irregularly sampled series.<br>
+ * <br>
+ * Instead of a constant lambda, the weight of the present value depends on the time elapsed since the previous value:
+ * lambda(dt) = 1 - 2^(-dt / halfLife). Thus the influence of the past halves every half-life, regardless of how many values arrived meanwhile.
+ * For equally spaced values this equals an EWMA with lambda = 1 - 2^(-interval / halfLife).
+ * Values arriving at the same time as the previous value are merged with it: the EWMA at that time is computed from their mean,
+ * so none of them is dropped and their order does not matter. EWMA0 of {@link #buildWith(double, double, long)} counts as one such value.<br>
+ * <br>
+ * Decay factors are cached per interval in a small direct mapped table, so repeating intervals do not need to evaluate {@link Math#exp(double)}.
+ * Timestamps are primitive longs in any unit, the half-life must be given in the same unit.
+ * @see <a href="http://www.itl.nist.gov/div898/handbook/pmc/section3/pmc324.htm">NIST Handbook of Engineering Statistics</a>
+ * @author Oliver Löffler
+ *
+ */
+public class TimeDecayEwma {
+
+    private static final int CACHE_SIZE = 64;
+
+    private final double halfLife;
+
+    private final double rate;
+
+    private final long[] cachedIntervals = new long[CACHE_SIZE];
+
+    private final double[] cachedDecays = new double[CACHE_SIZE];
+
+    private double previous;
+
+    private long timestamp;
+
+    private boolean initialized;
+
+    /* EWMA before the most recent timestamp, its weight and the values merged at the most recent timestamp */
+    private double past;
+
+    private double pastDecay;
+
+    private double sum;
+
+    private long count;
+
+    private TimeDecayEwma(double halfLife) {
+	if (!(halfLife > 0) || Double.isInfinite(halfLife)) {
+	    throw new IllegalArgumentException("The half-life must be greater 0 and finite. Given was a half-life of " + halfLife + ".");
+	}
+	this.halfLife = halfLife;
+	this.rate = Math.log(2) / halfLife;
+	for (int i = 0; i < CACHE_SIZE; i++) {
+	    cachedIntervals[i] = -1;
+	}
+    }
+
+    /**
+     * Creates a time decay EWMA which is initialized with the first value.
+     * @param halfLife time after which the weight of the past has halved, in the unit of the timestamps
+     * @return {@link TimeDecayEwma}
+     */
+    public static TimeDecayEwma withHalfLife(double halfLife) {
+	return new TimeDecayEwma(halfLife);
+    }
+
+    /**
+     * Creates a time decay EWMA with an EWMA0 at the given time.
+     * @param halfLife time after which the weight of the past has halved, in the unit of the timestamps
+     * @param initial EWMA0 value
+     * @param timestamp time of EWMA0
+     * @return {@link TimeDecayEwma}
+     */
+    public static TimeDecayEwma buildWith(double halfLife, double initial, long timestamp) {
+	TimeDecayEwma ewma = new TimeDecayEwma(halfLife);
+	ewma.initialized = true;
+	ewma.timestamp = timestamp;
+	ewma.sum = initial;
+	ewma.count = 1;
+	ewma.previous = initial;
+	return ewma;
+    }
+
+    /**
+     * Half-life which corresponds to lambda for equally spaced values.
+     * @param lambda weight of the present value
+     * @param interval time between two values
+     * @return half-life in the unit of interval
+     */
+    public static double halfLifeOf(double lambda, double interval) {
+	DoubleEwma.throwExceptionWhenLambdaIsInvalid(lambda);
+	return -interval * Math.log(2) / Math.log1p(-lambda);
+    }
+
+    /**
+     * Applies the present value.
+     * @param timestamp time of the present value, must not be before the time of the previous value
+     * @param value the present value
+     * @return EWMA at timestamp
+     */
+    public double update(long timestamp, double value) {
+	if (!initialized) {
+	    this.initialized = true;
+	    this.timestamp = timestamp;
+	    this.sum = value;
+	    this.count = 1;
+	    return this.previous = value;
+	}
+	if (timestamp == this.timestamp) {
+	    sum += value;
+	    count++;
+	} else {
+	    pastDecay = decay(timestamp - this.timestamp);
+	    past = previous;
+	    this.timestamp = timestamp;
+	    sum = value;
+	    count = 1;
+	}
+	double mean = sum / count;
+	return this.previous = mean + pastDecay * (past - mean);
+    }
+
+    /**
+     * Applies all values in one pass.
+     * @param timestamps time of each value, non-decreasing
+     * @param values the values, as many as timestamps
+     * @param target receives the EWMA for each value, at least as long as values
+     * @return target
+     */
+    public double[] applyTo(long[] timestamps, double[] values, double[] target) {
+	if (timestamps.length != values.length) {
+	    throw new IllegalArgumentException("Number of timestamps (" + timestamps.length + ") and values (" + values.length + ") must be equal.");
+	}
+	for (int i = 0; i < values.length; i++) {
+	    target[i] = update(timestamps[i], values[i]);
+	}
+	return target;
+    }
+
+    /**
+     * @param interval time elapsed, must not be negative
+     * @return weight of the past after the given interval: 2^(-interval / halfLife)
+     */
+    double decay(long interval) {
+	if (interval < 0) {
+	    throw new IllegalArgumentException("Timestamps must not decrease. Given was an interval of " + interval + ".");
+	}
+	int slot = (int) (interval ^ (interval >>> 32)) & (CACHE_SIZE - 1);
+	if (cachedIntervals[slot] != interval) {
+	    cachedIntervals[slot] = interval;
+	    cachedDecays[slot] = Math.exp(-rate * interval);
+	}
+	return cachedDecays[slot];
+    }
+
+    /**
+     * @param interval time between two values
+     * @return the lambda of an EWMA for values equally spaced by interval
+     */
+    public double lambdaFor(long interval) {
+	return 1 - decay(interval);
+    }
+
+    /**
+     * @return the most recent EWMA value, NaN if not yet initialized
+     */
+    public double getPrevious() {
+	return initialized ? previous : Double.NaN;
+    }
+
+    /**
+     * @return time of the most recent value
+     */
+    public long getTimestamp() {
+	return timestamp;
+    }
+
+    /**
+     * @return time after which the weight of the past has halved
+     */
+    public double getHalfLife() {
+	return halfLife;
+    }
+
+    @Override
+    public String toString() {
+	return new StringBuilder("Time decay EWMA with half-life of " + halfLife + ", EWMA = " + getPrevious() + " at " + timestamp).toString();
+    }
+
+}
@@ -19,7 +19,7 @@
  */
 package net.raumzeitfalle.operators;
 
-import java.util.function.BinaryOperator;
+import java.util.function.DoubleUnaryOperator;
 import java.util.function.UnaryOperator;
 import java.util.stream.Stream;
 
@@ -30,21 +30,16 @@ import java.util.stream.Stream;
  * @author Oliver Löffler
  *
  */
-public class UnaryEwma implements UnaryOperator<Double> {
+public class UnaryEwma implements UnaryOperator<Double>, DoubleUnaryOperator {
 
-    private final double lambda;
-
-    private final double initial;
-
-    private double previous;
-
-    private final BinaryOperator<Double> function;
+    private final DoubleEwma function;
 
     private UnaryEwma(final double lambda, double initial){
-	this.lambda = lambda;
-	this.previous = initial;
-	this.initial = this.previous;
-	this.function = BinaryEwma.withLambda(lambda);
+	this(DoubleEwma.buildWith(lambda, initial));
+    }
+
+    private UnaryEwma(DoubleEwma function){
+	this.function = function;
     }
 
     /**
@@ -66,24 +61,51 @@ public class UnaryEwma implements UnaryOperator<Double> {
 	return new UnaryEwma(lambda, initial);
     }
 
+    /**
+     * Restores an EWMA function from a snapshot, hence replaying the history is not required after a restart.
+     * @param snapshot a snapshot of a single EWMA function as created by {@link #snapshot()}
+     * @return {@link UnaryEwma}
+     */
+    public static UnaryEwma buildWith(EwmaSnapshot snapshot){
+	return new UnaryEwma(DoubleEwma.buildWith(snapshot));
+    }
+
     @Override
     public Double apply(Double current) {
-	this.previous = function.apply(current, Double.valueOf(this.previous)).doubleValue();
-	return Double.valueOf(this.previous);
+	return Double.valueOf(applyAsDouble(current.doubleValue()));
+    }
+
+    @Override
+    public double applyAsDouble(double current) {
+	return function.applyAsDouble(current);
     }
 
     /**
      * @return the first value which was used to initialize the EWMA calculation.
      */
     public double getEWMA0() {
-	return this.initial;
+	return function.getEWMA0();
     }
 
     /**
      * @return The lambda denotes how strong the past value (n-1) is weighted compared to the preset value (n). A lambda of 1 gives all the weight to (n) whereas a lambda of 0.2 gives only 20% of the weight to (n) but 80% to (n-1).
      */
     public double getLambda() {
-	return this.lambda;
+	return function.getLambda();
+    }
+
+    /**
+     * @return number of values processed.
+     */
+    public long getCount() {
+	return function.getCount();
+    }
+
+    /**
+     * @return the state of this function which can be written to disk and restored using {@link #buildWith(EwmaSnapshot)}.
+     */
+    public EwmaSnapshot snapshot() {
+	return function.snapshot();
     }
 
     @Override
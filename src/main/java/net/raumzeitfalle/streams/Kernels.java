@@ -0,0 +1,371 @@
+package net.raumzeitfalle.streams;
+
+/**
+ * Reduction kernels operating on a range [from, to) of a primitive array.<br>
+ * <br>
+ * Loops over int and long are kept plain, the JIT compiler vectorizes these which is faster than unrolling them manually.
+ * Floating point additions must not be reordered by the JIT compiler, hence each addition waits for the previous one.
+ * The unrolled kernels use four independent accumulators instead, which allows the CPU to overlap the additions.
+ * @author Oliver Löffler
+ *
+ */
+final class Kernels {
+
+    /**
+     * Number of elements per block of the two pass moments algorithm.
+     */
+    static final int BLOCK = 2048;
+
+    private Kernels() {
+	/* static kernels only */
+    }
+
+    /**
+     * NaN is greater than any other value, as with Double.compare.
+     */
+    static boolean greater(double value, double best) {
+	return value > best || (value != value && best == best);
+    }
+
+    static int max(int[] a, int from, int to) {
+	int max = a[from];
+	for (int i = from + 1; i < to; i++) {
+	    if (a[i] > max) {
+		max = a[i];
+	    }
+	}
+	return max;
+    }
+
+    static int min(int[] a, int from, int to) {
+	int min = a[from];
+	for (int i = from + 1; i < to; i++) {
+	    if (a[i] < min) {
+		min = a[i];
+	    }
+	}
+	return min;
+    }
+
+    static long sum(int[] a, int from, int to) {
+	long sum = 0;
+	for (int i = from; i < to; i++) {
+	    sum += a[i];
+	}
+	return sum;
+    }
+
+    static int argMax(int[] a, int from, int to) {
+	int best = from;
+	int max = a[from];
+	for (int i = from + 1; i < to; i++) {
+	    if (a[i] > max) {
+		max = a[i];
+		best = i;
+	    }
+	}
+	return best;
+    }
+
+    /**
+     * @return index of the larger element, the smaller index if both are equal
+     */
+    static int firstMax(int[] a, int x, int y) {
+	int c = Integer.compare(a[y], a[x]);
+	return c > 0 || (c == 0 && y < x) ? y : x;
+    }
+
+    /**
+     * Two pass algorithm within blocks small enough to stay in cache, blocks are merged as described by Chan et al.
+     * @return count, mean and sum of squared deviations from the mean
+     */
+    static Moments moments(int[] a, int from, int to, boolean unrolled) {
+	long n = 0;
+	double mean = 0.0;
+	double m2 = 0.0;
+	for (int start = from; start < to; start += BLOCK) {
+	    int end = Math.min(to, start + BLOCK);
+	    int count = end - start;
+	    double blockMean = sum(a, start, end) / (double) count;
+	    double blockM2 = unrolled ? squaredDeviationsUnrolled(a, start, end, blockMean) : squaredDeviations(a, start, end, blockMean);
+	    long total = n + count;
+	    double delta = blockMean - mean;
+	    mean += delta * count / total;
+	    m2 += blockM2 + delta * delta * ((double) n * count / total);
+	    n = total;
+	}
+	return new Moments(n, n == 0 ? Double.NaN : mean, m2);
+    }
+
+    private static double squaredDeviations(int[] a, int from, int to, double mean) {
+	double sum = 0.0;
+	for (int i = from; i < to; i++) {
+	    double d = a[i] - mean;
+	    sum += d * d;
+	}
+	return sum;
+    }
+
+    private static double squaredDeviationsUnrolled(int[] a, int from, int to, double mean) {
+	double s0 = 0.0;
+	double s1 = 0.0;
+	double s2 = 0.0;
+	double s3 = 0.0;
+	int i = from;
+	for (; i + 3 < to; i += 4) {
+	    double d0 = a[i] - mean;
+	    double d1 = a[i + 1] - mean;
+	    double d2 = a[i + 2] - mean;
+	    double d3 = a[i + 3] - mean;
+	    s0 += d0 * d0;
+	    s1 += d1 * d1;
+	    s2 += d2 * d2;
+	    s3 += d3 * d3;
+	}
+	for (; i < to; i++) {
+	    double d = a[i] - mean;
+	    s0 += d * d;
+	}
+	return (s0 + s1) + (s2 + s3);
+    }
+
+    static long max(long[] a, int from, int to) {
+	long max = a[from];
+	for (int i = from + 1; i < to; i++) {
+	    if (a[i] > max) {
+		max = a[i];
+	    }
+	}
+	return max;
+    }
+
+    static long min(long[] a, int from, int to) {
+	long min = a[from];
+	for (int i = from + 1; i < to; i++) {
+	    if (a[i] < min) {
+		min = a[i];
+	    }
+	}
+	return min;
+    }
+
+    static long sum(long[] a, int from, int to) {
+	long sum = 0;
+	for (int i = from; i < to; i++) {
+	    sum += a[i];
+	}
+	return sum;
+    }
+
+    static int argMax(long[] a, int from, int to) {
+	int best = from;
+	long max = a[from];
+	for (int i = from + 1; i < to; i++) {
+	    if (a[i] > max) {
+		max = a[i];
+		best = i;
+	    }
+	}
+	return best;
+    }
+
+    /**
+     * @return index of the larger element, the smaller index if both are equal
+     */
+    static int firstMax(long[] a, int x, int y) {
+	int c = Long.compare(a[y], a[x]);
+	return c > 0 || (c == 0 && y < x) ? y : x;
+    }
+
+    /**
+     * Two pass algorithm within blocks small enough to stay in cache, blocks are merged as described by Chan et al.
+     * All values are shifted by the first value, so neither a block sum can overflow nor large values like epoch nanos lose their
+     * precision when converted to double.
+     * @return count, mean and sum of squared deviations from the mean
+     */
+    static Moments moments(long[] a, int from, int to, boolean unrolled) {
+	if (from >= to) {
+	    return new Moments(0, Double.NaN, 0.0);
+	}
+	long pivot = a[from];
+	long n = 0;
+	double mean = 0.0;
+	double m2 = 0.0;
+	for (int start = from; start < to; start += BLOCK) {
+	    int end = Math.min(to, start + BLOCK);
+	    int count = end - start;
+	    double blockMean = shiftedSum(a, start, end, pivot) / count;
+	    double blockM2 = unrolled ? squaredDeviationsUnrolled(a, start, end, pivot, blockMean) : squaredDeviations(a, start, end, pivot, blockMean);
+	    long total = n + count;
+	    double delta = blockMean - mean;
+	    mean += delta * count / total;
+	    m2 += blockM2 + delta * delta * ((double) n * count / total);
+	    n = total;
+	}
+	return new Moments(n, pivot + mean, m2);
+    }
+
+    /**
+     * @return {@code x - pivot}, exact as long as the difference fits into a double's mantissa
+     */
+    private static double shifted(long x, long pivot) {
+	/* with equal signs the long difference cannot overflow */
+	return (x ^ pivot) >= 0 ? (double) (x - pivot) : (double) x - (double) pivot;
+    }
+
+    private static double shiftedSum(long[] a, int from, int to, long pivot) {
+	double sum = 0.0;
+	for (int i = from; i < to; i++) {
+	    sum += shifted(a[i], pivot);
+	}
+	return sum;
+    }
+
+    private static double squaredDeviations(long[] a, int from, int to, long pivot, double mean) {
+	double sum = 0.0;
+	for (int i = from; i < to; i++) {
+	    double d = shifted(a[i], pivot) - mean;
+	    sum += d * d;
+	}
+	return sum;
+    }
+
+    private static double squaredDeviationsUnrolled(long[] a, int from, int to, long pivot, double mean) {
+	double s0 = 0.0;
+	double s1 = 0.0;
+	double s2 = 0.0;
+	double s3 = 0.0;
+	int i = from;
+	for (; i + 3 < to; i += 4) {
+	    double d0 = shifted(a[i], pivot) - mean;
+	    double d1 = shifted(a[i + 1], pivot) - mean;
+	    double d2 = shifted(a[i + 2], pivot) - mean;
+	    double d3 = shifted(a[i + 3], pivot) - mean;
+	    s0 += d0 * d0;
+	    s1 += d1 * d1;
+	    s2 += d2 * d2;
+	    s3 += d3 * d3;
+	}
+	for (; i < to; i++) {
+	    double d = shifted(a[i], pivot) - mean;
+	    s0 += d * d;
+	}
+	return (s0 + s1) + (s2 + s3);
+    }
+
+    static double max(double[] a, int from, int to) {
+	double max = a[from];
+	for (int i = from + 1; i < to; i++) {
+	    max = Math.max(max, a[i]);
+	}
+	return max;
+    }
+
+    static double min(double[] a, int from, int to) {
+	double min = a[from];
+	for (int i = from + 1; i < to; i++) {
+	    min = Math.min(min, a[i]);
+	}
+	return min;
+    }
+
+    static double sum(double[] a, int from, int to) {
+	double sum = 0;
+	for (int i = from; i < to; i++) {
+	    sum += a[i];
+	}
+	return sum;
+    }
+
+    static double sumUnrolled(double[] a, int from, int to) {
+	double s0 = 0;
+	double s1 = 0;
+	double s2 = 0;
+	double s3 = 0;
+	int i = from;
+	for (; i + 3 < to; i += 4) {
+	    s0 += a[i];
+	    s1 += a[i + 1];
+	    s2 += a[i + 2];
+	    s3 += a[i + 3];
+	}
+	for (; i < to; i++) {
+	    s0 += a[i];
+	}
+	return (s0 + s1) + (s2 + s3);
+    }
+
+    static int argMax(double[] a, int from, int to) {
+	int best = from;
+	double max = a[from];
+	for (int i = from + 1; i < to; i++) {
+	    if (greater(a[i], max)) {
+		max = a[i];
+		best = i;
+	    }
+	}
+	return best;
+    }
+
+    /**
+     * @return index of the larger element, the smaller index if both are equal
+     */
+    static int firstMax(double[] a, int x, int y) {
+	int c = Double.compare(a[y], a[x]);
+	return c > 0 || (c == 0 && y < x) ? y : x;
+    }
+
+    /**
+     * Two pass algorithm within blocks small enough to stay in cache, blocks are merged as described by Chan et al.
+     * @return count, mean and sum of squared deviations from the mean
+     */
+    static Moments moments(double[] a, int from, int to, boolean unrolled) {
+	long n = 0;
+	double mean = 0.0;
+	double m2 = 0.0;
+	for (int start = from; start < to; start += BLOCK) {
+	    int end = Math.min(to, start + BLOCK);
+	    int count = end - start;
+	    double blockMean = (unrolled ? sumUnrolled(a, start, end) : sum(a, start, end)) / (double) count;
+	    double blockM2 = unrolled ? squaredDeviationsUnrolled(a, start, end, blockMean) : squaredDeviations(a, start, end, blockMean);
+	    long total = n + count;
+	    double delta = blockMean - mean;
+	    mean += delta * count / total;
+	    m2 += blockM2 + delta * delta * ((double) n * count / total);
+	    n = total;
+	}
+	return new Moments(n, n == 0 ? Double.NaN : mean, m2);
+    }
+
+    private static double squaredDeviations(double[] a, int from, int to, double mean) {
+	double sum = 0.0;
+	for (int i = from; i < to; i++) {
+	    double d = a[i] - mean;
+	    sum += d * d;
+	}
+	return sum;
+    }
+
+    private static double squaredDeviationsUnrolled(double[] a, int from, int to, double mean) {
+	double s0 = 0.0;
+	double s1 = 0.0;
+	double s2 = 0.0;
+	double s3 = 0.0;
+	int i = from;
+	for (; i + 3 < to; i += 4) {
+	    double d0 = a[i] - mean;
+	    double d1 = a[i + 1] - mean;
+	    double d2 = a[i + 2] - mean;
+	    double d3 = a[i + 3] - mean;
+	    s0 += d0 * d0;
+	    s1 += d1 * d1;
+	    s2 += d2 * d2;
+	    s3 += d3 * d3;
+	}
+	for (; i < to; i++) {
+	    double d = a[i] - mean;
+	    s0 += d * d;
+	}
+	return (s0 + s1) + (s2 + s3);
+    }
+}
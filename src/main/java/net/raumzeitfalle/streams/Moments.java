@@ -0,0 +1,80 @@
+package net.raumzeitfalle.streams;
+
+/**
+ * Count, mean and variance of a sequence of numbers. Moments of two sequences can be merged exactly (Chan et al.),
+ * which allows to compute them blockwise and in parallel.
+ * @author Oliver Löffler
+ *
+ */
+public final class Moments {
+
+    private final long count;
+
+    private final double mean;
+
+    private final double squaredDeviations;
+
+    Moments(long count, double mean, double squaredDeviations) {
+	this.count = count;
+	this.mean = mean;
+	this.squaredDeviations = squaredDeviations;
+    }
+
+    /**
+     * @param other moments of the elements following the elements of this
+     * @return moments of all elements of this and other
+     */
+    public Moments merge(Moments other) {
+	if (other.count == 0) {
+	    return this;
+	}
+	if (count == 0) {
+	    return other;
+	}
+	long total = count + other.count;
+	double delta = other.mean - mean;
+	return new Moments(total, mean + delta * other.count / total,
+		squaredDeviations + other.squaredDeviations + delta * delta * ((double) count * other.count / total));
+    }
+
+    /**
+     * @return number of elements
+     */
+    public long getCount() {
+	return count;
+    }
+
+    /**
+     * @return arithmetic mean, NaN if there are no elements
+     */
+    public double getMean() {
+	return mean;
+    }
+
+    /**
+     * @return sample variance (divided by n-1), NaN if there are less than two elements
+     */
+    public double getVariance() {
+	return count < 2 ? Double.NaN : squaredDeviations / (count - 1);
+    }
+
+    /**
+     * @return population variance (divided by n), NaN if there are no elements
+     */
+    public double getPopulationVariance() {
+	return count == 0 ? Double.NaN : squaredDeviations / count;
+    }
+
+    /**
+     * @return square root of the sample variance
+     */
+    public double getStandardDeviation() {
+	return Math.sqrt(getVariance());
+    }
+
+    @Override
+    public String toString() {
+	return new StringBuilder("n = " + count + ", mean = " + mean + ", variance = " + getVariance()).toString();
+    }
+
+}
@@ -0,0 +1,707 @@
+package net.raumzeitfalle.streams;
+
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.BinaryOperator;
+
+/**
+ * Reductions (max, min, sum, argmax and mean/variance) of primitive arrays and NIO buffers without boxing.<br>
+ * <br>
+ * Three strategies are available:
+ * <ul>
+ * <li>{@link #sequential()}: one loop with one accumulator, the plain for-loop of FindLargestNumberBenchmark</li>
+ * <li>{@link #unrolled()}: sums and variances of floating point numbers use four independent accumulators, which removes the dependency
+ * of each addition on the previous one. Max, min and integral sums use plain loops as the JIT compiler already vectorizes these.</li>
+ * <li>{@link #parallel()}: unrolled kernels over chunks which are reduced recursively in a {@link ForkJoinPool}.
+ * Arrays shorter than two chunks are reduced without forking, the chunk size grows with the array length to create about four chunks per thread.</li>
+ * </ul>
+ * Heap buffers are reduced via their backing array. Direct buffers are copied chunkwise into a small array, hence off-heap data is reduced with the same kernels.
+ * Results of all strategies are equal except for sums and moments of doubles, where the order of additions differs and results may differ in the last bits.
+ * @author Oliver Löffler
+ *
+ */
+public final class PrimitiveReductions {
+
+    /**
+     * Default number of elements below which arrays are not split any further.
+     */
+    public static final int DEFAULT_MIN_CHUNK_SIZE = 1 << 15;
+
+    private static final int BUFFER_CHUNK = 1 << 10;
+
+    private static final Moments EMPTY = new Moments(0, Double.NaN, 0.0);
+
+    private final boolean unrolled;
+
+    private final ForkJoinPool pool;
+
+    private final int minChunkSize;
+
+    private PrimitiveReductions(boolean unrolled, ForkJoinPool pool, int minChunkSize) {
+	if (minChunkSize < 1) {
+	    throw new IllegalArgumentException("The minimum chunk size must be at least 1. Given was " + minChunkSize + ".");
+	}
+	this.unrolled = unrolled;
+	this.pool = pool;
+	this.minChunkSize = minChunkSize;
+    }
+
+    /**
+     * @return single threaded reductions using plain loops
+     */
+    public static PrimitiveReductions sequential() {
+	return new PrimitiveReductions(false, null, DEFAULT_MIN_CHUNK_SIZE);
+    }
+
+    /**
+     * @return single threaded reductions using unrolled floating point sums
+     */
+    public static PrimitiveReductions unrolled() {
+	return new PrimitiveReductions(true, null, DEFAULT_MIN_CHUNK_SIZE);
+    }
+
+    /**
+     * @return parallel reductions using the common {@link ForkJoinPool}
+     */
+    public static PrimitiveReductions parallel() {
+	return new PrimitiveReductions(true, ForkJoinPool.commonPool(), DEFAULT_MIN_CHUNK_SIZE);
+    }
+
+    /**
+     * @param pool executes the reductions
+     * @return parallel reductions using the given pool
+     */
+    public static PrimitiveReductions parallel(ForkJoinPool pool) {
+	return new PrimitiveReductions(true, pool, DEFAULT_MIN_CHUNK_SIZE);
+    }
+
+    /**
+     * @param pool executes the reductions
+     * @param minChunkSize number of elements below which arrays are not split any further
+     * @return parallel reductions using the given pool
+     */
+    public static PrimitiveReductions parallel(ForkJoinPool pool, int minChunkSize) {
+	return new PrimitiveReductions(true, pool, minChunkSize);
+    }
+
+    /**
+     * @param values at least one element
+     * @return the largest element
+     */
+    public int max(int[] values) {
+	return max(values, 0, values.length);
+    }
+
+    /**
+     * @param values at least one remaining element, heap or direct buffer
+     * @return the largest remaining element, the position of the buffer is not changed
+     */
+    public int max(IntBuffer values) {
+	int length = values.remaining();
+	if (values.hasArray()) {
+	    int from = values.arrayOffset() + values.position();
+	    return max(values.array(), from, from + length);
+	}
+	requireElements(length);
+	return reduce(0, length, (from, to) -> chunked(values, from, to,
+		(chunk, n, offset) -> Kernels.max(chunk, 0, n), Math::max), Math::max);
+    }
+
+    private int max(int[] values, int from, int to) {
+	requireElements(to - from);
+	if (isSequential(to - from)) {
+	    return Kernels.max(values, from, to);
+	}
+	return reduce(from, to, (f, t) -> Kernels.max(values, f, t), Math::max);
+    }
+
+    /**
+     * @param values at least one element
+     * @return the smallest element
+     */
+    public int min(int[] values) {
+	return min(values, 0, values.length);
+    }
+
+    /**
+     * @param values at least one remaining element, heap or direct buffer
+     * @return the smallest remaining element, the position of the buffer is not changed
+     */
+    public int min(IntBuffer values) {
+	int length = values.remaining();
+	if (values.hasArray()) {
+	    int from = values.arrayOffset() + values.position();
+	    return min(values.array(), from, from + length);
+	}
+	requireElements(length);
+	return reduce(0, length, (from, to) -> chunked(values, from, to,
+		(chunk, n, offset) -> Kernels.min(chunk, 0, n), Math::min), Math::min);
+    }
+
+    private int min(int[] values, int from, int to) {
+	requireElements(to - from);
+	if (isSequential(to - from)) {
+	    return Kernels.min(values, from, to);
+	}
+	return reduce(from, to, (f, t) -> Kernels.min(values, f, t), Math::min);
+    }
+
+    /**
+     * @param values any number of elements
+     * @return sum of all elements, 0 for an empty array
+     */
+    public long sum(int[] values) {
+	return sum(values, 0, values.length);
+    }
+
+    /**
+     * @param values heap or direct buffer
+     * @return sum of the remaining elements, the position of the buffer is not changed
+     */
+    public long sum(IntBuffer values) {
+	int length = values.remaining();
+	if (values.hasArray()) {
+	    int from = values.arrayOffset() + values.position();
+	    return sum(values.array(), from, from + length);
+	}
+	if (length == 0) {
+	    return 0;
+	}
+	return reduce(0, length, (from, to) -> chunked(values, from, to,
+		(chunk, n, offset) -> Kernels.sum(chunk, 0, n), Long::sum), Long::sum);
+    }
+
+    private long sum(int[] values, int from, int to) {
+	if (isSequential(to - from)) {
+	    return Kernels.sum(values, from, to);
+	}
+	return reduce(from, to, (f, t) -> Kernels.sum(values, f, t), Long::sum);
+    }
+
+    /**
+     * @param values any number of elements
+     * @return index of the first occurrence of the largest element, -1 for an empty array
+     */
+    public int argMax(int[] values) {
+	return argMax(values, 0, values.length);
+    }
+
+    /**
+     * @param values heap or direct buffer
+     * @return index of the first occurrence of the largest remaining element relative to the position of the buffer, -1 if no element remains
+     */
+    public int argMax(IntBuffer values) {
+	int length = values.remaining();
+	if (values.hasArray()) {
+	    int from = values.arrayOffset() + values.position();
+	    int index = argMax(values.array(), from, from + length);
+	    return index < 0 ? index : index - from;
+	}
+	if (length == 0) {
+	    return -1;
+	}
+	int position = values.position();
+	BinaryOperator<Integer> first = (x, y) -> {
+	    int c = Integer.compare(values.get(position + y), values.get(position + x));
+	    return c > 0 || (c == 0 && y < x) ? y : x;
+	};
+	return reduce(0, length, (from, to) -> chunked(values, from, to,
+		(chunk, n, offset) -> offset + Kernels.argMax(chunk, 0, n), first), first);
+    }
+
+    private int argMax(int[] values, int from, int to) {
+	if (to == from) {
+	    return -1;
+	}
+	if (isSequential(to - from)) {
+	    return Kernels.argMax(values, from, to);
+	}
+	return reduce(from, to, (f, t) -> Kernels.argMax(values, f, t), (x, y) -> Kernels.firstMax(values, x, y));
+    }
+
+    /**
+     * @param values any number of elements
+     * @return count, mean and variance of all elements
+     */
+    public Moments moments(int[] values) {
+	return moments(values, 0, values.length);
+    }
+
+    /**
+     * @param values heap or direct buffer
+     * @return count, mean and variance of the remaining elements, the position of the buffer is not changed
+     */
+    public Moments moments(IntBuffer values) {
+	int length = values.remaining();
+	if (values.hasArray()) {
+	    int from = values.arrayOffset() + values.position();
+	    return moments(values.array(), from, from + length);
+	}
+	if (length == 0) {
+	    return EMPTY;
+	}
+	return reduce(0, length, (from, to) -> chunked(values, from, to,
+		(chunk, n, offset) -> Kernels.moments(chunk, 0, n, unrolled), Moments::merge), Moments::merge);
+    }
+
+    private Moments moments(int[] values, int from, int to) {
+	if (isSequential(to - from)) {
+	    return Kernels.moments(values, from, to, unrolled);
+	}
+	return reduce(from, to, (f, t) -> Kernels.moments(values, f, t, true), Moments::merge);
+    }
+
+    private static <R> R chunked(IntBuffer values, int from, int to, ChunkKernel<int[], R> kernel, BinaryOperator<R> combine) {
+	IntBuffer view = values.duplicate();
+	int[] chunk = new int[Math.min(BUFFER_CHUNK, to - from)];
+	R result = null;
+	for (int start = from; start < to; start += chunk.length) {
+	    int n = Math.min(chunk.length, to - start);
+	    view.position(values.position() + start);
+	    view.get(chunk, 0, n);
+	    R partial = kernel.apply(chunk, n, start);
+	    result = result == null ? partial : combine.apply(result, partial);
+	}
+	return result;
+    }
+
+    /**
+     * @param values at least one element
+     * @return the largest element
+     */
+    public long max(long[] values) {
+	return max(values, 0, values.length);
+    }
+
+    /**
+     * @param values at least one remaining element, heap or direct buffer
+     * @return the largest remaining element, the position of the buffer is not changed
+     */
+    public long max(LongBuffer values) {
+	int length = values.remaining();
+	if (values.hasArray()) {
+	    int from = values.arrayOffset() + values.position();
+	    return max(values.array(), from, from + length);
+	}
+	requireElements(length);
+	return reduce(0, length, (from, to) -> chunked(values, from, to,
+		(chunk, n, offset) -> Kernels.max(chunk, 0, n), Math::max), Math::max);
+    }
+
+    private long max(long[] values, int from, int to) {
+	requireElements(to - from);
+	if (isSequential(to - from)) {
+	    return Kernels.max(values, from, to);
+	}
+	return reduce(from, to, (f, t) -> Kernels.max(values, f, t), Math::max);
+    }
+
+    /**
+     * @param values at least one element
+     * @return the smallest element
+     */
+    public long min(long[] values) {
+	return min(values, 0, values.length);
+    }
+
+    /**
+     * @param values at least one remaining element, heap or direct buffer
+     * @return the smallest remaining element, the position of the buffer is not changed
+     */
+    public long min(LongBuffer values) {
+	int length = values.remaining();
+	if (values.hasArray()) {
+	    int from = values.arrayOffset() + values.position();
+	    return min(values.array(), from, from + length);
+	}
+	requireElements(length);
+	return reduce(0, length, (from, to) -> chunked(values, from, to,
+		(chunk, n, offset) -> Kernels.min(chunk, 0, n), Math::min), Math::min);
+    }
+
+    private long min(long[] values, int from, int to) {
+	requireElements(to - from);
+	if (isSequential(to - from)) {
+	    return Kernels.min(values, from, to);
+	}
+	return reduce(from, to, (f, t) -> Kernels.min(values, f, t), Math::min);
+    }
+
+    /**
+     * @param values any number of elements
+     * @return sum of all elements, 0 for an empty array
+     */
+    public long sum(long[] values) {
+	return sum(values, 0, values.length);
+    }
+
+    /**
+     * @param values heap or direct buffer
+     * @return sum of the remaining elements, the position of the buffer is not changed
+     */
+    public long sum(LongBuffer values) {
+	int length = values.remaining();
+	if (values.hasArray()) {
+	    int from = values.arrayOffset() + values.position();
+	    return sum(values.array(), from, from + length);
+	}
+	if (length == 0) {
+	    return 0;
+	}
+	return reduce(0, length, (from, to) -> chunked(values, from, to,
+		(chunk, n, offset) -> Kernels.sum(chunk, 0, n), Long::sum), Long::sum);
+    }
+
+    private long sum(long[] values, int from, int to) {
+	if (isSequential(to - from)) {
+	    return Kernels.sum(values, from, to);
+	}
+	return reduce(from, to, (f, t) -> Kernels.sum(values, f, t), Long::sum);
+    }
+
+    /**
+     * @param values any number of elements
+     * @return index of the first occurrence of the largest element, -1 for an empty array
+     */
+    public int argMax(long[] values) {
+	return argMax(values, 0, values.length);
+    }
+
+    /**
+     * @param values heap or direct buffer
+     * @return index of the first occurrence of the largest remaining element relative to the position of the buffer, -1 if no element remains
+     */
+    public int argMax(LongBuffer values) {
+	int length = values.remaining();
+	if (values.hasArray()) {
+	    int from = values.arrayOffset() + values.position();
+	    int index = argMax(values.array(), from, from + length);
+	    return index < 0 ? index : index - from;
+	}
+	if (length == 0) {
+	    return -1;
+	}
+	int position = values.position();
+	BinaryOperator<Integer> first = (x, y) -> {
+	    int c = Long.compare(values.get(position + y), values.get(position + x));
+	    return c > 0 || (c == 0 && y < x) ? y : x;
+	};
+	return reduce(0, length, (from, to) -> chunked(values, from, to,
+		(chunk, n, offset) -> offset + Kernels.argMax(chunk, 0, n), first), first);
+    }
+
+    private int argMax(long[] values, int from, int to) {
+	if (to == from) {
+	    return -1;
+	}
+	if (isSequential(to - from)) {
+	    return Kernels.argMax(values, from, to);
+	}
+	return reduce(from, to, (f, t) -> Kernels.argMax(values, f, t), (x, y) -> Kernels.firstMax(values, x, y));
+    }
+
+    /**
+     * @param values any number of elements
+     * @return count, mean and variance of all elements
+     */
+    public Moments moments(long[] values) {
+	return moments(values, 0, values.length);
+    }
+
+    /**
+     * @param values heap or direct buffer
+     * @return count, mean and variance of the remaining elements, the position of the buffer is not changed
+     */
+    public Moments moments(LongBuffer values) {
+	int length = values.remaining();
+	if (values.hasArray()) {
+	    int from = values.arrayOffset() + values.position();
+	    return moments(values.array(), from, from + length);
+	}
+	if (length == 0) {
+	    return EMPTY;
+	}
+	return reduce(0, length, (from, to) -> chunked(values, from, to,
+		(chunk, n, offset) -> Kernels.moments(chunk, 0, n, unrolled), Moments::merge), Moments::merge);
+    }
+
+    private Moments moments(long[] values, int from, int to) {
+	if (isSequential(to - from)) {
+	    return Kernels.moments(values, from, to, unrolled);
+	}
+	return reduce(from, to, (f, t) -> Kernels.moments(values, f, t, true), Moments::merge);
+    }
+
+    private static <R> R chunked(LongBuffer values, int from, int to, ChunkKernel<long[], R> kernel, BinaryOperator<R> combine) {
+	LongBuffer view = values.duplicate();
+	long[] chunk = new long[Math.min(BUFFER_CHUNK, to - from)];
+	R result = null;
+	for (int start = from; start < to; start += chunk.length) {
+	    int n = Math.min(chunk.length, to - start);
+	    view.position(values.position() + start);
+	    view.get(chunk, 0, n);
+	    R partial = kernel.apply(chunk, n, start);
+	    result = result == null ? partial : combine.apply(result, partial);
+	}
+	return result;
+    }
+
+    /**
+     * @param values at least one element
+     * @return the largest element, NaN if any element is NaN.
+     */
+    public double max(double[] values) {
+	return max(values, 0, values.length);
+    }
+
+    /**
+     * @param values at least one remaining element, heap or direct buffer
+     * @return the largest remaining element, the position of the buffer is not changed
+     */
+    public double max(DoubleBuffer values) {
+	int length = values.remaining();
+	if (values.hasArray()) {
+	    int from = values.arrayOffset() + values.position();
+	    return max(values.array(), from, from + length);
+	}
+	requireElements(length);
+	return reduce(0, length, (from, to) -> chunked(values, from, to,
+		(chunk, n, offset) -> Kernels.max(chunk, 0, n), Math::max), Math::max);
+    }
+
+    private double max(double[] values, int from, int to) {
+	requireElements(to - from);
+	if (isSequential(to - from)) {
+	    return Kernels.max(values, from, to);
+	}
+	return reduce(from, to, (f, t) -> Kernels.max(values, f, t), Math::max);
+    }
+
+    /**
+     * @param values at least one element
+     * @return the smallest element, NaN if any element is NaN.
+     */
+    public double min(double[] values) {
+	return min(values, 0, values.length);
+    }
+
+    /**
+     * @param values at least one remaining element, heap or direct buffer
+     * @return the smallest remaining element, the position of the buffer is not changed
+     */
+    public double min(DoubleBuffer values) {
+	int length = values.remaining();
+	if (values.hasArray()) {
+	    int from = values.arrayOffset() + values.position();
+	    return min(values.array(), from, from + length);
+	}
+	requireElements(length);
+	return reduce(0, length, (from, to) -> chunked(values, from, to,
+		(chunk, n, offset) -> Kernels.min(chunk, 0, n), Math::min), Math::min);
+    }
+
+    private double min(double[] values, int from, int to) {
+	requireElements(to - from);
+	if (isSequential(to - from)) {
+	    return Kernels.min(values, from, to);
+	}
+	return reduce(from, to, (f, t) -> Kernels.min(values, f, t), Math::min);
+    }
+
+    /**
+     * @param values any number of elements
+     * @return sum of all elements, 0 for an empty array
+     */
+    public double sum(double[] values) {
+	return sum(values, 0, values.length);
+    }
+
+    /**
+     * @param values heap or direct buffer
+     * @return sum of the remaining elements, the position of the buffer is not changed
+     */
+    public double sum(DoubleBuffer values) {
+	int length = values.remaining();
+	if (values.hasArray()) {
+	    int from = values.arrayOffset() + values.position();
+	    return sum(values.array(), from, from + length);
+	}
+	if (length == 0) {
+	    return 0;
+	}
+	return reduce(0, length, (from, to) -> chunked(values, from, to,
+		(chunk, n, offset) -> unrolled ? Kernels.sumUnrolled(chunk, 0, n) : Kernels.sum(chunk, 0, n), Double::sum), Double::sum);
+    }
+
+    private double sum(double[] values, int from, int to) {
+	if (isSequential(to - from)) {
+	    return unrolled ? Kernels.sumUnrolled(values, from, to) : Kernels.sum(values, from, to);
+	}
+	return reduce(from, to, (f, t) -> Kernels.sumUnrolled(values, f, t), Double::sum);
+    }
+
+    /**
+     * @param values any number of elements
+     * @return index of the first occurrence of the largest element, NaN is greater than any other value, -1 for an empty array
+     */
+    public int argMax(double[] values) {
+	return argMax(values, 0, values.length);
+    }
+
+    /**
+     * @param values heap or direct buffer
+     * @return index of the first occurrence of the largest remaining element relative to the position of the buffer, -1 if no element remains
+     */
+    public int argMax(DoubleBuffer values) {
+	int length = values.remaining();
+	if (values.hasArray()) {
+	    int from = values.arrayOffset() + values.position();
+	    int index = argMax(values.array(), from, from + length);
+	    return index < 0 ? index : index - from;
+	}
+	if (length == 0) {
+	    return -1;
+	}
+	int position = values.position();
+	BinaryOperator<Integer> first = (x, y) -> {
+	    int c = Double.compare(values.get(position + y), values.get(position + x));
+	    return c > 0 || (c == 0 && y < x) ? y : x;
+	};
+	return reduce(0, length, (from, to) -> chunked(values, from, to,
+		(chunk, n, offset) -> offset + Kernels.argMax(chunk, 0, n), first), first);
+    }
+
+    private int argMax(double[] values, int from, int to) {
+	if (to == from) {
+	    return -1;
+	}
+	if (isSequential(to - from)) {
+	    return Kernels.argMax(values, from, to);
+	}
+	return reduce(from, to, (f, t) -> Kernels.argMax(values, f, t), (x, y) -> Kernels.firstMax(values, x, y));
+    }
+
+    /**
+     * @param values any number of elements
+     * @return count, mean and variance of all elements
+     */
+    public Moments moments(double[] values) {
+	return moments(values, 0, values.length);
+    }
+
+    /**
+     * @param values heap or direct buffer
+     * @return count, mean and variance of the remaining elements, the position of the buffer is not changed
+     */
+    public Moments moments(DoubleBuffer values) {
+	int length = values.remaining();
+	if (values.hasArray()) {
+	    int from = values.arrayOffset() + values.position();
+	    return moments(values.array(), from, from + length);
+	}
+	if (length == 0) {
+	    return EMPTY;
+	}
+	return reduce(0, length, (from, to) -> chunked(values, from, to,
+		(chunk, n, offset) -> Kernels.moments(chunk, 0, n, unrolled), Moments::merge), Moments::merge);
+    }
+
+    private Moments moments(double[] values, int from, int to) {
+	if (isSequential(to - from)) {
+	    return Kernels.moments(values, from, to, unrolled);
+	}
+	return reduce(from, to, (f, t) -> Kernels.moments(values, f, t, true), Moments::merge);
+    }
+
+    private static <R> R chunked(DoubleBuffer values, int from, int to, ChunkKernel<double[], R> kernel, BinaryOperator<R> combine) {
+	DoubleBuffer view = values.duplicate();
+	double[] chunk = new double[Math.min(BUFFER_CHUNK, to - from)];
+	R result = null;
+	for (int start = from; start < to; start += chunk.length) {
+	    int n = Math.min(chunk.length, to - start);
+	    view.position(values.position() + start);
+	    view.get(chunk, 0, n);
+	    R partial = kernel.apply(chunk, n, start);
+	    result = result == null ? partial : combine.apply(result, partial);
+	}
+	return result;
+    }
+
+    private boolean isSequential(int length) {
+	return pool == null || length < minChunkSize << 1;
+    }
+
+    private <R> R reduce(int from, int to, RangeReducer<R> leaf, BinaryOperator<R> combine) {
+	if (isSequential(to - from)) {
+	    return leaf.apply(from, to);
+	}
+	int chunkSize = Math.max(minChunkSize, (to - from) / (pool.getParallelism() << 2) + 1);
+	return pool.invoke(new ReduceTask<>(from, to, chunkSize, leaf, combine));
+    }
+
+    private static void requireElements(int length) {
+	if (length == 0) {
+	    throw new IllegalArgumentException("At least one element is required.");
+	}
+    }
+
+    @FunctionalInterface
+    interface RangeReducer<R> {
+	R apply(int from, int to);
+    }
+
+    @FunctionalInterface
+    interface ChunkKernel<A, R> {
+	R apply(A chunk, int length, int offset);
+    }
+
+    /**
+     * Splits the range in halves until it is not longer than the chunk size, partial results are combined in order.
+     */
+    private static final class ReduceTask<R> extends RecursiveTask<R> {
+
+	private static final long serialVersionUID = 1L;
+
+	private final int from;
+
+	private final int to;
+
+	private final int chunkSize;
+
+	private final RangeReducer<R> leaf;
+
+	private final BinaryOperator<R> combine;
+
+	ReduceTask(int from, int to, int chunkSize, RangeReducer<R> leaf, BinaryOperator<R> combine) {
+	    this.from = from;
+	    this.to = to;
+	    this.chunkSize = chunkSize;
+	    this.leaf = leaf;
+	    this.combine = combine;
+	}
+
+	@Override
+	protected R compute() {
+	    if (to - from <= chunkSize) {
+		return leaf.apply(from, to);
+	    }
+	    int middle = (from + to) >>> 1;
+	    ReduceTask<R> left = new ReduceTask<>(from, middle, chunkSize, leaf, combine);
+	    left.fork();
+	    R right = new ReduceTask<>(middle, to, chunkSize, leaf, combine).compute();
+	    return combine.apply(left.join(), right);
+	}
+    }
+
+    @Override
+    public String toString() {
+	if (pool == null) {
+	    return unrolled ? "Unrolled primitive reductions" : "Sequential primitive reductions";
+	}
+	return new StringBuilder("Parallel primitive reductions with " + pool.getParallelism() + " threads and a minimum chunk size of " + minChunkSize).toString();
+    }
+
+}
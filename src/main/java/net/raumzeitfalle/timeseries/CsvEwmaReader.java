@@ -0,0 +1,393 @@
+package net.raumzeitfalle.timeseries;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.function.DoubleUnaryOperator;
+
+import net.raumzeitfalle.operators.MultiSeriesEwma;
+
+/**
+ * Streaming reader for delimited text exports (e.g. CSV with timestamp, series id and value columns) feeding values directly into EWMA operators.<br>
+ * <br>
+ * Input is read into one reusable byte buffer, fields are located and numbers are parsed directly from the bytes.
+ * No String objects are created per field or line, except for numbers which cannot be parsed exactly by the fast path (more than 15 significant digits, NaN, Infinity).
+ * Series ids are mapped to a long key using a 64 bit FNV-1a hash of their bytes, see {@link #keyOf(String)}.<br>
+ * <br>
+ * A single pair of double quotes around a field is removed, delimiters within quotes are not supported. Lines with an empty or unparseable value are skipped.
+ * @author Oliver Loeffler
+ *
+ */
+public class CsvEwmaReader {
+
+	/**
+	 * Denotes that a column is not present.
+	 */
+	public static final int NO_COLUMN = -1;
+
+	private static final int DEFAULT_BUFFER_SIZE = 1 << 16;
+
+	private static final double[] POWERS_OF_TEN = {
+			1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+			1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+
+	private static final long MAX_EXACT_MANTISSA = 1L << 53;
+
+	/**
+	 * Receives each parsed record.
+	 */
+	@FunctionalInterface
+	public interface SampleConsumer {
+		/**
+		 * @param timestamp value of the timestamp column, or the record number if there is no timestamp column
+		 * @param series key of the series id, or 0 if there is no series column
+		 * @param value the parsed value
+		 */
+		void accept(long timestamp, long series, double value);
+	}
+
+	private final int timestampColumn;
+
+	private final int seriesColumn;
+
+	private final int valueColumn;
+
+	private byte delimiter = ',';
+
+	private boolean header = false;
+
+	private byte[] buffer;
+
+	private boolean invalid;
+
+	private CsvEwmaReader(int timestampColumn, int seriesColumn, int valueColumn, int bufferSize) {
+		if (valueColumn < 0) {
+			throw new IllegalArgumentException("A value column is required.");
+		}
+		this.timestampColumn = timestampColumn;
+		this.seriesColumn = seriesColumn;
+		this.valueColumn = valueColumn;
+		this.buffer = new byte[bufferSize];
+	}
+
+	/**
+	 * Creates a reader for a single series.
+	 * @param valueColumn zero based index of the value column
+	 * @return {@link CsvEwmaReader}
+	 */
+	public static CsvEwmaReader forValues(int valueColumn) {
+		return new CsvEwmaReader(NO_COLUMN, NO_COLUMN, valueColumn, DEFAULT_BUFFER_SIZE);
+	}
+
+	/**
+	 * Creates a reader for multiple series.
+	 * @param timestampColumn zero based index of the timestamp column (integral numbers, e.g. epoch milliseconds) or {@link #NO_COLUMN}
+	 * @param seriesColumn zero based index of the series id column or {@link #NO_COLUMN}
+	 * @param valueColumn zero based index of the value column
+	 * @return {@link CsvEwmaReader}
+	 */
+	public static CsvEwmaReader forColumns(int timestampColumn, int seriesColumn, int valueColumn) {
+		return new CsvEwmaReader(timestampColumn, seriesColumn, valueColumn, DEFAULT_BUFFER_SIZE);
+	}
+
+	static CsvEwmaReader forColumns(int timestampColumn, int seriesColumn, int valueColumn, int bufferSize) {
+		return new CsvEwmaReader(timestampColumn, seriesColumn, valueColumn, bufferSize);
+	}
+
+	/**
+	 * @param delimiter single byte field delimiter, default is ','
+	 * @return this reader
+	 */
+	public CsvEwmaReader withDelimiter(char delimiter) {
+		this.delimiter = (byte) delimiter;
+		return this;
+	}
+
+	/**
+	 * @param header true if the first line is a header line to be skipped
+	 * @return this reader
+	 */
+	public CsvEwmaReader withHeader(boolean header) {
+		this.header = header;
+		return this;
+	}
+
+	/**
+	 * Key of a series id as used by this reader.
+	 * @param seriesId series id as it appears in the file (without quotes)
+	 * @return 64 bit FNV-1a hash of the UTF-8 bytes of the series id
+	 */
+	public static long keyOf(String seriesId) {
+		byte[] bytes = seriesId.getBytes(StandardCharsets.UTF_8);
+		return hash(bytes, 0, bytes.length);
+	}
+
+	/**
+	 * Feeds each value into the series of its record.
+	 * @param input text to be parsed
+	 * @param ewma receives all values
+	 * @return {@link ParseReport}
+	 * @throws IOException when reading input fails
+	 */
+	public ParseReport read(InputStream input, MultiSeriesEwma ewma) throws IOException {
+		return read(input, (timestamp, series, value) -> ewma.update(series, value));
+	}
+
+	/**
+	 * Feeds all values into one EWMA function, e.g. DoubleEwma or UnaryEwma.
+	 * @param input text to be parsed
+	 * @param ewma receives all values
+	 * @return {@link ParseReport}
+	 * @throws IOException when reading input fails
+	 */
+	public ParseReport read(InputStream input, DoubleUnaryOperator ewma) throws IOException {
+		return read(input, (timestamp, series, value) -> ewma.applyAsDouble(value));
+	}
+
+	/**
+	 * Parses the input and passes each record to the consumer.
+	 * @param input text to be parsed
+	 * @param consumer receives all records
+	 * @return {@link ParseReport}
+	 * @throws IOException when reading input fails
+	 */
+	public ParseReport read(InputStream input, SampleConsumer consumer) throws IOException {
+		long start = System.nanoTime();
+		long bytes = 0;
+		long records = 0;
+		long skipped = 0;
+		boolean skipLine = header;
+		int limit = 0;
+		int read;
+		do {
+			read = input.read(buffer, limit, buffer.length - limit);
+			if (read > 0) {
+				bytes += read;
+				limit += read;
+			}
+			boolean endOfInput = read < 0;
+			int lineStart = 0;
+			for (int i = 0; i < limit; i++) {
+				if (buffer[i] == '\n' || (endOfInput && i == limit - 1)) {
+					int lineEnd = buffer[i] == '\n' ? i : limit;
+					if (skipLine) {
+						skipLine = false;
+					} else if (lineEnd > lineStart && !isBlank(lineStart, lineEnd)) {
+						if (parseLine(lineStart, lineEnd, records, consumer)) {
+							records++;
+						} else {
+							skipped++;
+						}
+					}
+					lineStart = i + 1;
+				}
+			}
+			limit -= lineStart;
+			System.arraycopy(buffer, lineStart, buffer, 0, limit);
+			if (limit == buffer.length) {
+				buffer = Arrays.copyOf(buffer, buffer.length << 1);
+			}
+		} while (read >= 0);
+		return new ParseReport(bytes, records, skipped, System.nanoTime() - start);
+	}
+
+	private boolean isBlank(int from, int to) {
+		return to - from == 1 && buffer[from] == '\r';
+	}
+
+	private boolean parseLine(int from, int to, long record, SampleConsumer consumer) {
+		if (to > from && buffer[to - 1] == '\r') {
+			to--;
+		}
+		long timestamp = record;
+		long series = 0;
+		double value = Double.NaN;
+		boolean hasValue = false;
+		int column = 0;
+		int fieldStart = from;
+		for (int i = from; i <= to; i++) {
+			if (i == to || buffer[i] == delimiter) {
+				int start = fieldStart;
+				int end = i;
+				if (end - start >= 2 && buffer[start] == '"' && buffer[end - 1] == '"') {
+					start++;
+					end--;
+				}
+				if (column == valueColumn) {
+					value = parseDouble(start, end);
+					hasValue = !invalid;
+				} else if (column == seriesColumn) {
+					series = hash(buffer, start, end);
+				} else if (column == timestampColumn) {
+					timestamp = parseLong(start, end);
+					if (invalid) {
+						return false;
+					}
+				}
+				column++;
+				fieldStart = i + 1;
+			}
+		}
+		if (!hasValue) {
+			return false;
+		}
+		consumer.accept(timestamp, series, value);
+		return true;
+	}
+
+	/*
+	 * Accumulates negatively as the range of long is asymmetric, a sign without digits and values out of range are invalid.
+	 */
+	private long parseLong(int from, int to) {
+		boolean negative = from < to && buffer[from] == '-';
+		int first = negative ? from + 1 : from;
+		invalid = first == to;
+		long result = 0;
+		for (int i = first; i < to; i++) {
+			int digit = buffer[i] - '0';
+			if (digit < 0 || digit > 9 || result < (Long.MIN_VALUE + digit) / 10) {
+				invalid = true;
+				return 0;
+			}
+			result = result * 10 - digit;
+		}
+		if (!negative && result == Long.MIN_VALUE) {
+			invalid = true;
+			return 0;
+		}
+		return negative ? result : -result;
+	}
+
+	/*
+	 * Fast path: decimal mantissa below 2^53 and a decimal exponent of at most 22 are both exactly representable,
+	 * hence a single multiplication or division yields the correctly rounded result. All other numbers are passed to Double.parseDouble.
+	 */
+	private double parseDouble(int from, int to) {
+		invalid = false;
+		int i = from;
+		while (i < to && buffer[i] == ' ') {
+			i++;
+		}
+		while (to > i && buffer[to - 1] == ' ') {
+			to--;
+		}
+		if (i == to) {
+			invalid = true;
+			return Double.NaN;
+		}
+		int start = i;
+		boolean negative = buffer[i] == '-';
+		if (negative || buffer[i] == '+') {
+			i++;
+		}
+		long mantissa = 0;
+		int exponent = 0;
+		int digits = 0;
+		boolean exact = true;
+		for (; i < to && buffer[i] >= '0' && buffer[i] <= '9'; i++, digits++) {
+			mantissa = mantissa * 10 + (buffer[i] - '0');
+			exact &= mantissa < MAX_EXACT_MANTISSA;
+		}
+		if (i < to && buffer[i] == '.') {
+			for (i++; i < to && buffer[i] >= '0' && buffer[i] <= '9'; i++, digits++) {
+				mantissa = mantissa * 10 + (buffer[i] - '0');
+				exact &= mantissa < MAX_EXACT_MANTISSA;
+				exponent--;
+			}
+		}
+		if (digits > 0 && i < to && (buffer[i] == 'e' || buffer[i] == 'E')) {
+			int e = (int) parseLong(i + 1 + (i + 1 < to && buffer[i + 1] == '+' ? 1 : 0), to);
+			if (invalid || to - i > 5) {
+				return parseFallback(start, to);
+			}
+			exponent += e;
+			i = to;
+		}
+		if (digits == 0 || i != to || !exact || exponent < -22 || exponent > 22) {
+			return parseFallback(start, to);
+		}
+		double value = exponent < 0 ? mantissa / POWERS_OF_TEN[-exponent] : mantissa * POWERS_OF_TEN[exponent];
+		return negative ? -value : value;
+	}
+
+	private double parseFallback(int from, int to) {
+		try {
+			invalid = false;
+			return Double.parseDouble(new String(buffer, from, to - from, StandardCharsets.US_ASCII));
+		} catch (NumberFormatException e) {
+			invalid = true;
+			return Double.NaN;
+		}
+	}
+
+	private static long hash(byte[] bytes, int from, int to) {
+		long hash = 0xcbf29ce484222325L;
+		for (int i = from; i < to; i++) {
+			hash ^= bytes[i] & 0xff;
+			hash *= 0x100000001b3L;
+		}
+		return hash;
+	}
+
+	/**
+	 * Statistics of one read operation.
+	 */
+	public static final class ParseReport {
+
+		private final long bytes;
+
+		private final long records;
+
+		private final long skipped;
+
+		private final long nanos;
+
+		ParseReport(long bytes, long records, long skipped, long nanos) {
+			this.bytes = bytes;
+			this.records = records;
+			this.skipped = skipped;
+			this.nanos = nanos;
+		}
+
+		/**
+		 * @return number of bytes read
+		 */
+		public long getBytes() {
+			return bytes;
+		}
+
+		/**
+		 * @return number of records passed to the consumer
+		 */
+		public long getRecords() {
+			return records;
+		}
+
+		/**
+		 * @return number of lines skipped due to missing or invalid values (header line not included)
+		 */
+		public long getSkipped() {
+			return skipped;
+		}
+
+		/**
+		 * @return elapsed time in nanoseconds
+		 */
+		public long getNanos() {
+			return nanos;
+		}
+
+		/**
+		 * @return parse throughput in MB/s (1 MB = 10^6 bytes)
+		 */
+		public double getMegabytesPerSecond() {
+			return nanos == 0 ? 0.0 : bytes * 1e3 / nanos;
+		}
+
+		@Override
+		public String toString() {
+			return new StringBuilder("Parsed " + bytes + " bytes into " + records + " records (" + skipped + " skipped) in " + (nanos / 1_000_000) + " ms, " + getMegabytesPerSecond() + " MB/s").toString();
+		}
+	}
+}
@@ -0,0 +1,167 @@
+package net.raumzeitfalle.timeseries;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.stream.IntStream;
+
+import net.raumzeitfalle.operators.DoubleEwma;
+
+/**
+ * Out-of-core EWMA for binary time series files consisting of little-endian doubles.<br>
+ * <br>
+ * Source and target are memory mapped chunk by chunk, hence the heap usage does not depend on the file size.
+ * Each chunk of the target is forced to the storage device once it is written.
+ * The same semantics as in {@link EwmaFunctions#applyWithLambda(double, double[])} apply, EWMA0 is the first sample of the source.
+ * @author Oliver Loeffler
+ *
+ */
+public class EwmaFiles {
+
+	private static final int BYTES_PER_SAMPLE = Double.BYTES;
+	
+	private static final long DEFAULT_CHUNK_SAMPLES = 1 << 23;
+	
+	private EwmaFiles() {
+		/* static methods only */
+	}
+	
+	/**
+	 * Calculates the EWMA for the time series stored in source and writes the result into target, which is created or overwritten.
+	 * @param lambda weight of first over second value (e.g. 0.2 gives 20% weight to the first value and 80% weight to the second value).
+	 * @param source file of little-endian doubles
+	 * @param target file receiving the filtered time series as little-endian doubles
+	 * @throws IOException when reading source or writing target fails
+	 */
+	public static void applyWithLambda(double lambda, Path source, Path target) throws IOException {
+		apply(lambda, source, target, DEFAULT_CHUNK_SAMPLES, false);
+	}
+	
+	/**
+	 * Calculates the EWMA for the time series stored in source and writes the result into target using all cores of the common ForkJoinPool.
+	 * Chunks are reduced to affine maps in parallel, composed sequentially and finally smoothed in parallel, see {@link DoubleEwma#applyInParallel(double[], double[])}.
+	 * @param lambda weight of first over second value (e.g. 0.2 gives 20% weight to the first value and 80% weight to the second value).
+	 * @param source file of little-endian doubles
+	 * @param target file receiving the filtered time series as little-endian doubles
+	 * @throws IOException when reading source or writing target fails
+	 */
+	public static void applyWithLambdaInParallel(double lambda, Path source, Path target) throws IOException {
+		apply(lambda, source, target, DEFAULT_CHUNK_SAMPLES, true);
+	}
+	
+	/**
+	 * Calculates the EWMA for a time series compressed with {@link GorillaEncoder} and writes the compressed result into target, which is created or overwritten.
+	 * Samples are decoded, smoothed and encoded one by one while streaming through both files, timestamps are retained.
+	 * @param lambda weight of first over second value (e.g. 0.2 gives 20% weight to the first value and 80% weight to the second value).
+	 * @param source file written by {@link GorillaEncoder}
+	 * @param target file receiving the filtered time series in the same format
+	 * @throws IOException when reading source or writing target fails
+	 */
+	public static void applyWithLambdaCompressed(double lambda, Path source, Path target) throws IOException {
+		EwmaFunctions.throwExceptionAtInvalidLambda(lambda);
+		try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+			 FileChannel out = FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			
+			GorillaDecoder decoder = GorillaDecoder.from(in);
+			GorillaEncoder encoder = decoder.hasTimestamps() ? GorillaEncoder.forSamples(out) : GorillaEncoder.forValues(out);
+			if (decoder.next()) {
+				double ewma0 = decoder.getValue();
+				DoubleEwma ewma = DoubleEwma.buildWith(lambda, ewma0);
+				if (decoder.hasTimestamps()) {
+					encoder.encode(decoder.getTimestamp(), ewma.applyAsDouble(ewma0));
+				} else {
+					encoder.encode(ewma.applyAsDouble(ewma0));
+				}
+				decoder.applyTo(ewma, encoder);
+			}
+			encoder.finish();
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+	
+	static void apply(double lambda, Path source, Path target, long chunkSamples, boolean parallel) throws IOException {
+		EwmaFunctions.throwExceptionAtInvalidLambda(lambda);
+		try (RandomAccessFile input = new RandomAccessFile(source.toFile(), "r");
+			 RandomAccessFile output = new RandomAccessFile(target.toFile(), "rw")) {
+			
+			long length = input.length();
+			if (length % BYTES_PER_SAMPLE != 0) {
+				throw new IllegalArgumentException("Size of " + source + " (" + length + " bytes) is not a multiple of " + BYTES_PER_SAMPLE + ".");
+			}
+			output.setLength(length);
+			long samples = length / BYTES_PER_SAMPLE;
+			if (samples == 0) {
+				return;
+			}
+			
+			FileChannel in = input.getChannel();
+			FileChannel out = output.getChannel();
+			int chunks = (int) ((samples + chunkSamples - 1) / chunkSamples);
+			double ewma0 = map(in, MapMode.READ_ONLY, 0, 1).get(0);
+			
+			if (!parallel) {
+				double carry = ewma0;
+				for (int c = 0; c < chunks; c++) {
+					carry = smooth(in, out, lambda, c, chunkSamples, samples, carry);
+				}
+				return;
+			}
+			
+			double[] offsets = new double[chunks];
+			IntStream.range(0, chunks).parallel().forEach(c -> offsets[c] = reduce(in, lambda, c, chunkSamples, samples));
+			double[] carries = new double[chunks];
+			double scale = Math.pow(1 - lambda, chunkSamples);
+			carries[0] = ewma0;
+			for (int c = 1; c < chunks; c++) {
+				carries[c] = scale * carries[c - 1] + offsets[c - 1];
+			}
+			IntStream.range(0, chunks).parallel().forEach(c -> smooth(in, out, lambda, c, chunkSamples, samples, carries[c]));
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+	
+	private static double reduce(FileChannel in, double lambda, int chunk, long chunkSamples, long samples) {
+		long from = chunk * chunkSamples;
+		DoubleBuffer values = map(in, MapMode.READ_ONLY, from, Math.min(samples, from + chunkSamples) - from);
+		DoubleEwma ewma = DoubleEwma.buildWith(lambda, 0.0);
+		while (values.hasRemaining()) {
+			ewma.applyAsDouble(values.get());
+		}
+		return ewma.getPrevious();
+	}
+	
+	private static double smooth(FileChannel in, FileChannel out, double lambda, int chunk, long chunkSamples, long samples, double carry) {
+		long from = chunk * chunkSamples;
+		long count = Math.min(samples, from + chunkSamples) - from;
+		DoubleEwma ewma = DoubleEwma.buildWith(lambda, carry);
+		MappedByteBuffer target = mapBytes(out, MapMode.READ_WRITE, from, count);
+		ewma.applyTo(map(in, MapMode.READ_ONLY, from, count), asDoubles(target));
+		target.force();
+		return ewma.getPrevious();
+	}
+	
+	private static DoubleBuffer map(FileChannel channel, MapMode mode, long fromSample, long samples) {
+		return asDoubles(mapBytes(channel, mode, fromSample, samples));
+	}
+	
+	private static MappedByteBuffer mapBytes(FileChannel channel, MapMode mode, long fromSample, long samples) {
+		try {
+			return channel.map(mode, fromSample * BYTES_PER_SAMPLE, samples * BYTES_PER_SAMPLE);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+	
+	private static DoubleBuffer asDoubles(MappedByteBuffer bytes) {
+		return bytes.order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+	}
+}
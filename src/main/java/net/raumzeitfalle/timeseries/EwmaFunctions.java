@@ -1,12 +1,17 @@
 package net.raumzeitfalle.timeseries;
 
-import java.util.LinkedList;
-import java.util.List;
+import java.util.Arrays;
 import java.util.function.BiFunction;
 import java.util.function.Function;
-import java.util.stream.Collectors;
+import java.util.stream.Collector;
+import java.util.stream.DoubleStream;
 import java.util.stream.Stream;
 
+import net.raumzeitfalle.operators.DoubleEwma;
+import net.raumzeitfalle.operators.EwmaMetrics;
+import net.raumzeitfalle.operators.FloatEwma;
+import net.raumzeitfalle.operators.TimeDecayEwma;
+
 /**
  * Implementation of an exponentially weighted moving average (EWMA) function.
  * @see  <a href="http://www.itl.nist.gov/div898/handbook/index.htm">NIST Handbook of Engineering Statistics</a>
@@ -39,29 +44,30 @@ public class EwmaFunctions {
 	 * Do not use this function directly in a Stream.map() function, instead please use static EwmaFunctions.applyToStream() method.
 	 * <br>
 	 * The processing order of elements is of fundamental importance for this functions, thus using parallel streams and unsorted collections must be avoided as for these cases the processing order of elements is undetermined. In this case, EWMA results may be wrong.
+	 * For parallel streams use the collectors {@link #toEwma(double, double)} and {@link #toEwmaSeries(double, double)} instead.
      * @param lambda denotes how strong the past value (n-1) is weighted compared to the preset value (n). A lambda of 1 gives all the weight to (n) whereas a lambda of 0.2 gives only 20% of the weight to (n) but 80% to (n-1).
 	 * @param ewma0 start value for EWMA calculation. E.g. for a stream of Doubles this means, when the expected result is EWMA_n (at index n) then ewma0 parameter denotes the EWMA at index n-1.
 	 * @return A {@link Function} which takes and returns {@link Double} values
 	 */
 	public static Function<Double, Double> withLambdaAndInitial(final double lambda, final double ewma0) {
-		BiFunction<Double, Double, Double> function = getStatelessBiFunction(lambda);
+		throwExceptionAtInvalidLambda(lambda);
 		return new Function<Double, Double>() {
 			private final double initial = ewma0;
 			private final double weight = lambda;
-			private Double predecessor = Double.valueOf(ewma0);
+			private final DoubleEwma function = DoubleEwma.buildWith(lambda, ewma0);
 			
 			@Override
 			public Double apply(Double t) {
-			    return predecessor = function.apply(t, predecessor);
+			    return Double.valueOf(function.applyAsDouble(t.doubleValue()));
 			}
 			
 			@Override
 			public String toString() {
-			    return new StringBuilder("EWMA_n = " + weight + "n + " + (1 - weight) +"(n-1) with EWMA_0 = " + initial + " and (n-1) = " + predecessor ).toString();}
+			    return new StringBuilder("EWMA_n = " + weight + "n + " + (1 - weight) +"(n-1) with EWMA_0 = " + initial + " and (n-1) = " + function.getPrevious() ).toString();}
 		};
 	}
 
-	private static void throwExceptionAtInvalidLambda(final double lambda) {
+	static void throwExceptionAtInvalidLambda(final double lambda) {
 		if (!Double.isFinite(lambda) || lambda <= 0.0 || lambda > 1.0) {
 			throw new IllegalArgumentException("Lambda must be greater 0 and less than or equal to 1.");
 		}
@@ -74,30 +80,198 @@ public class EwmaFunctions {
 	 * @return filtered time series in form of a double[] 
 	 */
 	public double[] applyWithLambda(double lambda, double[] timeSeries) {
-		Function<Double, Double> function = withLambdaAndInitial(lambda, timeSeries[0]);
-		double[] ewmaFiltered = new double[timeSeries.length];
-		for (int i = 0; i < ewmaFiltered.length; i++) {
-			ewmaFiltered[i] = function.apply(Double.valueOf(timeSeries[i])).doubleValue();
+		throwExceptionAtInvalidLambda(lambda);
+		return DoubleEwma.buildWith(lambda, timeSeries[0]).applyTo(timeSeries, new double[timeSeries.length]);
+	}
+	
+	/**
+	 * Calculates the EWMA for a time series of floats with an ewma0=timeSeries0 (first element of time series) and given lambda, see {@link FloatEwma}.
+	 * The EWMA is accumulated in double, hence each result deviates from {@link #applyWithLambda(double, double[])} applied to the widened values
+	 * only by its rounding to float (relative 2^-24), while input and output take half the memory.
+	 * @param lambda weight of first over second value (e.g. 0.2 gives 20% weight to the first value and 80% weight to the second value). With a weight of 0.5 the average of both values is returned by this function. 
+	 * @param timeSeries in form of a float[]
+	 * @return filtered time series in form of a float[] 
+	 */
+	public float[] applyWithLambda(float lambda, float[] timeSeries) {
+		throwExceptionAtInvalidLambda(lambda);
+		return FloatEwma.buildWith(lambda, timeSeries[0]).applyTo(timeSeries, new float[timeSeries.length]);
+	}
+	
+	/**
+	 * Calculates the EWMA for a time series with an ewma0=timeSerias0 (first element of time series) and given lambda using all cores of the common ForkJoinPool.
+	 * The result equals the one of {@link #applyWithLambda(double, double[])} within floating point rounding.
+	 * @param lambda weight of first over second value (e.g. 0.2 gives 20% weight to the first value and 80% weight to the second value). With a weight of 0.5 the average of both values is returned by this function. 
+	 * @param timeSeries in form of a double[]
+	 * @return filtered time series in form of a double[] 
+	 * @see DoubleEwma#applyInParallel(double[], double[])
+	 */
+	public double[] applyWithLambdaInParallel(double lambda, double[] timeSeries) {
+		throwExceptionAtInvalidLambda(lambda);
+		return DoubleEwma.buildWith(lambda, timeSeries[0]).applyInParallel(timeSeries, new double[timeSeries.length]);
+	}
+	
+	/**
+	 * Calculates the EWMA for an irregularly sampled time series with an ewma0=timeSeries0 (first element of time series), see {@link TimeDecayEwma}.
+	 * @param halfLife time after which the weight of the past has halved, in the unit of the timestamps
+	 * @param timestamps time of each value, non-decreasing
+	 * @param timeSeries in form of a double[]
+	 * @return filtered time series in form of a double[] 
+	 */
+	public double[] applyWithHalfLife(double halfLife, long[] timestamps, double[] timeSeries) {
+		return TimeDecayEwma.withHalfLife(halfLife).applyTo(timestamps, timeSeries, new double[timeSeries.length]);
+	}
+	
+	/**
+	 * A {@link Collector} calculating the last EWMA value of a stream. Each partition of a parallel stream is reduced to an affine map (scale, offset),
+	 * partial maps are composed in encounter order by the combiner. Thus the collector yields correct results also for parallel streams as long as these are ordered.
+	 * @param lambda denotes how strong the past value (n-1) is weighted compared to the preset value (n).
+	 * @param ewma0 start value for EWMA calculation
+	 * @return {@link Collector} returning the final EWMA value, or ewma0 for an empty stream
+	 */
+	public static Collector<Double, ?, Double> toEwma(final double lambda, final double ewma0) {
+		throwExceptionAtInvalidLambda(lambda);
+		return Collector.of(() -> new EwmaSegment(lambda),
+				EwmaSegment::accept,
+				EwmaSegment::combine,
+				segment -> Double.valueOf(segment.applyTo(ewma0)));
+	}
+	
+	/**
+	 * A {@link Collector} calculating the complete EWMA series of a stream. Each partition of a parallel stream is smoothed starting from zero, 
+	 * the combiner then adds the decayed last value of the left partition to all values of the right partition. Thus the collector yields correct results also for parallel streams as long as these are ordered.
+	 * @param lambda denotes how strong the past value (n-1) is weighted compared to the preset value (n).
+	 * @param ewma0 start value for EWMA calculation
+	 * @return {@link Collector} returning all EWMA values in encounter order
+	 */
+	public static Collector<Double, ?, double[]> toEwmaSeries(final double lambda, final double ewma0) {
+		throwExceptionAtInvalidLambda(lambda);
+		return Collector.of(() -> new EwmaSeriesSegment(lambda),
+				EwmaSeriesSegment::accept,
+				EwmaSeriesSegment::combine,
+				segment -> segment.applyTo(ewma0));
+	}
+	
+	/**
+	 * EWMA of a partition as affine map: EWMA_out = (1-lambda)^count * EWMA_in + offset
+	 */
+	private static final class EwmaSegment {
+		private final double lambda;
+		private double offset = 0.0;
+		private long count = 0;
+		
+		EwmaSegment(double lambda) {
+			this.lambda = lambda;
+		}
+		
+		void accept(Double value) {
+			offset = lambda * value.doubleValue() + (1 - lambda) * offset;
+			count++;
+		}
+		
+		EwmaSegment combine(EwmaSegment right) {
+			offset = Math.pow(1 - lambda, right.count) * offset + right.offset;
+			count += right.count;
+			return this;
+		}
+		
+		double applyTo(double ewma0) {
+			return Math.pow(1 - lambda, count) * ewma0 + offset;
+		}
+	}
+	
+	/**
+	 * EWMA series of a partition, smoothed with an EWMA_in of zero.
+	 */
+	private static final class EwmaSeriesSegment {
+		private final double lambda;
+		private double[] values = new double[16];
+		private int size = 0;
+		
+		EwmaSeriesSegment(double lambda) {
+			this.lambda = lambda;
+		}
+		
+		void accept(Double value) {
+			if (size == values.length) {
+				values = Arrays.copyOf(values, size << 1);
+			}
+			double last = size == 0 ? 0.0 : values[size - 1];
+			values[size++] = lambda * value.doubleValue() + (1 - lambda) * last;
+		}
+		
+		EwmaSeriesSegment combine(EwmaSeriesSegment right) {
+			if (size + right.size > values.length) {
+				values = Arrays.copyOf(values, Math.max(size + right.size, size << 1));
+			}
+			System.arraycopy(right.values, 0, values, size, right.size);
+			if (size > 0) {
+				propagate(values[size - 1], size, size + right.size);
+			}
+			size += right.size;
+			return this;
+		}
+		
+		double[] applyTo(double ewma0) {
+			propagate(ewma0, 0, size);
+			return Arrays.copyOf(values, size);
+		}
+		
+		private void propagate(double ewmaIn, int from, int to) {
+			double decayed = ewmaIn;
+			for (int i = from; i < to && decayed != 0.0; i++) {
+				decayed *= (1 - lambda);
+				values[i] += decayed;
+			}
 		}
-		return ewmaFiltered;
+	}
+	
+	/**
+	 * Consumes a stream but also returns a stream of Doubles but having the stateful function applied with a lambda of 0.2 and EWMA_0 = 0.0.
+	 * @param stream of Double
+	 * @return Stream<Double>
+	 * @see #applyToStream(Stream, double, double)
+	 */
+	public static Stream<Double> applyToStream(Stream<Double> stream) {
+	   return applyToStream(stream, 0.2, 0.0);
 	}
 	
 	/**
 	 * Consumes a stream but also returns a stream of Doubles but having the stateful function applied.<br><br>
 	 * As for Stream.map() it is recommended to use stateless mapping functions, EWMA should be applied to
 	 * streams of numbers using the applyToStream method.
-	 * applyToStream() ensures that the stream is considered as sequentially and collects all stream
-	 * elements into internally used array and list structures.<br><br>Here then the EWMA smoothing is applied and finally a stream of Doubles with having the EWMA applied is returned. 
+	 * applyToStream() ensures that the stream is consumed sequentially. The EWMA is applied lazily, each value is emitted as soon as its input arrives
+	 * and nothing is buffered, hence also infinite streams can be smoothed with constant memory.
 	 * @param stream of Double
+	 * @param lambda denotes how strong the past value (n-1) is weighted compared to the preset value (n).
+	 * @param ewma0 start value for EWMA calculation
 	 * @return Stream<Double>
 	 */
-	public static Stream<Double> applyToStream(Stream<Double> stream) {
-	   Double[] values = stream.sequential().collect(Collectors.toList()).toArray(new Double[0]);
-	   List<Double> result = new LinkedList<>();
-	   Function<Double, Double> function = EwmaFunctions.get();
-	   for (Double a:values){
-	       result.add(function.apply(a));
-	   }
-	   return result.stream();
+	public static Stream<Double> applyToStream(Stream<Double> stream, final double lambda, final double ewma0) {
+	   return applyToStream(stream.mapToDouble(Double::doubleValue), lambda, ewma0).boxed();
+	}
+	
+	/**
+	 * Lazily applies the EWMA to a stream of primitive doubles, see {@link #applyToStream(Stream, double, double)}.
+	 * @param stream of double
+	 * @param lambda denotes how strong the past value (n-1) is weighted compared to the preset value (n).
+	 * @param ewma0 start value for EWMA calculation
+	 * @return DoubleStream
+	 */
+	public static DoubleStream applyToStream(DoubleStream stream, final double lambda, final double ewma0) {
+	   throwExceptionAtInvalidLambda(lambda);
+	   return DoubleEwma.buildWith(lambda, ewma0).applyTo(stream);
+	}
+	
+	/**
+	 * Lazily applies the EWMA to a stream of primitive doubles as {@link #applyToStream(DoubleStream, double, double)} does, recording update rate and latency.
+	 * @param stream of double
+	 * @param lambda denotes how strong the past value (n-1) is weighted compared to the preset value (n).
+	 * @param ewma0 start value for EWMA calculation
+	 * @param metrics receives the measurements, {@link EwmaMetrics#noop()} disables the instrumentation
+	 * @return DoubleStream
+	 */
+	public static DoubleStream applyToStream(DoubleStream stream, final double lambda, final double ewma0, EwmaMetrics metrics) {
+	   throwExceptionAtInvalidLambda(lambda);
+	   return DoubleEwma.buildWith(lambda, ewma0).applyTo(stream, metrics);
 	}
 }
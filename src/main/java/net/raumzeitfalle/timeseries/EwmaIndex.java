@@ -0,0 +1,257 @@
+package net.raumzeitfalle.timeseries;
+
+import java.util.Arrays;
+
+/**
+ * A time series with its EWMA, supporting random access queries and corrections of past values.<br>
+ * <br>
+ * Besides the raw values, the EWMA state is stored every B values (a checkpoint), hence the EWMA as of any index
+ * is calculated in O(B) from the nearest checkpoint instead of smoothing the whole series with {@link EwmaFunctions#applyWithLambda(double, double[])}.
+ * A late or corrected value can be applied in two ways:
+ * <ul>
+ * <li>{@link #replace(int, double)} and {@link #insert(int, double)} recompute the EWMA from the nearest checkpoint before the value forward.</li>
+ * <li>{@link #correct(int, double)} exploits that the EWMA recurrence is affine: changing value k by d changes EWMA_m by lambda * d * (1-lambda)^(m-k) for all m &ge; k.
+ * Only the checkpoints and the most recent EWMA are shifted by this closed form delta, which costs O(n/B) and stops as soon as the delta underflows.</li>
+ * </ul>
+ * Instances are not thread safe.
+ * @author Oliver Loeffler
+ *
+ */
+public class EwmaIndex {
+
+	/**
+	 * EWMA0 value denoting that the EWMA is initialized with the first value, as done by {@link EwmaFunctions#applyWithLambda(double, double[])}.
+	 */
+	public static final double FIRST_VALUE = Double.NaN;
+
+	private final double lambda;
+
+	private final double initial;
+
+	private final int interval;
+
+	private double[] values = new double[16];
+
+	private double[] checkpoints = new double[1];
+
+	private int size;
+
+	private double last;
+
+	private EwmaIndex(double lambda, double initial, int interval) {
+		EwmaFunctions.throwExceptionAtInvalidLambda(lambda);
+		if (interval < 1) {
+			throw new IllegalArgumentException("Checkpoint interval must be at least 1. Given was " + interval + ".");
+		}
+		this.lambda = lambda;
+		this.initial = initial;
+		this.interval = interval;
+		this.last = initial;
+		this.checkpoints[0] = initial;
+	}
+
+	/**
+	 * Creates an empty index where EWMA0 is the first value.
+	 * @param lambda denotes how strong the past value (n-1) is weighted compared to the preset value (n).
+	 * @param interval number of values B between two checkpoints
+	 * @return {@link EwmaIndex}
+	 */
+	public static EwmaIndex withLambda(double lambda, int interval) {
+		return new EwmaIndex(lambda, FIRST_VALUE, interval);
+	}
+
+	/**
+	 * Creates an empty index.
+	 * @param lambda denotes how strong the past value (n-1) is weighted compared to the preset value (n).
+	 * @param initial EWMA0 value, {@link #FIRST_VALUE} initializes the EWMA with the first value.
+	 * @param interval number of values B between two checkpoints
+	 * @return {@link EwmaIndex}
+	 */
+	public static EwmaIndex buildWith(double lambda, double initial, int interval) {
+		return new EwmaIndex(lambda, initial, interval);
+	}
+
+	/**
+	 * Appends a value at the end of the series.
+	 * @param value the present value (n)
+	 * @return EWMA at (n)
+	 */
+	public double append(double value) {
+		ensureCapacity(size + 1);
+		if (size % interval == 0) {
+			checkpoints[size / interval] = size == 0 && Double.isNaN(initial) ? value : last;
+		}
+		values[size++] = value;
+		return last = lambda * value + (1 - lambda) * (size == 1 ? checkpoints[0] : last);
+	}
+
+	/**
+	 * Appends all values at the end of the series.
+	 * @param timeSeries values in order
+	 * @return this
+	 */
+	public EwmaIndex appendAll(double[] timeSeries) {
+		for (double value : timeSeries) {
+			append(value);
+		}
+		return this;
+	}
+
+	/**
+	 * Calculates the EWMA as of the given index from the nearest checkpoint, which takes at most B steps.
+	 * @param index of a value in the series
+	 * @return EWMA at index
+	 */
+	public double ewmaAt(int index) {
+		throwExceptionWhenIndexIsInvalid(index, size);
+		int from = index - index % interval;
+		return smooth(checkpoints[from / interval], from, index + 1);
+	}
+
+	/**
+	 * Replaces the value at the given index and recomputes the EWMA from the nearest checkpoint before index up to the end of the series.
+	 * @param index of the value to replace
+	 * @param value the corrected value
+	 * @return the replaced value
+	 */
+	public double replace(int index, double value) {
+		throwExceptionWhenIndexIsInvalid(index, size);
+		double replaced = values[index];
+		values[index] = value;
+		recomputeFrom(index / interval);
+		return replaced;
+	}
+
+	/**
+	 * Inserts a late value at the given index, values from index onwards move up by one position.
+	 * The EWMA is recomputed from the nearest checkpoint before index up to the end of the series.
+	 * @param index position of the late value, size() appends the value
+	 * @param value the late value
+	 */
+	public void insert(int index, double value) {
+		throwExceptionWhenIndexIsInvalid(index, size + 1);
+		ensureCapacity(size + 1);
+		System.arraycopy(values, index, values, index + 1, size - index);
+		values[index] = value;
+		size++;
+		/* a value appended at a checkpoint boundary has no checkpoint yet, its predecessor has one */
+		recomputeFrom(Math.max(0, Math.min(index, size - 2)) / interval);
+	}
+
+	/**
+	 * Replaces the value at the given index and shifts all later checkpoints and the most recent EWMA by the closed form delta
+	 * lambda * d * (1-lambda)^(m-index). Results equal the ones of {@link #replace(int, double)} within floating point rounding.
+	 * @param index of the value to replace
+	 * @param value the corrected value
+	 * @return the replaced value
+	 */
+	public double correct(int index, double value) {
+		throwExceptionWhenIndexIsInvalid(index, size);
+		double replaced = values[index];
+		values[index] = value;
+		double change = value - replaced;
+		if (index == 0 && Double.isNaN(initial)) {
+			/* EWMA0 is the first value, hence EWMA_0 changes by the full difference */
+			checkpoints[0] = value;
+		} else {
+			change *= lambda;
+		}
+		double decay = 1 - lambda;
+		int first = index / interval + 1;
+		int count = checkpointCount();
+		if (first < count) {
+			double delta = change * Math.pow(decay, first * interval - 1 - index);
+			double stride = Math.pow(decay, interval);
+			for (int j = first; j < count && delta != 0.0; j++) {
+				checkpoints[j] += delta;
+				delta *= stride;
+			}
+		}
+		last += change * Math.pow(decay, size - 1 - index);
+		return replaced;
+	}
+
+	/**
+	 * @param index of a value in the series
+	 * @return the raw value at index
+	 */
+	public double get(int index) {
+		throwExceptionWhenIndexIsInvalid(index, size);
+		return values[index];
+	}
+
+	/**
+	 * @return EWMA of the most recent value, EWMA0 for an empty series
+	 */
+	public double getEWMA() {
+		return last;
+	}
+
+	/**
+	 * @return lambda of this EWMA
+	 */
+	public double getLambda() {
+		return lambda;
+	}
+
+	/**
+	 * @return number of values between two checkpoints
+	 */
+	public int getInterval() {
+		return interval;
+	}
+
+	/**
+	 * @return number of values in the series
+	 */
+	public int size() {
+		return size;
+	}
+
+	private void recomputeFrom(int checkpoint) {
+		int from = checkpoint * interval;
+		if (checkpoint == 0 && Double.isNaN(initial)) {
+			checkpoints[0] = values[0];
+		}
+		double ewma = checkpoints[checkpoint];
+		for (int i = from; i < size; i++) {
+			if (i % interval == 0) {
+				checkpoints[i / interval] = ewma;
+			}
+			ewma = lambda * values[i] + (1 - lambda) * ewma;
+		}
+		last = ewma;
+	}
+
+	private double smooth(double ewma, int from, int to) {
+		for (int i = from; i < to; i++) {
+			ewma = lambda * values[i] + (1 - lambda) * ewma;
+		}
+		return ewma;
+	}
+
+	private int checkpointCount() {
+		return (size + interval - 1) / interval;
+	}
+
+	private void ensureCapacity(int capacity) {
+		if (capacity > values.length) {
+			values = Arrays.copyOf(values, Math.max(capacity, values.length << 1));
+		}
+		int checkpointCapacity = (capacity + interval - 1) / interval;
+		if (checkpointCapacity > checkpoints.length) {
+			checkpoints = Arrays.copyOf(checkpoints, Math.max(checkpointCapacity, checkpoints.length << 1));
+		}
+	}
+
+	private static void throwExceptionWhenIndexIsInvalid(int index, int size) {
+		if (index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException("Index must be between 0 and " + (size - 1) + ". Given was " + index + ".");
+		}
+	}
+
+	@Override
+	public String toString() {
+		return new StringBuilder("EWMA index of " + size + " values with lambda of " + lambda + " and checkpoints every " + interval + " values").toString();
+	}
+}
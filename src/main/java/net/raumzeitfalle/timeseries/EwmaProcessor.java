@@ -0,0 +1,282 @@
+package net.raumzeitfalle.timeseries;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.function.DoubleUnaryOperator;
+
+import org.reactivestreams.Processor;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+/**
+ * Reactive Streams {@link Processor} applying an EWMA function (e.g. DoubleEwma or UnaryEwma) to each value published upstream.<br>
+ * <br>
+ * Unlike {@link EwmaFunctions#applyToStream(java.util.stream.Stream)} values are pushed and nothing is buffered beyond the demand of the subscriber:
+ * values are requested from upstream in chunks of at most the configured prefetch, and only as long as the subscriber has outstanding demand.
+ * When half of a chunk has arrived, the next chunk is requested. The smoothed values are emitted either one by one ({@link #forValues(DoubleUnaryOperator, int)})
+ * or collected into primitive arrays ({@link #forBatches(DoubleUnaryOperator, int)}), where demand is counted in batches and one signal carries a whole batch.
+ * Larger batches reduce the signalling cost per value but delay each value until its batch is complete. A partial batch is emitted on completion.<br>
+ * <br>
+ * The interfaces of org.reactivestreams are identical to java.util.concurrent.Flow. On Java 9 and later, use org.reactivestreams.FlowAdapters to connect Flow publishers and subscribers,
+ * which for reactive-streams 1.0.2 is provided by the separate artifact org.reactivestreams:reactive-streams-flow-adapters:1.0.2 (part of reactive-streams itself since 1.0.3).
+ * All signals are serialized using the monitor of the processor and delivered on the calling thread, hence the processor runs on the executor of the upstream publisher.
+ * Only one subscriber is supported.
+ * @author Oliver Loeffler
+ *
+ * @param <R> type of emitted items, {@link Double} or double[]
+ */
+public abstract class EwmaProcessor<R> implements Processor<Double, R> {
+
+	private static final Subscription CANCELLED = new Subscription() {
+		@Override
+		public void request(long n) {
+			// nothing to deliver
+		}
+
+		@Override
+		public void cancel() {
+			// nothing to cancel
+		}
+	};
+
+	private final DoubleUnaryOperator function;
+
+	private final int prefetch;
+
+	private Subscription upstream;
+
+	Subscriber<? super R> downstream;
+
+	private long demand;
+
+	private long outstanding;
+
+	private boolean cancelled;
+
+	private boolean terminated;
+
+	private Throwable error;
+
+	EwmaProcessor(DoubleUnaryOperator function, int prefetch) {
+		if (prefetch < 1) {
+			throw new IllegalArgumentException("The prefetch and batch size must be at least 1. Given was " + prefetch + ".");
+		}
+		this.function = Objects.requireNonNull(function, "function");
+		this.prefetch = prefetch;
+	}
+
+	/**
+	 * Creates a processor emitting each smoothed value.
+	 * @param ewma EWMA function, e.g. DoubleEwma.buildWith(lambda, ewma0)
+	 * @param prefetch maximum number of values requested from upstream at once
+	 * @return {@link EwmaProcessor} emitting {@link Double}
+	 */
+	public static EwmaProcessor<Double> forValues(DoubleUnaryOperator ewma, int prefetch) {
+		return new ValueProcessor(ewma, prefetch);
+	}
+
+	/**
+	 * Creates a processor emitting the smoothed values in batches, a request of n by the subscriber requests n batches.
+	 * Each batch is a new array owned by the subscriber.
+	 * @param ewma EWMA function, e.g. DoubleEwma.buildWith(lambda, ewma0)
+	 * @param batchSize number of values per batch, also the maximum number of values requested from upstream at once
+	 * @return {@link EwmaProcessor} emitting double[]
+	 */
+	public static EwmaProcessor<double[]> forBatches(DoubleUnaryOperator ewma, int batchSize) {
+		return new BatchProcessor(ewma, batchSize);
+	}
+
+	@Override
+	public synchronized void subscribe(Subscriber<? super R> subscriber) {
+		Objects.requireNonNull(subscriber, "subscriber");
+		if (downstream != null) {
+			subscriber.onSubscribe(CANCELLED);
+			subscriber.onError(new IllegalStateException("An EwmaProcessor supports only one subscriber."));
+			return;
+		}
+		downstream = subscriber;
+		subscriber.onSubscribe(new DownstreamSubscription());
+		if (terminated) {
+			terminate();
+		} else {
+			requestUpstream();
+		}
+	}
+
+	@Override
+	public synchronized void onSubscribe(Subscription subscription) {
+		Objects.requireNonNull(subscription, "subscription");
+		if (upstream != null || cancelled) {
+			subscription.cancel();
+			return;
+		}
+		upstream = subscription;
+		requestUpstream();
+	}
+
+	@Override
+	public synchronized void onNext(Double item) {
+		Objects.requireNonNull(item, "item");
+		if (terminated || cancelled) {
+			return;
+		}
+		outstanding--;
+		emit(function.applyAsDouble(item.doubleValue()));
+		requestUpstream();
+	}
+
+	@Override
+	public synchronized void onError(Throwable throwable) {
+		Objects.requireNonNull(throwable, "throwable");
+		if (!terminated) {
+			terminated = true;
+			error = throwable;
+			terminate();
+		}
+	}
+
+	@Override
+	public synchronized void onComplete() {
+		if (!terminated) {
+			terminated = true;
+			terminate();
+		}
+	}
+
+	private void terminate() {
+		if (downstream == null || cancelled) {
+			return;
+		}
+		// no signals after the terminal signal
+		cancelled = true;
+		if (error != null) {
+			downstream.onError(error);
+		} else {
+			flush();
+			downstream.onComplete();
+		}
+	}
+
+	private void requestUpstream() {
+		if (upstream == null || downstream == null || cancelled || terminated || outstanding > prefetch >> 1) {
+			return;
+		}
+		long n = Math.min(demand, prefetch - outstanding);
+		if (n > 0) {
+			demand -= n;
+			outstanding += n;
+			upstream.request(n);
+		}
+	}
+
+	/**
+	 * @param n number of items requested by the subscriber
+	 * @return number of values required to emit n items
+	 */
+	abstract long valuesFor(long n);
+
+	/**
+	 * Passes one smoothed value to the subscriber, demand for it exists.
+	 */
+	abstract void emit(double ewma);
+
+	/**
+	 * Emits all values not yet emitted.
+	 */
+	abstract void flush();
+
+	private final class DownstreamSubscription implements Subscription {
+
+		@Override
+		public void request(long n) {
+			synchronized (EwmaProcessor.this) {
+				if (cancelled) {
+					return;
+				}
+				if (n <= 0) {
+					cancel();
+					downstream.onError(new IllegalArgumentException("The number of requested items must be greater 0. Given was " + n + "."));
+					return;
+				}
+				long values = valuesFor(n);
+				demand = demand + values < 0 ? Long.MAX_VALUE : demand + values;
+				requestUpstream();
+			}
+		}
+
+		@Override
+		public void cancel() {
+			synchronized (EwmaProcessor.this) {
+				if (!cancelled) {
+					cancelled = true;
+					if (upstream != null) {
+						upstream.cancel();
+					}
+				}
+			}
+		}
+	}
+
+	private static final class ValueProcessor extends EwmaProcessor<Double> {
+
+		ValueProcessor(DoubleUnaryOperator function, int prefetch) {
+			super(function, prefetch);
+		}
+
+		@Override
+		long valuesFor(long n) {
+			return n;
+		}
+
+		@Override
+		void emit(double ewma) {
+			downstream.onNext(Double.valueOf(ewma));
+		}
+
+		@Override
+		void flush() {
+			// values are emitted immediately
+		}
+	}
+
+	private static final class BatchProcessor extends EwmaProcessor<double[]> {
+
+		private final int batchSize;
+
+		private double[] batch;
+
+		private int size;
+
+		BatchProcessor(DoubleUnaryOperator function, int batchSize) {
+			super(function, batchSize);
+			this.batchSize = batchSize;
+			this.batch = new double[batchSize];
+		}
+
+		@Override
+		long valuesFor(long n) {
+			return n > Long.MAX_VALUE / batchSize ? Long.MAX_VALUE : n * batchSize;
+		}
+
+		@Override
+		void emit(double ewma) {
+			batch[size++] = ewma;
+			if (size == batchSize) {
+				double[] full = batch;
+				batch = new double[batchSize];
+				size = 0;
+				downstream.onNext(full);
+			}
+		}
+
+		@Override
+		void flush() {
+			if (size > 0) {
+				double[] partial = Arrays.copyOf(batch, size);
+				size = 0;
+				downstream.onNext(partial);
+			}
+		}
+	}
+
+}
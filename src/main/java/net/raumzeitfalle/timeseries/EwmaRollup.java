@@ -0,0 +1,355 @@
+package net.raumzeitfalle.timeseries;
+
+import java.util.Arrays;
+
+/**
+ * Maintains aggregates (count, mean, min and max) and their EWMA for several time resolutions (e.g. 1s, 1m, 1h and 1d)
+ * incrementally in one pass over the raw samples.<br>
+ * <br>
+ * For each resolution the most recent buckets are kept in a ring of fixed size, the state of all buckets is held in primitive arrays.
+ * Each sample updates the open bucket of every resolution in O(1), hence a sample costs O(resolutions).
+ * The EWMA of a resolution smoothes the bucket means: EWMA_k = lambda * mean_k + (1-lambda) * EWMA_(k-1), starting with the mean of the first bucket
+ * as done by {@link EwmaFunctions#applyWithLambda(double, double[])}. Empty buckets carry the EWMA of their predecessor.
+ * The EWMA of the open bucket is provisional until the bucket is closed by a sample of a later bucket.<br>
+ * <br>
+ * Queries read the retained buckets and cost O(buckets) instead of O(raw samples) for recomputing the aggregates from the raw series.
+ * Samples must arrive with non-decreasing timestamps. Instances are not thread safe.
+ * @author Oliver Loeffler
+ *
+ */
+public class EwmaRollup {
+
+	private final long[] resolutions;
+
+	private final double[] lambdas;
+
+	private final int buckets;
+
+	private final long[] starts;
+
+	private final long[] counts;
+
+	private final double[] sums;
+
+	private final double[] mins;
+
+	private final double[] maxs;
+
+	private final double[] ewmas;
+
+	/**
+	 * Slot of the open bucket per resolution.
+	 */
+	private final int[] heads;
+
+	/**
+	 * Number of retained buckets per resolution.
+	 */
+	private final int[] sizes;
+
+	/**
+	 * EWMA after the last closed bucket per resolution, NaN before the first bucket was closed.
+	 */
+	private final double[] closed;
+
+	private long lastTimestamp = Long.MIN_VALUE;
+
+	private long samples;
+
+	private EwmaRollup(double[] lambdas, long[] resolutions, int buckets) {
+		if (resolutions.length == 0 || lambdas.length != resolutions.length) {
+			throw new IllegalArgumentException("One lambda is required for each of at least one resolution. Given were "
+					+ lambdas.length + " lambdas and " + resolutions.length + " resolutions.");
+		}
+		if (buckets < 1) {
+			throw new IllegalArgumentException("At least 1 bucket must be retained. Given was " + buckets + ".");
+		}
+		for (int r = 0; r < resolutions.length; r++) {
+			EwmaFunctions.throwExceptionAtInvalidLambda(lambdas[r]);
+			if (resolutions[r] < 1) {
+				throw new IllegalArgumentException("Resolutions must be greater 0. Given was " + resolutions[r] + ".");
+			}
+		}
+		this.resolutions = resolutions.clone();
+		this.lambdas = lambdas.clone();
+		this.buckets = buckets;
+		int capacity = resolutions.length * buckets;
+		this.starts = new long[capacity];
+		this.counts = new long[capacity];
+		this.sums = new double[capacity];
+		this.mins = new double[capacity];
+		this.maxs = new double[capacity];
+		this.ewmas = new double[capacity];
+		this.heads = new int[resolutions.length];
+		this.sizes = new int[resolutions.length];
+		this.closed = new double[resolutions.length];
+		Arrays.fill(closed, Double.NaN);
+	}
+
+	/**
+	 * Creates a rollup using the same lambda for all resolutions.
+	 * @param lambda denotes how strong the past bucket (k-1) is weighted compared to the present bucket (k).
+	 * @param buckets number of buckets retained per resolution
+	 * @param resolutions width of the buckets of each resolution, in the unit of the timestamps
+	 * @return {@link EwmaRollup}
+	 */
+	public static EwmaRollup withLambda(double lambda, int buckets, long... resolutions) {
+		double[] lambdas = new double[resolutions.length];
+		Arrays.fill(lambdas, lambda);
+		return new EwmaRollup(lambdas, resolutions, buckets);
+	}
+
+	/**
+	 * Creates a rollup with a lambda per resolution.
+	 * @param lambdas lambda of each resolution
+	 * @param resolutions width of the buckets of each resolution, in the unit of the timestamps
+	 * @param buckets number of buckets retained per resolution
+	 * @return {@link EwmaRollup}
+	 */
+	public static EwmaRollup buildWith(double[] lambdas, long[] resolutions, int buckets) {
+		return new EwmaRollup(lambdas, resolutions, buckets);
+	}
+
+	/**
+	 * Adds a raw sample to the open bucket of each resolution. A sample of a later bucket closes the open bucket,
+	 * buckets without samples in between are retained as empty buckets.
+	 * @param timestamp time of the sample, must not be earlier than the previous sample
+	 * @param value the raw sample
+	 */
+	public void add(long timestamp, double value) {
+		if (timestamp < lastTimestamp) {
+			throw new IllegalArgumentException("Timestamps must not decrease. Given was " + timestamp + " after " + lastTimestamp + ".");
+		}
+		lastTimestamp = timestamp;
+		samples++;
+		for (int r = 0; r < resolutions.length; r++) {
+			int slot = openBucket(r, Math.floorDiv(timestamp, resolutions[r]) * resolutions[r]);
+			long count = ++counts[slot];
+			double sum = sums[slot] += value;
+			if (count == 1) {
+				mins[slot] = value;
+				maxs[slot] = value;
+			} else {
+				mins[slot] = Math.min(mins[slot], value);
+				maxs[slot] = Math.max(maxs[slot], value);
+			}
+			double mean = sum / count;
+			ewmas[slot] = Double.isNaN(closed[r]) ? mean : lambdas[r] * mean + (1 - lambdas[r]) * closed[r];
+		}
+	}
+
+	/**
+	 * Adds all raw samples in order.
+	 * @param timestamps time of each sample, non-decreasing
+	 * @param values raw samples, must be as long as timestamps
+	 * @return this
+	 */
+	public EwmaRollup addAll(long[] timestamps, double[] values) {
+		if (timestamps.length != values.length) {
+			throw new IllegalArgumentException("Number of timestamps (" + timestamps.length + ") and values (" + values.length + ") must be equal.");
+		}
+		for (int i = 0; i < values.length; i++) {
+			add(timestamps[i], values[i]);
+		}
+		return this;
+	}
+
+	/**
+	 * @param resolution index of the resolution
+	 * @return EWMA of the most recent bucket (provisional while the bucket is open), NaN if no sample was added
+	 */
+	public double getEWMA(int resolution) {
+		return sizes[resolution] == 0 ? Double.NaN : ewmas[slot(resolution, heads[resolution])];
+	}
+
+	/**
+	 * Looks up the EWMA of the bucket containing the given time.
+	 * @param resolution index of the resolution
+	 * @param timestamp any time within a retained bucket
+	 * @return EWMA as of the end of that bucket, NaN if the bucket is not retained
+	 */
+	public double ewmaAt(int resolution, long timestamp) {
+		int size = sizes[resolution];
+		if (size == 0) {
+			return Double.NaN;
+		}
+		long width = resolutions[resolution];
+		long age = (starts[slot(resolution, heads[resolution])] - Math.floorDiv(timestamp, width) * width) / width;
+		if (age < 0 || age >= size) {
+			return Double.NaN;
+		}
+		return ewmas[slot(resolution, position(resolution, (int) age))];
+	}
+
+	/**
+	 * Copies the start time of the retained buckets, oldest first.
+	 * @param resolution index of the resolution
+	 * @param target receives the start times, must be at least as long as {@link #size(int)}
+	 * @return number of buckets copied
+	 */
+	public int copyStarts(int resolution, long[] target) {
+		return copy(resolution, starts, target);
+	}
+
+	/**
+	 * Copies the number of samples of the retained buckets, oldest first.
+	 * @param resolution index of the resolution
+	 * @param target receives the counts, must be at least as long as {@link #size(int)}
+	 * @return number of buckets copied
+	 */
+	public int copyCounts(int resolution, long[] target) {
+		return copy(resolution, counts, target);
+	}
+
+	/**
+	 * Copies the mean of the retained buckets, oldest first.
+	 * @param resolution index of the resolution
+	 * @param target receives the means, NaN for empty buckets, must be at least as long as {@link #size(int)}
+	 * @return number of buckets copied
+	 */
+	public int copyMeans(int resolution, double[] target) {
+		int size = sizes[resolution];
+		for (int j = 0; j < size; j++) {
+			int slot = slot(resolution, position(resolution, size - 1 - j));
+			target[j] = counts[slot] == 0 ? Double.NaN : sums[slot] / counts[slot];
+		}
+		return size;
+	}
+
+	/**
+	 * Copies the minimum of the retained buckets, oldest first.
+	 * @param resolution index of the resolution
+	 * @param target receives the minima, NaN for empty buckets, must be at least as long as {@link #size(int)}
+	 * @return number of buckets copied
+	 */
+	public int copyMins(int resolution, double[] target) {
+		return copy(resolution, mins, target);
+	}
+
+	/**
+	 * Copies the maximum of the retained buckets, oldest first.
+	 * @param resolution index of the resolution
+	 * @param target receives the maxima, NaN for empty buckets, must be at least as long as {@link #size(int)}
+	 * @return number of buckets copied
+	 */
+	public int copyMaxs(int resolution, double[] target) {
+		return copy(resolution, maxs, target);
+	}
+
+	/**
+	 * Copies the EWMA of the retained buckets, oldest first.
+	 * @param resolution index of the resolution
+	 * @param target receives the EWMA as of the end of each bucket, must be at least as long as {@link #size(int)}
+	 * @return number of buckets copied
+	 */
+	public int copyEwmas(int resolution, double[] target) {
+		return copy(resolution, ewmas, target);
+	}
+
+	/**
+	 * @param resolution index of the resolution
+	 * @return number of retained buckets including the open one
+	 */
+	public int size(int resolution) {
+		return sizes[resolution];
+	}
+
+	/**
+	 * @param resolution index of the resolution
+	 * @return width of the buckets in the unit of the timestamps
+	 */
+	public long getResolution(int resolution) {
+		return resolutions[resolution];
+	}
+
+	/**
+	 * @param resolution index of the resolution
+	 * @return lambda of the resolution
+	 */
+	public double getLambda(int resolution) {
+		return lambdas[resolution];
+	}
+
+	/**
+	 * @return number of resolutions
+	 */
+	public int getResolutions() {
+		return resolutions.length;
+	}
+
+	/**
+	 * @return number of buckets retained per resolution
+	 */
+	public int getBuckets() {
+		return buckets;
+	}
+
+	/**
+	 * @return number of raw samples added
+	 */
+	public long getCount() {
+		return samples;
+	}
+
+	/**
+	 * Returns the slot of the bucket starting at start, opening it and empty buckets before it if necessary.
+	 */
+	private int openBucket(int r, long start) {
+		int head = slot(r, heads[r]);
+		if (sizes[r] > 0 && starts[head] == start) {
+			return head;
+		}
+		long width = resolutions[r];
+		long gap = sizes[r] == 0 ? 1 : (start - starts[head]) / width;
+		if (sizes[r] > 0 && counts[head] > 0) {
+			closed[r] = ewmas[head];
+		}
+		/* buckets which fall out of the window anyway are skipped */
+		for (long j = Math.min(gap, buckets) - 1; j >= 0; j--) {
+			heads[r] = sizes[r] == 0 ? 0 : (heads[r] + 1 == buckets ? 0 : heads[r] + 1);
+			sizes[r] = Math.min(buckets, sizes[r] + 1);
+			head = slot(r, heads[r]);
+			starts[head] = start - j * width;
+			counts[head] = 0;
+			sums[head] = 0.0;
+			mins[head] = Double.NaN;
+			maxs[head] = Double.NaN;
+			ewmas[head] = closed[r];
+		}
+		return head;
+	}
+
+	private int copy(int r, long[] source, long[] target) {
+		int size = sizes[r];
+		for (int j = 0; j < size; j++) {
+			target[j] = source[slot(r, position(r, size - 1 - j))];
+		}
+		return size;
+	}
+
+	private int copy(int r, double[] source, double[] target) {
+		int size = sizes[r];
+		for (int j = 0; j < size; j++) {
+			target[j] = source[slot(r, position(r, size - 1 - j))];
+		}
+		return size;
+	}
+
+	/**
+	 * Ring position of the bucket of the given age, 0 denotes the open bucket.
+	 */
+	private int position(int r, int age) {
+		int position = heads[r] - age;
+		return position < 0 ? position + buckets : position;
+	}
+
+	private int slot(int r, int position) {
+		return r * buckets + position;
+	}
+
+	@Override
+	public String toString() {
+		return new StringBuilder("EWMA rollup of " + samples + " samples at resolutions " + Arrays.toString(resolutions)
+				+ " retaining " + buckets + " buckets each").toString();
+	}
+}
@@ -0,0 +1,281 @@
+package net.raumzeitfalle.timeseries;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Arrays;
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * Reads time series compressed by {@link GorillaEncoder} sample by sample, from a {@link ByteBuffer} or streamed from a {@link ReadableByteChannel}.<br>
+ * <br>
+ * Samples are decoded on demand using {@link #next()}, hence a series can be decoded, smoothed and encoded again
+ * without materializing it, see {@link #applyTo(DoubleUnaryOperator, GorillaEncoder)}.<br>
+ * <br>
+ * Instances are not thread safe.
+ * @author Oliver Loeffler
+ *
+ */
+public class GorillaDecoder {
+
+	private static final int CHANNEL_BUFFER_SIZE = 1 << 16;
+
+	private final ByteBuffer source;
+
+	private final ReadableByteChannel channel;
+
+	private final boolean timestamps;
+
+	private long bits;
+
+	private int available;
+
+	private long value;
+
+	private int leading;
+
+	private int trailing;
+
+	private long timestamp;
+
+	private long delta;
+
+	private long count;
+
+	private boolean finished;
+
+	private GorillaDecoder(ByteBuffer source, ReadableByteChannel channel) {
+		this.source = source;
+		this.channel = channel;
+		int header = (int) read(8);
+		if (header >>> 4 != GorillaEncoder.VERSION) {
+			throw new IllegalArgumentException("Unsupported version " + (header >>> 4) + ", expected " + GorillaEncoder.VERSION + ".");
+		}
+		this.timestamps = (header & GorillaEncoder.TIMESTAMPS) != 0;
+	}
+
+	/**
+	 * @param source compressed stream starting at its position, the position advances while samples are decoded
+	 * @return {@link GorillaDecoder}
+	 */
+	public static GorillaDecoder from(ByteBuffer source) {
+		return new GorillaDecoder(source, null);
+	}
+
+	/**
+	 * @param channel compressed stream
+	 * @return {@link GorillaDecoder}
+	 */
+	public static GorillaDecoder from(ReadableByteChannel channel) {
+		ByteBuffer buffer = ByteBuffer.allocate(CHANNEL_BUFFER_SIZE);
+		buffer.flip();
+		return new GorillaDecoder(buffer, channel);
+	}
+
+	/**
+	 * Decodes the next sample, which is then available via {@link #getValue()} and {@link #getTimestamp()}.
+	 * @return false when the end of the stream is reached
+	 */
+	public boolean next() {
+		if (finished) {
+			return false;
+		}
+		if (read(1) != 0) {
+			if (read(1) == 0) {
+				value ^= read(64 - leading - trailing) << trailing;
+			} else {
+				int newLeading = (int) read(5);
+				int meaningful = (int) read(6) + 1;
+				if (newLeading + meaningful > 64) {
+					finished = true;
+					return false;
+				}
+				leading = newLeading;
+				trailing = 64 - newLeading - meaningful;
+				value ^= read(meaningful) << trailing;
+			}
+		}
+		if (timestamps) {
+			decodeTimestamp();
+		}
+		count++;
+		return true;
+	}
+
+	/**
+	 * @return the value of the current sample
+	 */
+	public double getValue() {
+		return Double.longBitsToDouble(value);
+	}
+
+	/**
+	 * @return the timestamp of the current sample, 0 for streams without timestamps
+	 */
+	public long getTimestamp() {
+		return timestamp;
+	}
+
+	/**
+	 * @return true if samples were encoded with timestamps
+	 */
+	public boolean hasTimestamps() {
+		return timestamps;
+	}
+
+	/**
+	 * @return number of samples decoded so far
+	 */
+	public long getCount() {
+		return count;
+	}
+
+	/**
+	 * Decodes values into target until target is full or the stream ends.
+	 * @param target receives the values starting at index 0
+	 * @return number of values decoded
+	 */
+	public int decode(double[] target) {
+		int n = 0;
+		while (n < target.length && next()) {
+			target[n++] = getValue();
+		}
+		return n;
+	}
+
+	/**
+	 * Decodes values into target until it has no remaining space or the stream ends, the position of target advances accordingly.
+	 * @param target receives the values
+	 * @return number of values decoded
+	 */
+	public int decode(DoubleBuffer target) {
+		int n = 0;
+		while (target.hasRemaining() && next()) {
+			target.put(getValue());
+			n++;
+		}
+		return n;
+	}
+
+	/**
+	 * @return all remaining values
+	 */
+	public double[] toArray() {
+		double[] values = new double[16];
+		int n = 0;
+		while (next()) {
+			if (n == values.length) {
+				values = Arrays.copyOf(values, n << 1);
+			}
+			values[n++] = getValue();
+		}
+		return Arrays.copyOf(values, n);
+	}
+
+	/**
+	 * Decodes all remaining samples, applies the operator (e.g. an EWMA) to each value and encodes the result including its timestamp.
+	 * Only one sample is held in memory at a time. The target is not finished, hence further samples can be appended.
+	 * @param operator applied to each value in order
+	 * @param target receives the results, must have timestamps if and only if this stream has
+	 * @return number of samples processed
+	 */
+	public long applyTo(DoubleUnaryOperator operator, GorillaEncoder target) {
+		long n = 0;
+		while (next()) {
+			double result = operator.applyAsDouble(getValue());
+			if (timestamps) {
+				target.encode(timestamp, result);
+			} else {
+				target.encode(result);
+			}
+			n++;
+		}
+		return n;
+	}
+
+	private void decodeTimestamp() {
+		long deltaOfDelta;
+		if (read(1) == 0) {
+			deltaOfDelta = 0;
+		} else if (read(1) == 0) {
+			deltaOfDelta = signed(read(7), 7);
+		} else if (read(1) == 0) {
+			deltaOfDelta = signed(read(9), 9);
+		} else if (read(1) == 0) {
+			deltaOfDelta = signed(read(12), 12);
+		} else {
+			deltaOfDelta = read(64);
+		}
+		delta += deltaOfDelta;
+		timestamp += delta;
+	}
+
+	/**
+	 * Restores a value in [-(2^(n-1))+1, 2^(n-1)] from its n lowest bits, as written by the encoder.
+	 */
+	private static long signed(long bits, int n) {
+		long half = 1L << (n - 1);
+		return bits > half ? bits - (1L << n) : bits;
+	}
+
+	/**
+	 * Reads n bits (n &le; 64) in big-endian bit order.
+	 */
+	private long read(int n) {
+		if (n > 32) {
+			int low = n - 32;
+			return read(32) << low | read(low);
+		}
+		if (available < n) {
+			refill();
+			if (available < n) {
+				throw new UncheckedIOException(new EOFException("The compressed stream ended without end marker."));
+			}
+		}
+		long result = bits >>> (64 - n);
+		bits <<= n;
+		available -= n;
+		return result;
+	}
+
+	private void refill() {
+		if (available <= 32 && source.remaining() >= Integer.BYTES) {
+			int word = source.getInt();
+			bits |= ((source.order() == ByteOrder.BIG_ENDIAN ? word : Integer.reverseBytes(word)) & 0xFFFFFFFFL) << (32 - available);
+			available += 32;
+		}
+		while (available <= 56) {
+			if (!source.hasRemaining() && !fill()) {
+				return;
+			}
+			bits |= (source.get() & 0xFFL) << (56 - available);
+			available += 8;
+		}
+	}
+
+	private boolean fill() {
+		if (channel == null) {
+			return false;
+		}
+		source.clear();
+		try {
+			int read;
+			do {
+				read = channel.read(source);
+			} while (read == 0);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		source.flip();
+		return source.hasRemaining();
+	}
+
+	@Override
+	public String toString() {
+		return new StringBuilder("Gorilla decoder of " + (timestamps ? "samples" : "values") + ", " + count + " decoded").toString();
+	}
+}
@@ -0,0 +1,301 @@
+package net.raumzeitfalle.timeseries;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Compresses a time series as described in "Gorilla: A Fast, Scalable, In-Memory Time Series Database" (Pelkonen et al., VLDB 2015).<br>
+ * <br>
+ * Each value is XORed with its predecessor, only the meaningful bits between the leading and trailing zeros of the result are written.
+ * If these fit into the window of the previous value, the window is reused, otherwise its position is written (5 bits leading zeros, 6 bits length).
+ * Unlike the original proposal, a new window is also written if reusing the previous one would waste more bits than its position takes.
+ * A repeated value takes a single bit. Optional timestamps are written as delta of deltas, hence regularly sampled timestamps take a single bit as well.<br>
+ * <br>
+ * Samples are written to a {@link ByteBuffer} or streamed to a {@link WritableByteChannel}, nothing is buffered beyond 64 bits (and 64 KiB for channels).
+ * As the number of samples does not need to be known in advance, {@link #finish()} terminates the stream with an end marker. Streams are read by {@link GorillaDecoder}.<br>
+ * <br>
+ * Instances are not thread safe.
+ * @author Oliver Loeffler
+ *
+ */
+public class GorillaEncoder {
+
+	static final int VERSION = 1;
+
+	static final int TIMESTAMPS = 1;
+
+	/**
+	 * Window of 31 leading zeros and 64 meaningful bits, which cannot occur for an actual value.
+	 */
+	static final int END_MARKER = 0b11_11111_111111;
+
+	static final int END_MARKER_BITS = 13;
+
+	private static final int CHANNEL_BUFFER_SIZE = 1 << 16;
+
+	private final ByteBuffer target;
+
+	private final WritableByteChannel channel;
+
+	private final boolean timestamps;
+
+	private long bits;
+
+	private int used;
+
+	private long previousValue;
+
+	private int previousLeading = -1;
+
+	private int previousTrailing;
+
+	private long previousTimestamp;
+
+	private long previousDelta;
+
+	private long count;
+
+	private long written;
+
+	private boolean finished;
+
+	private GorillaEncoder(ByteBuffer target, WritableByteChannel channel, boolean timestamps) {
+		this.target = target;
+		this.channel = channel;
+		this.timestamps = timestamps;
+		write(VERSION << 4 | (timestamps ? TIMESTAMPS : 0), 8);
+	}
+
+	/**
+	 * @param target receives the compressed values starting at its position
+	 * @return an encoder for values without timestamps
+	 */
+	public static GorillaEncoder forValues(ByteBuffer target) {
+		return new GorillaEncoder(target, null, false);
+	}
+
+	/**
+	 * @param channel receives the compressed values
+	 * @return an encoder for values without timestamps
+	 */
+	public static GorillaEncoder forValues(WritableByteChannel channel) {
+		return new GorillaEncoder(ByteBuffer.allocate(CHANNEL_BUFFER_SIZE), channel, false);
+	}
+
+	/**
+	 * @param target receives the compressed samples starting at its position
+	 * @return an encoder for values with timestamps
+	 */
+	public static GorillaEncoder forSamples(ByteBuffer target) {
+		return new GorillaEncoder(target, null, true);
+	}
+
+	/**
+	 * @param channel receives the compressed samples
+	 * @return an encoder for values with timestamps
+	 */
+	public static GorillaEncoder forSamples(WritableByteChannel channel) {
+		return new GorillaEncoder(ByteBuffer.allocate(CHANNEL_BUFFER_SIZE), channel, true);
+	}
+
+	/**
+	 * Appends a value to a stream without timestamps.
+	 * @param value any double including NaN and infinities
+	 */
+	public void encode(double value) {
+		throwExceptionWhenTimestampsAre(true);
+		encodeValue(value);
+		count++;
+	}
+
+	/**
+	 * Appends a sample to a stream with timestamps.
+	 * @param timestamp time of the sample, compresses best if the interval between samples is constant
+	 * @param value any double including NaN and infinities
+	 */
+	public void encode(long timestamp, double value) {
+		throwExceptionWhenTimestampsAre(false);
+		encodeValue(value);
+		encodeTimestamp(timestamp);
+		count++;
+	}
+
+	/**
+	 * Appends all values to a stream without timestamps.
+	 * @param values in order
+	 */
+	public void encode(double[] values) {
+		for (double value : values) {
+			encode(value);
+		}
+	}
+
+	/**
+	 * Appends the remaining values of source to a stream without timestamps, the position of source advances to its limit.
+	 * @param values in order
+	 */
+	public void encode(DoubleBuffer values) {
+		while (values.hasRemaining()) {
+			encode(values.get());
+		}
+	}
+
+	/**
+	 * Appends all samples to a stream with timestamps.
+	 * @param timestamps time of each value
+	 * @param values in order, must be as long as timestamps
+	 */
+	public void encode(long[] timestamps, double[] values) {
+		if (timestamps.length != values.length) {
+			throw new IllegalArgumentException("Number of timestamps (" + timestamps.length + ") and values (" + values.length + ") must be equal.");
+		}
+		for (int i = 0; i < values.length; i++) {
+			encode(timestamps[i], values[i]);
+		}
+	}
+
+	/**
+	 * Terminates the stream with an end marker and writes all pending bits, channels are flushed but not closed.
+	 * @return number of bytes written in total
+	 */
+	public long finish() {
+		if (!finished) {
+			finished = true;
+			write(1, 1);
+			write(END_MARKER, END_MARKER_BITS);
+			while (used > 0) {
+				ensureRemaining(1);
+				target.put((byte) (bits >>> 56));
+				bits <<= 8;
+				used = Math.max(0, used - 8);
+				written++;
+			}
+			flush();
+		}
+		return written;
+	}
+
+	/**
+	 * @return number of values encoded so far
+	 */
+	public long getCount() {
+		return count;
+	}
+
+	/**
+	 * @return true if samples are encoded with timestamps
+	 */
+	public boolean hasTimestamps() {
+		return timestamps;
+	}
+
+	private void encodeValue(double value) {
+		long current = Double.doubleToRawLongBits(value);
+		long xor = current ^ previousValue;
+		previousValue = current;
+		if (xor == 0) {
+			write(0, 1);
+			return;
+		}
+		int leading = Math.min(31, Long.numberOfLeadingZeros(xor));
+		int trailing = Long.numberOfTrailingZeros(xor);
+		int meaningful = 64 - leading - trailing;
+		int window = 64 - previousLeading - previousTrailing;
+		/* a window widened by an outlier is only reused while this is cheaper than writing a new one */
+		if (previousLeading >= 0 && leading >= previousLeading && trailing >= previousTrailing && window <= meaningful + 11) {
+			write(0b10, 2);
+			write(xor >>> previousTrailing, window);
+		} else {
+			write(0b11, 2);
+			write(leading, 5);
+			write(meaningful - 1, 6);
+			write(xor >>> trailing, meaningful);
+			previousLeading = leading;
+			previousTrailing = trailing;
+		}
+	}
+
+	private void encodeTimestamp(long timestamp) {
+		long delta = timestamp - previousTimestamp;
+		long deltaOfDelta = delta - previousDelta;
+		previousTimestamp = timestamp;
+		previousDelta = delta;
+		if (deltaOfDelta == 0) {
+			write(0, 1);
+		} else if (deltaOfDelta >= -63 && deltaOfDelta <= 64) {
+			write(0b10, 2);
+			write(deltaOfDelta, 7);
+		} else if (deltaOfDelta >= -255 && deltaOfDelta <= 256) {
+			write(0b110, 3);
+			write(deltaOfDelta, 9);
+		} else if (deltaOfDelta >= -2047 && deltaOfDelta <= 2048) {
+			write(0b1110, 4);
+			write(deltaOfDelta, 12);
+		} else {
+			write(0b1111, 4);
+			write(deltaOfDelta, 64);
+		}
+	}
+
+	/**
+	 * Appends the lowest n bits of value, the stream is written in big-endian bit order.
+	 */
+	private void write(long value, int n) {
+		long masked = n == 64 ? value : value & ((1L << n) - 1);
+		int free = 64 - used;
+		if (n < free) {
+			bits |= masked << (free - n);
+			used += n;
+		} else {
+			int rest = n - free;
+			putLong(bits | masked >>> rest);
+			bits = rest == 0 ? 0L : masked << (64 - rest);
+			used = rest;
+		}
+	}
+
+	private void putLong(long value) {
+		ensureRemaining(Long.BYTES);
+		target.putLong(target.order() == ByteOrder.BIG_ENDIAN ? value : Long.reverseBytes(value));
+		written += Long.BYTES;
+	}
+
+	private void ensureRemaining(int bytes) {
+		if (channel != null && target.remaining() < bytes) {
+			flush();
+		}
+	}
+
+	private void flush() {
+		if (channel == null) {
+			return;
+		}
+		target.flip();
+		try {
+			while (target.hasRemaining()) {
+				channel.write(target);
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		target.clear();
+	}
+
+	private void throwExceptionWhenTimestampsAre(boolean expected) {
+		if (finished) {
+			throw new IllegalStateException("The stream is already finished.");
+		}
+		if (timestamps == expected) {
+			throw new IllegalStateException(timestamps ? "Samples require a timestamp." : "Values were encoded without timestamps.");
+		}
+	}
+
+	@Override
+	public String toString() {
+		return new StringBuilder("Gorilla encoder of " + count + (timestamps ? " samples" : " values") + ", " + written + " bytes written").toString();
+	}
+}
@@ -0,0 +1,131 @@
+package net.raumzeitfalle.timeseries;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * Finds the lambda minimizing the sum of squared one-step-ahead forecast errors (SSE) of an EWMA, where EWMA at (n-1) is the forecast for the value at (n).<br>
+ * <br>
+ * The SSE is evaluated on a coarse grid of lambdas first, then the best grid interval is refined using golden-section search.
+ * Each evaluation is a single pass over the series which neither boxes nor allocates. Many series are optimized in parallel on a {@link ForkJoinPool}.
+ * As with {@link EwmaFunctions#applyWithLambda(double, double[])}, EWMA0 is the first value of a series.
+ * @author Oliver Loeffler
+ *
+ */
+public class LambdaOptimizer {
+
+	private static final double GOLDEN_RATIO = (Math.sqrt(5) - 1) / 2;
+	
+	private final int gridPoints;
+	
+	private final double tolerance;
+	
+	private LambdaOptimizer(int gridPoints, double tolerance) {
+		if (gridPoints < 2) {
+			throw new IllegalArgumentException("At least 2 grid points are required.");
+		}
+		if (!(tolerance > 0)) {
+			throw new IllegalArgumentException("Tolerance must be greater 0.");
+		}
+		this.gridPoints = gridPoints;
+		this.tolerance = tolerance;
+	}
+	
+	/**
+	 * @return An optimizer using a grid of 20 lambdas and a tolerance of 1E-4.
+	 */
+	public static LambdaOptimizer get() {
+		return new LambdaOptimizer(20, 1E-4);
+	}
+	
+	/**
+	 * @param gridPoints number of lambdas evaluated equidistantly on (0,1]
+	 * @param tolerance width of the lambda interval at which golden-section search stops
+	 * @return {@link LambdaOptimizer}
+	 */
+	public static LambdaOptimizer withGrid(int gridPoints, double tolerance) {
+		return new LambdaOptimizer(gridPoints, tolerance);
+	}
+	
+	/**
+	 * Sum of squared one-step-ahead forecast errors.
+	 * @param lambda weight of the present value
+	 * @param series time series, EWMA0 is its first value
+	 * @return SSE
+	 */
+	public static double sse(double lambda, double[] series) {
+		if (series.length == 0) {
+			return 0.0;
+		}
+		double ewma = series[0];
+		double sse = 0.0;
+		for (int i = 1; i < series.length; i++) {
+			double error = series[i] - ewma;
+			sse += error * error;
+			ewma += lambda * error;
+		}
+		return sse;
+	}
+	
+	/**
+	 * @param series time series, EWMA0 is its first value
+	 * @return lambda in (0,1] minimizing the SSE of one-step-ahead forecasts
+	 */
+	public double optimize(double[] series) {
+		double step = 1.0 / gridPoints;
+		int best = 1;
+		double bestSse = Double.POSITIVE_INFINITY;
+		for (int k = 1; k <= gridPoints; k++) {
+			double sse = sse(k * step, series);
+			if (sse < bestSse) {
+				bestSse = sse;
+				best = k;
+			}
+		}
+		
+		double a = Math.max((best - 1) * step, Math.ulp(1.0));
+		double b = Math.min((best + 1) * step, 1.0);
+		double c = b - GOLDEN_RATIO * (b - a);
+		double d = a + GOLDEN_RATIO * (b - a);
+		double sseC = sse(c, series);
+		double sseD = sse(d, series);
+		while (b - a > tolerance) {
+			if (sseC < sseD) {
+				b = d;
+				d = c;
+				sseD = sseC;
+				c = b - GOLDEN_RATIO * (b - a);
+				sseC = sse(c, series);
+			} else {
+				a = c;
+				c = d;
+				sseC = sseD;
+				d = a + GOLDEN_RATIO * (b - a);
+				sseD = sse(d, series);
+			}
+		}
+		double lambda = (a + b) / 2;
+		return sse(lambda, series) <= bestSse ? lambda : best * step;
+	}
+	
+	/**
+	 * Optimizes all series in parallel using the common {@link ForkJoinPool}.
+	 * @param series time series, EWMA0 is the first value of each series
+	 * @return optimal lambda for each series
+	 */
+	public double[] optimize(double[][] series) {
+		return optimize(series, ForkJoinPool.commonPool());
+	}
+	
+	/**
+	 * Optimizes all series in parallel using the given {@link ForkJoinPool}.
+	 * @param series time series, EWMA0 is the first value of each series
+	 * @param pool executes the optimization
+	 * @return optimal lambda for each series
+	 */
+	public double[] optimize(double[][] series, ForkJoinPool pool) {
+		double[] lambdas = new double[series.length];
+		pool.submit(() -> IntStream.range(0, series.length).parallel().forEach(i -> lambdas[i] = optimize(series[i]))).join();
+		return lambdas;
+	}
+}
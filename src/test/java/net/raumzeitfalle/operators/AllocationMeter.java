@@ -0,0 +1,112 @@
+/*
+ * 
+ * FunWithLambdas: EWMA
+ *
+ * Copyright (C) 2016 Oliver Löffler
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package net.raumzeitfalle.operators;
+
+import static org.junit.Assert.fail;
+
+import java.lang.management.ManagementFactory;
+import java.util.function.DoubleSupplier;
+import java.util.function.IntToDoubleFunction;
+
+import org.junit.Assume;
+
+/**
+ * Measures the bytes allocated by the current thread using com.sun.management.ThreadMXBean, which allows tests to fail
+ * as soon as a hot path starts to allocate (e.g. due to accidental boxing).<br>
+ * <br>
+ * Code under test is warmed up first, hence it is measured as compiled by the JIT compiler.
+ * Tests using this meter are skipped on JVMs not supporting allocation measurement.
+ * @author Oliver Löffler
+ *
+ */
+public final class AllocationMeter {
+
+    /**
+     * Number of calls measured by {@link #assertBytesPerMillionCalls(long, IntToDoubleFunction)}.
+     */
+    public static final int CALLS = 1_000_000;
+
+    private static final int WARMUP_ROUNDS = 3;
+
+    private static volatile double sink;
+
+    private AllocationMeter() {
+	/* static utility */
+    }
+
+    /**
+     * Asserts that one million calls allocate at most maxBytes in total.
+     * @param maxBytes threshold for one million calls, 0 would also fail due to allocations of the measurement itself
+     * @param call invoked with the number of the call, its result is consumed to prevent dead code elimination
+     */
+    public static void assertBytesPerMillionCalls(long maxBytes, IntToDoubleFunction call) {
+	long bytes = measure(() -> {
+	    double sum = 0.0;
+	    for (int i = 0; i < CALLS; i++) {
+		sum += call.applyAsDouble(i);
+	    }
+	    return sum;
+	});
+	if (bytes > maxBytes) {
+	    fail("Expected at most " + maxBytes + " bytes allocated per " + CALLS + " calls but was " + bytes + " bytes.");
+	}
+    }
+
+    /**
+     * Asserts that a single execution of task allocates at most maxBytes.
+     * @param maxBytes threshold for one execution
+     * @param task code under test, its result is consumed to prevent dead code elimination
+     */
+    public static void assertBytesPerCall(long maxBytes, DoubleSupplier task) {
+	long bytes = measure(task);
+	if (bytes > maxBytes) {
+	    fail("Expected at most " + maxBytes + " bytes allocated but was " + bytes + " bytes.");
+	}
+    }
+
+    /**
+     * @param task code under test, executed {@value #WARMUP_ROUNDS} times before it is measured
+     * @return bytes allocated by the current thread during one execution of task
+     */
+    public static long measure(DoubleSupplier task) {
+	com.sun.management.ThreadMXBean threads = threadMXBean();
+	long thread = Thread.currentThread().getId();
+	for (int i = 0; i < WARMUP_ROUNDS; i++) {
+	    sink += task.getAsDouble();
+	}
+	long before = threads.getThreadAllocatedBytes(thread);
+	double result = task.getAsDouble();
+	long after = threads.getThreadAllocatedBytes(thread);
+	sink += result;
+	return after - before;
+    }
+
+    private static com.sun.management.ThreadMXBean threadMXBean() {
+	java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+	Assume.assumeTrue("Allocation measurement is not supported by this JVM.", threads instanceof com.sun.management.ThreadMXBean);
+	com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threads;
+	Assume.assumeTrue("Allocation measurement is not supported by this JVM.", allocations.isThreadAllocatedMemorySupported());
+	if (!allocations.isThreadAllocatedMemoryEnabled()) {
+	    allocations.setThreadAllocatedMemoryEnabled(true);
+	}
+	return allocations;
+    }
+
+}
@@ -43,6 +43,21 @@ public class BinaryEwmaTest {
 	assertEquals(1.048, functionUnderTest.apply( Double.valueOf(3.0), Double.valueOf(0.56)).doubleValue(), TOLERANCE);
     }
 
+    @Test
+    public void applyAsDoubleDoesNotAllocate() {
+	BinaryEwma ewma = (BinaryEwma) BinaryEwma.withLambda(0.2);
+	AllocationMeter.assertBytesPerMillionCalls(1024, i -> ewma.applyAsDouble(i & 7, 0.5));
+    }
+
+    @Test
+    public void applyBoxesOnlyTheResult() {
+	BinaryOperator<Double> ewma = BinaryEwma.get();
+	Double current = Double.valueOf(3.0);
+	Double previous = Double.valueOf(0.5);
+	/* at most one Double (16 bytes, 24 bytes without compressed class pointers) per call */
+	AllocationMeter.assertBytesPerMillionCalls(24L * AllocationMeter.CALLS + 1024, i -> ewma.apply(current, previous).doubleValue());
+    }
+
     @Test(expected=IllegalArgumentException.class)
     public void lambdaWithNaNValue() {
 	BinaryEwma.withLambda(Double.NaN);
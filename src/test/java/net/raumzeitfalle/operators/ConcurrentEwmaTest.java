@@ -0,0 +1,132 @@
+/*
+ * 
+ * FunWithLambdas: EWMA
+ *
+ * Copyright (C) 2016 Oliver Löffler
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package net.raumzeitfalle.operators;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.function.DoubleConsumer;
+
+import org.junit.Test;
+
+public class ConcurrentEwmaTest {
+
+    private static final double TOLERANCE = 0.0001;
+
+    private static final int THREADS = 4;
+
+    private static final int UPDATES = 200_000;
+
+    private static final double LAMBDA = 1E-6;
+
+    @Test
+    public void apply() {
+	ConcurrentEwma ewma = ConcurrentEwma.withLambda(0.2);
+	assertEquals(0.2, ewma.applyAsDouble(1.0), TOLERANCE);
+	assertEquals(0.56, ewma.applyAsDouble(2.0), TOLERANCE);
+	assertEquals(1.048, ewma.applyAsDouble(3.0), TOLERANCE);
+	assertEquals(1.048, ewma.get(), TOLERANCE);
+    }
+
+    @Test
+    public void applyStriped() {
+	StripedConcurrentEwma ewma = StripedConcurrentEwma.buildWith(0.2, 0.0, 2);
+	ewma.accept(1.0);
+	ewma.accept(2.0);
+	ewma.accept(3.0);
+	assertEquals(1.048, ewma.get(), TOLERANCE);
+	assertEquals(1.048, ewma.get(), TOLERANCE);
+    }
+
+    @Test
+    public void valuesOfOneThreadStayInOrderWhenItsCellIsBusy() throws InterruptedException {
+	StripedConcurrentEwma ewma = StripedConcurrentEwma.buildWith(0.2, 0.0, 2);
+	DoubleEwma sequential = DoubleEwma.buildWith(0.2, 0.0);
+	ewma.accept(1.0);
+	sequential.applyAsDouble(1.0);
+
+	StripedConcurrentEwma.Cell cell = ewma.cell();
+	assertTrue(cell.tryAcquire());
+	Thread releaser = new Thread(() -> {
+	    try {
+		Thread.sleep(50);
+	    } catch (InterruptedException e) {
+		Thread.currentThread().interrupt();
+	    }
+	    cell.release();
+	});
+	releaser.start();
+
+	ewma.accept(5.0);
+	ewma.accept(2.0);
+	releaser.join();
+	sequential.applyAsDouble(5.0);
+	double expected = sequential.applyAsDouble(2.0);
+
+	assertEquals(expected, ewma.get(), 1E-12);
+    }
+
+    /*
+     * When feeding a constant value c starting at EWMA0 = 0, EWMA_n = c * (1 - (1-lambda)^n) regardless of the order of updates.
+     * Each lost update reduces n and thus the result.
+     */
+    @Test
+    public void noUpdatesLostWithConcurrentProducers() throws InterruptedException {
+	ConcurrentEwma ewma = ConcurrentEwma.withLambda(LAMBDA);
+	produce(ewma::applyAsDouble);
+	assertEquals(expected(), ewma.get(), 1E-9);
+    }
+
+    @Test
+    public void noUpdatesLostWithStripedConcurrentProducers() throws InterruptedException {
+	StripedConcurrentEwma ewma = StripedConcurrentEwma.buildWith(LAMBDA, 0.0, 2);
+	produce(ewma);
+	assertEquals(expected(), ewma.get(), 1E-9);
+    }
+
+    private static double expected() {
+	return 1.0 - Math.pow(1 - LAMBDA, (double) THREADS * UPDATES);
+    }
+
+    private static void produce(DoubleConsumer ewma) throws InterruptedException {
+	CountDownLatch start = new CountDownLatch(1);
+	Thread[] producers = new Thread[THREADS];
+	for (int t = 0; t < THREADS; t++) {
+	    producers[t] = new Thread(() -> {
+		try {
+		    start.await();
+		} catch (InterruptedException e) {
+		    Thread.currentThread().interrupt();
+		    return;
+		}
+		for (int i = 0; i < UPDATES; i++) {
+		    ewma.accept(1.0);
+		}
+	    });
+	    producers[t].start();
+	}
+	start.countDown();
+	for (Thread producer : producers) {
+	    producer.join();
+	}
+    }
+
+}
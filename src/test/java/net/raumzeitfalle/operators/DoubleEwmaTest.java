@@ -0,0 +1,108 @@
+/*
+ * 
+ * FunWithLambdas: EWMA
+ *
+ * Copyright (C) 2016 Oliver Löffler
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package net.raumzeitfalle.operators;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+import java.util.stream.DoubleStream;
+
+import org.junit.Test;
+
+public class DoubleEwmaTest {
+
+    DoubleEwma functionUnderTest = DoubleEwma.get();
+
+    private static final double TOLERANCE = 0.0001;
+
+    @Test
+    public void applyStateless() {
+	assertEquals(0.2, functionUnderTest.applyAsDouble(1.0, 0.0), TOLERANCE);
+	assertEquals(0.56, functionUnderTest.applyAsDouble(2.0, 0.2), TOLERANCE);
+	assertEquals(1.048, functionUnderTest.applyAsDouble(3.0, 0.56), TOLERANCE);
+	assertEquals(0.0, functionUnderTest.getPrevious(), TOLERANCE);
+    }
+
+    @Test
+    public void applyStateful() {
+	DoubleEwma ewma = DoubleEwma.buildWith(0.2, 0.0);
+	assertEquals(0.2, ewma.applyAsDouble(1.0), TOLERANCE);
+	assertEquals(0.56, ewma.applyAsDouble(2.0), TOLERANCE);
+	assertEquals(1.048, ewma.applyAsDouble(3.0), TOLERANCE);
+	assertEquals(1.048, ewma.getPrevious(), TOLERANCE);
+    }
+
+    @Test
+    public void applyToArray() {
+	double[] values = new double[]{0.0,1.0,2.0,3.0};
+	double[] result = DoubleEwma.withLambda(0.2).applyTo(values, new double[values.length]);
+	assertArrayEquals(new double[]{0.0,0.2,0.56,1.048}, result, TOLERANCE);
+    }
+
+    @Test
+    public void applyToArrayInPlace() {
+	double[] values = new double[]{0.0,1.0,2.0,3.0};
+	DoubleEwma.withLambda(0.2).applyTo(values, values);
+	assertArrayEquals(new double[]{0.0,0.2,0.56,1.048}, values, TOLERANCE);
+    }
+
+    @Test
+    public void applyInParallelToArray() {
+	double[] values = new Random(7).doubles(250_000).toArray();
+	DoubleEwma sequential = DoubleEwma.buildWith(0.05, 1.0);
+	DoubleEwma parallel = DoubleEwma.buildWith(0.05, 1.0);
+	double[] expect = sequential.applyTo(values, new double[values.length]);
+	double[] result = parallel.applyInParallel(values, values);
+	assertArrayEquals(expect, result, 1E-12);
+	assertEquals(sequential.getPrevious(), parallel.getPrevious(), 1E-12);
+    }
+
+    @Test
+    public void applyToDoubleStream() {
+	double[] result = DoubleEwma.withLambda(0.2).applyTo(DoubleStream.of(1.0, 2.0, 3.0).parallel()).toArray();
+	assertArrayEquals(new double[]{0.2,0.56,1.048}, result, TOLERANCE);
+    }
+
+    @Test
+    public void gettingLambdaAndStart() {
+	DoubleEwma ewma = DoubleEwma.buildWith(0.35, 2.0);
+	assertEquals(0.35, ewma.getLambda(), TOLERANCE);
+	assertEquals(2.0, ewma.getEWMA0(), TOLERANCE);
+	assertTrue(ewma.toString().contains("EWMA_0 = 2.0"));
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void lambdaWithNaNValue() {
+	DoubleEwma.withLambda(Double.NaN);
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void lambdaGreaterOne() {
+	DoubleEwma.withLambda(10);
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void lambdaEqualsZero() {
+	DoubleEwma.withLambda(0);
+    }
+
+}
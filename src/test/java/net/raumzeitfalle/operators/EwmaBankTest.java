@@ -0,0 +1,92 @@
+/*
+ * 
+ * FunWithLambdas: EWMA
+ *
+ * Copyright (C) 2016 Oliver Löffler
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package net.raumzeitfalle.operators;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class EwmaBankTest {
+
+    private static final double[] LAMBDAS = {0.2, 0.1, 0.05, 1.0};
+
+    private final double[] values = new Random(13).doubles(1000).toArray();
+
+    @Test
+    public void applyTo() {
+	EwmaBank bank = EwmaBank.buildWith(LAMBDAS, 0.5);
+	double[] matrix = bank.applyTo(values);
+	for (int k = 0; k < LAMBDAS.length; k++) {
+	    double[] expect = DoubleEwma.buildWith(LAMBDAS[k], 0.5).applyTo(values, new double[values.length]);
+	    for (int i = 0; i < values.length; i++) {
+		assertEquals(expect[i], matrix[i * LAMBDAS.length + k], 0.0);
+	    }
+	    assertEquals(expect[values.length - 1], bank.getPrevious(k), 0.0);
+	}
+    }
+
+    @Test
+    public void applyToColumns() {
+	double[] matrix = EwmaBank.withLambdas(LAMBDAS).applyToColumns(values, new double[values.length * LAMBDAS.length]);
+	for (int k = 0; k < LAMBDAS.length; k++) {
+	    double[] expect = DoubleEwma.withLambda(LAMBDAS[k]).applyTo(values, new double[values.length]);
+	    double[] row = new double[values.length];
+	    System.arraycopy(matrix, k * values.length, row, 0, values.length);
+	    assertArrayEquals(expect, row, 0.0);
+	}
+    }
+
+    @Test
+    public void update() {
+	EwmaBank bank = EwmaBank.withLambdas(0.2, 0.5);
+	double[] target = new double[3];
+	bank.update(1.0, target, 1);
+	assertArrayEquals(new double[]{0.0, 0.2, 0.5}, target, 0.0);
+	assertEquals(2, bank.size());
+	assertArrayEquals(new double[]{0.2, 0.5}, bank.getLambdas(), 0.0);
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void matrixExceedingOneArray() {
+	double[] lambdas = new double[1 << 16];
+	Arrays.fill(lambdas, 0.5);
+	EwmaBank.withLambdas(lambdas).applyTo(new double[1 << 16]);
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void targetTooSmall() {
+	EwmaBank.withLambdas(LAMBDAS).applyToColumns(values, new double[values.length]);
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void withoutLambdas() {
+	EwmaBank.withLambdas();
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void invalidLambda() {
+	EwmaBank.withLambdas(0.2, 0.0);
+    }
+
+}
@@ -0,0 +1,99 @@
+/*
+ * 
+ * FunWithLambdas: EWMA
+ *
+ * Copyright (C) 2016 Oliver Löffler
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package net.raumzeitfalle.operators;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class EwmaControlChartTest {
+
+    private static final double TOLERANCE = 1E-12;
+
+    @Test
+    public void limitsAccordingToNist() {
+	double lambda = 0.3;
+	EwmaControlChart chart = EwmaControlChart.buildWith(lambda, 50.0, 2.0, 3.0, null);
+	for (int n = 1; n <= 30; n++) {
+	    chart.applyAsDouble(50.0);
+	    double halfWidth = 3.0 * 2.0 * Math.sqrt(lambda / (2 - lambda) * (1 - Math.pow(1 - lambda, 2 * n)));
+	    assertEquals(50.0 - halfWidth, chart.getLCL(), TOLERANCE);
+	    assertEquals(50.0 + halfWidth, chart.getUCL(), TOLERANCE);
+	    assertFalse(chart.isOutOfControl());
+	}
+    }
+
+    @Test
+    public void estimatedSigma() {
+	EwmaControlChart chart = EwmaControlChart.withEstimatedSigma(0.2, 0.0, 3.0, null);
+	chart.applyAsDouble(1.0);
+	assertTrue(Double.isNaN(chart.getUCL()));
+	chart.applyAsDouble(3.0);
+	chart.applyAsDouble(5.0);
+	assertEquals(2.0, chart.getSigma(), TOLERANCE);
+	assertEquals(3, chart.getCount());
+    }
+
+    @Test
+    public void alarmOnShift() {
+	List<Long> alarms = new ArrayList<>();
+	EwmaControlChart chart = EwmaControlChart.buildWith(0.2, 0.0, 1.0, 3.0, (series, n, ewma, lcl, ucl) -> alarms.add(Long.valueOf(n)));
+	Random random = new Random(1);
+	for (int n = 1; n <= 100; n++) {
+	    chart.applyAsDouble(random.nextGaussian() * 0.1 + (n > 50 ? 3.0 : 0.0));
+	}
+	assertEquals(Long.valueOf(52), alarms.get(0));
+	assertEquals(49, alarms.size());
+	assertTrue(chart.isOutOfControl());
+    }
+
+    @Test
+    public void multipleSeries() {
+	List<String> alarms = new ArrayList<>();
+	MultiSeriesControlChart charts = MultiSeriesControlChart.buildWith(0.3, 3.0, 4, (series, n, ewma, lcl, ucl) -> alarms.add(series + "@" + n));
+	charts.register(1L, 50.0, 2.0);
+	EwmaControlChart single = EwmaControlChart.buildWith(0.3, 50.0, 2.0, 3.0, null);
+	for (int n = 1; n <= 20; n++) {
+	    double value = n < 15 ? 50.0 : 60.0;
+	    assertEquals(single.applyAsDouble(value), charts.update(1L, value), TOLERANCE);
+	    charts.update(2L, n % 2);
+	    assertEquals(single.getLCL(), charts.getLCL(1L), TOLERANCE);
+	    assertEquals(single.getUCL(), charts.getUCL(1L), TOLERANCE);
+	    assertEquals(single.isOutOfControl(), charts.isOutOfControl(1L));
+	}
+	assertEquals(2, charts.size());
+	assertEquals(20, charts.getCount(2L));
+	assertFalse(charts.isOutOfControl(2L));
+	assertTrue(alarms.contains("1@15"));
+	assertFalse(alarms.contains("1@14"));
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void invalidWidth() {
+	EwmaControlChart.buildWith(0.2, 0.0, 1.0, 0.0, null);
+    }
+
+}
@@ -0,0 +1,108 @@
+/*
+ * 
+ * FunWithLambdas: EWMA
+ *
+ * Copyright (C) 2016 Oliver Löffler
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package net.raumzeitfalle.operators;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.function.UnaryOperator;
+
+import org.junit.Test;
+
+public class EwmaKernelTest {
+
+    private static final int SERIES = 1003;
+
+    private final Random random = new Random(17);
+
+    @Test
+    public void updateEqualsUnaryEwmaPerSeries() {
+	double[] lambdas = random.doubles(SERIES, 0.01, 1.0).toArray();
+	double[] prev = new double[SERIES];
+	List<UnaryOperator<Double>> operators = operators(lambdas, 0.0);
+
+	for (int n = 0; n < 50; n++) {
+	    double[] scan = random.doubles(SERIES).toArray();
+	    EwmaKernel.update(prev, lambdas, scan);
+	    for (int i = 0; i < SERIES; i++) {
+		assertEquals(operators.get(i).apply(scan[i]).doubleValue(), prev[i], 0.0);
+	    }
+	}
+    }
+
+    @Test
+    public void updateSharedLambdaEqualsPerSeriesLambdas() {
+	double[] lambdas = new double[SERIES];
+	Arrays.fill(lambdas, 0.3);
+	double[] shared = random.doubles(SERIES).toArray();
+	double[] individual = shared.clone();
+
+	for (int n = 0; n < 20; n++) {
+	    double[] scan = random.doubles(SERIES).toArray();
+	    EwmaKernel.update(shared, 0.3, scan);
+	    EwmaKernel.update(individual, lambdas, scan);
+	}
+
+	assertArrayEquals(individual, shared, 0.0);
+    }
+
+    @Test
+    public void updateRangeLeavesOtherSeries() {
+	double[] lambdas = random.doubles(SERIES, 0.01, 1.0).toArray();
+	double[] prev = random.doubles(SERIES).toArray();
+	double[] before = prev.clone();
+	double[] scan = random.doubles(SERIES).toArray();
+
+	EwmaKernel.update(prev, lambdas, scan, 10, 20);
+
+	for (int i = 0; i < SERIES; i++) {
+	    double expected = i >= 10 && i < 20 ? lambdas[i] * scan[i] + (1 - lambdas[i]) * before[i] : before[i];
+	    assertEquals(expected, prev[i], 0.0);
+	}
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void lengthsMustMatch() {
+	EwmaKernel.update(new double[3], new double[3], new double[2]);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rangeMustBeValid() {
+	EwmaKernel.update(new double[3], new double[3], new double[3], 2, 4);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void validateRejectsInvalidLambda() {
+	EwmaKernel.validate(new double[] { 0.5, 1.5 });
+    }
+
+    private static List<UnaryOperator<Double>> operators(double[] lambdas, double initial) {
+	List<UnaryOperator<Double>> operators = new ArrayList<>(lambdas.length);
+	for (double lambda : lambdas) {
+	    operators.add(UnaryEwma.buildWith(lambda, initial));
+	}
+	return operators;
+    }
+
+}
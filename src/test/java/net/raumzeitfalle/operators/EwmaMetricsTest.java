@@ -0,0 +1,207 @@
+/*
+ * 
+ * FunWithLambdas: EWMA
+ *
+ * Copyright (C) 2016 Oliver Löffler
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package net.raumzeitfalle.operators;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.PrimitiveIterator;
+import java.util.Random;
+import java.util.function.DoubleUnaryOperator;
+import java.util.stream.DoubleStream;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.Test;
+
+public class EwmaMetricsTest {
+
+    @Test(expected = IllegalArgumentException.class)
+    public void nameIsRequired() {
+	EwmaMetrics.create("");
+    }
+
+    @Test
+    public void noopReturnsArgumentsUnchanged() {
+	EwmaMetrics metrics = EwmaMetrics.noop();
+	DoubleEwma ewma = DoubleEwma.withLambda(0.3);
+	ControlChartListener listener = (series, n, value, lcl, ucl) -> { };
+
+	assertFalse(metrics.isEnabled());
+	assertSame(ewma, metrics.instrument(ewma));
+	assertSame(listener, metrics.countAlarms(listener));
+	assertSame(EwmaMetrics.noop().recorder(), metrics.recorder());
+
+	metrics.register();
+	assertNull(metrics.getObjectName());
+	assertEquals(0L, metrics.getUpdates());
+	assertEquals(-1L, metrics.getMaxStalenessNanos());
+    }
+
+    @Test
+    public void instrumentedOperatorIsUnchangedAndCountsUpdates() {
+	EwmaMetrics metrics = EwmaMetrics.create("instrumented");
+	double[] values = new Random(7).doubles(1000).toArray();
+
+	double[] expected = DoubleEwma.withLambda(0.2).applyTo(Arrays.stream(values)).toArray();
+	double[] actual = DoubleEwma.withLambda(0.2).applyTo(Arrays.stream(values), metrics).toArray();
+
+	assertArrayEquals(expected, actual, 0.0);
+	assertEquals(1000L, metrics.getUpdates());
+	assertEquals(1000 / EwmaMetrics.SAMPLE_INTERVAL, metrics.getLatencySamples());
+	assertTrue(metrics.getUpdatesPerSecond() > 0);
+    }
+
+    @Test
+    public void shortAndPartiallyConsumedStreamsPublishAllUpdates() {
+	EwmaMetrics metrics = EwmaMetrics.create("short");
+	assertEquals(0.0, DoubleEwma.withLambda(0.2).applyTo(DoubleStream.of(new double[10]), metrics).sum(), 0.0);
+	assertEquals(10L, metrics.getUpdates());
+
+	try (DoubleStream stream = DoubleEwma.withLambda(0.2).applyTo(DoubleStream.iterate(0, v -> v + 1), metrics)) {
+	    PrimitiveIterator.OfDouble iterator = stream.iterator();
+	    for (int i = 0; i < 5; i++) {
+		iterator.nextDouble();
+	    }
+	}
+	assertEquals(15L, metrics.getUpdates());
+    }
+
+    @Test
+    public void percentilesAreOrdered() {
+	EwmaMetrics metrics = EwmaMetrics.create("percentiles");
+	DoubleUnaryOperator operator = metrics.instrument(DoubleEwma.withLambda(0.5));
+	for (int i = 0; i < 100 * EwmaMetrics.SAMPLE_INTERVAL; i++) {
+	    operator.applyAsDouble(i);
+	}
+
+	assertEquals(100L, metrics.getLatencySamples());
+	assertTrue(metrics.getLatencyP50Nanos() <= metrics.getLatencyP99Nanos());
+	assertTrue(metrics.getLatencyP99Nanos() <= metrics.getLatencyP999Nanos());
+	assertEquals(100L, Arrays.stream(metrics.getLatencyHistogram()).sum());
+
+	metrics.reset();
+	assertEquals(0L, metrics.getUpdates());
+	assertEquals(0L, metrics.getLatencySamples());
+    }
+
+    @Test
+    public void histogramBucketsBoundTheirLatencies() {
+	for (long nanos : new long[] { 0L, 1L, 3L, 4L, 5L, 7L, 8L, 100L, 1023L, 1024L, 123_456_789L, Long.MAX_VALUE }) {
+	    int bucket = LatencyHistogram.bucket(nanos);
+	    assertTrue(nanos + " exceeds bucket " + bucket, nanos <= LatencyHistogram.upperBound(bucket));
+	    assertTrue(nanos + " fits bucket " + (bucket - 1), bucket == 0 || nanos > LatencyHistogram.upperBound(bucket - 1));
+	}
+    }
+
+    @Test
+    public void countsAlarmsOfControlChart() {
+	EwmaMetrics metrics = EwmaMetrics.create("alarms");
+	long[] received = new long[1];
+	EwmaControlChart chart = EwmaControlChart.buildWith(0.2, 10.0, 1.0, 3.0,
+		metrics.countAlarms((series, n, ewma, lcl, ucl) -> received[0]++));
+
+	for (int i = 0; i < 20; i++) {
+	    chart.applyAsDouble(i < 10 ? 10.0 : 20.0);
+	}
+
+	assertTrue(received[0] > 0);
+	assertEquals(received[0], metrics.getAlarms());
+    }
+
+    @Test
+    public void multiSeriesEwmaReportsUpdatesAndStaleness() {
+	EwmaMetrics metrics = EwmaMetrics.create("series");
+	MultiSeriesEwma ewma = MultiSeriesEwma.withLambda(0.2).instrumentWith(metrics);
+	assertEquals(-1L, ewma.getMaxStalenessNanos());
+
+	for (int i = 0; i < 100; i++) {
+	    ewma.update(i % 10, i);
+	}
+	ewma.updateBatch(new long[] { 1L, 2L, 3L }, new double[] { 1.0, 2.0, 3.0 }, null);
+	ewma.flushMetrics();
+
+	assertEquals(103L, metrics.getUpdates());
+	assertTrue(ewma.getStalenessNanos(1L) >= 0);
+	assertEquals(-1L, ewma.getStalenessNanos(99L));
+	assertTrue(ewma.getMaxStalenessNanos() >= ewma.getStalenessNanos(1L) - 1_000_000_000L);
+	assertTrue(metrics.getMaxStalenessNanos() >= 0);
+
+	MultiSeriesEwma plain = MultiSeriesEwma.withLambda(0.2);
+	plain.update(1L, 1.0);
+	assertEquals(-1L, plain.getStalenessNanos(1L));
+	assertEquals(-1L, plain.getMaxStalenessNanos());
+    }
+
+    @Test
+    public void stalenessIsTakenForEachUpdate() throws InterruptedException {
+	MultiSeriesEwma ewma = MultiSeriesEwma.withLambda(0.2).instrumentWith(EwmaMetrics.create("fresh"));
+	ewma.update(1L, 1.0);
+	Thread.sleep(20);
+	ewma.update(2L, 2.0);
+
+	long second = ewma.getStalenessNanos(2L);
+	long first = ewma.getStalenessNanos(1L);
+	assertTrue(first - second >= 20_000_000L);
+    }
+
+    @Test
+    public void instrumentingTwiceTracksStalenessOnce() {
+	EwmaMetrics metrics = EwmaMetrics.create("twice");
+	MultiSeriesEwma ewma = MultiSeriesEwma.withLambda(0.2).instrumentWith(metrics);
+	ewma.update(1L, 1.0);
+	assertSame(ewma, ewma.instrumentWith(metrics));
+	ewma.update(1L, 2.0);
+	ewma.flushMetrics();
+	assertEquals(2L, metrics.getUpdates());
+
+	ewma.instrumentWith(EwmaMetrics.create("other"));
+	assertEquals(-1L, metrics.getMaxStalenessNanos());
+	assertEquals(2L, metrics.getUpdates());
+    }
+
+    @Test
+    public void exportsAttributesViaJmx() throws Exception {
+	EwmaMetrics metrics = EwmaMetrics.create("jmx test");
+	DoubleUnaryOperator operator = metrics.instrument(DoubleEwma.withLambda(0.5));
+	DoubleStream.iterate(0, v -> v + 1).limit(EwmaMetrics.SAMPLE_INTERVAL).forEach(operator::applyAsDouble);
+
+	metrics.register();
+	ObjectName name = metrics.getObjectName();
+	MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+	try {
+	    assertTrue(server.isRegistered(name));
+	    assertEquals((long) EwmaMetrics.SAMPLE_INTERVAL, server.getAttribute(name, "Updates"));
+	    assertEquals(1L, server.getAttribute(name, "LatencySamples"));
+	} finally {
+	    metrics.unregister();
+	}
+	assertFalse(server.isRegistered(name));
+	assertNull(metrics.getObjectName());
+    }
+
+}
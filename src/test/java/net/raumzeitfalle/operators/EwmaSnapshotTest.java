@@ -0,0 +1,183 @@
+/*
+ * 
+ * FunWithLambdas: EWMA
+ *
+ * Copyright (C) 2016 Oliver Löffler
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package net.raumzeitfalle.operators;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import org.junit.Test;
+
+public class EwmaSnapshotTest {
+
+    @Test
+    public void singleEwmaContinuesAfterRestore() throws IOException {
+	DoubleEwma ewma = DoubleEwma.buildWith(0.3, 5.0);
+	ewma.applyTo(new double[] { 1.0, 2.0, 3.0 }, new double[3]);
+	ewma.applyAsDouble(4.0);
+
+	DoubleEwma restored = DoubleEwma.buildWith(roundTrip(ewma.snapshot()));
+
+	assertEquals(0.3, restored.getLambda(), 0.0);
+	assertEquals(5.0, restored.getEWMA0(), 0.0);
+	assertEquals(ewma.getPrevious(), restored.getPrevious(), 0.0);
+	assertEquals(4, restored.getCount());
+	assertEquals(ewma.applyAsDouble(7.0), restored.applyAsDouble(7.0), 0.0);
+    }
+
+    @Test
+    public void unaryEwmaFromFile() throws IOException {
+	UnaryEwma ewma = UnaryEwma.buildWith(DoubleEwma.buildWith(0.2, 1.0).snapshot());
+	ewma.apply(2.0);
+	ewma.apply(3.0);
+
+	Path file = Files.createTempFile("ewma", ".snapshot");
+	try {
+	    ewma.snapshot().writeTo(file);
+	    UnaryEwma restored = UnaryEwma.buildWith(EwmaSnapshot.readFrom(file));
+	    assertEquals(2, restored.getCount());
+	    assertEquals(ewma.apply(4.0), restored.apply(4.0));
+	} finally {
+	    Files.delete(file);
+	}
+    }
+
+    @Test
+    public void multiSeriesRoundTrip() throws IOException {
+	MultiSeriesEwma ewma = MultiSeriesEwma.buildWith(0.1, MultiSeriesEwma.FIRST_SAMPLE, 16);
+	ewma.register(-7L, 0.5, 2.0);
+	Random random = new Random(3);
+	for (int i = 0; i < 200_000; i++) {
+	    ewma.update(random.nextInt(50_000) * 31L, random.nextDouble());
+	}
+
+	EwmaSnapshot snapshot = roundTrip(ewma.snapshot());
+	assertEquals(ewma.size(), snapshot.size());
+	assertFalse(snapshot.hasVariance());
+
+	MultiSeriesEwma restored = MultiSeriesEwma.buildWith(snapshot);
+	assertEquals(ewma.size(), restored.size());
+	for (int i = 0; i < snapshot.size(); i++) {
+	    long key = snapshot.getKey(i);
+	    assertEquals(ewma.getEWMA(key), restored.getEWMA(key), 0.0);
+	    assertEquals(ewma.getEWMA0(key), restored.getEWMA0(key), 0.0);
+	    assertEquals(ewma.getLambda(key), restored.getLambda(key), 0.0);
+	    assertEquals(ewma.getCount(key), restored.getCount(key));
+	}
+	assertEquals(ewma.update(-7L, 1.0), restored.update(-7L, 1.0), 0.0);
+	assertEquals(ewma.update(123L, 1.0), restored.update(123L, 1.0), 0.0);
+	assertEquals(1.0, restored.getEWMA0(123L), 0.0);
+    }
+
+    @Test
+    public void controlChartKeepsVariance() throws IOException {
+	EwmaControlChart chart = EwmaControlChart.withEstimatedSigma(0.2, 10.0, 3.0, null);
+	for (double value : new double[] { 9.0, 11.0, 10.5, 9.5 }) {
+	    chart.applyAsDouble(value);
+	}
+
+	EwmaSnapshot snapshot = roundTrip(chart.snapshot());
+	assertTrue(snapshot.hasVariance());
+
+	EwmaControlChart restored = EwmaControlChart.buildWith(snapshot, 3.0, null);
+	assertEquals(chart.getSigma(), restored.getSigma(), 1E-15);
+	assertEquals(chart.getLCL(), restored.getLCL(), 1E-12);
+	assertEquals(chart.getUCL(), restored.getUCL(), 1E-12);
+	assertEquals(chart.getEWMA(), restored.getEWMA(), 0.0);
+	assertEquals(4, restored.getCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void controlChartRequiresVariance() {
+	EwmaControlChart.buildWith(DoubleEwma.get().snapshot(), 3.0, null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void singleEwmaRequiresSingleSeries() {
+	MultiSeriesEwma ewma = MultiSeriesEwma.withLambda(0.2);
+	ewma.update(1L, 1.0);
+	ewma.update(2L, 1.0);
+	DoubleEwma.buildWith(ewma.snapshot());
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsOtherData() throws IOException {
+	EwmaSnapshot.readFrom(Channels.newChannel(new ByteArrayInputStream(new byte[64])));
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsTruncatedData() throws IOException {
+	ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+	DoubleEwma.get().snapshot().writeTo(Channels.newChannel(bytes));
+	byte[] data = bytes.toByteArray();
+	EwmaSnapshot.readFrom(Channels.newChannel(new ByteArrayInputStream(data, 0, data.length - 1)));
+    }
+
+    @Test
+    public void replacesFileWithoutLeavingTemporaryFiles() throws IOException {
+	Path directory = Files.createTempDirectory("ewma");
+	Path file = directory.resolve("ewma.snapshot");
+	try {
+	    DoubleEwma.buildWith(0.2, 1.0).snapshot().writeTo(file);
+	    DoubleEwma.buildWith(0.5, 2.0).snapshot().writeTo(file);
+	    try (Stream<Path> files = Files.list(directory)) {
+		assertEquals(1, files.count());
+	    }
+	    assertEquals(0.5, EwmaSnapshot.readFrom(file).defaultLambda, 0.0);
+	} finally {
+	    Files.deleteIfExists(file);
+	    Files.delete(directory);
+	}
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsSizeBeyondFileLength() throws IOException {
+	Path file = Files.createTempFile("ewma", ".snapshot");
+	try {
+	    DoubleEwma.get().snapshot().writeTo(file);
+	    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+		channel.write(ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN).putInt(0, Integer.MAX_VALUE), 8);
+	    }
+	    EwmaSnapshot.readFrom(file);
+	} finally {
+	    Files.delete(file);
+	}
+    }
+
+    private static EwmaSnapshot roundTrip(EwmaSnapshot snapshot) throws IOException {
+	ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+	snapshot.writeTo(Channels.newChannel(bytes));
+	return EwmaSnapshot.readFrom(Channels.newChannel(new ByteArrayInputStream(bytes.toByteArray())));
+    }
+
+}
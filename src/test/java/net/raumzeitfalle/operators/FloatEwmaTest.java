@@ -0,0 +1,97 @@
+/*
+ * 
+ * FunWithLambdas: EWMA
+ *
+ * Copyright (C) 2016 Oliver Löffler
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package net.raumzeitfalle.operators;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.nio.FloatBuffer;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class FloatEwmaTest {
+
+    private static final double FLOAT_ROUNDING = Math.pow(2, -24);
+
+    @Test
+    public void resultsAreRoundedDoubleEwma() {
+	float[] values = values(10_000, 17);
+	DoubleEwma reference = DoubleEwma.buildWith(0.1f, 50.0);
+	FloatEwma ewma = FloatEwma.buildWith(0.1f, 50.0f);
+
+	for (float value : values) {
+	    double expected = reference.applyAsDouble(value);
+	    float actual = ewma.applyAsFloat(value);
+	    assertEquals((float) expected, actual, 0.0f);
+	    assertEquals(0.0, Math.abs(expected - actual) / Math.abs(expected), FLOAT_ROUNDING);
+	}
+	assertEquals(reference.getPrevious(), ewma.getPrevious(), 0.0);
+	assertEquals(values.length, ewma.getCount());
+    }
+
+    @Test
+    public void errorOfRoundedInputsIsBounded() {
+	double[] exact = new Random(3).doubles(100_000, -1000, 1000).toArray();
+	float[] rounded = new float[exact.length];
+	for (int i = 0; i < exact.length; i++) {
+	    rounded[i] = (float) exact[i];
+	}
+	float[] result = FloatEwma.withLambda(0.01f).applyTo(rounded, new float[rounded.length]);
+	double[] expect = DoubleEwma.withLambda(0.01f).applyTo(exact, new double[exact.length]);
+
+	for (int i = 0; i < exact.length; i++) {
+	    double bound = FLOAT_ROUNDING * (1000 + Math.abs(expect[i]));
+	    assertEquals(expect[i], result[i], bound);
+	}
+    }
+
+    @Test
+    public void arrayAndBufferEqualOneByOne() {
+	float[] values = values(1000, 5);
+	FloatEwma single = FloatEwma.withLambda(0.3f);
+	float[] expect = new float[values.length];
+	for (int i = 0; i < values.length; i++) {
+	    expect[i] = single.applyAsFloat(values[i]);
+	}
+
+	float[] array = FloatEwma.withLambda(0.3f).applyTo(values, new float[values.length]);
+	FloatBuffer buffer = FloatEwma.withLambda(0.3f).applyTo(FloatBuffer.wrap(values), FloatBuffer.allocate(values.length));
+
+	assertArrayEquals(expect, array, 0.0f);
+	assertArrayEquals(expect, buffer.array(), 0.0f);
+	assertEquals(0, buffer.remaining());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidLambda() {
+	FloatEwma.withLambda(0.0f);
+    }
+
+    private static float[] values(int n, long seed) {
+	Random random = new Random(seed);
+	float[] values = new float[n];
+	for (int i = 0; i < n; i++) {
+	    values[i] = 50f + (float) random.nextGaussian();
+	}
+	return values;
+    }
+
+}
@@ -0,0 +1,113 @@
+/*
+ * 
+ * FunWithLambdas: EWMA
+ *
+ * Copyright (C) 2016 Oliver Löffler
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package net.raumzeitfalle.operators;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class FloatMultiSeriesEwmaTest {
+
+    private static final double FLOAT_ROUNDING = Math.pow(2, -24);
+
+    @Test
+    public void deviationFromDoubleStateIsBoundedByLambda() {
+	float lambda = 0.05f;
+	FloatMultiSeriesEwma compact = FloatMultiSeriesEwma.buildWith(lambda, FloatMultiSeriesEwma.FIRST_SAMPLE, 100);
+	MultiSeriesEwma reference = MultiSeriesEwma.buildWith(lambda, MultiSeriesEwma.FIRST_SAMPLE, 100);
+	Random random = new Random(11);
+
+	double maxDeviation = 0;
+	for (int n = 0; n < 200_000; n++) {
+	    long key = random.nextInt(100);
+	    float value = 500f + (float) random.nextGaussian();
+	    float actual = compact.update(key, value);
+	    double expected = reference.update(key, value);
+	    maxDeviation = Math.max(maxDeviation, Math.abs(expected - actual));
+	}
+
+	assertTrue("deviation " + maxDeviation, maxDeviation <= FLOAT_ROUNDING * 510 / lambda);
+	assertEquals(100, compact.size());
+	assertEquals(reference.getCount(7L), compact.getCount(7L));
+    }
+
+    @Test
+    public void batchEqualsSingleUpdates() {
+	long[] keys = new long[1000];
+	float[] values = new float[keys.length];
+	Random random = new Random(5);
+	for (int i = 0; i < keys.length; i++) {
+	    keys[i] = random.nextInt(30) * 1_000_003L;
+	    values[i] = random.nextFloat();
+	}
+	FloatMultiSeriesEwma single = FloatMultiSeriesEwma.withLambda(0.2f);
+	FloatMultiSeriesEwma batch = FloatMultiSeriesEwma.withLambda(0.2f);
+	float[] target = new float[keys.length];
+
+	batch.updateBatch(keys, values, target);
+
+	for (int i = 0; i < keys.length; i++) {
+	    assertEquals(single.update(keys[i], values[i]), target[i], 0.0f);
+	}
+    }
+
+    @Test
+    public void recomputeFromHistoryEqualsRoundedDoubleEwma() {
+	FloatSeriesRingStore history = FloatSeriesRingStore.withDepth(64, 4);
+	FloatMultiSeriesEwma ewma = FloatMultiSeriesEwma.withLambda(0.2f);
+	Random random = new Random(9);
+	for (int i = 0; i < 100; i++) {
+	    float value = random.nextFloat();
+	    history.append(1L, value);
+	    ewma.update(1L, value);
+	}
+
+	float[] window = new float[64];
+	history.copyTo(1L, window);
+	DoubleEwma reference = DoubleEwma.buildWith(0.05f, window[0]);
+	double expected = Double.NaN;
+	for (float value : window) {
+	    expected = reference.applyAsDouble(value);
+	}
+
+	assertEquals((float) expected, ewma.recompute(1L, 0.05f, FloatMultiSeriesEwma.FIRST_SAMPLE, history), 0.0f);
+	assertEquals(64L, ewma.getCount(1L));
+	assertEquals(window[0], ewma.getEWMA0(1L), 0.0f);
+	assertEquals(0.05f, ewma.getLambda(1L), 0.0f);
+    }
+
+    @Test
+    public void unknownSeries() {
+	FloatMultiSeriesEwma ewma = FloatMultiSeriesEwma.withLambda(0.2f);
+	assertFalse(ewma.contains(3L));
+	assertTrue(Float.isNaN(ewma.getEWMA(3L)));
+	assertEquals(0L, ewma.getCount(3L));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void batchLengthsMustMatch() {
+	FloatMultiSeriesEwma.withLambda(0.2f).updateBatch(new long[2], new float[1], null);
+    }
+
+}
@@ -0,0 +1,92 @@
+/*
+ * 
+ * FunWithLambdas: EWMA
+ *
+ * Copyright (C) 2016 Oliver Löffler
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package net.raumzeitfalle.operators;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class FloatSeriesRingStoreTest {
+
+    @Test
+    public void retainsMostRecentSamples() {
+	FloatSeriesRingStore store = FloatSeriesRingStore.withDepth(4, 2);
+	for (int i = 1; i <= 6; i++) {
+	    store.append(7L, i);
+	}
+
+	assertEquals(4, store.retained(7L));
+	assertEquals(6.0f, store.get(7L, 0), 0.0f);
+	float[] window = new float[4];
+	assertEquals(4, store.copyTo(7L, window));
+	assertArrayEquals(new float[] { 3.0f, 4.0f, 5.0f, 6.0f }, window, 0.0f);
+
+	assertEquals(5.0f, store.retract(7L, 1), 0.0f);
+	window = new float[3];
+	assertEquals(3, store.copyTo(7L, window));
+	assertArrayEquals(new float[] { 3.0f, 4.0f, 6.0f }, window, 0.0f);
+    }
+
+    @Test
+    public void takesHalfTheMemoryOfDoubleStore() {
+	FloatSeriesRingStore compact = FloatSeriesRingStore.withDepth(100, 1000);
+	SeriesRingStore reference = SeriesRingStore.withDepth(100, 1000);
+	for (int s = 0; s < 1000; s++) {
+	    compact.append(s, 1.0f);
+	    reference.append(s, 1.0);
+	}
+	assertEquals(reference.offHeapBytes() / 2, compact.offHeapBytes());
+    }
+
+    @Test
+    public void recomputeDeviatesOnlyByRoundedSamples() {
+	FloatSeriesRingStore compact = FloatSeriesRingStore.withDepth(1000, 1);
+	SeriesRingStore reference = SeriesRingStore.withDepth(1000, 1);
+	double[] values = new Random(21).doubles(5000, -100, 100).toArray();
+	for (double value : values) {
+	    compact.append(1L, (float) value);
+	    reference.append(1L, value);
+	}
+	double bound = Math.pow(2, -24) * 100;
+	assertEquals(reference.recompute(1L, 0.01, Double.NaN), compact.recompute(1L, 0.01, Double.NaN), bound);
+	assertEquals(reference.replay(1L, DoubleEwma.withLambda(0.3)), compact.replay(1L, DoubleEwma.withLambda(0.3)), bound);
+    }
+
+    @Test
+    public void growsBeyondExpectedSeries() {
+	FloatSeriesRingStore store = FloatSeriesRingStore.withDepth(3, 16);
+	int series = 100_000;
+	for (int s = 0; s < series; s++) {
+	    store.append(s, (float) s);
+	    store.append(s, (float) (s + 1));
+	}
+	for (int s = 0; s < series; s += 997) {
+	    assertEquals(s + 1, store.get(s, 0), 0.0f);
+	    assertEquals(s, store.get(s, 1), 0.0f);
+	}
+	assertEquals(series, store.size());
+	assertTrue(store.offHeapBytes() < 2L * series * 3 * Float.BYTES);
+    }
+
+}
@@ -0,0 +1,96 @@
+/*
+ * 
+ * FunWithLambdas: EWMA
+ *
+ * Copyright (C) 2016 Oliver Löffler
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package net.raumzeitfalle.operators;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class MultiSeriesEwmaTest {
+
+    private static final double TOLERANCE = 0.0001;
+
+    @Test
+    public void update() {
+	MultiSeriesEwma ewma = MultiSeriesEwma.withLambda(0.2);
+	assertEquals(0.2, ewma.update(7L, 1.0), TOLERANCE);
+	assertEquals(0.4, ewma.update(-3L, 2.0), TOLERANCE);
+	assertEquals(0.56, ewma.update(7L, 2.0), TOLERANCE);
+	assertEquals(1.048, ewma.update(7L, 3.0), TOLERANCE);
+
+	assertEquals(2, ewma.size());
+	assertEquals(3, ewma.getCount(7L));
+	assertEquals(1, ewma.getCount(-3L));
+	assertEquals(0.4, ewma.getEWMA(-3L), TOLERANCE);
+	assertTrue(ewma.contains(-3L));
+	assertFalse(ewma.contains(0L));
+	assertTrue(Double.isNaN(ewma.getEWMA(0L)));
+    }
+
+    @Test
+    public void registerWithFirstSample() {
+	MultiSeriesEwma ewma = MultiSeriesEwma.withLambda(0.2);
+	ewma.register(1L, 0.5, MultiSeriesEwma.FIRST_SAMPLE);
+	assertEquals(4.0, ewma.update(1L, 4.0), TOLERANCE);
+	assertEquals(3.0, ewma.update(1L, 2.0), TOLERANCE);
+	assertEquals(4.0, ewma.getEWMA0(1L), TOLERANCE);
+	assertEquals(0.5, ewma.getLambda(1L), TOLERANCE);
+    }
+
+    @Test
+    public void updateBatchEqualsIndividualSeries() {
+	int series = 5_000;
+	Random random = new Random(11);
+	long[] keys = new long[100_000];
+	double[] values = new double[keys.length];
+	for (int i = 0; i < keys.length; i++) {
+	    keys[i] = random.nextInt(series) * 1_000_003L;
+	    values[i] = random.nextDouble();
+	}
+
+	MultiSeriesEwma batch = MultiSeriesEwma.buildWith(0.1, MultiSeriesEwma.FIRST_SAMPLE, 16);
+	double[] result = new double[keys.length];
+	batch.updateBatch(keys, values, result);
+
+	MultiSeriesEwma single = MultiSeriesEwma.buildWith(0.1, MultiSeriesEwma.FIRST_SAMPLE, series);
+	double[] expect = new double[keys.length];
+	for (int i = 0; i < keys.length; i++) {
+	    expect[i] = single.update(keys[i], values[i]);
+	}
+	assertArrayEquals(expect, result, 0.0);
+	assertEquals(single.size(), batch.size());
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void updateBatchWithDifferentLengths() {
+	MultiSeriesEwma.withLambda(0.2).updateBatch(new long[2], new double[3]);
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void lambdaEqualsZero() {
+	MultiSeriesEwma.withLambda(0);
+    }
+
+}
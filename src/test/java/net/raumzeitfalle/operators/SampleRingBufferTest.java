@@ -0,0 +1,134 @@
+/*
+ * 
+ * FunWithLambdas: EWMA
+ *
+ * Copyright (C) 2016 Oliver Löffler
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package net.raumzeitfalle.operators;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import net.raumzeitfalle.operators.SampleRingBuffer.WaitStrategy;
+
+public class SampleRingBufferTest {
+
+    @Test
+    public void offerFailsWhenFull() {
+	SampleRingBuffer ring = SampleRingBuffer.singleProducer(4, WaitStrategy.BUSY_SPIN);
+	for (int i = 0; i < 4; i++) {
+	    assertTrue(ring.offer(i, 1L, i));
+	}
+	assertFalse(ring.offer(4, 1L, 4.0));
+	assertEquals(4, ring.size());
+
+	List<Double> drained = new ArrayList<>();
+	assertEquals(3, ring.drain((timestamp, series, value) -> drained.add(value), 3));
+	assertTrue(ring.offer(4, 1L, 4.0));
+	assertEquals(2, ring.drain((timestamp, series, value) -> drained.add(value), 8));
+	assertEquals(0, ring.drain((timestamp, series, value) -> drained.add(value), 8));
+	assertEquals(5, drained.size());
+	for (int i = 0; i < 5; i++) {
+	    assertEquals(i, drained.get(i), 0.0);
+	}
+    }
+
+    @Test
+    public void drainToOperators() {
+	SampleRingBuffer ring = SampleRingBuffer.multiProducer(8, WaitStrategy.YIELD);
+	SampleRingBuffer singleRing = SampleRingBuffer.singleProducer(8, WaitStrategy.YIELD);
+	MultiSeriesEwma expected = MultiSeriesEwma.withLambda(0.2);
+	MultiSeriesEwma ewma = MultiSeriesEwma.withLambda(0.2);
+	DoubleEwma single = DoubleEwma.withLambda(0.2);
+	DoubleEwma expectedSingle = DoubleEwma.withLambda(0.2);
+	for (int i = 0; i < 100; i++) {
+	    long key = i % 3;
+	    ring.offer(i, key, i);
+	    singleRing.offer(i, key, i);
+	    expected.update(key, i);
+	    expectedSingle.applyAsDouble(i);
+	    if (i % 2 == 1) {
+		ring.drainTo(ewma, 2);
+		singleRing.drainTo(single, 2);
+	    }
+	}
+	for (long key = 0; key < 3; key++) {
+	    assertEquals(expected.getEWMA(key), ewma.getEWMA(key), 0.0);
+	}
+	assertEquals(expectedSingle.getPrevious(), single.getPrevious(), 0.0);
+    }
+
+    @Test
+    public void singleProducerThread() throws InterruptedException {
+	handOff(SampleRingBuffer.singleProducer(64, WaitStrategy.YIELD), 1, 200_000);
+    }
+
+    @Test
+    public void multipleProducerThreads() throws InterruptedException {
+	handOff(SampleRingBuffer.multiProducer(64, WaitStrategy.PARK), 4, 50_000);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void capacityMustBePowerOfTwo() {
+	SampleRingBuffer.singleProducer(100, WaitStrategy.BUSY_SPIN);
+    }
+
+    private static void handOff(SampleRingBuffer ring, int producers, int samplesPerProducer) throws InterruptedException {
+	List<Thread> threads = new ArrayList<>();
+	for (int p = 0; p < producers; p++) {
+	    long key = p;
+	    Thread thread = new Thread(() -> {
+		try {
+		    for (int i = 0; i < samplesPerProducer; i++) {
+			ring.put(i, key, i);
+		    }
+		} catch (InterruptedException e) {
+		    Thread.currentThread().interrupt();
+		}
+	    });
+	    thread.start();
+	    threads.add(thread);
+	}
+
+	long[] last = new long[producers];
+	boolean[] ordered = { true };
+	MultiSeriesEwma ewma = MultiSeriesEwma.withLambda(0.5);
+	long total = (long) producers * samplesPerProducer;
+	for (long n = 0; n < total;) {
+	    n += ring.take((timestamp, series, value) -> {
+		int p = (int) series;
+		ordered[0] &= timestamp == last[p] && value == timestamp;
+		last[p]++;
+		ewma.update(series, value);
+	    }, 32);
+	}
+	for (Thread thread : threads) {
+	    thread.join();
+	}
+	assertTrue(ordered[0]);
+	assertEquals(0, ring.size());
+	for (int p = 0; p < producers; p++) {
+	    assertEquals(samplesPerProducer, ewma.getCount(p));
+	}
+    }
+
+}
@@ -0,0 +1,161 @@
+/*
+ * 
+ * FunWithLambdas: EWMA
+ *
+ * Copyright (C) 2016 Oliver Löffler
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package net.raumzeitfalle.operators;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class SeriesRingStoreTest {
+
+    private static final double TOLERANCE = 1E-12;
+
+    @Test
+    public void retainsMostRecentSamples() {
+	SeriesRingStore store = SeriesRingStore.withDepth(4, 2);
+	for (int i = 1; i <= 6; i++) {
+	    store.append(7L, i);
+	}
+	store.append(3L, -1.0);
+
+	assertEquals(4, store.retained(7L));
+	assertEquals(1, store.retained(3L));
+	assertEquals(0, store.retained(5L));
+	assertEquals(6.0, store.get(7L, 0), 0.0);
+	assertEquals(3.0, store.get(7L, 3), 0.0);
+
+	double[] window = new double[4];
+	assertEquals(4, store.copyTo(7L, window));
+	assertArrayEquals(new double[] { 3.0, 4.0, 5.0, 6.0 }, window, 0.0);
+    }
+
+    @Test
+    public void recomputeEqualsEwmaOverWindow() {
+	SeriesRingStore store = SeriesRingStore.withDepth(50, 16);
+	double[] values = new Random(3).doubles(120).toArray();
+	for (double value : values) {
+	    store.append(1L, value);
+	}
+	double[] window = Arrays.copyOfRange(values, 70, 120);
+	double expected = DoubleEwma.withLambda(0.3).applyTo(window, new double[window.length])[window.length - 1];
+	assertEquals(expected, store.recompute(1L, 0.3, 0.0), TOLERANCE);
+	assertEquals(expected, store.replay(1L, DoubleEwma.withLambda(0.3)), TOLERANCE);
+
+	double first = DoubleEwma.buildWith(0.3, window[0]).applyTo(window, new double[window.length])[window.length - 1];
+	assertEquals(first, store.recompute(1L, 0.3, MultiSeriesEwma.FIRST_SAMPLE), TOLERANCE);
+	assertEquals(0.5, store.recompute(2L, 0.3, 0.5), 0.0);
+    }
+
+    @Test
+    public void retractRemovesSample() {
+	SeriesRingStore store = SeriesRingStore.withDepth(5, 1);
+	for (double value : new double[] { 1.0, 2.0, 3.0, 4.0, 5.0, 6.0, 7.0 }) {
+	    store.append(9L, value);
+	}
+	assertEquals(5.0, store.retract(9L, 2), 0.0);
+	assertEquals(4, store.retained(9L));
+	double[] window = new double[4];
+	store.copyTo(9L, window);
+	assertArrayEquals(new double[] { 3.0, 4.0, 6.0, 7.0 }, window, 0.0);
+
+	store.append(9L, 8.0);
+	window = new double[5];
+	store.copyTo(9L, window);
+	assertArrayEquals(new double[] { 3.0, 4.0, 6.0, 7.0, 8.0 }, window, 0.0);
+
+	double expected = DoubleEwma.withLambda(0.2).applyTo(window, new double[5])[4];
+	assertEquals(expected, store.recompute(9L, 0.2, 0.0), TOLERANCE);
+    }
+
+    @Test
+    public void allocatesSegmentsAsSeriesAreAdded() {
+	SeriesRingStore store = SeriesRingStore.withDepth(8, 16);
+	long bytes = store.offHeapBytes();
+	for (long key = 0; key < 100; key++) {
+	    for (int i = 0; i < 10; i++) {
+		store.append(key * 31, key + i);
+	    }
+	}
+	assertEquals(100, store.size());
+	assertTrue(store.offHeapBytes() >= 100 * 8 * Double.BYTES);
+	assertTrue(store.offHeapBytes() > bytes);
+	for (long key = 0; key < 100; key++) {
+	    assertEquals(key + 9, store.get(key * 31, 0), 0.0);
+	    assertEquals(key + 2, store.get(key * 31, 7), 0.0);
+	}
+	assertFalse(store.contains(1L));
+    }
+
+    @Test
+    public void multiSeriesEwmaRecomputesWithNewLambda() {
+	SeriesRingStore history = SeriesRingStore.withDepth(32, 16);
+	MultiSeriesEwma ewma = MultiSeriesEwma.withLambda(0.2);
+	Random random = new Random(11);
+	for (int i = 0; i < 32; i++) {
+	    double value = random.nextDouble();
+	    history.append(4L, value);
+	    ewma.update(4L, value);
+	}
+	double[] window = new double[32];
+	history.copyTo(4L, window);
+
+	double expected = DoubleEwma.withLambda(0.5).applyTo(window, new double[32])[31];
+	assertEquals(expected, ewma.recompute(4L, 0.5, 0.0, history), TOLERANCE);
+	assertEquals(expected, ewma.getEWMA(4L), TOLERANCE);
+	assertEquals(0.5, ewma.getLambda(4L), 0.0);
+	assertEquals(32, ewma.getCount(4L));
+	assertEquals(1.0, ewma.recompute(5L, 0.5, 1.0, history), 0.0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void retractRequiresRetainedSample() {
+	SeriesRingStore store = SeriesRingStore.withDepth(4, 1);
+	store.append(1L, 1.0);
+	store.retract(1L, 1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void depthMustBePositive() {
+	SeriesRingStore.withDepth(0, 1);
+    }
+
+    @Test
+    public void growsBeyondExpectedSeries() {
+	SeriesRingStore store = SeriesRingStore.withDepth(3, 16);
+	int series = 100_000;
+	for (int s = 0; s < series; s++) {
+	    store.append(s, s);
+	    store.append(s, (s + 1));
+	}
+	for (int s = 0; s < series; s += 997) {
+	    assertEquals(s + 1, store.get(s, 0), 0.0);
+	    assertEquals(s, store.get(s, 1), 0.0);
+	}
+	assertEquals(series, store.size());
+	assertTrue(store.offHeapBytes() < 2L * series * 3 * Double.BYTES);
+    }
+
+}
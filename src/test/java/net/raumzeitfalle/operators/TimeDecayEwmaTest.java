@@ -0,0 +1,99 @@
+/*
+ * 
+ * FunWithLambdas: EWMA
+ *
+ * Copyright (C) 2016 Oliver Löffler
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package net.raumzeitfalle.operators;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class TimeDecayEwmaTest {
+
+    private static final double TOLERANCE = 1E-12;
+
+    @Test
+    public void regularIntervalsEqualDoubleEwma() {
+	double[] values = new Random(1).doubles(1000).toArray();
+	long[] timestamps = new long[values.length];
+	for (int i = 0; i < timestamps.length; i++) {
+	    timestamps[i] = 1_000L + i * 250L;
+	}
+	double halfLife = TimeDecayEwma.halfLifeOf(0.2, 250);
+	double[] result = TimeDecayEwma.buildWith(halfLife, 0.0, 750L).applyTo(timestamps, values, new double[values.length]);
+	double[] expect = DoubleEwma.withLambda(0.2).applyTo(values, new double[values.length]);
+	assertArrayEquals(expect, result, 1E-9);
+    }
+
+    @Test
+    public void irregularIntervals() {
+	TimeDecayEwma ewma = TimeDecayEwma.withHalfLife(10);
+	assertEquals(4.0, ewma.update(100, 4.0), TOLERANCE);
+	assertEquals(2.0, ewma.update(110, 0.0), TOLERANCE);
+	assertEquals(4.0, ewma.update(110, 8.0), TOLERANCE);
+	assertEquals(4.0 * 0.25 + 6.0 * 0.75, ewma.update(130, 6.0), TOLERANCE);
+	assertEquals(130, ewma.getTimestamp());
+    }
+
+    @Test
+    public void valuesAtSameTimeAreMerged() {
+	TimeDecayEwma merged = TimeDecayEwma.buildWith(10, 2.0, 0L);
+	merged.update(10, 1.0);
+	merged.update(10, 5.0);
+	merged.update(10, 3.0);
+	TimeDecayEwma single = TimeDecayEwma.buildWith(10, 2.0, 0L);
+	assertEquals(single.update(10, 3.0), merged.getPrevious(), TOLERANCE);
+	assertEquals(single.update(20, 7.0), merged.update(20, 7.0), TOLERANCE);
+
+	TimeDecayEwma initial = TimeDecayEwma.buildWith(10, 2.0, 0L);
+	assertEquals(3.0, initial.update(0, 4.0), TOLERANCE);
+    }
+
+    @Test
+    public void cachedDecaysEqualDirectCalculation() {
+	TimeDecayEwma ewma = TimeDecayEwma.withHalfLife(1_000);
+	Random random = new Random(2);
+	for (int i = 0; i < 10_000; i++) {
+	    long interval = random.nextInt(200) * 37L;
+	    assertEquals(Math.pow(2, -interval / 1_000.0), ewma.decay(interval), TOLERANCE);
+	}
+	assertEquals(0.5, ewma.lambdaFor(1_000), TOLERANCE);
+    }
+
+    @Test
+    public void notInitialized() {
+	assertTrue(Double.isNaN(TimeDecayEwma.withHalfLife(1).getPrevious()));
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void decreasingTimestamps() {
+	TimeDecayEwma ewma = TimeDecayEwma.withHalfLife(10);
+	ewma.update(100, 1.0);
+	ewma.update(99, 1.0);
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void invalidHalfLife() {
+	TimeDecayEwma.withHalfLife(0);
+    }
+
+}
@@ -61,6 +61,20 @@ public class UnaryEwmaTest {
 	assertEquals( 1.048, ewma.get(2).doubleValue(), TOLERANCE);
     }
 
+    @Test
+    public void applyAsDoubleDoesNotAllocate() {
+	UnaryEwma ewma = (UnaryEwma) UnaryEwma.withLambda(0.2);
+	AllocationMeter.assertBytesPerMillionCalls(1024, i -> ewma.applyAsDouble(i & 7));
+    }
+
+    @Test
+    public void applyBoxesOnlyTheResult() {
+	UnaryOperator<Double> ewma = UnaryEwma.withLambda(0.2);
+	Double value = Double.valueOf(3.0);
+	/* at most one Double (16 bytes, 24 bytes without compressed class pointers) per call */
+	AllocationMeter.assertBytesPerMillionCalls(24L * AllocationMeter.CALLS + 1024, i -> ewma.apply(value).doubleValue());
+    }
+
     @Test
     public void toStringMethod() {
 	assertTrue(functionUnderTest.toString().contains("EWMA"));
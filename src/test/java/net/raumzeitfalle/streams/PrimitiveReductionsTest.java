@@ -0,0 +1,144 @@
+package net.raumzeitfalle.streams;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.AfterClass;
+import org.junit.Test;
+
+public class PrimitiveReductionsTest {
+
+    private static final ForkJoinPool POOL = new ForkJoinPool(4);
+
+    private static final PrimitiveReductions[] STRATEGIES = {
+	    PrimitiveReductions.sequential(),
+	    PrimitiveReductions.unrolled(),
+	    PrimitiveReductions.parallel(POOL, 64) };
+
+    private final Random random = new Random(7);
+
+    @AfterClass
+    public static void shutdown() {
+	POOL.shutdown();
+    }
+
+    @Test
+    public void ints() {
+	for (int length : new int[] { 1, 3, 7, 8, 13, 1_000, 10_007 }) {
+	    int[] values = random.ints(length, -1_000_000, 1_000_000).toArray();
+	    values[length / 2] = 1_000_000;
+	    values[length - 1] = 1_000_000;
+	    IntBuffer direct = ByteBuffer.allocateDirect(length * 4).asIntBuffer().put(values);
+	    direct.flip();
+	    for (PrimitiveReductions reductions : STRATEGIES) {
+		assertEquals(Arrays.stream(values).max().getAsInt(), reductions.max(values));
+		assertEquals(Arrays.stream(values).min().getAsInt(), reductions.min(values));
+		assertEquals(Arrays.stream(values).asLongStream().sum(), reductions.sum(values));
+		assertEquals(length / 2, reductions.argMax(values));
+		assertMoments(Arrays.stream(values).asDoubleStream().toArray(), reductions.moments(values));
+
+		assertEquals(reductions.max(values), reductions.max(direct));
+		assertEquals(reductions.min(values), reductions.min(direct));
+		assertEquals(reductions.sum(values), reductions.sum(direct));
+		assertEquals(length / 2, reductions.argMax(direct));
+		assertEquals(reductions.moments(values).getMean(), reductions.moments(direct).getMean(), 1E-9);
+		assertEquals(0, direct.position());
+	    }
+	}
+    }
+
+    @Test
+    public void longs() {
+	long[] values = random.longs(5_003, -1L << 40, 1L << 40).toArray();
+	values[17] = 1L << 41;
+	LongBuffer heap = LongBuffer.wrap(new long[values.length + 2], 1, values.length).slice();
+	heap.put(values).flip();
+	for (PrimitiveReductions reductions : STRATEGIES) {
+	    assertEquals(1L << 41, reductions.max(values));
+	    assertEquals(Arrays.stream(values).min().getAsLong(), reductions.min(values));
+	    assertEquals(Arrays.stream(values).sum(), reductions.sum(values));
+	    assertEquals(17, reductions.argMax(values));
+	    assertEquals(17, reductions.argMax(heap));
+	    assertEquals(reductions.sum(values), reductions.sum(heap));
+	    assertEquals(reductions.min(values), reductions.min(heap.asReadOnlyBuffer()));
+	}
+    }
+
+    @Test
+    public void momentsOfEpochNanos() {
+	long epoch = 1_700_000_000_000_000_000L;
+	long[] offsets = random.longs(5_003, 0, 1_000_000_000L).toArray();
+	long[] values = Arrays.stream(offsets).map(x -> epoch + x).toArray();
+	double[] shifted = Arrays.stream(offsets).asDoubleStream().toArray();
+	double mean = Arrays.stream(shifted).average().getAsDouble();
+	double variance = Arrays.stream(shifted).map(x -> (x - mean) * (x - mean)).sum() / (shifted.length - 1);
+	for (PrimitiveReductions reductions : STRATEGIES) {
+	    Moments moments = reductions.moments(values);
+	    assertEquals(values.length, moments.getCount());
+	    assertEquals(epoch + mean, moments.getMean(), 1E3);
+	    /* merged chunk means are doubles around 1.7E18, their spacing of 256 limits the precision of the merge */
+	    assertEquals(variance, moments.getVariance(), variance * 1E-6);
+	}
+    }
+
+    @Test
+    public void doubles() {
+	double[] values = random.doubles(20_011).map(x -> 1E6 + x).toArray();
+	DoubleBuffer direct = ByteBuffer.allocateDirect(values.length * 8).asDoubleBuffer().put(values);
+	direct.position(11);
+	for (PrimitiveReductions reductions : STRATEGIES) {
+	    assertEquals(Arrays.stream(values).max().getAsDouble(), reductions.max(values), 0.0);
+	    assertEquals(Arrays.stream(values).min().getAsDouble(), reductions.min(values), 0.0);
+	    assertEquals(Arrays.stream(values).sum(), reductions.sum(values), 1E-3);
+	    assertMoments(values, reductions.moments(values));
+
+	    double[] tail = Arrays.copyOfRange(values, 11, values.length);
+	    assertEquals(Arrays.stream(tail).max().getAsDouble(), reductions.max(direct), 0.0);
+	    assertEquals(PrimitiveReductions.sequential().argMax(tail), reductions.argMax(direct));
+	    assertMoments(tail, reductions.moments(direct));
+	    assertEquals(11, direct.position());
+	}
+    }
+
+    @Test
+    public void nanIsLargest() {
+	double[] values = { 1.0, Double.NaN, 3.0, Double.NaN, 2.0, 0.0, 4.0, 5.0, 1.0, 0.0 };
+	for (PrimitiveReductions reductions : STRATEGIES) {
+	    assertEquals(1, reductions.argMax(values));
+	    assertEquals(Double.NaN, reductions.max(values), 0.0);
+	}
+    }
+
+    @Test
+    public void emptyInputs() {
+	for (PrimitiveReductions reductions : STRATEGIES) {
+	    assertEquals(-1, reductions.argMax(new int[0]));
+	    assertEquals(0L, reductions.sum(new long[0]));
+	    assertEquals(0, reductions.moments(new double[0]).getCount());
+	    assertEquals(Double.NaN, reductions.moments(DoubleBuffer.allocate(0)).getMean(), 0.0);
+	}
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void maxRequiresElements() {
+	PrimitiveReductions.unrolled().max(new double[0]);
+    }
+
+    private static void assertMoments(double[] values, Moments moments) {
+	double mean = Arrays.stream(values).average().orElse(Double.NaN);
+	double variance = Arrays.stream(values).map(x -> (x - mean) * (x - mean)).sum() / (values.length - 1);
+	assertEquals(values.length, moments.getCount());
+	assertEquals(mean, moments.getMean(), Math.abs(mean) * 1E-12);
+	if (values.length > 1) {
+	    assertEquals(variance, moments.getVariance(), variance * 1E-9);
+	}
+    }
+
+}
@@ -0,0 +1,93 @@
+package net.raumzeitfalle.timeseries;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import org.junit.Test;
+
+import net.raumzeitfalle.operators.DoubleEwma;
+import net.raumzeitfalle.operators.MultiSeriesEwma;
+
+public class CsvEwmaReaderTest {
+
+    private static final String CSV = "timestamp,series,value\r\n"
+	    + "1000,\"tool-1/chamber-A\",1.0\r\n"
+	    + "1001,tool-2,-2.5e1\r\n"
+	    + "1002,\"tool-1/chamber-A\",2\r\n"
+	    + "\r\n"
+	    + "1003,tool-2,\r\n"
+	    + "1004,\"tool-1/chamber-A\",3.000\r\n"
+	    + "1005,tool-2,NaN";
+
+    @Test
+    public void readIntoMultipleSeries() throws IOException {
+	MultiSeriesEwma ewma = MultiSeriesEwma.withLambda(0.2);
+	CsvEwmaReader.ParseReport report = CsvEwmaReader.forColumns(0, 1, 2).withHeader(true).read(stream(CSV), ewma);
+
+	assertEquals(1.048, ewma.getEWMA(CsvEwmaReader.keyOf("tool-1/chamber-A")), 1E-12);
+	assertEquals(3, ewma.getCount(CsvEwmaReader.keyOf("tool-1/chamber-A")));
+	assertTrue(Double.isNaN(ewma.getEWMA(CsvEwmaReader.keyOf("tool-2"))));
+	assertEquals(2, ewma.getCount(CsvEwmaReader.keyOf("tool-2")));
+	assertEquals(5, report.getRecords());
+	assertEquals(1, report.getSkipped());
+	assertEquals(CSV.length(), report.getBytes());
+	assertTrue(report.toString().contains("MB/s"));
+    }
+
+    @Test
+    public void readTimestampsAndSeries() throws IOException {
+	List<String> records = new ArrayList<>();
+	CsvEwmaReader.forColumns(0, 1, 2).withHeader(true)
+		.read(stream(CSV), (timestamp, series, value) -> records.add(timestamp + ":" + value));
+	assertEquals("[1000:1.0, 1001:-25.0, 1002:2.0, 1004:3.0, 1005:NaN]", records.toString());
+    }
+
+    @Test
+    public void signWithoutDigitsAndOverflowAreInvalid() throws IOException {
+	List<String> records = new ArrayList<>();
+	String csv = "-,5.0\n1,1e-\n9223372036854775808,1.0\n-9223372036854775809,1.0\n"
+		+ "9223372036854775807,2.0\n-9223372036854775808,3.0\n-7,4.0\n";
+	CsvEwmaReader.ParseReport report = CsvEwmaReader.forColumns(0, CsvEwmaReader.NO_COLUMN, 1)
+		.read(stream(csv), (timestamp, series, value) -> records.add(timestamp + ":" + value));
+	assertEquals("[9223372036854775807:2.0, -9223372036854775808:3.0, -7:4.0]", records.toString());
+	assertEquals(4, report.getSkipped());
+    }
+
+    @Test
+    public void readSingleSeriesWithSemicolon() throws IOException {
+	DoubleEwma ewma = DoubleEwma.withLambda(0.2);
+	CsvEwmaReader.forValues(1).withDelimiter(';').read(stream("a;1.0\nb;2.0\nc;3.0\n"), ewma);
+	assertEquals(1.048, ewma.getPrevious(), 1E-12);
+    }
+
+    @Test
+    public void parsedNumbersEqualDoubleParseDouble() throws IOException {
+	Random random = new Random(5);
+	StringBuilder csv = new StringBuilder();
+	List<Double> expected = new ArrayList<>();
+	for (int i = 0; i < 20_000; i++) {
+	    double value = (random.nextDouble() - 0.5) * Math.pow(10, random.nextInt(40) - 20);
+	    String text = i % 3 == 0 ? Double.toString(value) : String.format(Locale.ROOT, "%." + random.nextInt(12) + "f", value);
+	    csv.append(i).append(',').append(text).append('\n');
+	    expected.add(Double.valueOf(Double.parseDouble(text)));
+	}
+	List<Double> parsed = new ArrayList<>();
+	CsvEwmaReader.forColumns(0, CsvEwmaReader.NO_COLUMN, 1, 64)
+		.read(stream(csv.toString()), (timestamp, series, value) -> parsed.add(Double.valueOf(value)));
+	assertEquals(expected, parsed);
+    }
+
+    private static InputStream stream(String text) {
+	return new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+}
@@ -0,0 +1,107 @@
+package net.raumzeitfalle.timeseries;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class EwmaFilesTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final double[] values = new Random(3).doubles(10_001).toArray();
+
+    private final double[] expect = new EwmaFunctions().applyWithLambda(0.1, values);
+
+    @Test
+    public void applyToFile() throws IOException {
+	Path source = write(values);
+	Path target = folder.newFile().toPath();
+	EwmaFiles.applyWithLambda(0.1, source, target);
+	assertArrayEquals(expect, read(target), 0.0);
+    }
+
+    @Test
+    public void applyToFileInChunks() throws IOException {
+	Path source = write(values);
+	Path target = folder.newFile().toPath();
+	EwmaFiles.apply(0.1, source, target, 1000, false);
+	assertArrayEquals(expect, read(target), 0.0);
+    }
+
+    @Test
+    public void applyToFileInParallelChunks() throws IOException {
+	Path source = write(values);
+	Path target = folder.getRoot().toPath().resolve("ewma.bin");
+	EwmaFiles.apply(0.1, source, target, 999, true);
+	assertArrayEquals(expect, read(target), 1E-12);
+    }
+
+    @Test
+    public void applyToEmptyFile() throws IOException {
+	Path target = folder.newFile().toPath();
+	EwmaFiles.applyWithLambdaInParallel(0.1, write(new double[0]), target);
+	assertEquals(0, Files.size(target));
+    }
+
+    @Test
+    public void applyToCompressedFile() throws IOException {
+	long[] timestamps = new long[values.length];
+	for (int i = 0; i < timestamps.length; i++) {
+	    timestamps[i] = 1_500_000_000_000L + 1000L * i;
+	}
+	Path source = folder.newFile().toPath();
+	try (FileChannel out = FileChannel.open(source, StandardOpenOption.WRITE)) {
+	    GorillaEncoder encoder = GorillaEncoder.forSamples(out);
+	    encoder.encode(timestamps, values);
+	    encoder.finish();
+	}
+	Path target = folder.newFile().toPath();
+	EwmaFiles.applyWithLambdaCompressed(0.1, source, target);
+
+	GorillaDecoder decoder = GorillaDecoder.from(ByteBuffer.wrap(Files.readAllBytes(target)));
+	for (int i = 0; i < values.length; i++) {
+	    assertTrue(decoder.next());
+	    assertEquals(timestamps[i], decoder.getTimestamp());
+	    assertEquals(expect[i], decoder.getValue(), 0.0);
+	}
+	assertFalse(decoder.next());
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void sourceWithIncompleteSample() throws IOException {
+	Path source = folder.newFile().toPath();
+	Files.write(source, new byte[12]);
+	EwmaFiles.applyWithLambda(0.1, source, folder.newFile().toPath());
+    }
+
+    private Path write(double[] doubles) throws IOException {
+	ByteBuffer bytes = ByteBuffer.allocate(doubles.length * Double.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+	bytes.asDoubleBuffer().put(doubles);
+	Path file = folder.newFile().toPath();
+	Files.write(file, bytes.array());
+	return file;
+    }
+
+    private static double[] read(Path file) throws IOException {
+	ByteBuffer bytes = ByteBuffer.wrap(Files.readAllBytes(file)).order(ByteOrder.LITTLE_ENDIAN);
+	double[] doubles = new double[bytes.remaining() / Double.BYTES];
+	bytes.asDoubleBuffer().get(doubles);
+	return doubles;
+    }
+
+}
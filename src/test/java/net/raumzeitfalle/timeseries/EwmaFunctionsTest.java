@@ -6,13 +6,19 @@ import static org.junit.Assert.assertNotNull;
 
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.BiFunction;
 import java.util.function.Function;
 import java.util.stream.Collectors;
+import java.util.stream.DoubleStream;
 import java.util.stream.Stream;
 
 import org.junit.Test;
 
+import net.raumzeitfalle.operators.AllocationMeter;
+import net.raumzeitfalle.operators.DoubleEwma;
+
 public class EwmaFunctionsTest {
 
     @Test
@@ -38,6 +44,33 @@ public class EwmaFunctionsTest {
 	assertEquals( 1.048, results.get(3).doubleValue(), 0.01);
     }
 
+    @Test
+    public void applyFunctionWithLambdaAndInitialOnStream() {
+	List<Double> results = EwmaFunctions.applyToStream( streamOfDoubles(), 0.5, 1.0 ).collect(Collectors.toList());
+	assertEquals( 0.5, results.get(0).doubleValue(), 0.0001);
+	assertEquals( 0.75, results.get(1).doubleValue(), 0.0001);
+	assertEquals( 1.375, results.get(2).doubleValue(), 0.0001);
+	assertEquals( 2.1875, results.get(3).doubleValue(), 0.0001);
+    }
+
+    @Test
+    public void applyFunctionOnInfiniteStreamLazily() {
+	AtomicInteger consumed = new AtomicInteger();
+	Stream<Double> infinite = Stream.iterate(Double.valueOf(1.0), d -> Double.valueOf(d.doubleValue() + 1.0)).peek(d -> consumed.incrementAndGet());
+	Stream<Double> ewma = EwmaFunctions.applyToStream( infinite, 0.2, 0.0 );
+	assertEquals( 0, consumed.get() );
+	
+	List<Double> results = ewma.limit(3).collect(Collectors.toList());
+	assertEquals( 3, consumed.get() );
+	assertEquals( 1.048, results.get(2).doubleValue(), 0.0001);
+    }
+
+    @Test
+    public void applyFunctionOnDoubleStream() {
+	double[] results = EwmaFunctions.applyToStream( DoubleStream.of(0.0, 1.0, 2.0, 3.0).parallel(), 0.2, 0.0 ).parallel().toArray();
+	assertArrayEquals( new double[]{0.0,0.2,0.56,1.048}, results, 0.0001);
+    }
+
     @Test
     public void applyToArrayOfDoublePrimitives() {
 	double[] values = new double[]{0.0,1.0,2.0,3.0};
@@ -46,6 +79,69 @@ public class EwmaFunctionsTest {
 	assertArrayEquals(expect, result, 0.0001);
     }
 
+    @Test
+    public void applyToArrayOfFloatPrimitivesWithinRoundingOfDouble() {
+	float[] values = new float[100_000];
+	double[] widened = new double[values.length];
+	Random random = new Random(42);
+	for (int i = 0; i < values.length; i++) {
+	    values[i] = 1000f + random.nextFloat();
+	    widened[i] = values[i];
+	}
+	float[] result = new EwmaFunctions().applyWithLambda(0.2f, values);
+	double[] expect = new EwmaFunctions().applyWithLambda((double) 0.2f, widened);
+	for (int i = 0; i < values.length; i++) {
+	    assertEquals((float) expect[i], result[i], 0.0f);
+	}
+    }
+
+    @Test
+    public void applyInParallelToArrayOfDoublePrimitives() {
+	double[] values = new Random(42).doubles(1_000_003).toArray();
+	double[] expect = new EwmaFunctions().applyWithLambda(0.2, values);
+	double[] result = new EwmaFunctions().applyWithLambdaInParallel(0.2, values);
+	assertArrayEquals(expect, result, 1E-12);
+    }
+
+    @Test
+    public void applyToArrayAllocatesOnlyTheResult() {
+	double[] values = new Random(42).doubles(AllocationMeter.CALLS).toArray();
+	EwmaFunctions functions = new EwmaFunctions();
+	AllocationMeter.assertBytesPerCall(8L * values.length + 1024, () -> functions.applyWithLambda(0.2, values)[values.length - 1]);
+    }
+
+    @Test
+    public void applyToDoubleStreamDoesNotAllocatePerValue() {
+	double[] values = new Random(42).doubles(AllocationMeter.CALLS).toArray();
+	AllocationMeter.assertBytesPerCall(4096, () -> EwmaFunctions.applyToStream(DoubleStream.of(values), 0.2, 0.0).sum());
+    }
+
+    @Test
+    public void collectFinalEwmaFromParallelStream() {
+	List<Double> values = new Random(42).doubles(100_000).boxed().collect(Collectors.toList());
+	double[] expect = EwmaFunctions.applyToStream( values.stream() ).mapToDouble(Double::doubleValue).toArray();
+	Double result = values.parallelStream().collect(EwmaFunctions.toEwma(0.2, 0.0));
+	assertEquals( expect[expect.length-1], result.doubleValue(), 1E-12);
+	assertEquals( 1.048, streamOfDoubles().parallel().collect(EwmaFunctions.toEwma(0.2, 0.0)).doubleValue(), 1E-12);
+	assertEquals( 2.0, Stream.<Double>empty().collect(EwmaFunctions.toEwma(0.2, 2.0)).doubleValue(), 0.0);
+    }
+
+    @Test
+    public void collectEwmaSeriesFromParallelStream() {
+	List<Double> values = new Random(42).doubles(100_000).boxed().collect(Collectors.toList());
+	double[] expect = DoubleEwma.buildWith(0.2, 0.5).applyTo(values.stream().mapToDouble(Double::doubleValue).toArray(), new double[values.size()]);
+	double[] result = values.parallelStream().collect(EwmaFunctions.toEwmaSeries(0.2, 0.5));
+	assertArrayEquals(expect, result, 1E-12);
+    }
+
+    @Test
+    public void applyWithHalfLifeToIrregularSeries() {
+	long[] timestamps = new long[]{0L, 10L, 10L, 30L};
+	double[] values = new double[]{4.0, 0.0, 8.0, 6.0};
+	double[] result = new EwmaFunctions().applyWithHalfLife(10, timestamps, values);
+	assertArrayEquals(new double[]{4.0, 2.0, 4.0, 5.5}, result, 1E-12);
+    }
+
     private LinkedList<Double> linkedListOfDoubles() {
 	LinkedList<Double> doubles = new LinkedList<>();
 	doubles.add( Double.valueOf(0.0) );
@@ -0,0 +1,111 @@
+package net.raumzeitfalle.timeseries;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class EwmaIndexTest {
+
+	private static final double TOLERANCE = 1E-12;
+
+	private final EwmaFunctions functions = new EwmaFunctions();
+
+	private final double[] series = new Random(5).doubles(1_000).toArray();
+
+	@Test
+	public void ewmaAtEqualsFullRecomputation() {
+		EwmaIndex index = EwmaIndex.withLambda(0.2, 64).appendAll(series);
+		double[] expected = functions.applyWithLambda(0.2, series);
+		for (int k = 0; k < series.length; k++) {
+			assertEquals(expected[k], index.ewmaAt(k), TOLERANCE);
+		}
+		assertEquals(expected[series.length - 1], index.getEWMA(), TOLERANCE);
+		assertEquals(series.length, index.size());
+	}
+
+	@Test
+	public void insertIntoEmptyIndexEqualsAppend() {
+		for (double initial : new double[] { 5.0, EwmaIndex.FIRST_VALUE }) {
+			EwmaIndex inserted = EwmaIndex.buildWith(0.2, initial, 4);
+			EwmaIndex appended = EwmaIndex.buildWith(0.2, initial, 4);
+			inserted.insert(0, 1.0);
+			assertEquals(appended.append(1.0), inserted.getEWMA(), TOLERANCE);
+			assertEquals(appended.ewmaAt(0), inserted.ewmaAt(0), TOLERANCE);
+		}
+		EwmaIndex index = EwmaIndex.buildWith(0.2, 5.0, 4);
+		index.insert(0, 1.0);
+		assertEquals(4.2, index.getEWMA(), TOLERANCE);
+	}
+
+	@Test
+	public void explicitInitial() {
+		EwmaIndex index = EwmaIndex.buildWith(0.3, 0.5, 7);
+		assertEquals(0.5, index.getEWMA(), 0.0);
+		assertEquals(0.3 * 1.0 + 0.7 * 0.5, index.append(1.0), TOLERANCE);
+		assertEquals(0.3 * 1.0 + 0.7 * 0.5, index.ewmaAt(0), TOLERANCE);
+	}
+
+	@Test
+	public void replaceRecomputesFromCheckpoint() {
+		for (int k : new int[] { 0, 1, 63, 64, 500, 999 }) {
+			EwmaIndex index = EwmaIndex.withLambda(0.2, 64).appendAll(series);
+			double[] corrected = series.clone();
+			corrected[k] = 5.0;
+			assertEquals(series[k], index.replace(k, 5.0), 0.0);
+			assertMatches(functions.applyWithLambda(0.2, corrected), index, TOLERANCE);
+		}
+	}
+
+	@Test
+	public void correctPropagatesClosedFormDelta() {
+		for (int k : new int[] { 0, 1, 63, 64, 500, 999 }) {
+			EwmaIndex index = EwmaIndex.withLambda(0.2, 64).appendAll(series);
+			double[] corrected = series.clone();
+			corrected[k] = -3.0;
+			assertEquals(series[k], index.correct(k, -3.0), 0.0);
+			assertMatches(functions.applyWithLambda(0.2, corrected), index, 1E-9);
+		}
+	}
+
+	@Test
+	public void insertLateValue() {
+		for (int k : new int[] { 0, 10, 64, 1_000 }) {
+			EwmaIndex index = EwmaIndex.withLambda(0.2, 16).appendAll(series);
+			double[] late = new double[series.length + 1];
+			System.arraycopy(series, 0, late, 0, k);
+			late[k] = 2.0;
+			System.arraycopy(series, k, late, k + 1, series.length - k);
+			index.insert(k, 2.0);
+			assertEquals(late.length, index.size());
+			assertMatches(functions.applyWithLambda(0.2, late), index, TOLERANCE);
+		}
+	}
+
+	@Test
+	public void insertAtCheckpointBoundary() {
+		EwmaIndex index = EwmaIndex.withLambda(0.5, 4).appendAll(new double[] { 1.0, 2.0, 3.0, 4.0 });
+		index.insert(4, 5.0);
+		assertMatches(functions.applyWithLambda(0.5, new double[] { 1.0, 2.0, 3.0, 4.0, 5.0 }), index, TOLERANCE);
+		index.append(6.0);
+		assertMatches(functions.applyWithLambda(0.5, new double[] { 1.0, 2.0, 3.0, 4.0, 5.0, 6.0 }), index, TOLERANCE);
+	}
+
+	@Test(expected = IndexOutOfBoundsException.class)
+	public void ewmaAtRequiresValidIndex() {
+		EwmaIndex.withLambda(0.2, 8).appendAll(series).ewmaAt(series.length);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void intervalMustBePositive() {
+		EwmaIndex.withLambda(0.2, 0);
+	}
+
+	private static void assertMatches(double[] expected, EwmaIndex index, double tolerance) {
+		for (int k = 0; k < expected.length; k++) {
+			assertEquals(expected[k], index.ewmaAt(k), tolerance);
+		}
+		assertEquals(expected[expected.length - 1], index.getEWMA(), tolerance);
+	}
+}
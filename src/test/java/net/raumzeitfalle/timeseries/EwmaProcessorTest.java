@@ -0,0 +1,207 @@
+package net.raumzeitfalle.timeseries;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import net.raumzeitfalle.operators.DoubleEwma;
+
+public class EwmaProcessorTest {
+
+    private static final double[] VALUES = { 3.0, 1.0, 4.0, 1.0, 5.0, 9.0, 2.0, 6.0, 5.0, 3.0 };
+
+    @Test
+    public void emitsSmoothedValues() {
+	ArrayPublisher publisher = new ArrayPublisher(VALUES);
+	EwmaProcessor<Double> processor = EwmaProcessor.forValues(DoubleEwma.withLambda(0.2), 4);
+	RecordingSubscriber<Double> subscriber = new RecordingSubscriber<>(Long.MAX_VALUE);
+	publisher.subscribe(processor);
+	processor.subscribe(subscriber);
+
+	double[] expected = DoubleEwma.withLambda(0.2).applyTo(VALUES, new double[VALUES.length]);
+	assertEquals(VALUES.length, subscriber.items.size());
+	for (int i = 0; i < expected.length; i++) {
+	    assertEquals(expected[i], subscriber.items.get(i), 0.0);
+	}
+	assertTrue(subscriber.completed);
+	for (long request : publisher.requests) {
+	    assertTrue(request <= 4);
+	}
+    }
+
+    @Test
+    public void respectsDemandOfSubscriber() {
+	ArrayPublisher publisher = new ArrayPublisher(VALUES);
+	EwmaProcessor<Double> processor = EwmaProcessor.forValues(DoubleEwma.withLambda(0.2), 8);
+	RecordingSubscriber<Double> subscriber = new RecordingSubscriber<>(0);
+	processor.subscribe(subscriber);
+	publisher.subscribe(processor);
+	assertEquals(0, publisher.emitted);
+
+	subscriber.subscription.request(3);
+	assertEquals(3, publisher.emitted);
+	assertEquals(3, subscriber.items.size());
+
+	subscriber.subscription.cancel();
+	assertTrue(publisher.cancelled);
+	assertTrue(!subscriber.completed);
+    }
+
+    @Test
+    public void emitsBatches() {
+	ArrayPublisher publisher = new ArrayPublisher(VALUES);
+	EwmaProcessor<double[]> processor = EwmaProcessor.forBatches(DoubleEwma.withLambda(0.5), 4);
+	RecordingSubscriber<double[]> subscriber = new RecordingSubscriber<>(1);
+	publisher.subscribe(processor);
+	processor.subscribe(subscriber);
+
+	assertEquals(1, subscriber.items.size());
+	assertEquals(4, publisher.emitted);
+
+	subscriber.subscription.request(5);
+	double[] expected = DoubleEwma.withLambda(0.5).applyTo(VALUES, new double[VALUES.length]);
+	assertEquals(3, subscriber.items.size());
+	assertArrayEquals(new double[] { expected[0], expected[1], expected[2], expected[3] }, subscriber.items.get(0), 0.0);
+	assertArrayEquals(new double[] { expected[4], expected[5], expected[6], expected[7] }, subscriber.items.get(1), 0.0);
+	assertArrayEquals(new double[] { expected[8], expected[9] }, subscriber.items.get(2), 0.0);
+	assertTrue(subscriber.completed);
+    }
+
+    @Test
+    public void forwardsErrors() {
+	EwmaProcessor<Double> processor = EwmaProcessor.forValues(DoubleEwma.get(), 1);
+	RecordingSubscriber<Double> subscriber = new RecordingSubscriber<>(1);
+	processor.onError(new IllegalStateException("upstream failed"));
+	processor.subscribe(subscriber);
+	assertTrue(subscriber.error instanceof IllegalStateException);
+    }
+
+    @Test
+    public void rejectsSecondSubscriber() {
+	EwmaProcessor<Double> processor = EwmaProcessor.forValues(DoubleEwma.get(), 1);
+	processor.subscribe(new RecordingSubscriber<>(1));
+	RecordingSubscriber<Double> second = new RecordingSubscriber<>(1);
+	processor.subscribe(second);
+	assertTrue(second.error instanceof IllegalStateException);
+    }
+
+    @Test
+    public void rejectsInvalidRequest() {
+	ArrayPublisher publisher = new ArrayPublisher(VALUES);
+	EwmaProcessor<Double> processor = EwmaProcessor.forValues(DoubleEwma.get(), 1);
+	RecordingSubscriber<Double> subscriber = new RecordingSubscriber<>(0);
+	publisher.subscribe(processor);
+	processor.subscribe(subscriber);
+	subscriber.subscription.request(0);
+	assertTrue(subscriber.error instanceof IllegalArgumentException);
+	assertTrue(publisher.cancelled);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void batchSizeMustBePositive() {
+	EwmaProcessor.forBatches(DoubleEwma.get(), 0);
+    }
+
+    /**
+     * Synchronous publisher emitting the given values on request.
+     */
+    static final class ArrayPublisher implements Publisher<Double>, Subscription {
+
+	private final double[] values;
+
+	private final List<Long> requests = new ArrayList<>();
+
+	private Subscriber<? super Double> subscriber;
+
+	private long demand;
+
+	private int emitted;
+
+	private boolean emitting;
+
+	private boolean cancelled;
+
+	ArrayPublisher(double[] values) {
+	    this.values = values;
+	}
+
+	@Override
+	public void subscribe(Subscriber<? super Double> subscriber) {
+	    this.subscriber = subscriber;
+	    subscriber.onSubscribe(this);
+	}
+
+	@Override
+	public void request(long n) {
+	    requests.add(n);
+	    demand += n;
+	    if (emitting) {
+		return;
+	    }
+	    emitting = true;
+	    while (demand > 0 && emitted < values.length && !cancelled) {
+		demand--;
+		subscriber.onNext(values[emitted++]);
+	    }
+	    emitting = false;
+	    if (emitted == values.length && !cancelled) {
+		cancelled = true;
+		subscriber.onComplete();
+	    }
+	}
+
+	@Override
+	public void cancel() {
+	    cancelled = true;
+	}
+    }
+
+    static final class RecordingSubscriber<T> implements Subscriber<T> {
+
+	private final long initialRequest;
+
+	private final List<T> items = new ArrayList<>();
+
+	private Subscription subscription;
+
+	private boolean completed;
+
+	private Throwable error;
+
+	RecordingSubscriber(long initialRequest) {
+	    this.initialRequest = initialRequest;
+	}
+
+	@Override
+	public void onSubscribe(Subscription subscription) {
+	    this.subscription = subscription;
+	    if (initialRequest > 0) {
+		subscription.request(initialRequest);
+	    }
+	}
+
+	@Override
+	public void onNext(T item) {
+	    items.add(item);
+	}
+
+	@Override
+	public void onError(Throwable throwable) {
+	    error = throwable;
+	}
+
+	@Override
+	public void onComplete() {
+	    completed = true;
+	}
+    }
+
+}
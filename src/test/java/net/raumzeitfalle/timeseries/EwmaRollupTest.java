@@ -0,0 +1,150 @@
+package net.raumzeitfalle.timeseries;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class EwmaRollupTest {
+
+	private static final double TOLERANCE = 1E-12;
+
+	private static final long SECOND = 1_000L;
+
+	private static final long MINUTE = 60 * SECOND;
+
+	private static final long HOUR = 60 * MINUTE;
+
+	private final EwmaFunctions functions = new EwmaFunctions();
+
+	@Test
+	public void aggregatesEqualRecomputationFromRawSamples() {
+		int n = 20_000;
+		long[] timestamps = new long[n];
+		double[] values = new Random(3).doubles(n).toArray();
+		for (int i = 0; i < n; i++) {
+			timestamps[i] = i * 250L;
+		}
+		EwmaRollup rollup = EwmaRollup.withLambda(0.2, 100_000, SECOND, MINUTE, HOUR).addAll(timestamps, values);
+
+		for (int r = 0; r < rollup.getResolutions(); r++) {
+			long width = rollup.getResolution(r);
+			int size = rollup.size(r);
+			assertEquals((int) ((timestamps[n - 1] / width) + 1), size);
+
+			double[] means = new double[size];
+			double[] mins = new double[size];
+			double[] maxs = new double[size];
+			long[] counts = new long[size];
+			for (int k = 0; k < size; k++) {
+				int from = (int) (k * width / 250L);
+				int to = (int) Math.min(n, (k + 1) * width / 250L);
+				double[] bucket = Arrays.copyOfRange(values, from, to);
+				means[k] = Arrays.stream(bucket).average().getAsDouble();
+				mins[k] = Arrays.stream(bucket).min().getAsDouble();
+				maxs[k] = Arrays.stream(bucket).max().getAsDouble();
+				counts[k] = bucket.length;
+			}
+
+			double[] actual = new double[size];
+			long[] actualCounts = new long[size];
+			rollup.copyMeans(r, actual);
+			assertArrayEquals(means, actual, TOLERANCE);
+			rollup.copyMins(r, actual);
+			assertArrayEquals(mins, actual, 0.0);
+			rollup.copyMaxs(r, actual);
+			assertArrayEquals(maxs, actual, 0.0);
+			rollup.copyCounts(r, actualCounts);
+			assertArrayEquals(counts, actualCounts);
+			rollup.copyEwmas(r, actual);
+			assertArrayEquals(functions.applyWithLambda(0.2, means), actual, TOLERANCE);
+			assertEquals(actual[size - 1], rollup.getEWMA(r), 0.0);
+		}
+		assertEquals(n, rollup.getCount());
+	}
+
+	@Test
+	public void emptyBucketsCarryTheEwma() {
+		EwmaRollup rollup = EwmaRollup.withLambda(0.5, 10, 10L);
+		rollup.add(0L, 1.0);
+		rollup.add(5L, 3.0);
+		rollup.add(35L, 6.0);
+
+		long[] starts = new long[4];
+		long[] counts = new long[4];
+		double[] means = new double[4];
+		double[] ewmas = new double[4];
+		assertEquals(4, rollup.copyStarts(0, starts));
+		rollup.copyCounts(0, counts);
+		rollup.copyMeans(0, means);
+		rollup.copyEwmas(0, ewmas);
+
+		assertArrayEquals(new long[] { 0L, 10L, 20L, 30L }, starts);
+		assertArrayEquals(new long[] { 2L, 0L, 0L, 1L }, counts);
+		assertEquals(2.0, means[0], 0.0);
+		assertTrue(Double.isNaN(means[1]));
+		assertArrayEquals(new double[] { 2.0, 2.0, 2.0, 4.0 }, ewmas, 0.0);
+	}
+
+	@Test
+	public void windowIsBounded() {
+		EwmaRollup rollup = EwmaRollup.withLambda(0.3, 5, 10L);
+		for (long t = 0; t < 100; t++) {
+			rollup.add(t, t);
+		}
+		long[] starts = new long[5];
+		assertEquals(5, rollup.copyStarts(0, starts));
+		assertArrayEquals(new long[] { 50L, 60L, 70L, 80L, 90L }, starts);
+
+		rollup.add(1_000_000L, 1.0);
+		assertEquals(5, rollup.copyStarts(0, starts));
+		assertArrayEquals(new long[] { 999_960L, 999_970L, 999_980L, 999_990L, 1_000_000L }, starts);
+	}
+
+	@Test
+	public void ewmaAtLooksUpBucket() {
+		EwmaRollup rollup = EwmaRollup.withLambda(0.3, 8, 10L);
+		for (long t = 0; t < 100; t += 3) {
+			rollup.add(t, Math.sin(t));
+		}
+		double[] ewmas = new double[8];
+		rollup.copyEwmas(0, ewmas);
+
+		assertEquals(ewmas[7], rollup.ewmaAt(0, 99L), 0.0);
+		assertEquals(ewmas[0], rollup.ewmaAt(0, 25L), 0.0);
+		assertTrue(Double.isNaN(rollup.ewmaAt(0, 19L)));
+		assertTrue(Double.isNaN(rollup.ewmaAt(0, 100L)));
+	}
+
+	@Test
+	public void negativeTimestampsAreAlignedToBuckets() {
+		EwmaRollup rollup = EwmaRollup.withLambda(0.3, 4, 10L);
+		rollup.add(-15L, 1.0);
+		rollup.add(-1L, 2.0);
+		long[] starts = new long[2];
+		assertEquals(2, rollup.copyStarts(0, starts));
+		assertArrayEquals(new long[] { -20L, -10L }, starts);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void decreasingTimestamps() {
+		EwmaRollup rollup = EwmaRollup.withLambda(0.3, 4, 10L);
+		rollup.add(10L, 1.0);
+		rollup.add(9L, 1.0);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void resolutionsAreRequired() {
+		EwmaRollup.withLambda(0.3, 4);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void invalidResolution() {
+		EwmaRollup.withLambda(0.3, 4, 0L);
+	}
+
+}
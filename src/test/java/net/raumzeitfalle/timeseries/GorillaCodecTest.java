@@ -0,0 +1,136 @@
+package net.raumzeitfalle.timeseries;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.channels.Channels;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+import net.raumzeitfalle.operators.DoubleEwma;
+
+public class GorillaCodecTest {
+
+    private final Random random = new Random(13);
+
+    @Test
+    public void roundTripOfValues() {
+	/* multiples of 1/1024 have trailing zero bits, hence they compress */
+	double[] values = random.doubles(10_000).map(x -> Math.round(x * 1000) / 1024.0).toArray();
+	values[5] = Double.NaN;
+	values[6] = Double.NEGATIVE_INFINITY;
+	values[7] = -0.0;
+	values[8] = Double.MIN_VALUE;
+	values[9] = Double.MAX_VALUE;
+	for (ByteOrder order : new ByteOrder[] { ByteOrder.BIG_ENDIAN, ByteOrder.LITTLE_ENDIAN }) {
+	    ByteBuffer buffer = ByteBuffer.allocate(values.length * 10).order(order);
+	    GorillaEncoder encoder = GorillaEncoder.forValues(buffer);
+	    encoder.encode(values);
+	    long bytes = encoder.finish();
+	    assertEquals(bytes, buffer.position());
+	    assertTrue(bytes < values.length * Double.BYTES);
+
+	    buffer.flip();
+	    double[] decoded = GorillaDecoder.from(buffer.order(ByteOrder.BIG_ENDIAN)).toArray();
+	    assertEquals(values.length, decoded.length);
+	    for (int i = 0; i < values.length; i++) {
+		assertEquals(Double.doubleToRawLongBits(values[i]), Double.doubleToRawLongBits(decoded[i]));
+	    }
+	}
+    }
+
+    @Test
+    public void roundTripOfSamples() {
+	long[] timestamps = new long[5_000];
+	double[] values = new double[timestamps.length];
+	long time = -42L;
+	for (int i = 0; i < timestamps.length; i++) {
+	    time += i % 100 == 0 ? random.nextInt(1 << 20) - (1L << 19) : 1000 + random.nextInt(5000) - 2500;
+	    timestamps[i] = i == 17 ? Long.MAX_VALUE : i == 18 ? Long.MIN_VALUE : time;
+	    values[i] = i % 3 == 0 ? 1.5 : random.nextGaussian();
+	}
+	ByteBuffer buffer = ByteBuffer.allocate(timestamps.length * 32);
+	GorillaEncoder encoder = GorillaEncoder.forSamples(buffer);
+	encoder.encode(timestamps, values);
+	encoder.finish();
+	buffer.flip();
+
+	GorillaDecoder decoder = GorillaDecoder.from(buffer);
+	assertTrue(decoder.hasTimestamps());
+	for (int i = 0; i < timestamps.length; i++) {
+	    assertTrue(decoder.next());
+	    assertEquals(timestamps[i], decoder.getTimestamp());
+	    assertEquals(values[i], decoder.getValue(), 0.0);
+	}
+	assertFalse(decoder.next());
+	assertEquals(timestamps.length, decoder.getCount());
+    }
+
+    @Test
+    public void regularTimestampsAndConstantValuesTakeTwoBitsPerSample() {
+	ByteBuffer buffer = ByteBuffer.allocate(1 << 12);
+	GorillaEncoder encoder = GorillaEncoder.forSamples(buffer);
+	for (int i = 0; i < 8_000; i++) {
+	    encoder.encode(1000L * i, 3.0);
+	}
+	assertTrue(encoder.finish() < 8_000 * 2 / 8 + 32);
+    }
+
+    @Test
+    public void emptyStream() {
+	ByteBuffer buffer = ByteBuffer.allocate(16);
+	assertEquals(3, GorillaEncoder.forValues(buffer).finish());
+	buffer.flip();
+	assertEquals(0, GorillaDecoder.from(buffer).toArray().length);
+    }
+
+    @Test
+    public void decodeSmoothAndEncodeThroughChannels() {
+	double[] values = random.doubles(100_000).toArray();
+	ByteArrayOutputStream raw = new ByteArrayOutputStream();
+	GorillaEncoder encoder = GorillaEncoder.forValues(Channels.newChannel(raw));
+	encoder.encode(DoubleBuffer.wrap(values));
+	encoder.finish();
+
+	ByteArrayOutputStream smoothed = new ByteArrayOutputStream();
+	GorillaEncoder target = GorillaEncoder.forValues(Channels.newChannel(smoothed));
+	GorillaDecoder source = GorillaDecoder.from(Channels.newChannel(new ByteArrayInputStream(raw.toByteArray())));
+	assertEquals(values.length, source.applyTo(DoubleEwma.withLambda(0.2), target));
+	target.finish();
+
+	double[] expected = DoubleEwma.withLambda(0.2).applyTo(values, new double[values.length]);
+	GorillaDecoder decoder = GorillaDecoder.from(ByteBuffer.wrap(smoothed.toByteArray()));
+	double[] chunk = new double[1000];
+	for (int from = 0; from < values.length; from += chunk.length) {
+	    assertEquals(chunk.length, decoder.decode(chunk));
+	    assertArrayEquals(Arrays.copyOfRange(expected, from, from + chunk.length), chunk, 0.0);
+	}
+	assertEquals(0, decoder.decode(DoubleBuffer.allocate(1)));
+    }
+
+    @Test(expected = UncheckedIOException.class)
+    public void truncatedStream() {
+	ByteBuffer buffer = ByteBuffer.allocate(1 << 10);
+	GorillaEncoder encoder = GorillaEncoder.forValues(buffer);
+	encoder.encode(random.doubles(100).toArray());
+	encoder.finish();
+	buffer.flip().limit(buffer.limit() / 2);
+	GorillaDecoder.from(buffer).toArray();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void valuesRequireTimestamps() {
+	GorillaEncoder.forSamples(ByteBuffer.allocate(16)).encode(1.0);
+    }
+
+}
@@ -0,0 +1,71 @@
+package net.raumzeitfalle.timeseries;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class LambdaOptimizerTest {
+
+    @Test
+    public void sse() {
+	assertEquals(1.0 + 0.64 + 2.6896, LambdaOptimizer.sse(0.2, new double[]{0.0, 1.0, 1.0, 2.0}), 1E-12);
+	assertEquals(0.0, LambdaOptimizer.sse(0.2, new double[0]), 0.0);
+    }
+
+    @Test
+    public void optimizeMatchesFineGrid() {
+	Random random = new Random(17);
+	for (double noise : new double[]{0.1, 1.0, 10.0}) {
+	    double[] series = localLevel(random, 2_000, noise);
+	    double lambda = LambdaOptimizer.get().optimize(series);
+
+	    double bestSse = Double.POSITIVE_INFINITY;
+	    for (int k = 1; k <= 10_000; k++) {
+		bestSse = Math.min(bestSse, LambdaOptimizer.sse(k / 10_000.0, series));
+	    }
+	    assertTrue(lambda > 0 && lambda <= 1);
+	    assertEquals(bestSse, LambdaOptimizer.sse(lambda, series), bestSse * 1E-6);
+	}
+    }
+
+    @Test
+    public void optimizeRandomWalk() {
+	double[] series = localLevel(new Random(3), 2_000, 0.0);
+	assertEquals(1.0, LambdaOptimizer.get().optimize(series), 1E-3);
+    }
+
+    @Test
+    public void optimizeInParallel() {
+	Random random = new Random(5);
+	double[][] series = new double[50][];
+	double[] expect = new double[series.length];
+	for (int i = 0; i < series.length; i++) {
+	    series[i] = localLevel(random, 500, 0.5 + i * 0.1);
+	    expect[i] = LambdaOptimizer.withGrid(10, 1E-5).optimize(series[i]);
+	}
+	assertArrayEquals(expect, LambdaOptimizer.withGrid(10, 1E-5).optimize(series), 0.0);
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void invalidGrid() {
+	LambdaOptimizer.withGrid(1, 1E-4);
+    }
+
+    /*
+     * Random walk level observed with white noise, the optimal lambda decreases with increasing noise.
+     */
+    private static double[] localLevel(Random random, int length, double noise) {
+	double[] series = new double[length];
+	double level = 0.0;
+	for (int i = 0; i < length; i++) {
+	    level += random.nextGaussian();
+	    series[i] = level + noise * random.nextGaussian();
+	}
+	return series;
+    }
+
+}